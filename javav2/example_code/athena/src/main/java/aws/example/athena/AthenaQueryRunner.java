@@ -0,0 +1,459 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package aws.example.athena;
+
+import software.amazon.awssdk.services.athena.AthenaAsyncClient;
+import software.amazon.awssdk.services.athena.model.ColumnInfo;
+import software.amazon.awssdk.services.athena.model.Datum;
+import software.amazon.awssdk.services.athena.model.GetQueryResultsRequest;
+import software.amazon.awssdk.services.athena.model.QueryExecution;
+import software.amazon.awssdk.services.athena.model.QueryExecutionContext;
+import software.amazon.awssdk.services.athena.model.ResultConfiguration;
+import software.amazon.awssdk.services.athena.model.ResultReuseByAgeConfiguration;
+import software.amazon.awssdk.services.athena.model.ResultReuseConfiguration;
+import software.amazon.awssdk.services.athena.model.Row;
+import software.amazon.awssdk.services.athena.model.StartQueryExecutionRequest;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Runs Amazon Athena queries with an {@link AthenaAsyncClient}.
+ *
+ * Up to {@code maxConcurrentQueries} queries run at a time; the others wait
+ * in order without holding a thread. A running query is polled with a delay
+ * that starts at about half the typical run time of recent queries and grows
+ * by half after every poll, so short queries finish quickly and long ones
+ * are not polled every second. Rows are read page by page with the
+ * GetQueryResults paginator and handed to the caller as {@link ResultRow}s,
+ * whose values are converted to the column types Athena reports.
+ *
+ * The rows of small read-only results are cached in memory, keyed by the
+ * database, the SQL with its whitespace normalized, and the execution
+ * parameters, so repeated queries, such as a dashboard that refreshes, do not
+ * reach Athena until the entry expires. Read-only statements also ask Athena
+ * to reuse the results of an identical query that ran recently, which saves
+ * the scan when the local cache has expired or another client ran the query.
+ */
+public class AthenaQueryRunner {
+    // Results with more rows than this are streamed but not cached.
+    public static final int MAX_CACHED_ROWS = 10_000;
+    private static final long MIN_POLL_MILLIS = 100;
+    private static final long MAX_POLL_MILLIS = 5_000;
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss[.SSS]");
+
+    private final AthenaAsyncClient athenaClient;
+    private final String database;
+    private final String outputLocation;
+    private final int maxConcurrentQueries;
+    private final long cacheTtlMillis;
+    private final int resultReuseMinutes;
+    private final Map<CacheKey, CachedResult> cache;
+
+    private final AtomicInteger running = new AtomicInteger();
+    private final Queue<CompletableFuture<Void>> waiting = new ConcurrentLinkedQueue<>();
+    // An exponentially weighted average of how long queries ran, used to time the first poll.
+    private volatile long typicalRunMillis = 1_000;
+
+    private final LongAdder queriesStarted = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder reusedResults = new LongAdder();
+    private final LongAdder polls = new LongAdder();
+
+    /**
+     * @param maxConcurrentQueries the number of queries that run in Athena at a time
+     * @param maxCachedResults     the number of query results kept in memory
+     * @param cacheTtl             how long a cached result is used
+     * @param resultReuse          how old an Athena result may be to be reused, or zero to always run the query
+     */
+    public AthenaQueryRunner(AthenaAsyncClient athenaClient, String database, String outputLocation,
+            int maxConcurrentQueries, int maxCachedResults, Duration cacheTtl, Duration resultReuse) {
+        this.athenaClient = athenaClient;
+        this.database = database;
+        this.outputLocation = outputLocation;
+        this.maxConcurrentQueries = maxConcurrentQueries;
+        this.cacheTtlMillis = cacheTtl.toMillis();
+        this.resultReuseMinutes = (int) resultReuse.toMinutes();
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CacheKey, CachedResult> eldest) {
+                return size() > maxCachedResults;
+            }
+        });
+    }
+
+    /**
+     * Runs the query and returns every row, mapped by the mapper.
+     *
+     * @param parameters the values of the ? placeholders in the SQL, written as SQL literals, for example 'text' or 42
+     */
+    public <T> CompletableFuture<List<T>> query(String sql, List<String> parameters, RowMapper<T> mapper) {
+        List<T> rows = new ArrayList<>();
+        return stream(sql, parameters, row -> rows.add(mapper.map(row))).thenApply(ignored -> rows);
+    }
+
+    /**
+     * Runs the query and passes each row to the consumer as its page arrives.
+     * Rows are passed on one thread at a time, in order.
+     */
+    public CompletableFuture<Void> stream(String sql, List<String> parameters, Consumer<ResultRow> consumer) {
+        // Statements that change data are always run, and their results are not cached.
+        CacheKey key = isReadOnly(sql) ? new CacheKey(database, normalize(sql), List.copyOf(parameters)) : null;
+        CachedResult cached = key == null ? null : cache.get(key);
+        if (cached != null && System.currentTimeMillis() - cached.createdMillis < cacheTtlMillis) {
+            cacheHits.increment();
+            cached.rows.forEach(consumer);
+            return CompletableFuture.completedFuture(null);
+        }
+        return acquire()
+                .thenCompose(ignored -> start(sql, parameters))
+                .thenCompose(queryExecutionId -> waitForQuery(queryExecutionId, typicalRunMillis / 2))
+                .thenCompose(execution -> {
+                    if (execution.statistics() != null && execution.statistics().resultReuseInformation() != null
+                            && Boolean.TRUE.equals(execution.statistics().resultReuseInformation().reusedPreviousResult())) {
+                        reusedResults.increment();
+                    }
+                    return readRows(execution.queryExecutionId(), key, consumer);
+                })
+                .whenComplete((ignored, err) -> release());
+    }
+
+    private CompletableFuture<String> start(String sql, List<String> parameters) {
+        StartQueryExecutionRequest.Builder request = StartQueryExecutionRequest.builder()
+                .queryString(sql)
+                .queryExecutionContext(QueryExecutionContext.builder().database(database).build())
+                .resultConfiguration(ResultConfiguration.builder().outputLocation(outputLocation).build());
+        if (!parameters.isEmpty()) {
+            request.executionParameters(parameters);
+        }
+        if (resultReuseMinutes > 0 && isReadOnly(sql)) {
+            request.resultReuseConfiguration(ResultReuseConfiguration.builder()
+                    .resultReuseByAgeConfiguration(ResultReuseByAgeConfiguration.builder()
+                            .enabled(true)
+                            .maxAgeInMinutes(resultReuseMinutes)
+                            .build())
+                    .build());
+        }
+        queriesStarted.increment();
+        return athenaClient.startQueryExecution(request.build()).thenApply(response -> response.queryExecutionId());
+    }
+
+    // Polls until the query has finished. Completes exceptionally if it failed or was cancelled.
+    private CompletableFuture<QueryExecution> waitForQuery(String queryExecutionId, long delayMillis) {
+        long delay = Math.max(MIN_POLL_MILLIS, Math.min(MAX_POLL_MILLIS, delayMillis));
+        return CompletableFuture.supplyAsync(() -> null, CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS))
+                .thenCompose(ignored -> {
+                    polls.increment();
+                    return athenaClient.getQueryExecution(request -> request.queryExecutionId(queryExecutionId));
+                })
+                .thenCompose(response -> {
+                    QueryExecution execution = response.queryExecution();
+                    switch (execution.status().state()) {
+                        case SUCCEEDED:
+                            recordRunTime(execution);
+                            return CompletableFuture.completedFuture(execution);
+                        case FAILED:
+                            return CompletableFuture.failedFuture(new IllegalStateException(
+                                    "The Amazon Athena query failed to run with error message: "
+                                            + execution.status().stateChangeReason()));
+                        case CANCELLED:
+                            return CompletableFuture.failedFuture(
+                                    new IllegalStateException("The Amazon Athena query was cancelled."));
+                        default:
+                            return waitForQuery(queryExecutionId, delay * 3 / 2);
+                    }
+                });
+    }
+
+    private void recordRunTime(QueryExecution execution) {
+        if (execution.statistics() != null && execution.statistics().totalExecutionTimeInMillis() != null) {
+            typicalRunMillis = (typicalRunMillis * 7 + execution.statistics().totalExecutionTimeInMillis()) / 8;
+        }
+    }
+
+    // Reads every page of the results, passing the rows on and keeping them for the cache while they fit.
+    // A null key means the results are not cached.
+    private CompletableFuture<Void> readRows(String queryExecutionId, CacheKey key, Consumer<ResultRow> consumer) {
+        List<ResultRow> kept = new ArrayList<>();
+        boolean[] firstPage = {true};
+        boolean[] cacheable = {key != null};
+        List<Map<String, Integer>> columnIndex = new ArrayList<>(1);
+        return athenaClient.getQueryResultsPaginator(GetQueryResultsRequest.builder()
+                .queryExecutionId(queryExecutionId)
+                .build())
+                .subscribe(page -> {
+                    List<ColumnInfo> columns = page.resultSet().resultSetMetadata().columnInfo();
+                    if (columnIndex.isEmpty()) {
+                        columnIndex.add(indexColumns(columns));
+                    }
+                    List<Row> rows = page.resultSet().rows();
+                    int first = 0;
+                    // The first row of a SELECT result holds the column names.
+                    if (firstPage[0] && !rows.isEmpty() && isHeader(rows.get(0), columns)) {
+                        first = 1;
+                    }
+                    firstPage[0] = false;
+                    for (int i = first; i < rows.size(); i++) {
+                        ResultRow row = new ResultRow(columns, columnIndex.get(0), rows.get(i).data());
+                        consumer.accept(row);
+                        if (cacheable[0]) {
+                            kept.add(row);
+                            if (kept.size() > MAX_CACHED_ROWS) {
+                                cacheable[0] = false;
+                                kept.clear();
+                            }
+                        }
+                    }
+                })
+                .thenRun(() -> {
+                    if (cacheable[0]) {
+                        cache.put(key, new CachedResult(Collections.unmodifiableList(kept)));
+                    }
+                });
+    }
+
+    private static Map<String, Integer> indexColumns(List<ColumnInfo> columns) {
+        Map<String, Integer> index = new HashMap<>();
+        for (int i = 0; i < columns.size(); i++) {
+            index.put(columns.get(i).name(), i);
+        }
+        return index;
+    }
+
+    private static boolean isHeader(Row row, List<ColumnInfo> columns) {
+        if (row.data().size() != columns.size()) {
+            return false;
+        }
+        for (int i = 0; i < columns.size(); i++) {
+            if (!Objects.equals(row.data().get(i).varCharValue(), columns.get(i).name())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Waits for a free query slot without blocking a thread.
+    private CompletableFuture<Void> acquire() {
+        while (true) {
+            int current = running.get();
+            if (current >= maxConcurrentQueries) {
+                break;
+            }
+            if (running.compareAndSet(current, current + 1)) {
+                return CompletableFuture.completedFuture(null);
+            }
+        }
+        CompletableFuture<Void> slot = new CompletableFuture<>();
+        waiting.add(slot);
+        // A query may have finished between the check and the add; hand its slot over if so.
+        if (running.get() < maxConcurrentQueries && waiting.remove(slot)) {
+            return acquire();
+        }
+        return slot;
+    }
+
+    // Passes the slot to the next waiting query, or frees it.
+    private void release() {
+        CompletableFuture<Void> next = waiting.poll();
+        if (next != null) {
+            next.complete(null);
+        } else {
+            running.decrementAndGet();
+            // A query may have started waiting after the poll.
+            CompletableFuture<Void> late = running.get() < maxConcurrentQueries ? waiting.poll() : null;
+            if (late != null) {
+                running.incrementAndGet();
+                late.complete(null);
+            }
+        }
+    }
+
+    // Collapses whitespace outside string literals and drops a trailing semicolon.
+    static String normalize(String sql) {
+        StringBuilder normalized = new StringBuilder(sql.length());
+        boolean inLiteral = false;
+        boolean pendingSpace = false;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (!inLiteral && Character.isWhitespace(c)) {
+                pendingSpace = normalized.length() > 0;
+                continue;
+            }
+            if (pendingSpace) {
+                normalized.append(' ');
+                pendingSpace = false;
+            }
+            if (c == '\'') {
+                inLiteral = !inLiteral;
+            }
+            normalized.append(c);
+        }
+        int end = normalized.length();
+        while (end > 0 && (normalized.charAt(end - 1) == ';' || normalized.charAt(end - 1) == ' ')) {
+            end--;
+        }
+        return normalized.substring(0, end);
+    }
+
+    private static boolean isReadOnly(String sql) {
+        String statement = normalize(sql).toUpperCase(Locale.ROOT);
+        return statement.startsWith("SELECT") || statement.startsWith("WITH");
+    }
+
+    public void clearCache() {
+        cache.clear();
+    }
+
+    public long getQueriesStarted() {
+        return queriesStarted.sum();
+    }
+
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    public long getReusedResults() {
+        return reusedResults.sum();
+    }
+
+    public long getPolls() {
+        return polls.sum();
+    }
+
+    /**
+     * Maps a result row to a record of the caller's type.
+     */
+    @FunctionalInterface
+    public interface RowMapper<T> {
+        T map(ResultRow row);
+    }
+
+    /**
+     * A row of a query result. Values are read by column name and converted
+     * from the text Athena returns; a null value stays null.
+     */
+    public static final class ResultRow {
+        private final List<ColumnInfo> columns;
+        private final Map<String, Integer> index;
+        private final List<Datum> data;
+
+        private ResultRow(List<ColumnInfo> columns, Map<String, Integer> index, List<Datum> data) {
+            this.columns = columns;
+            this.index = index;
+            this.data = data;
+        }
+
+        public String getString(String column) {
+            int i = position(column);
+            return i < data.size() ? data.get(i).varCharValue() : null;
+        }
+
+        public Long getLong(String column) {
+            String value = getString(column);
+            return value == null ? null : Long.valueOf(value);
+        }
+
+        public Double getDouble(String column) {
+            String value = getString(column);
+            return value == null ? null : Double.valueOf(value);
+        }
+
+        public Boolean getBoolean(String column) {
+            String value = getString(column);
+            return value == null ? null : Boolean.valueOf(value);
+        }
+
+        public LocalDate getDate(String column) {
+            String value = getString(column);
+            return value == null ? null : LocalDate.parse(value);
+        }
+
+        public LocalDateTime getTimestamp(String column) {
+            String value = getString(column);
+            return value == null ? null : LocalDateTime.parse(value, TIMESTAMP);
+        }
+
+        // Returns the value as the Java type that matches the column's Athena type.
+        public Object getObject(String column) {
+            switch (columns.get(position(column)).type()) {
+                case "tinyint":
+                case "smallint":
+                case "integer":
+                case "bigint":
+                    return getLong(column);
+                case "float":
+                case "real":
+                case "double":
+                    return getDouble(column);
+                case "boolean":
+                    return getBoolean(column);
+                case "date":
+                    return getDate(column);
+                case "timestamp":
+                    return getTimestamp(column);
+                default:
+                    return getString(column);
+            }
+        }
+
+        private int position(String column) {
+            Integer i = index.get(column);
+            if (i == null) {
+                throw new IllegalArgumentException("The result has no column " + column);
+            }
+            return i;
+        }
+    }
+
+    private static final class CacheKey {
+        private final String database;
+        private final String sql;
+        private final List<String> parameters;
+
+        private CacheKey(String database, String sql, List<String> parameters) {
+            this.database = database;
+            this.sql = sql;
+            this.parameters = parameters;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof CacheKey)) {
+                return false;
+            }
+            CacheKey key = (CacheKey) other;
+            return database.equals(key.database) && sql.equals(key.sql) && parameters.equals(key.parameters);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(database, sql, parameters);
+        }
+    }
+
+    private static final class CachedResult {
+        private final List<ResultRow> rows;
+        private final long createdMillis = System.currentTimeMillis();
+
+        private CachedResult(List<ResultRow> rows) {
+            this.rows = rows;
+        }
+    }
+}
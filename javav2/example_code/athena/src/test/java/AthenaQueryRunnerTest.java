@@ -0,0 +1,130 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+import aws.example.athena.AthenaQueryRunner;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.athena.AthenaAsyncClient;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AthenaQueryRunnerTest {
+    private static final String OUTPUT = "s3://stub-bucket/results/";
+
+    @Test
+    @Tag("IntegrationTest")
+    public void readsEveryPageAsTypedRows() throws Exception {
+        try (LocalAthenaStub stub = new LocalAthenaStub(200, 2_500);
+                AthenaAsyncClient client = stub.asyncClient()) {
+            AthenaQueryRunner runner = new AthenaQueryRunner(client, "mydb", OUTPUT, 4, 10,
+                    Duration.ofMinutes(5), Duration.ZERO);
+
+            List<Item> items = runner.query("SELECT id, name, created FROM items", List.of(),
+                    row -> new Item(row.getLong("id"), row.getString("name"), row.getDate("created"))).join();
+
+            // The header row of the first page is skipped.
+            assertEquals(2_500, items.size());
+            assertEquals(1L, items.get(0).id);
+            assertEquals("item-2500", items.get(2_499).name);
+            assertEquals(LocalDate.of(2024, 1, 2), items.get(0).created);
+            assertEquals(3, stub.resultRequests());
+        }
+    }
+
+    @Test
+    @Tag("IntegrationTest")
+    public void limitsConcurrentQueries() throws Exception {
+        try (LocalAthenaStub stub = new LocalAthenaStub(300, 10);
+                AthenaAsyncClient client = stub.asyncClient()) {
+            AthenaQueryRunner runner = new AthenaQueryRunner(client, "mydb", OUTPUT, 2, 10,
+                    Duration.ofMinutes(5), Duration.ZERO);
+
+            List<CompletableFuture<List<Long>>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(runner.query("SELECT id FROM items WHERE shard = ?", List.of(Integer.toString(i)),
+                        row -> row.getLong("id")));
+            }
+            for (CompletableFuture<List<Long>> result : results) {
+                assertEquals(10, result.join().size());
+            }
+
+            assertEquals(8, stub.startRequests());
+            assertTrue(stub.maxRunning() <= 2);
+        }
+    }
+
+    @Test
+    @Tag("IntegrationTest")
+    public void servesRepeatedQueriesFromTheCache() throws Exception {
+        try (LocalAthenaStub stub = new LocalAthenaStub(100, 50);
+                AthenaAsyncClient client = stub.asyncClient()) {
+            AthenaQueryRunner runner = new AthenaQueryRunner(client, "mydb", OUTPUT, 4, 10,
+                    Duration.ofMinutes(5), Duration.ZERO);
+
+            AtomicLong rows = new AtomicLong();
+            runner.stream("SELECT *  FROM items\n WHERE name = 'a  b'", List.of(), row -> rows.incrementAndGet()).join();
+            // The same query with different whitespace outside the literal and a semicolon.
+            runner.stream("  SELECT * FROM items WHERE name = 'a  b';", List.of(), row -> rows.incrementAndGet())
+                    .join();
+
+            assertEquals(100, rows.get());
+            assertEquals(1, runner.getCacheHits());
+            assertEquals(1, stub.startRequests());
+        }
+    }
+
+    @Test
+    @Tag("IntegrationTest")
+    public void runsStatementsThatChangeDataEveryTime() throws Exception {
+        try (LocalAthenaStub stub = new LocalAthenaStub(100, 5);
+                AthenaAsyncClient client = stub.asyncClient()) {
+            AthenaQueryRunner runner = new AthenaQueryRunner(client, "mydb", OUTPUT, 4, 10,
+                    Duration.ofMinutes(5), Duration.ofMinutes(60));
+
+            runner.stream("INSERT INTO archive SELECT * FROM items", List.of(), row -> { }).join();
+            runner.stream("INSERT INTO archive SELECT * FROM items", List.of(), row -> { }).join();
+
+            assertEquals(2, stub.startRequests());
+            assertEquals(0, stub.reusedQueries());
+            assertEquals(0, runner.getCacheHits());
+        }
+    }
+
+    @Test
+    @Tag("IntegrationTest")
+    public void asksAthenaToReuseResults() throws Exception {
+        try (LocalAthenaStub stub = new LocalAthenaStub(100, 5);
+                AthenaAsyncClient client = stub.asyncClient()) {
+            AthenaQueryRunner runner = new AthenaQueryRunner(client, "mydb", OUTPUT, 4, 10,
+                    Duration.ofMinutes(5), Duration.ofMinutes(60));
+
+            runner.query("SELECT id FROM items", List.of(), row -> row.getLong("id")).join();
+            runner.clearCache();
+            runner.query("SELECT id FROM items", List.of(), row -> row.getLong("id")).join();
+
+            assertEquals(2, stub.startRequests());
+            assertEquals(1, stub.reusedQueries());
+            assertEquals(1, runner.getReusedResults());
+        }
+    }
+
+    private static final class Item {
+        private final long id;
+        private final String name;
+        private final LocalDate created;
+
+        private Item(long id, String name, LocalDate created) {
+            this.id = id;
+            this.name = name;
+            this.created = created;
+        }
+    }
+}
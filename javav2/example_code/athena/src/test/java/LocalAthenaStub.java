@@ -0,0 +1,227 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.athena.AthenaAsyncClient;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A minimal, in-process stand-in for Amazon Athena that accepts
+ * StartQueryExecution, GetQueryExecution and GetQueryResults over the JSON
+ * protocol. Every query runs for the given time and returns the given number
+ * of rows with the columns id (integer), name (varchar) and created (date),
+ * in pages of up to 1,000 rows with a header row first, the way Athena
+ * returns a SELECT result. A query that asks for result reuse and matches a
+ * query that succeeded before finishes at once without running.
+ */
+class LocalAthenaStub implements AutoCloseable {
+    private static final int PAGE_SIZE = 1_000;
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final long runMillis;
+    private final int rowCount;
+    private final Map<String, Execution> executions = new ConcurrentHashMap<>();
+    private final Map<String, String> succeeded = new ConcurrentHashMap<>();
+    private final AtomicLong startRequests = new AtomicLong();
+    private final AtomicLong statusRequests = new AtomicLong();
+    private final AtomicLong resultRequests = new AtomicLong();
+    private final AtomicLong reusedQueries = new AtomicLong();
+    private int maxRunning;
+
+    LocalAthenaStub(long runMillis, int rowCount) throws IOException {
+        this.runMillis = runMillis;
+        this.rowCount = rowCount;
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    AthenaAsyncClient asyncClient() {
+        return AthenaAsyncClient.builder()
+                .region(Region.US_WEST_2)
+                .endpointOverride(URI.create("http://localhost:" + server.getAddress().getPort()))
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("stub", "stub")))
+                .build();
+    }
+
+    long startRequests() {
+        return startRequests.get();
+    }
+
+    long statusRequests() {
+        return statusRequests.get();
+    }
+
+    long resultRequests() {
+        return resultRequests.get();
+    }
+
+    long reusedQueries() {
+        return reusedQueries.get();
+    }
+
+    // The largest number of queries that were running at once.
+    synchronized int maxRunning() {
+        return maxRunning;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String target = exchange.getRequestHeaders().getFirst("X-Amz-Target");
+            JsonNode request = MAPPER.readTree(exchange.getRequestBody().readAllBytes());
+            if ("AmazonAthena.StartQueryExecution".equals(target)) {
+                send(exchange, 200, startQueryExecution(request));
+            } else if ("AmazonAthena.GetQueryExecution".equals(target)) {
+                statusRequests.incrementAndGet();
+                Execution execution = executions.get(request.path("QueryExecutionId").asText());
+                if (execution == null) {
+                    send(exchange, 400, error("InvalidRequestException", "Unknown query execution"));
+                    return;
+                }
+                send(exchange, 200, getQueryExecution(execution));
+            } else if ("AmazonAthena.GetQueryResults".equals(target)) {
+                resultRequests.incrementAndGet();
+                send(exchange, 200, getQueryResults(request));
+            } else {
+                send(exchange, 400, error("InvalidRequestException", "Unsupported target " + target));
+            }
+        }
+    }
+
+    private ObjectNode startQueryExecution(JsonNode request) {
+        startRequests.incrementAndGet();
+        String id = UUID.randomUUID().toString();
+        String signature = request.path("QueryString").asText() + "|" + request.path("ExecutionParameters");
+        boolean reuse = request.path("ResultReuseConfiguration").path("ResultReuseByAgeConfiguration")
+                .path("Enabled").asBoolean(false);
+        long now = System.currentTimeMillis();
+        if (reuse && succeeded.containsKey(signature)) {
+            reusedQueries.incrementAndGet();
+            executions.put(id, new Execution(id, signature, now, true));
+        } else {
+            executions.put(id, new Execution(id, signature, now + runMillis, false));
+            trackRunning(now);
+        }
+        ObjectNode response = MAPPER.createObjectNode();
+        response.put("QueryExecutionId", id);
+        return response;
+    }
+
+    private synchronized void trackRunning(long now) {
+        int running = 0;
+        for (Execution execution : executions.values()) {
+            if (!execution.reused && execution.finishMillis > now) {
+                running++;
+            }
+        }
+        maxRunning = Math.max(maxRunning, running);
+    }
+
+    private ObjectNode getQueryExecution(Execution execution) {
+        boolean done = System.currentTimeMillis() >= execution.finishMillis;
+        if (done) {
+            succeeded.put(execution.signature, execution.id);
+        }
+        ObjectNode queryExecution = MAPPER.createObjectNode();
+        queryExecution.put("QueryExecutionId", execution.id);
+        queryExecution.putObject("Status").put("State", done ? "SUCCEEDED" : "RUNNING");
+        ObjectNode statistics = queryExecution.putObject("Statistics");
+        statistics.put("TotalExecutionTimeInMillis", execution.reused ? 0 : runMillis);
+        statistics.putObject("ResultReuseInformation").put("ReusedPreviousResult", execution.reused);
+        ObjectNode response = MAPPER.createObjectNode();
+        response.set("QueryExecution", queryExecution);
+        return response;
+    }
+
+    private ObjectNode getQueryResults(JsonNode request) {
+        // Row 0 is the header, so a result of rowCount rows has rowCount + 1 rows in all.
+        int first = request.hasNonNull("NextToken") ? Integer.parseInt(request.get("NextToken").asText()) : 0;
+        int last = Math.min(first + PAGE_SIZE, rowCount + 1);
+        ObjectNode response = MAPPER.createObjectNode();
+        ObjectNode resultSet = response.putObject("ResultSet");
+        ArrayNode rows = resultSet.putArray("Rows");
+        for (int i = first; i < last; i++) {
+            if (i == 0) {
+                addRow(rows, "id", "name", "created");
+            } else {
+                addRow(rows, Integer.toString(i), "item-" + i, "2024-01-" + String.format("%02d", i % 28 + 1));
+            }
+        }
+        ArrayNode columns = resultSet.putObject("ResultSetMetadata").putArray("ColumnInfo");
+        addColumn(columns, "id", "integer");
+        addColumn(columns, "name", "varchar");
+        addColumn(columns, "created", "date");
+        if (last < rowCount + 1) {
+            response.put("NextToken", Integer.toString(last));
+        }
+        return response;
+    }
+
+    private static void addRow(ArrayNode rows, String... values) {
+        ArrayNode data = rows.addObject().putArray("Data");
+        for (String value : values) {
+            data.addObject().put("VarCharValue", value);
+        }
+    }
+
+    private static void addColumn(ArrayNode columns, String name, String type) {
+        columns.addObject().put("Name", name).put("Label", name).put("Type", type);
+    }
+
+    private static ObjectNode error(String type, String message) {
+        ObjectNode error = MAPPER.createObjectNode();
+        error.put("__type", type);
+        error.put("Message", message);
+        return error;
+    }
+
+    private static void send(HttpExchange exchange, int status, JsonNode body) throws IOException {
+        byte[] bytes = MAPPER.writeValueAsBytes(body);
+        exchange.getResponseHeaders().add("Content-Type", "application/x-amz-json-1.1");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private static final class Execution {
+        private final String id;
+        private final String signature;
+        private final long finishMillis;
+        private final boolean reused;
+
+        private Execution(String id, String signature, long finishMillis, boolean reused) {
+            this.id = id;
+            this.signature = signature;
+            this.finishMillis = finishMillis;
+            this.reused = reused;
+        }
+    }
+}
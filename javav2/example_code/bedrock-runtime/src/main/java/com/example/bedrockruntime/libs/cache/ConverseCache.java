@@ -0,0 +1,658 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.bedrockruntime.libs.cache;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import software.amazon.awssdk.core.SdkField;
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeAsyncClient;
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClient;
+import software.amazon.awssdk.services.bedrockruntime.model.ContentBlock;
+import software.amazon.awssdk.services.bedrockruntime.model.ConversationRole;
+import software.amazon.awssdk.services.bedrockruntime.model.ConverseMetrics;
+import software.amazon.awssdk.services.bedrockruntime.model.ConverseOutput;
+import software.amazon.awssdk.services.bedrockruntime.model.ConverseRequest;
+import software.amazon.awssdk.services.bedrockruntime.model.ConverseResponse;
+import software.amazon.awssdk.services.bedrockruntime.model.InferenceConfiguration;
+import software.amazon.awssdk.services.bedrockruntime.model.Message;
+import software.amazon.awssdk.services.bedrockruntime.model.SystemContentBlock;
+import software.amazon.awssdk.services.bedrockruntime.model.TokenUsage;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Caches the responses of the Converse API, so a batch job that sends the
+ * same conversation again gets the earlier answer without calling Bedrock.
+ *
+ * A request is looked up by the SHA-256 hash of its model, its inference
+ * configuration, its system prompts and its messages, with the text
+ * normalized so differences in Unicode form and whitespace don't matter.
+ * Requests that set a field the key doesn't cover, such as tools, a
+ * guardrail, prompt variables or additional model fields, and requests with
+ * content other than text are always sent to Bedrock and never cached.
+ * Identical requests that arrive while the first one is in flight wait for
+ * its response instead of sending their own.
+ *
+ * Responses expire after the time to live. The most recently used ones are
+ * kept in memory; when a file is given, every response is also appended to
+ * it as a line of JSON, and responses that are no longer in memory are read
+ * back from it, so the cache outlives the process. Expired and replaced
+ * records are dropped from the file when it is opened.
+ *
+ * With {@link #enableSemanticLookup}, a request that has no exact match can
+ * also be answered with the response to an earlier request that differs only
+ * in the wording of its last message, if the embeddings of the two messages
+ * are similar enough and that response is in memory.
+ *
+ * <pre>{@code
+ * try (var cache = ConverseCache.open(Path.of("converse-cache.jsonl"), 1000, Duration.ofDays(1))) {
+ *     ConverseResponse response = cache.converse(client, request);
+ * }
+ * }</pre>
+ */
+public class ConverseCache implements Closeable {
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    // The request fields the key covers.
+    private static final Set<String> KEYED_FIELDS = Set.of("modelId", "messages", "system", "inferenceConfig");
+
+    private final Duration timeToLive;
+    private final Map<String, Entry> memory;
+    private final FileChannel file;
+    private final Map<String, Location> offsets = new HashMap<>();
+    private long end;
+    private final Map<String, CompletableFuture<ConverseResponse>> inFlight = new ConcurrentHashMap<>();
+
+    private Function<String, float[]> embedder;
+    private double minSimilarity;
+    // The embeddings of the last messages of the responses in memory, by the key of everything else in the
+    // request and then by the key of the request.
+    private final Map<String, Map<String, Embedded>> embeddings = new HashMap<>();
+
+    private final LongAdder memoryHits = new LongAdder();
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder semanticHits = new LongAdder();
+    private final LongAdder sharedRequests = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder uncacheableRequests = new LongAdder();
+    private final LongAdder latencySavedMillis = new LongAdder();
+
+    private ConverseCache(int memoryEntries, Duration timeToLive, FileChannel file) {
+        this.timeToLive = timeToLive;
+        this.memory = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() <= memoryEntries) {
+                    return false;
+                }
+                // The vector goes with the response, so the semantic index is bounded by memoryEntries too.
+                removeEmbedding(eldest.getKey(), eldest.getValue());
+                return true;
+            }
+        });
+        this.file = file;
+    }
+
+    // Returns a cache that keeps up to memoryEntries responses in memory only.
+    public static ConverseCache inMemory(int memoryEntries, Duration timeToLive) {
+        return new ConverseCache(memoryEntries, timeToLive, null);
+    }
+
+    // Returns a cache that keeps up to memoryEntries responses in memory and every response in the file.
+    public static ConverseCache open(Path path, int memoryEntries, Duration timeToLive) throws IOException {
+        compact(path);
+        var channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        var cache = new ConverseCache(memoryEntries, timeToLive, channel);
+        try {
+            cache.index();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return cache;
+    }
+
+    /**
+     * Also answers requests whose last message means the same as that of a
+     * request in memory with otherwise identical settings and history. The
+     * embedder is called on the calling thread with the normalized text of
+     * the last message of each request that has no exact match; two messages
+     * match when the cosine similarity of their embeddings is at least
+     * minSimilarity. Call this before the cache is used.
+     */
+    public ConverseCache enableSemanticLookup(Function<String, float[]> embedder, double minSimilarity) {
+        this.embedder = embedder;
+        this.minSimilarity = minSimilarity;
+        return this;
+    }
+
+    /**
+     * Sends the request with the client, unless the response is cached or an
+     * identical request is in flight. Errors are thrown as the client throws
+     * them and are not cached.
+     */
+    public ConverseResponse converse(BedrockRuntimeClient client, ConverseRequest request) {
+        try {
+            return lookup(request, () -> {
+                try {
+                    return CompletableFuture.completedFuture(client.converse(request));
+                } catch (RuntimeException e) {
+                    return CompletableFuture.failedFuture(e);
+                }
+            }).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    // Sends the request with the async client, unless the response is cached or an identical request is in flight.
+    public CompletableFuture<ConverseResponse> converseAsync(BedrockRuntimeAsyncClient client,
+            ConverseRequest request) {
+        return lookup(request, () -> client.converse(request));
+    }
+
+    private CompletableFuture<ConverseResponse> lookup(ConverseRequest request,
+            Supplier<CompletableFuture<ConverseResponse>> send) {
+        if (!isCacheable(request)) {
+            uncacheableRequests.increment();
+            return send.get();
+        }
+        String context = contextKey(request);
+        String lastText = normalize(text(request.messages().get(request.messages().size() - 1).content()));
+        String key = hash(context + length(lastText) + lastText);
+
+        ConverseResponse cached = get(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        float[] embedding = null;
+        if (embedder != null) {
+            embedding = unit(embedder.apply(lastText));
+            cached = getSimilar(context, embedding);
+            if (cached != null) {
+                return CompletableFuture.completedFuture(cached);
+            }
+        }
+
+        var result = new CompletableFuture<ConverseResponse>();
+        var existing = inFlight.putIfAbsent(key, result);
+        if (existing != null) {
+            sharedRequests.increment();
+            return existing;
+        }
+        misses.increment();
+        float[] lastEmbedding = embedding;
+        long start = System.nanoTime();
+        send.get().whenComplete((response, err) -> {
+            if (err == null && isCacheable(response)) {
+                try {
+                    put(key, context, lastEmbedding, response, (System.nanoTime() - start) / 1_000_000);
+                } catch (IOException e) {
+                    System.err.println("Couldn't write the Converse cache: " + e.getMessage());
+                }
+            }
+            inFlight.remove(key);
+            if (err != null) {
+                result.completeExceptionally(err);
+            } else {
+                result.complete(response);
+            }
+        });
+        return result;
+    }
+
+    private static boolean isCacheable(ConverseRequest request) {
+        if (!request.hasMessages()) {
+            return false;
+        }
+        // Checks every field of the request, so fields added in later SDK versions are not cached by mistake.
+        for (SdkField<?> field : request.sdkFields()) {
+            if (!KEYED_FIELDS.contains(field.memberName()) && isSet(field.getValueOrDefault(request))) {
+                return false;
+            }
+        }
+        for (Message message : request.messages()) {
+            if (!isText(message.content())) {
+                return false;
+            }
+        }
+        for (SystemContentBlock block : request.system()) {
+            if (block.text() == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isSet(Object value) {
+        if (value instanceof Collection<?> collection) {
+            return !collection.isEmpty();
+        }
+        if (value instanceof Map<?, ?> map) {
+            return !map.isEmpty();
+        }
+        return value != null;
+    }
+
+    private static boolean isCacheable(ConverseResponse response) {
+        return response.output() != null && response.output().message() != null
+                && isText(response.output().message().content());
+    }
+
+    private static boolean isText(List<ContentBlock> content) {
+        for (ContentBlock block : content) {
+            if (block.text() == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the part of the key that covers everything but the text of the
+     * last message. Every field is prefixed with its length, so no two
+     * different requests can produce the same string.
+     */
+    private static String contextKey(ConverseRequest request) {
+        var key = new StringBuilder();
+        field(key, request.modelId());
+        InferenceConfiguration config = request.inferenceConfig();
+        if (config != null) {
+            field(key, String.valueOf(config.maxTokens()));
+            field(key, String.valueOf(config.temperature()));
+            field(key, String.valueOf(config.topP()));
+            key.append(config.stopSequences().size()).append('#');
+            config.stopSequences().forEach(sequence -> field(key, sequence));
+        }
+        key.append(request.system().size()).append('#');
+        request.system().forEach(block -> field(key, normalize(block.text())));
+        List<Message> messages = request.messages();
+        key.append(messages.size()).append('#');
+        for (int i = 0; i < messages.size(); i++) {
+            field(key, messages.get(i).roleAsString());
+            if (i < messages.size() - 1) {
+                field(key, normalize(text(messages.get(i).content())));
+            }
+        }
+        return key.toString();
+    }
+
+    private static void field(StringBuilder key, String value) {
+        key.append(length(value)).append(value);
+    }
+
+    private static String length(String value) {
+        return value.length() + ":";
+    }
+
+    private static String text(List<ContentBlock> content) {
+        var text = new StringBuilder();
+        for (ContentBlock block : content) {
+            text.append(block.text()).append('\n');
+        }
+        return text.toString();
+    }
+
+    // Puts the text in Unicode normal form C, trims it and replaces each run of whitespace with a single space.
+    private static String normalize(String text) {
+        return WHITESPACE.matcher(Normalizer.normalize(text, Normalizer.Form.NFC).strip()).replaceAll(" ");
+    }
+
+    private static String hash(String text) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private ConverseResponse get(String key) {
+        long now = System.currentTimeMillis();
+        Entry entry = memory.get(key);
+        if (entry != null && entry.expiresAt() > now) {
+            memoryHits.increment();
+            latencySavedMillis.add(entry.latencyMillis());
+            return entry.response();
+        }
+        if (file != null) {
+            try {
+                entry = read(key, now);
+            } catch (IOException | JSONException e) {
+                System.err.println("Couldn't read the Converse cache: " + e.getMessage());
+                entry = null;
+            }
+            if (entry != null) {
+                diskHits.increment();
+                latencySavedMillis.add(entry.latencyMillis());
+                remember(key, entry);
+                return entry.response();
+            }
+        }
+        return null;
+    }
+
+    private ConverseResponse getSimilar(String context, float[] embedding) {
+        long now = System.currentTimeMillis();
+        var matches = new ArrayList<Embedded>();
+        synchronized (embeddings) {
+            Map<String, Embedded> candidates = embeddings.get(context);
+            if (candidates == null) {
+                return null;
+            }
+            candidates.values().removeIf(candidate -> candidate.expiresAt() <= now);
+            if (candidates.isEmpty()) {
+                embeddings.remove(context);
+                return null;
+            }
+            for (Embedded candidate : candidates.values()) {
+                if (dot(embedding, candidate.vector()) >= minSimilarity) {
+                    matches.add(candidate);
+                }
+            }
+        }
+        matches.sort(Comparator.comparingDouble((Embedded match) -> dot(embedding, match.vector())).reversed());
+        // A response can be evicted after its vector was read, so the next best match is tried instead.
+        for (Embedded match : matches) {
+            Entry entry = memory.get(match.key());
+            if (entry != null && entry.expiresAt() > now) {
+                memoryHits.increment();
+                semanticHits.increment();
+                latencySavedMillis.add(entry.latencyMillis());
+                return entry.response();
+            }
+        }
+        return null;
+    }
+
+    private void put(String key, String context, float[] embedding, ConverseResponse response, long latencyMillis)
+            throws IOException {
+        long expiresAt = System.currentTimeMillis() + timeToLive.toMillis();
+        remember(key, new Entry(response, expiresAt, latencyMillis, embedding == null ? null : context, embedding));
+        if (file != null) {
+            append(key, toJson(key, context, embedding, response, expiresAt, latencyMillis));
+        }
+    }
+
+    /**
+     * Puts the entry in memory and its vector in the semantic index. Eviction
+     * runs under the same lock, so a vector is never added for an entry that
+     * has just been evicted.
+     */
+    private void remember(String key, Entry entry) {
+        synchronized (memory) {
+            if (entry.embedding() != null) {
+                synchronized (embeddings) {
+                    embeddings.computeIfAbsent(entry.context(), ignored -> new HashMap<>())
+                            .put(key, new Embedded(key, entry.embedding(), entry.expiresAt()));
+                }
+            }
+            memory.put(key, entry);
+        }
+    }
+
+    private void removeEmbedding(String key, Entry entry) {
+        if (entry.embedding() == null) {
+            return;
+        }
+        synchronized (embeddings) {
+            Map<String, Embedded> candidates = embeddings.get(entry.context());
+            if (candidates != null) {
+                candidates.remove(key);
+                if (candidates.isEmpty()) {
+                    embeddings.remove(entry.context());
+                }
+            }
+        }
+    }
+
+    private static JSONObject toJson(String key, String context, float[] embedding, ConverseResponse response,
+            long expiresAt, long latencyMillis) {
+        var content = new JSONArray();
+        response.output().message().content().forEach(block -> content.put(block.text()));
+        var record = new JSONObject()
+                .put("key", key)
+                .put("expiresAt", expiresAt)
+                .put("latencyMillis", latencyMillis)
+                .put("content", content)
+                .put("stopReason", response.stopReasonAsString());
+        TokenUsage usage = response.usage();
+        if (usage != null) {
+            record.put("inputTokens", usage.inputTokens()).put("outputTokens", usage.outputTokens());
+        }
+        if (embedding != null) {
+            record.put("context", context).put("embedding", new JSONArray(embedding));
+        }
+        return record;
+    }
+
+    private static ConverseResponse toResponse(JSONObject record) {
+        var content = new ArrayList<ContentBlock>();
+        record.getJSONArray("content").forEach(text -> content.add(ContentBlock.fromText((String) text)));
+        var response = ConverseResponse.builder()
+                .output(ConverseOutput.builder()
+                        .message(Message.builder().role(ConversationRole.ASSISTANT).content(content).build())
+                        .build())
+                .stopReason(record.optString("stopReason", null))
+                .metrics(ConverseMetrics.builder().latencyMs(record.getLong("latencyMillis")).build());
+        if (record.has("outputTokens")) {
+            int inputTokens = record.getInt("inputTokens");
+            int outputTokens = record.getInt("outputTokens");
+            response.usage(TokenUsage.builder()
+                    .inputTokens(inputTokens)
+                    .outputTokens(outputTokens)
+                    .totalTokens(inputTokens + outputTokens)
+                    .build());
+        }
+        return response.build();
+    }
+
+    /**
+     * Rewrites the file without expired and replaced records, and without a
+     * last line that was cut short, for example by a crash.
+     */
+    private static void compact(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        var latest = new LinkedHashMap<String, String>();
+        int lines = 0;
+        long completeBytes = 0;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(path))) {
+            String line;
+            while ((line = readLine(in)) != null) {
+                lines++;
+                completeBytes += line.getBytes(StandardCharsets.UTF_8).length + 1;
+                JSONObject record;
+                try {
+                    record = new JSONObject(line);
+                } catch (JSONException e) {
+                    continue;
+                }
+                String key = record.getString("key");
+                latest.remove(key);
+                if (record.getLong("expiresAt") > now) {
+                    latest.put(key, line);
+                }
+            }
+        }
+        if (latest.size() == lines && completeBytes == Files.size(path)) {
+            return;
+        }
+        Path compacted = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.write(compacted, latest.values(), StandardCharsets.UTF_8);
+        Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Reads a line that ends with a newline, or returns null at the end of the file.
+    private static String readLine(InputStream in) throws IOException {
+        var line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b == -1) {
+                return null;
+            }
+            line.write(b);
+        }
+        return line.toString(StandardCharsets.UTF_8);
+    }
+
+    private void index() throws IOException {
+        // The stream is not closed, as that would close the file.
+        var in = new BufferedInputStream(Channels.newInputStream(file.position(0)));
+        long position = 0;
+        String line;
+        while ((line = readLine(in)) != null) {
+            int length = line.getBytes(StandardCharsets.UTF_8).length;
+            var record = new JSONObject(line);
+            String key = record.getString("key");
+            offsets.put(key, new Location(position, length, record.getLong("expiresAt")));
+            position += length + 1;
+        }
+        end = position;
+    }
+
+    private synchronized Entry read(String key, long now) throws IOException {
+        Location location = offsets.get(key);
+        if (location == null || location.expiresAt() <= now) {
+            return null;
+        }
+        var bytes = ByteBuffer.allocate(location.length());
+        while (bytes.hasRemaining()) {
+            file.read(bytes, location.offset() + bytes.position());
+        }
+        var record = new JSONObject(new String(bytes.array(), StandardCharsets.UTF_8));
+        float[] embedding = null;
+        if (record.has("embedding")) {
+            var vector = record.getJSONArray("embedding");
+            embedding = new float[vector.length()];
+            for (int i = 0; i < embedding.length; i++) {
+                embedding[i] = vector.getFloat(i);
+            }
+        }
+        return new Entry(toResponse(record), location.expiresAt(), record.getLong("latencyMillis"),
+                embedding == null ? null : record.getString("context"), embedding);
+    }
+
+    private synchronized void append(String key, JSONObject record) throws IOException {
+        byte[] line = (record + "\n").getBytes(StandardCharsets.UTF_8);
+        var buffer = ByteBuffer.wrap(line);
+        while (buffer.hasRemaining()) {
+            file.write(buffer, end + buffer.position());
+        }
+        offsets.put(key, new Location(end, line.length - 1, record.getLong("expiresAt")));
+        end += line.length;
+    }
+
+    private static float[] unit(float[] vector) {
+        double norm = Math.sqrt(dot(vector, vector));
+        var unit = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            unit[i] = (float) (vector[i] / norm);
+        }
+        return unit;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        if (a.length != b.length) {
+            return 0;
+        }
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    // The requests answered from memory.
+    public long getMemoryHits() {
+        return memoryHits.sum();
+    }
+
+    // The requests answered from the file.
+    public long getDiskHits() {
+        return diskHits.sum();
+    }
+
+    // The requests answered with the response to a similar request; also counted as memory hits.
+    public long getSemanticHits() {
+        return semanticHits.sum();
+    }
+
+    // The requests that waited for an identical request in flight.
+    public long getSharedRequests() {
+        return sharedRequests.sum();
+    }
+
+    // The cacheable requests that were sent to Bedrock.
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getUncacheableRequests() {
+        return uncacheableRequests.sum();
+    }
+
+    // The time the cached responses took to generate, summed over every hit.
+    public long getLatencySavedMillis() {
+        return latencySavedMillis.sum();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (file != null) {
+            file.force(false);
+            file.close();
+        }
+    }
+
+    // The context and embedding are null unless the entry can be found by semantic lookup.
+    private record Entry(ConverseResponse response, long expiresAt, long latencyMillis, String context,
+            float[] embedding) {
+    }
+
+    private record Location(long offset, int length, long expiresAt) {
+    }
+
+    private record Embedded(String key, float[] vector, long expiresAt) {
+    }
+}
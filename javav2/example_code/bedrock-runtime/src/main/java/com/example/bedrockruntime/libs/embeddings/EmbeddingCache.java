@@ -0,0 +1,192 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.bedrockruntime.libs.embeddings;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caches embeddings by the SHA-256 hash of the model, the settings and the
+ * text, so the same text is embedded only once.
+ *
+ * Recently used embeddings are kept in memory. When a file is given, every
+ * embedding is also appended to it, and embeddings that are no longer in
+ * memory are read back from it, so the cache outlives the process. The file
+ * is a sequence of records, each the 32-byte hash, the number of dimensions
+ * and the floats; opening it reads only the hashes to index the records. A
+ * record that was cut short, for example by a crash, is dropped.
+ */
+public class EmbeddingCache implements Closeable {
+    private static final int HASH_BYTES = 32;
+    private static final int RECORD_HEADER_BYTES = HASH_BYTES + Integer.BYTES;
+
+    private final Map<String, float[]> memory;
+    private final FileChannel file;
+    private final Map<String, Long> offsets = new HashMap<>();
+    private long end;
+
+    private final LongAdder memoryHits = new LongAdder();
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private EmbeddingCache(int memoryEntries, FileChannel file) {
+        this.memory = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, float[]> eldest) {
+                return size() > memoryEntries;
+            }
+        });
+        this.file = file;
+    }
+
+    // Returns a cache that keeps up to memoryEntries embeddings in memory only.
+    public static EmbeddingCache inMemory(int memoryEntries) {
+        return new EmbeddingCache(memoryEntries, null);
+    }
+
+    // Returns a cache that keeps up to memoryEntries embeddings in memory and every embedding in the file.
+    public static EmbeddingCache open(Path path, int memoryEntries) throws IOException {
+        var channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        var cache = new EmbeddingCache(memoryEntries, channel);
+        try {
+            cache.index();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return cache;
+    }
+
+    private void index() throws IOException {
+        long size = file.size();
+        var header = ByteBuffer.allocate(RECORD_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        long position = 0;
+        while (position + RECORD_HEADER_BYTES <= size) {
+            header.clear();
+            file.read(header, position);
+            header.flip();
+            var hash = new byte[HASH_BYTES];
+            header.get(hash);
+            int dimensions = header.getInt();
+            long next = position + RECORD_HEADER_BYTES + (long) dimensions * Float.BYTES;
+            // A header that was not written completely can hold any number of dimensions.
+            if (dimensions <= 0 || next > size) {
+                break;
+            }
+            offsets.put(HexFormat.of().formatHex(hash), position);
+            position = next;
+        }
+        if (position < size) {
+            file.truncate(position);
+        }
+        end = position;
+    }
+
+    /**
+     * Returns the key of an embedding: the hex SHA-256 hash of the model, the
+     * settings that change the result, and the text.
+     */
+    public static String key(String modelId, int dimensions, boolean normalize, String text) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            digest.update((modelId + '\n' + dimensions + '\n' + normalize + '\n').getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    // Returns the cached embedding, or null if there is none.
+    public float[] get(String key) throws IOException {
+        float[] vector = memory.get(key);
+        if (vector != null) {
+            memoryHits.increment();
+            return vector;
+        }
+        if (file != null) {
+            vector = read(key);
+            if (vector != null) {
+                diskHits.increment();
+                memory.put(key, vector);
+                return vector;
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    private synchronized float[] read(String key) throws IOException {
+        Long offset = offsets.get(key);
+        if (offset == null) {
+            return null;
+        }
+        var dimensions = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        file.read(dimensions, offset + HASH_BYTES);
+        var vector = new float[dimensions.flip().getInt()];
+        var floats = ByteBuffer.allocate(vector.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        while (floats.hasRemaining()) {
+            file.read(floats, offset + RECORD_HEADER_BYTES + floats.position());
+        }
+        floats.flip().asFloatBuffer().get(vector);
+        return vector;
+    }
+
+    public void put(String key, float[] vector) throws IOException {
+        memory.put(key, vector);
+        if (file != null) {
+            append(key, vector);
+        }
+    }
+
+    private synchronized void append(String key, float[] vector) throws IOException {
+        if (offsets.containsKey(key)) {
+            return;
+        }
+        var record = ByteBuffer.allocate(RECORD_HEADER_BYTES + vector.length * Float.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        record.put(HexFormat.of().parseHex(key)).putInt(vector.length);
+        record.asFloatBuffer().put(vector);
+        record.clear();
+        while (record.hasRemaining()) {
+            file.write(record, end + record.position());
+        }
+        offsets.put(key, end);
+        end += record.capacity();
+    }
+
+    public long getMemoryHits() {
+        return memoryHits.sum();
+    }
+
+    public long getDiskHits() {
+        return diskHits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (file != null) {
+            file.force(false);
+            file.close();
+        }
+    }
+}
@@ -0,0 +1,319 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.bedrockruntime.libs.embeddings;
+
+import org.json.JSONObject;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeAsyncClient;
+import software.amazon.awssdk.services.bedrockruntime.model.ThrottlingException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Embeds a stream of documents with Amazon Titan Text Embeddings V2 on a
+ * {@link BedrockRuntimeAsyncClient}.
+ *
+ * Each document is split into chunks of up to {@code chunkChars} characters
+ * that overlap by {@code overlapChars}, broken at whitespace where possible.
+ * Chunks whose text was embedded before are taken from the
+ * {@link EmbeddingCache}, and a chunk that is already being embedded waits for
+ * that request instead of sending another one. The others are sent
+ * concurrently. The number of requests in flight grows by about one for each
+ * round of successful requests and halves when Bedrock throttles, so the
+ * pipeline settles just under the account's quota. Throttled requests are
+ * retried with backoff.
+ *
+ * Create the client with SDK retries turned off, so throttling reaches the
+ * pipeline and lowers the limit instead of being retried by the SDK.
+ */
+public class EmbeddingPipeline {
+    private static final int MAX_ATTEMPTS = 6;
+    private static final long BASE_BACKOFF_MILLIS = 100;
+
+    private final BedrockRuntimeAsyncClient client;
+    private final String modelId;
+    private final int dimensions;
+    private final int chunkChars;
+    private final int overlapChars;
+    private final EmbeddingCache cache;
+    private final ConcurrencyLimit limit;
+    private final Map<String, CompletableFuture<float[]>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder throttledRequests = new LongAdder();
+    private final LongAdder cachedChunks = new LongAdder();
+    private final LongAdder sharedChunks = new LongAdder();
+    private final LongAdder failedChunks = new LongAdder();
+
+    /**
+     * @param modelId        the model, for example "amazon.titan-embed-text-v2:0"
+     * @param dimensions     the number of dimensions of the embeddings: 256, 512 or 1024
+     * @param chunkChars     the maximum number of characters in a chunk
+     * @param overlapChars   the number of characters a chunk repeats from the end of the one before
+     * @param maxConcurrency the most requests that are sent at a time
+     */
+    public EmbeddingPipeline(BedrockRuntimeAsyncClient client, String modelId, int dimensions, int chunkChars,
+            int overlapChars, EmbeddingCache cache, int maxConcurrency) {
+        if (overlapChars >= chunkChars) {
+            throw new IllegalArgumentException("overlapChars must be smaller than chunkChars");
+        }
+        this.client = client;
+        this.modelId = modelId;
+        this.dimensions = dimensions;
+        this.chunkChars = chunkChars;
+        this.overlapChars = overlapChars;
+        this.cache = cache;
+        this.limit = new ConcurrencyLimit(maxConcurrency);
+    }
+
+    /**
+     * Embeds every chunk of the documents and passes them to the sink, one at
+     * a time but not in order. Reads the next document only when there is
+     * room for more requests, and returns when every chunk has been passed on
+     * or has failed.
+     */
+    public void embed(Stream<Document> documents, Consumer<EmbeddedChunk> sink) throws InterruptedException {
+        Consumer<EmbeddedChunk> serialSink = embedded -> {
+            synchronized (sink) {
+                sink.accept(embedded);
+            }
+        };
+        var chunks = documents.flatMap(document -> chunk(document, chunkChars, overlapChars).stream()).iterator();
+        while (chunks.hasNext()) {
+            submit(chunks.next(), serialSink);
+        }
+        limit.awaitIdle();
+    }
+
+    private void submit(Chunk chunk, Consumer<EmbeddedChunk> sink) throws InterruptedException {
+        String key = EmbeddingCache.key(modelId, dimensions, true, chunk.text());
+        float[] cached;
+        try {
+            cached = cache.get(key);
+        } catch (IOException e) {
+            System.err.println("Couldn't read the embedding cache: " + e.getMessage());
+            cached = null;
+        }
+        if (cached != null) {
+            cachedChunks.increment();
+            sink.accept(new EmbeddedChunk(chunk, cached));
+            return;
+        }
+
+        var result = new CompletableFuture<float[]>();
+        var existing = inFlight.putIfAbsent(key, result);
+        if (existing != null) {
+            sharedChunks.increment();
+            existing.whenComplete((vector, err) -> {
+                if (err != null) {
+                    failedChunks.increment();
+                    System.err.printf("Couldn't embed chunk %d of %s: %s%n", chunk.index(), chunk.documentId(),
+                            unwrap(err).getMessage());
+                    return;
+                }
+                sink.accept(new EmbeddedChunk(chunk, vector));
+            });
+            return;
+        }
+        limit.acquire();
+        invoke(chunk.text(), 1).whenComplete((vector, err) -> {
+            try {
+                if (err != null) {
+                    failedChunks.increment();
+                    System.err.printf("Couldn't embed chunk %d of %s: %s%n", chunk.index(), chunk.documentId(),
+                            unwrap(err).getMessage());
+                    inFlight.remove(key);
+                    result.completeExceptionally(err);
+                    return;
+                }
+                try {
+                    cache.put(key, vector);
+                } catch (IOException e) {
+                    System.err.println("Couldn't write the embedding cache: " + e.getMessage());
+                }
+                inFlight.remove(key);
+                // Also passes on the chunks that shared the request.
+                result.complete(vector);
+                sink.accept(new EmbeddedChunk(chunk, vector));
+            } finally {
+                // Released last, so embed() returns only after the sink has every chunk.
+                limit.release();
+            }
+        });
+    }
+
+    private CompletableFuture<float[]> invoke(String text, int attempt) {
+        var nativeRequest = new JSONObject()
+                .put("inputText", text)
+                .put("dimensions", dimensions)
+                .put("normalize", true)
+                .toString();
+        requests.increment();
+        return client.invokeModel(request -> request
+                        .modelId(modelId)
+                        .contentType("application/json")
+                        .body(SdkBytes.fromUtf8String(nativeRequest)))
+                .thenApply(response -> {
+                    limit.onSuccess();
+                    var embedding = new JSONObject(response.body().asUtf8String()).getJSONArray("embedding");
+                    var vector = new float[embedding.length()];
+                    for (int i = 0; i < vector.length; i++) {
+                        vector[i] = embedding.getFloat(i);
+                    }
+                    return vector;
+                })
+                .exceptionallyCompose(err -> {
+                    if (!(unwrap(err) instanceof ThrottlingException) || attempt >= MAX_ATTEMPTS) {
+                        return CompletableFuture.failedFuture(unwrap(err));
+                    }
+                    throttledRequests.increment();
+                    limit.onThrottle();
+                    long ceiling = BASE_BACKOFF_MILLIS << attempt;
+                    var delay = CompletableFuture.delayedExecutor(
+                            ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1), TimeUnit.MILLISECONDS);
+                    return CompletableFuture.supplyAsync(() -> null, delay)
+                            .thenCompose(ignored -> invoke(text, attempt + 1));
+                });
+    }
+
+    private static Throwable unwrap(Throwable err) {
+        return err instanceof CompletionException && err.getCause() != null ? err.getCause() : err;
+    }
+
+    /**
+     * Splits the text of the document into chunks of up to maxChars
+     * characters, each starting overlapChars before the end of the one before.
+     * A chunk ends at the last whitespace that leaves it more than half full,
+     * so words are not cut in two.
+     */
+    public static List<Chunk> chunk(Document document, int maxChars, int overlapChars) {
+        String text = document.text();
+        var chunks = new ArrayList<Chunk>();
+        int start = 0;
+        while (start < text.length()) {
+            int end = Math.min(text.length(), start + maxChars);
+            if (end < text.length()) {
+                int space = end;
+                while (space > start + maxChars / 2 && !Character.isWhitespace(text.charAt(space))) {
+                    space--;
+                }
+                if (space > start + maxChars / 2) {
+                    end = space;
+                }
+            }
+            String chunk = text.substring(start, end).strip();
+            if (!chunk.isEmpty()) {
+                chunks.add(new Chunk(document.id(), chunks.size(), chunk));
+            }
+            if (end == text.length()) {
+                break;
+            }
+            start = Math.max(start + 1, end - overlapChars);
+        }
+        return chunks;
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getThrottledRequests() {
+        return throttledRequests.sum();
+    }
+
+    // The chunks that were taken from the cache.
+    public long getCachedChunks() {
+        return cachedChunks.sum();
+    }
+
+    // The chunks that shared the request of an identical chunk in flight.
+    public long getSharedChunks() {
+        return sharedChunks.sum();
+    }
+
+    public long getFailedChunks() {
+        return failedChunks.sum();
+    }
+
+    // The current limit on requests in flight.
+    public int getConcurrencyLimit() {
+        return limit.current();
+    }
+
+    /**
+     * A document to embed.
+     */
+    public record Document(String id, String text) {
+    }
+
+    /**
+     * A part of a document that is embedded on its own.
+     */
+    public record Chunk(String documentId, int index, String text) {
+    }
+
+    /**
+     * A chunk and its embedding.
+     */
+    public record EmbeddedChunk(Chunk chunk, float[] vector) {
+    }
+
+    /**
+     * Limits the requests in flight with additive increase and
+     * multiplicative decrease, the way TCP finds the capacity of a link.
+     */
+    private static final class ConcurrencyLimit {
+        private final int max;
+        private double limit;
+        private int inFlight;
+
+        private ConcurrencyLimit(int max) {
+            this.max = max;
+            this.limit = Math.max(1, max / 4.0);
+        }
+
+        private synchronized void acquire() throws InterruptedException {
+            while (inFlight >= (int) limit) {
+                wait();
+            }
+            inFlight++;
+        }
+
+        private synchronized void release() {
+            inFlight--;
+            notifyAll();
+        }
+
+        // Grows the limit by one after about limit successful requests.
+        private synchronized void onSuccess() {
+            limit = Math.min(max, limit + 1 / limit);
+            notifyAll();
+        }
+
+        private synchronized void onThrottle() {
+            limit = Math.max(1, limit / 2);
+        }
+
+        private synchronized void awaitIdle() throws InterruptedException {
+            while (inFlight > 0) {
+                wait();
+            }
+        }
+
+        private synchronized int current() {
+            return (int) limit;
+        }
+    }
+}
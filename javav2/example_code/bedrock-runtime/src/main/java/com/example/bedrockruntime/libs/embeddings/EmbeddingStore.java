@@ -0,0 +1,285 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.bedrockruntime.libs.embeddings;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Stores embeddings, such as the ones Amazon Titan Text Embeddings returns, as
+ * 32-bit floats in a memory-mapped file, and finds the ones most similar to a
+ * query.
+ *
+ * Vectors are normalized when they are added, so the cosine similarity of two
+ * vectors is their dot product. The file holds a small header followed by the
+ * vectors, and is mapped in segments of {@link #SEGMENT_VECTORS} vectors, so a
+ * store can hold millions of vectors without copying them onto the Java heap.
+ * The first segment holds the number of vectors the store was created for, so
+ * a small store does not take up a full segment. Opening an existing store
+ * only maps the file, which takes milliseconds whatever its size.
+ *
+ * {@link #search} compares the query with every vector, one segment per
+ * thread. For large stores, use an {@link HnswIndex} over the store instead.
+ */
+public class EmbeddingStore implements Closeable {
+    public static final int SEGMENT_VECTORS = 1 << 16;
+    // The size of the first segment when the store is created without an expected count.
+    public static final int DEFAULT_FIRST_SEGMENT_VECTORS = 1 << 10;
+    private static final int MAGIC = 0x56454353; // "VECS"
+    private static final int HEADER_BYTES = 64;
+
+    private final FileChannel channel;
+    private final int dimensions;
+    private final int firstSegmentVectors;
+    private final MappedByteBuffer header;
+    // Copied on write, because searches read it while a vector is added.
+    private final List<FloatBuffer> segments = new CopyOnWriteArrayList<>();
+    private final List<MappedByteBuffer> mappings = new ArrayList<>();
+    private volatile int size;
+
+    private EmbeddingStore(FileChannel channel, int dimensions, int firstSegmentVectors) throws IOException {
+        this.channel = channel;
+        this.dimensions = dimensions;
+        this.firstSegmentVectors = firstSegmentVectors;
+        this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Opens the store in the file, or creates it if the file doesn't exist.
+     *
+     * @param dimensions the length of the vectors, for example 256, 512 or 1024 for Titan Text Embeddings V2
+     */
+    public static EmbeddingStore open(Path file, int dimensions) throws IOException {
+        return open(file, dimensions, DEFAULT_FIRST_SEGMENT_VECTORS);
+    }
+
+    /**
+     * Opens the store in the file, or creates it with room for the expected
+     * number of vectors in its first segment. The store still grows past the
+     * expected count, one segment of {@link #SEGMENT_VECTORS} at a time.
+     */
+    public static EmbeddingStore open(Path file, int dimensions, int expectedVectors) throws IOException {
+        var channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            boolean created = channel.size() == 0;
+            int firstSegmentVectors = Math.max(1, Math.min(SEGMENT_VECTORS, expectedVectors));
+            if (!created) {
+                var existing = ByteBuffer.allocate(20).order(ByteOrder.LITTLE_ENDIAN);
+                channel.read(existing, 0);
+                existing.flip();
+                if (existing.getInt() != MAGIC) {
+                    throw new IOException(file + " is not an embedding store");
+                }
+                existing.getInt(); // The format version.
+                int storedDimensions = existing.getInt();
+                if (storedDimensions != dimensions) {
+                    throw new IOException(file + " holds vectors of " + storedDimensions + " dimensions, not "
+                            + dimensions);
+                }
+                existing.getInt(); // The count, read below.
+                int storedFirstSegment = existing.getInt();
+                // Stores written before the first segment was sized have full segments only.
+                firstSegmentVectors = storedFirstSegment == 0 ? SEGMENT_VECTORS : storedFirstSegment;
+            }
+            var store = new EmbeddingStore(channel, dimensions, firstSegmentVectors);
+            if (created) {
+                store.header.putInt(0, MAGIC).putInt(4, 1).putInt(8, dimensions).putInt(12, 0)
+                        .putInt(16, firstSegmentVectors);
+            }
+            int count = store.header.getInt(12);
+            int segmentCount = store.segmentCount(count);
+            for (int i = 0; i < segmentCount; i++) {
+                store.mapSegment();
+            }
+            store.size = count;
+            return store;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Adds a copy of the vector, normalized to unit length. Returns its id,
+     * which is the number of vectors added before it.
+     */
+    public synchronized int add(float[] vector) throws IOException {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException("Expected " + dimensions + " dimensions but got " + vector.length);
+        }
+        int id = size;
+        int segment = segmentOf(id);
+        if (segment == segments.size()) {
+            mapSegment();
+        }
+        segments.get(segment).put((id - segmentStart(segment)) * dimensions, normalize(vector));
+        header.putInt(12, id + 1);
+        // Publishes the vector to searches that read the size.
+        size = id + 1;
+        return id;
+    }
+
+    private void mapSegment() throws IOException {
+        int segment = segments.size();
+        long vectorBytes = (long) dimensions * Float.BYTES;
+        // Mapping past the end of the file extends it; the unused part stays sparse on most file systems.
+        var mapping = channel.map(FileChannel.MapMode.READ_WRITE,
+                HEADER_BYTES + segmentStart(segment) * vectorBytes, segmentVectors(segment) * vectorBytes);
+        mappings.add(mapping);
+        segments.add(mapping.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer());
+    }
+
+    private int segmentOf(int id) {
+        return id < firstSegmentVectors ? 0 : (id - firstSegmentVectors) / SEGMENT_VECTORS + 1;
+    }
+
+    // The id of the first vector in the segment.
+    private int segmentStart(int segment) {
+        return segment == 0 ? 0 : firstSegmentVectors + (segment - 1) * SEGMENT_VECTORS;
+    }
+
+    private int segmentVectors(int segment) {
+        return segment == 0 ? firstSegmentVectors : SEGMENT_VECTORS;
+    }
+
+    private int segmentCount(int count) {
+        return count == 0 ? 0 : segmentOf(count - 1) + 1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int dimensions() {
+        return dimensions;
+    }
+
+    // Returns a copy of the normalized vector.
+    public float[] get(int id) {
+        var vector = new float[dimensions];
+        read(id, vector);
+        return vector;
+    }
+
+    // Copies the normalized vector into the array, which is reused by callers that read many vectors.
+    void read(int id, float[] into) {
+        int segment = segmentOf(id);
+        segments.get(segment).get((id - segmentStart(segment)) * dimensions, into);
+    }
+
+    /**
+     * Returns the k vectors most similar to the query, most similar first,
+     * by comparing the query with every vector.
+     */
+    public List<Match> search(float[] query, int k) {
+        float[] normalized = normalize(query);
+        int count = size;
+        List<PriorityQueue<Match>> perSegment = IntStream.range(0, segmentCount(count)).parallel()
+                .mapToObj(segment -> searchSegment(normalized, k, segment, count))
+                .collect(Collectors.toList());
+        var best = new PriorityQueue<Match>(Comparator.comparingDouble(Match::score));
+        perSegment.forEach(matches -> matches.forEach(match -> offer(best, match, k)));
+        return sorted(best);
+    }
+
+    private PriorityQueue<Match> searchSegment(float[] query, int k, int segment, int count) {
+        var best = new PriorityQueue<Match>(Comparator.comparingDouble(Match::score));
+        var vector = new float[dimensions];
+        int first = segmentStart(segment);
+        int last = Math.min(count, first + segmentVectors(segment));
+        for (int id = first; id < last; id++) {
+            read(id, vector);
+            float score = dot(query, vector);
+            if (best.size() < k || score > best.peek().score()) {
+                offer(best, new Match(id, score), k);
+            }
+        }
+        return best;
+    }
+
+    // Adds the match to a heap of the k best matches, least similar first.
+    static void offer(PriorityQueue<Match> best, Match match, int k) {
+        if (best.size() < k) {
+            best.add(match);
+        } else if (match.score() > best.peek().score()) {
+            best.poll();
+            best.add(match);
+        }
+    }
+
+    // Empties the heap into a list, most similar first.
+    static List<Match> sorted(PriorityQueue<Match> best) {
+        var matches = new ArrayList<Match>(best.size());
+        while (!best.isEmpty()) {
+            matches.add(best.poll());
+        }
+        Collections.reverse(matches);
+        return matches;
+    }
+
+    /**
+     * Returns the dot product of two vectors of the same length. Four running
+     * sums let the JIT overlap the multiplications instead of waiting for each
+     * addition in turn.
+     */
+    static float dot(float[] a, float[] b) {
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        int bound = a.length & ~3;
+        for (; i < bound; i += 4) {
+            s0 += a[i] * b[i];
+            s1 += a[i + 1] * b[i + 1];
+            s2 += a[i + 2] * b[i + 2];
+            s3 += a[i + 3] * b[i + 3];
+        }
+        for (; i < a.length; i++) {
+            s0 += a[i] * b[i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    // Returns a copy of the vector scaled to unit length.
+    static float[] normalize(float[] vector) {
+        float norm = (float) Math.sqrt(dot(vector, vector));
+        var normalized = new float[vector.length];
+        if (norm == 0) {
+            return normalized;
+        }
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = vector[i] / norm;
+        }
+        return normalized;
+    }
+
+    // Writes the vectors and the header to the storage device.
+    public synchronized void force() {
+        for (MappedByteBuffer mapping : mappings) {
+            mapping.force();
+        }
+        header.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        force();
+        channel.close();
+    }
+}
@@ -0,0 +1,466 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.bedrockruntime.libs.embeddings;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An approximate nearest neighbor index over the vectors of an
+ * {@link EmbeddingStore}, using a Hierarchical Navigable Small World (HNSW)
+ * graph.
+ *
+ * Each vector is linked to {@code m} similar vectors on each layer it is on
+ * when it is added. Later vectors link back to it, up to {@code m} links on
+ * the upper layers and {@code 2m} on the bottom layer, which holds every
+ * vector.
+ * A search starts at the top layer, moves greedily towards the query, and
+ * explores the {@code ef} best candidates on the bottom layer, so it reads a
+ * few thousand vectors instead of all of them. Larger values of {@code m},
+ * {@code efConstruction} and {@code ef} find more of the true nearest
+ * neighbors at the cost of memory and time.
+ *
+ * The graph is kept in int arrays, {@code 4 * (2m + 1)} bytes per vector,
+ * while the vectors stay in the store's mapped file. Searches run in
+ * parallel; {@link #update()} indexes the vectors added to the store since the
+ * last update and blocks searches while it runs.
+ */
+public class HnswIndex {
+    private static final int MAGIC = 0x57534E48; // "HNSW"
+    private static final int MAX_LEVEL = 16;
+    private static final Comparator<Match> BY_SCORE = Comparator.comparingDouble(Match::score);
+
+    private final EmbeddingStore store;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ThreadLocal<Scratch> scratch;
+    // Seeded, so the same vectors build the same graph.
+    private final Random random = new Random(100);
+
+    private int count;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+    private byte[] levels = new byte[0];
+    // The bottom layer: for each vector, the number of links followed by the links.
+    private int[] links0 = new int[0];
+    // The upper layers: for each vector, one array per layer above the bottom, or null.
+    private int[][][] upperLinks = new int[0][][];
+
+    /**
+     * @param m              the number of links per vector on the upper layers, for example 16
+     * @param efConstruction the number of candidates considered when a vector is linked, for example 200
+     */
+    public HnswIndex(EmbeddingStore store, int m, int efConstruction) {
+        if (m < 2 || efConstruction < 1) {
+            throw new IllegalArgumentException("m must be at least 2 and efConstruction positive");
+        }
+        this.store = store;
+        this.m = m;
+        this.maxM0 = 2 * m;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1 / Math.log(m);
+        this.scratch = ThreadLocal.withInitial(() -> new Scratch(store.dimensions(), maxM0));
+    }
+
+    // Indexes the vectors added to the store since the last update.
+    public void update() {
+        lock.writeLock().lock();
+        try {
+            int size = store.size();
+            ensureCapacity(size);
+            while (count < size) {
+                insert(count);
+                count++;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns about the k vectors most similar to the query, most similar
+     * first. Vectors added to the store since the last update are not found.
+     *
+     * @param ef the number of candidates explored, at least k; higher values find more of the true neighbors
+     */
+    public List<Match> search(float[] query, int k, int ef) {
+        float[] normalized = EmbeddingStore.normalize(query);
+        lock.readLock().lock();
+        try {
+            if (entryPoint < 0) {
+                return List.of();
+            }
+            Scratch work = scratch.get();
+            Match entry = new Match(entryPoint, similarity(normalized, entryPoint, work));
+            for (int level = maxLevel; level > 0; level--) {
+                entry = greedy(normalized, entry, level, work);
+            }
+            PriorityQueue<Match> found = searchLayer(normalized, List.of(entry), Math.max(ef, k), 0, work);
+            while (found.size() > k) {
+                found.poll();
+            }
+            return EmbeddingStore.sorted(found);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void insert(int id) {
+        Scratch work = scratch.get();
+        int level = randomLevel();
+        levels[id] = (byte) level;
+        links0[id * (maxM0 + 1)] = 0;
+        upperLinks[id] = level == 0 ? null : new int[level][m + 1];
+        if (entryPoint < 0) {
+            entryPoint = id;
+            maxLevel = level;
+            return;
+        }
+        float[] vector = store.get(id);
+        Match entry = new Match(entryPoint, similarity(vector, entryPoint, work));
+        for (int l = maxLevel; l > level; l--) {
+            entry = greedy(vector, entry, l, work);
+        }
+        List<Match> entries = List.of(entry);
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            PriorityQueue<Match> found = searchLayer(vector, entries, efConstruction, l, work);
+            List<Match> candidates = EmbeddingStore.sorted(found);
+            // A new vector gets m links on every layer; the bottom layer leaves room for links from later vectors.
+            List<Match> neighbors = selectNeighbors(candidates, m);
+            int[] links = links(id, l);
+            int start = offset(l, id);
+            for (Match neighbor : neighbors) {
+                links[start + links[start - 1]++] = neighbor.id();
+            }
+            for (Match neighbor : neighbors) {
+                link(neighbor.id(), id, neighbor.score(), l);
+            }
+            entries = candidates;
+        }
+        if (level > maxLevel) {
+            entryPoint = id;
+            maxLevel = level;
+        }
+    }
+
+    // Adds a link from the vector to the new vector, keeping the best links if the vector has too many.
+    private void link(int from, int to, float score, int level) {
+        int[] links = links(from, level);
+        int start = offset(level, from);
+        int max = level == 0 ? maxM0 : m;
+        int size = links[start - 1];
+        if (size < max) {
+            links[start + size] = to;
+            links[start - 1] = size + 1;
+            return;
+        }
+        float[] base = store.get(from);
+        List<Match> candidates = new ArrayList<>(size + 1);
+        candidates.add(new Match(to, score));
+        Scratch work = scratch.get();
+        for (int i = 0; i < size; i++) {
+            candidates.add(new Match(links[start + i], similarity(base, links[start + i], work)));
+        }
+        candidates.sort(BY_SCORE.reversed());
+        List<Match> kept = selectNeighbors(candidates, max);
+        for (int i = 0; i < kept.size(); i++) {
+            links[start + i] = kept.get(i).id();
+        }
+        links[start - 1] = kept.size();
+    }
+
+    /**
+     * Picks up to max neighbors from candidates sorted most similar first,
+     * preferring ones that are closer to the vector than to a neighbor
+     * already picked, so the links point in different directions. The
+     * remaining places are filled with the best of the others.
+     */
+    private List<Match> selectNeighbors(List<Match> candidates, int max) {
+        if (candidates.size() <= max) {
+            return candidates;
+        }
+        Scratch work = scratch.get();
+        List<Match> selected = new ArrayList<>(max);
+        List<Match> pruned = new ArrayList<>();
+        for (Match candidate : candidates) {
+            if (selected.size() >= max) {
+                break;
+            }
+            float[] vector = work.selected[selected.size()];
+            store.read(candidate.id(), vector);
+            boolean diverse = true;
+            for (int i = 0; i < selected.size(); i++) {
+                if (EmbeddingStore.dot(vector, work.selected[i]) > candidate.score()) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected.add(candidate);
+            } else {
+                pruned.add(candidate);
+            }
+        }
+        for (int i = 0; i < pruned.size() && selected.size() < max; i++) {
+            selected.add(pruned.get(i));
+        }
+        return selected;
+    }
+
+    // Moves to more similar neighbors on the layer until there are none.
+    private Match greedy(float[] query, Match entry, int level, Scratch work) {
+        Match best = entry;
+        boolean moved = true;
+        while (moved) {
+            moved = false;
+            int[] links = links(best.id(), level);
+            int start = offset(level, best.id());
+            for (int i = 0; i < links[start - 1]; i++) {
+                int neighbor = links[start + i];
+                float score = similarity(query, neighbor, work);
+                if (score > best.score()) {
+                    best = new Match(neighbor, score);
+                    moved = true;
+                }
+            }
+        }
+        return best;
+    }
+
+    // Returns the ef most similar vectors found on the layer, least similar first.
+    private PriorityQueue<Match> searchLayer(float[] query, List<Match> entries, int ef, int level, Scratch work) {
+        work.startVisit(count + 1);
+        PriorityQueue<Match> candidates = new PriorityQueue<>(BY_SCORE.reversed());
+        PriorityQueue<Match> found = new PriorityQueue<>(BY_SCORE);
+        for (Match entry : entries) {
+            if (work.visit(entry.id())) {
+                candidates.add(entry);
+                EmbeddingStore.offer(found, entry, ef);
+            }
+        }
+        while (!candidates.isEmpty()) {
+            Match candidate = candidates.poll();
+            if (found.size() >= ef && candidate.score() < found.peek().score()) {
+                break;
+            }
+            int[] links = links(candidate.id(), level);
+            int start = offset(level, candidate.id());
+            for (int i = 0; i < links[start - 1]; i++) {
+                int neighbor = links[start + i];
+                if (!work.visit(neighbor)) {
+                    continue;
+                }
+                float score = similarity(query, neighbor, work);
+                if (found.size() < ef || score > found.peek().score()) {
+                    Match match = new Match(neighbor, score);
+                    candidates.add(match);
+                    EmbeddingStore.offer(found, match, ef);
+                }
+            }
+        }
+        return found;
+    }
+
+    // Returns the array that holds the vector's links on the layer; they start at offset(level, id).
+    private int[] links(int id, int level) {
+        return level == 0 ? links0 : upperLinks[id][level - 1];
+    }
+
+    // Returns where the vector's links start in links(id, level); the count is just before them.
+    private int offset(int level, int id) {
+        return level == 0 ? id * (maxM0 + 1) + 1 : 1;
+    }
+
+    private float similarity(float[] query, int id, Scratch work) {
+        store.read(id, work.vector);
+        return EmbeddingStore.dot(query, work.vector);
+    }
+
+    private int randomLevel() {
+        double uniform = 1 - random.nextDouble();
+        return Math.min(MAX_LEVEL, (int) (-Math.log(uniform) * levelMultiplier));
+    }
+
+    private void ensureCapacity(int size) {
+        if (levels.length >= size) {
+            return;
+        }
+        int capacity = Math.max(size, levels.length + levels.length / 2);
+        levels = Arrays.copyOf(levels, capacity);
+        links0 = Arrays.copyOf(links0, capacity * (maxM0 + 1));
+        upperLinks = Arrays.copyOf(upperLinks, capacity);
+    }
+
+    // Returns the bytes the graph takes on the heap, without the store's vectors.
+    public long memoryBytes() {
+        lock.readLock().lock();
+        try {
+            long bytes = levels.length + (long) links0.length * Integer.BYTES
+                    + (long) upperLinks.length * 8;
+            for (int i = 0; i < count; i++) {
+                if (upperLinks[i] != null) {
+                    bytes += (long) upperLinks[i].length * ((m + 1) * Integer.BYTES + 16);
+                }
+            }
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the graph to the file. The vectors are not written; they are in
+     * the store's file.
+     */
+    public void save(Path file) throws IOException {
+        lock.readLock().lock();
+        try (var channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            var out = new IntWriter(channel);
+            out.write(MAGIC);
+            out.write(m);
+            out.write(count);
+            out.write(entryPoint);
+            out.write(maxLevel);
+            for (int i = 0; i < count; i++) {
+                out.write(levels[i]);
+            }
+            out.write(links0, 0, count * (maxM0 + 1));
+            for (int i = 0; i < count; i++) {
+                for (int level = 0; level < levels[i]; level++) {
+                    out.write(upperLinks[i][level], 0, m + 1);
+                }
+            }
+            out.flush();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reads a graph written by {@link #save} for the vectors of the store. The
+     * file is mapped and copied into the index in bulk.
+     */
+    public static HnswIndex load(EmbeddingStore store, Path file, int efConstruction) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            IntBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                    .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            if (in.get() != MAGIC) {
+                throw new IOException(file + " is not an HNSW index");
+            }
+            var index = new HnswIndex(store, in.get(), efConstruction);
+            int count = in.get();
+            if (count > store.size()) {
+                throw new IOException(file + " indexes " + count + " vectors but the store has " + store.size());
+            }
+            index.entryPoint = in.get();
+            index.maxLevel = in.get();
+            index.ensureCapacity(count);
+            for (int i = 0; i < count; i++) {
+                index.levels[i] = (byte) in.get();
+            }
+            in.get(index.links0, 0, count * (index.maxM0 + 1));
+            for (int i = 0; i < count; i++) {
+                if (index.levels[i] > 0) {
+                    index.upperLinks[i] = new int[index.levels[i]][index.m + 1];
+                    for (int level = 0; level < index.levels[i]; level++) {
+                        in.get(index.upperLinks[i][level]);
+                    }
+                }
+            }
+            index.count = count;
+            return index;
+        }
+    }
+
+    // The buffers one thread reuses across searches.
+    private static final class Scratch {
+        private final float[] vector;
+        // The vectors of the neighbors selected so far.
+        private final float[][] selected;
+        private int[] marks = new int[0];
+        private int epoch;
+
+        private Scratch(int dimensions, int maxNeighbors) {
+            this.vector = new float[dimensions];
+            this.selected = new float[maxNeighbors][dimensions];
+        }
+
+        // Forgets the vectors visited by the last search.
+        private void startVisit(int size) {
+            if (marks.length < size) {
+                marks = new int[Math.max(size, marks.length * 2)];
+                epoch = 0;
+            }
+            if (++epoch == Integer.MAX_VALUE) {
+                Arrays.fill(marks, 0);
+                epoch = 1;
+            }
+        }
+
+        // Marks the vector as visited; returns false if it already was.
+        private boolean visit(int id) {
+            if (marks[id] == epoch) {
+                return false;
+            }
+            marks[id] = epoch;
+            return true;
+        }
+    }
+
+    // Writes ints to a channel in little-endian order through a buffer.
+    private static final class IntWriter {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+
+        private IntWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        private void write(int value) throws IOException {
+            if (buffer.remaining() < Integer.BYTES) {
+                flush();
+            }
+            buffer.putInt(value);
+        }
+
+        private void write(int[] values, int from, int length) throws IOException {
+            for (int i = from; i < from + length; i++) {
+                write(values[i]);
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,11 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.bedrockruntime.libs.embeddings;
+
+/**
+ * A vector found by a search and its cosine similarity to the query, from -1
+ * to 1.
+ */
+public record Match(int id, float score) {
+}
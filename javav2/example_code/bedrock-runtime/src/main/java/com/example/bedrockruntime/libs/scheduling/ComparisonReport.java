@@ -0,0 +1,88 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.bedrockruntime.libs.scheduling;
+
+import software.amazon.awssdk.core.exception.ApiCallTimeoutException;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Compares the latency and throughput of the models in a run, one row per
+ * model in the order the models first appear in the results.
+ */
+public record ComparisonReport(List<ModelStats> models) {
+
+    public static ComparisonReport of(List<JobResult> results) {
+        var byModel = new LinkedHashMap<String, List<JobResult>>();
+        for (JobResult result : results) {
+            byModel.computeIfAbsent(result.job().modelId(), id -> new ArrayList<>()).add(result);
+        }
+        var models = new ArrayList<ModelStats>(byModel.size());
+        byModel.forEach((modelId, modelResults) -> models.add(ModelStats.of(modelId, modelResults)));
+        return new ComparisonReport(models);
+    }
+
+    @Override
+    public String toString() {
+        var report = new StringBuilder(String.format("%-45s %5s %5s %7s %8s %8s %8s %9s %7s%n",
+                "Model", "Jobs", "OK", "Missed", "Retries", "p50 ms", "p95 ms", "tokens/s", "jobs/s"));
+        for (ModelStats model : models) {
+            report.append(String.format("%-45s %5d %5d %7d %8d %8.0f %8.0f %9.1f %7.2f%n",
+                    model.modelId(), model.jobs(), model.succeeded(), model.missedDeadlines(), model.retries(),
+                    model.p50LatencyMillis(), model.p95LatencyMillis(), model.outputTokensPerSecond(),
+                    model.jobsPerSecond()));
+        }
+        return report.toString();
+    }
+
+    /**
+     * The results of one model.
+     *
+     * @param missedDeadlines       the jobs that failed because their deadline passed
+     * @param retries               the requests sent again after Bedrock throttled them
+     * @param p50LatencyMillis      the median latency of the successful requests
+     * @param p95LatencyMillis      the latency below which 95% of the successful requests fall
+     * @param outputTokensPerSecond the tokens generated per second of request time
+     * @param jobsPerSecond         the successful jobs per second from the start of the run to the last of them
+     */
+    public record ModelStats(String modelId, int jobs, int succeeded, int missedDeadlines, int retries,
+            double p50LatencyMillis, double p95LatencyMillis, double outputTokensPerSecond, double jobsPerSecond) {
+
+        static ModelStats of(String modelId, List<JobResult> results) {
+            int missedDeadlines = 0;
+            int retries = 0;
+            long outputTokens = 0;
+            double lastCompletedMillis = 0;
+            var latencies = new ArrayList<Double>();
+            for (JobResult result : results) {
+                retries += Math.max(0, result.attempts() - 1);
+                if (result.succeeded()) {
+                    latencies.add(result.latencyMillis());
+                    outputTokens += result.outputTokens();
+                    lastCompletedMillis = Math.max(lastCompletedMillis, result.completedMillis());
+                } else if (result.error() instanceof TimeoutException
+                        || result.error() instanceof ApiCallTimeoutException) {
+                    missedDeadlines++;
+                }
+            }
+            latencies.sort(null);
+            double requestSeconds = latencies.stream().mapToDouble(Double::doubleValue).sum() / 1000;
+            return new ModelStats(modelId, results.size(), latencies.size(), missedDeadlines, retries,
+                    percentile(latencies, 0.5), percentile(latencies, 0.95),
+                    requestSeconds == 0 ? 0 : outputTokens / requestSeconds,
+                    lastCompletedMillis == 0 ? 0 : latencies.size() * 1000 / lastCompletedMillis);
+        }
+
+        // Returns the nearest-rank percentile of sorted values, or 0 if there are none.
+        private static double percentile(List<Double> sorted, double fraction) {
+            if (sorted.isEmpty()) {
+                return 0;
+            }
+            return sorted.get((int) Math.ceil(fraction * sorted.size()) - 1);
+        }
+    }
+}
@@ -0,0 +1,309 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.bedrockruntime.libs.scheduling;
+
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeAsyncClient;
+import software.amazon.awssdk.services.bedrockruntime.model.ContentBlock;
+import software.amazon.awssdk.services.bedrockruntime.model.ConversationRole;
+import software.amazon.awssdk.services.bedrockruntime.model.ConverseRequest;
+import software.amazon.awssdk.services.bedrockruntime.model.ConverseResponse;
+import software.amazon.awssdk.services.bedrockruntime.model.InferenceConfiguration;
+import software.amazon.awssdk.services.bedrockruntime.model.Message;
+import software.amazon.awssdk.services.bedrockruntime.model.ThrottlingException;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sends a list of prompts to several models at once with the Converse API
+ * on a {@link BedrockRuntimeAsyncClient}, so comparing models takes about as
+ * long as the slowest of them instead of the sum.
+ *
+ * Each model has its own queue and token bucket, so a model that is slow or
+ * rate limited doesn't hold up the others. Whenever a request may be sent,
+ * the scheduler picks, among the models with a token to spare, the job with
+ * the highest priority and then the earliest deadline. A queued job is failed
+ * with a {@link TimeoutException} as soon as its deadline passes, wherever it
+ * is in its queue, and a request is given only the time left before its
+ * deadline.
+ *
+ * When Bedrock throttles a model, its bucket is emptied and the job is
+ * retried after a random backoff that doubles with each attempt, unless the
+ * retry would come after the deadline. Create the client with SDK retries
+ * turned off, so the scheduler sees the throttling.
+ *
+ * <pre>{@code
+ * var scheduler = new FanOutScheduler(client, Map.of(), new RateLimit(5, 2), 16, config);
+ * var results = scheduler.run(Job.forEachModel(modelIds, prompts));
+ * System.out.println(ComparisonReport.of(results));
+ * }</pre>
+ */
+public class FanOutScheduler {
+    private static final int MAX_ATTEMPTS = 6;
+    private static final long BASE_BACKOFF_MILLIS = 100;
+    private static final Comparator<Pending> MOST_URGENT_FIRST = Comparator
+            .comparingInt((Pending pending) -> -pending.job.priority())
+            .thenComparingLong(pending -> pending.deadlineNanos)
+            .thenComparingInt(pending -> pending.index);
+
+    private final BedrockRuntimeAsyncClient client;
+    private final Map<String, RateLimit> limits;
+    private final RateLimit defaultLimit;
+    private final int maxConcurrency;
+    private final InferenceConfiguration inferenceConfig;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder throttledRequests = new LongAdder();
+
+    /**
+     * @param limits          the rate limits of the models, by model ID
+     * @param defaultLimit    the rate limit of the models that are not in limits
+     * @param maxConcurrency  the most requests in flight at a time, over all models
+     * @param inferenceConfig the inference parameters of every request
+     */
+    public FanOutScheduler(BedrockRuntimeAsyncClient client, Map<String, RateLimit> limits, RateLimit defaultLimit,
+            int maxConcurrency, InferenceConfiguration inferenceConfig) {
+        this.client = client;
+        this.limits = Map.copyOf(limits);
+        this.defaultLimit = defaultLimit;
+        this.maxConcurrency = maxConcurrency;
+        this.inferenceConfig = inferenceConfig;
+    }
+
+    /**
+     * Runs the jobs and returns their results in the same order. Returns when
+     * every job has succeeded or failed.
+     */
+    public List<JobResult> run(List<Job> jobs) throws InterruptedException {
+        return new Run(jobs).execute();
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getThrottledRequests() {
+        return throttledRequests.sum();
+    }
+
+    private static Throwable unwrap(Throwable err) {
+        return err instanceof CompletionException && err.getCause() != null ? err.getCause() : err;
+    }
+
+    /**
+     * The state of one call to run(). Every field is guarded by the Run
+     * itself, which the dispatching thread waits on and the callbacks of the
+     * requests notify.
+     */
+    private final class Run {
+        private final long startNanos = System.nanoTime();
+        private final Map<String, ModelQueue> queues = new LinkedHashMap<>();
+        private final PriorityQueue<Pending> retries =
+                new PriorityQueue<>(Comparator.comparingLong((Pending pending) -> pending.notBeforeNanos));
+        // The queued jobs that have a deadline, earliest first. Jobs that have been sent since are skipped.
+        private final PriorityQueue<Pending> deadlines =
+                new PriorityQueue<>(Comparator.comparingLong((Pending pending) -> pending.deadlineNanos));
+        private final JobResult[] results;
+        private int remaining;
+        private int inFlight;
+
+        private Run(List<Job> jobs) {
+            results = new JobResult[jobs.size()];
+            remaining = jobs.size();
+            for (int i = 0; i < jobs.size(); i++) {
+                Job job = jobs.get(i);
+                long deadlineNanos = job.deadline() == null ? Long.MAX_VALUE : startNanos + job.deadline().toNanos();
+                enqueue(new Pending(i, job, deadlineNanos));
+            }
+        }
+
+        private void enqueue(Pending pending) {
+            queue(pending.job.modelId()).pending.add(pending);
+            pending.queued = true;
+            if (pending.deadlineNanos != Long.MAX_VALUE) {
+                deadlines.add(pending);
+            }
+        }
+
+        private ModelQueue queue(String modelId) {
+            return queues.computeIfAbsent(modelId,
+                    id -> new ModelQueue(new TokenBucket(limits.getOrDefault(id, defaultLimit), startNanos)));
+        }
+
+        private synchronized List<JobResult> execute() throws InterruptedException {
+            while (remaining > 0) {
+                long now = System.nanoTime();
+                while (!retries.isEmpty() && retries.peek().notBeforeNanos <= now) {
+                    enqueue(retries.poll());
+                }
+                failExpired(now);
+                Pending next = inFlight < maxConcurrency ? takeMostUrgent(now) : null;
+                if (next != null) {
+                    send(next, now);
+                    continue;
+                }
+                long waitNanos = inFlight < maxConcurrency ? nanosUntilReady(now) : nanosUntilDeadline(now);
+                if (remaining == 0) {
+                    break;
+                } else if (waitNanos == Long.MAX_VALUE) {
+                    wait();
+                } else {
+                    TimeUnit.NANOSECONDS.timedWait(this, Math.max(1, waitNanos));
+                }
+            }
+            return Arrays.asList(results);
+        }
+
+        // Fails the queued jobs whose deadline has passed, including those behind more urgent jobs.
+        private void failExpired(long now) {
+            Pending pending;
+            while ((pending = deadlines.peek()) != null && (!pending.queued || pending.deadlineNanos <= now)) {
+                deadlines.poll();
+                if (pending.queued) {
+                    queue(pending.job.modelId()).pending.remove(pending);
+                    pending.queued = false;
+                    finish(pending, null, new TimeoutException("The deadline passed before the job could be sent"),
+                            0, 0, now);
+                }
+            }
+        }
+
+        // Takes the most urgent job of the models with a token.
+        private Pending takeMostUrgent(long now) {
+            Pending best = null;
+            ModelQueue bestQueue = null;
+            for (ModelQueue queue : queues.values()) {
+                Pending head = queue.pending.peek();
+                if (head == null || queue.bucket.nanosUntilToken(now) > 0) {
+                    continue;
+                }
+                if (best == null || MOST_URGENT_FIRST.compare(head, best) < 0) {
+                    best = head;
+                    bestQueue = queue;
+                }
+            }
+            if (best != null) {
+                bestQueue.pending.poll();
+                bestQueue.bucket.tryTake(now);
+                best.queued = false;
+            }
+            return best;
+        }
+
+        // Returns how long until a queued job gets a token, a retry is due or a deadline passes, or Long.MAX_VALUE.
+        private long nanosUntilReady(long now) {
+            long wait = Math.min(nanosUntilDeadline(now),
+                    retries.isEmpty() ? Long.MAX_VALUE : retries.peek().notBeforeNanos - now);
+            for (ModelQueue queue : queues.values()) {
+                if (!queue.pending.isEmpty()) {
+                    wait = Math.min(wait, queue.bucket.nanosUntilToken(now));
+                }
+            }
+            return wait;
+        }
+
+        // Called after failExpired, so the head is still queued.
+        private long nanosUntilDeadline(long now) {
+            return deadlines.isEmpty() ? Long.MAX_VALUE : deadlines.peek().deadlineNanos - now;
+        }
+
+        private void send(Pending pending, long now) {
+            inFlight++;
+            pending.attempts++;
+            requests.increment();
+            var request = ConverseRequest.builder()
+                    .modelId(pending.job.modelId())
+                    .messages(Message.builder()
+                            .content(ContentBlock.fromText(pending.job.prompt()))
+                            .role(ConversationRole.USER)
+                            .build())
+                    .inferenceConfig(inferenceConfig);
+            if (pending.deadlineNanos != Long.MAX_VALUE) {
+                var timeLeft = Duration.ofNanos(pending.deadlineNanos - now);
+                request.overrideConfiguration(config -> config.apiCallTimeout(timeLeft));
+            }
+            CompletableFuture<ConverseResponse> response;
+            try {
+                response = client.converse(request.build());
+            } catch (RuntimeException e) {
+                response = CompletableFuture.failedFuture(e);
+            }
+            response.whenComplete((result, err) -> onComplete(pending, result, unwrap(err), now));
+        }
+
+        private synchronized void onComplete(Pending pending, ConverseResponse response, Throwable err,
+                long sentNanos) {
+            long now = System.nanoTime();
+            inFlight--;
+            double latencyMillis = (now - sentNanos) / 1_000_000.0;
+            if (err == null) {
+                var text = new StringBuilder();
+                response.output().message().content().forEach(block -> {
+                    if (block.text() != null) {
+                        text.append(block.text());
+                    }
+                });
+                int outputTokens = response.usage() == null ? 0 : response.usage().outputTokens();
+                finish(pending, text.toString(), null, latencyMillis, outputTokens, now);
+            } else if (err instanceof ThrottlingException && pending.attempts < MAX_ATTEMPTS) {
+                throttledRequests.increment();
+                queue(pending.job.modelId()).bucket.drain(now);
+                long ceiling = BASE_BACKOFF_MILLIS << pending.attempts;
+                long backoffNanos = TimeUnit.MILLISECONDS.toNanos(
+                        ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1));
+                if (now + backoffNanos < pending.deadlineNanos) {
+                    pending.notBeforeNanos = now + backoffNanos;
+                    retries.add(pending);
+                } else {
+                    finish(pending, null, err, latencyMillis, 0, now);
+                }
+            } else {
+                if (err instanceof ThrottlingException) {
+                    throttledRequests.increment();
+                }
+                finish(pending, null, err, latencyMillis, 0, now);
+            }
+            notifyAll();
+        }
+
+        private void finish(Pending pending, String text, Throwable error, double latencyMillis, int outputTokens,
+                long now) {
+            results[pending.index] = new JobResult(pending.job, text, error, pending.attempts, latencyMillis,
+                    (now - startNanos) / 1_000_000.0, outputTokens);
+            remaining--;
+        }
+    }
+
+    private record ModelQueue(TokenBucket bucket, PriorityQueue<Pending> pending) {
+        private ModelQueue(TokenBucket bucket) {
+            this(bucket, new PriorityQueue<>(MOST_URGENT_FIRST));
+        }
+    }
+
+    private static final class Pending {
+        private final int index;
+        private final Job job;
+        private final long deadlineNanos;
+        private int attempts;
+        private long notBeforeNanos;
+        private boolean queued;
+
+        private Pending(int index, Job job, long deadlineNanos) {
+            this.index = index;
+            this.job = job;
+            this.deadlineNanos = deadlineNanos;
+        }
+    }
+}
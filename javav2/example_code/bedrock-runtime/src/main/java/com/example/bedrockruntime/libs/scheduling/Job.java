@@ -0,0 +1,34 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.bedrockruntime.libs.scheduling;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A prompt to send to a model.
+ *
+ * @param priority jobs with a higher priority are sent first
+ * @param deadline the time from the start of the run by which the response
+ *                 must arrive, or null if there is none
+ */
+public record Job(String modelId, String prompt, int priority, Duration deadline) {
+
+    // Returns a job with priority 0 and no deadline.
+    public static Job of(String modelId, String prompt) {
+        return new Job(modelId, prompt, 0, null);
+    }
+
+    // Returns a job for every prompt on every model, grouped by prompt.
+    public static List<Job> forEachModel(List<String> modelIds, List<String> prompts) {
+        var jobs = new ArrayList<Job>(modelIds.size() * prompts.size());
+        for (String prompt : prompts) {
+            for (String modelId : modelIds) {
+                jobs.add(of(modelId, prompt));
+            }
+        }
+        return jobs;
+    }
+}
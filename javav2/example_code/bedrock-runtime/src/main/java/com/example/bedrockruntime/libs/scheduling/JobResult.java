@@ -0,0 +1,22 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.bedrockruntime.libs.scheduling;
+
+/**
+ * The outcome of a job.
+ *
+ * @param text            the generated text, or null if the job failed
+ * @param error           why the job failed, or null if it succeeded
+ * @param attempts        the number of requests sent, including retries
+ * @param latencyMillis   the time the last request took
+ * @param completedMillis the time from the start of the run to the end of the job
+ * @param outputTokens    the number of tokens generated
+ */
+public record JobResult(Job job, String text, Throwable error, int attempts, double latencyMillis,
+        double completedMillis, int outputTokens) {
+
+    public boolean succeeded() {
+        return error == null;
+    }
+}
@@ -0,0 +1,11 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.bedrockruntime.libs.scheduling;
+
+/**
+ * The rate at which requests are sent to a model: on average
+ * requestsPerSecond, with up to burst requests at once after a pause.
+ */
+public record RateLimit(double requestsPerSecond, int burst) {
+}
@@ -0,0 +1,48 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.bedrockruntime.libs.scheduling;
+
+/**
+ * Holds up to burst tokens and gains requestsPerSecond of them each second;
+ * a request may be sent when a whole token can be taken. Not thread-safe.
+ */
+final class TokenBucket {
+    private final double tokensPerNano;
+    private final double capacity;
+    private double tokens;
+    private long updatedNanos;
+
+    TokenBucket(RateLimit limit, long nowNanos) {
+        this.tokensPerNano = limit.requestsPerSecond() / 1e9;
+        this.capacity = Math.max(1, limit.burst());
+        this.tokens = capacity;
+        this.updatedNanos = nowNanos;
+    }
+
+    boolean tryTake(long nowNanos) {
+        refill(nowNanos);
+        if (tokens < 1) {
+            return false;
+        }
+        tokens--;
+        return true;
+    }
+
+    // Returns how long until a token can be taken.
+    long nanosUntilToken(long nowNanos) {
+        refill(nowNanos);
+        return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / tokensPerNano);
+    }
+
+    // Empties the bucket, so the model gets a rest after Bedrock throttled it.
+    void drain(long nowNanos) {
+        refill(nowNanos);
+        tokens = Math.min(tokens, 0);
+    }
+
+    private void refill(long nowNanos) {
+        tokens = Math.min(capacity, tokens + (nowNanos - updatedNanos) * tokensPerNano);
+        updatedNanos = nowNanos;
+    }
+}
@@ -0,0 +1,242 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.bedrockruntime.libs.streaming;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Finds two values in the UTF-8 JSON of a response stream chunk by reading
+ * its bytes once, without building objects for the rest of the JSON: the
+ * string at the delta path, which is decoded into a reused buffer, and the
+ * number at the token count path. Keys are compared as raw bytes, which is
+ * enough for the plain ASCII keys the models use.
+ */
+final class ChunkScanner {
+    private final Object[] deltaPath;
+    private final Object[] tokenCountPath;
+    private final StringBuilder delta = new StringBuilder();
+    private ByteBuffer json;
+    private int position;
+    private boolean deltaFound;
+    private long tokenCount;
+
+    /**
+     * @param deltaPath      the keys and array indexes that lead to the text of a chunk
+     * @param tokenCountPath the keys that lead to the output token count, or null
+     */
+    ChunkScanner(Object[] deltaPath, Object[] tokenCountPath) {
+        this.deltaPath = encode(deltaPath);
+        this.tokenCountPath = tokenCountPath == null ? null : encode(tokenCountPath);
+    }
+
+    private static Object[] encode(Object[] path) {
+        var encoded = new Object[path.length];
+        for (int i = 0; i < path.length; i++) {
+            encoded[i] = path[i] instanceof String key ? key.getBytes(StandardCharsets.UTF_8) : path[i];
+        }
+        return encoded;
+    }
+
+    /**
+     * Scans a chunk. Afterwards {@link #delta()} holds its text if it has
+     * any, and {@link #tokenCount()} the output token count if it has one,
+     * or -1.
+     */
+    void scan(ByteBuffer chunk) {
+        json = chunk;
+        position = chunk.position();
+        delta.setLength(0);
+        deltaFound = false;
+        tokenCount = -1;
+        skipWhitespace();
+        if (position < json.limit()) {
+            value(0, true, tokenCountPath != null);
+        }
+        json = null;
+    }
+
+    boolean hasDelta() {
+        return deltaFound;
+    }
+
+    // The text of the last chunk; valid until the next scan.
+    CharSequence delta() {
+        return delta;
+    }
+
+    long tokenCount() {
+        return tokenCount;
+    }
+
+    // Reads the value at the position; the flags say whether the path so far matches each target.
+    private void value(int depth, boolean onDeltaPath, boolean onTokenPath) {
+        byte b = json.get(position);
+        if (b == '{') {
+            object(depth, onDeltaPath, onTokenPath);
+        } else if (b == '[') {
+            array(depth, onDeltaPath, onTokenPath);
+        } else if (b == '"') {
+            if (onDeltaPath && depth == deltaPath.length) {
+                position++;
+                readString(delta);
+                deltaFound = true;
+            } else {
+                skipString();
+            }
+        } else if (onTokenPath && depth == tokenCountPath.length && (b == '-' || (b >= '0' && b <= '9'))) {
+            tokenCount = readLong();
+        } else {
+            skipLiteral();
+        }
+    }
+
+    private void object(int depth, boolean onDeltaPath, boolean onTokenPath) {
+        position++;
+        skipWhitespace();
+        if (json.get(position) == '}') {
+            position++;
+            return;
+        }
+        while (true) {
+            skipWhitespace();
+            int keyStart = position + 1;
+            skipString();
+            int keyEnd = position - 1;
+            skipWhitespace();
+            position++; // The colon.
+            skipWhitespace();
+            value(depth + 1,
+                    onDeltaPath && depth < deltaPath.length && keyEquals(keyStart, keyEnd, deltaPath[depth]),
+                    onTokenPath && depth < tokenCountPath.length
+                            && keyEquals(keyStart, keyEnd, tokenCountPath[depth]));
+            skipWhitespace();
+            if (json.get(position++) == '}') {
+                return;
+            }
+        }
+    }
+
+    private void array(int depth, boolean onDeltaPath, boolean onTokenPath) {
+        position++;
+        skipWhitespace();
+        if (json.get(position) == ']') {
+            position++;
+            return;
+        }
+        for (int index = 0; ; index++) {
+            skipWhitespace();
+            value(depth + 1,
+                    onDeltaPath && depth < deltaPath.length && deltaPath[depth] instanceof Integer i && i == index,
+                    onTokenPath && depth < tokenCountPath.length
+                            && tokenCountPath[depth] instanceof Integer i && i == index);
+            skipWhitespace();
+            if (json.get(position++) == ']') {
+                return;
+            }
+        }
+    }
+
+    private boolean keyEquals(int start, int end, Object expected) {
+        if (!(expected instanceof byte[] key) || key.length != end - start) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (json.get(start + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Skips a string, starting at its opening quote.
+    private void skipString() {
+        position++;
+        while (true) {
+            byte b = json.get(position++);
+            if (b == '\\') {
+                position++;
+            } else if (b == '"') {
+                return;
+            }
+        }
+    }
+
+    // Decodes a string into the buffer, starting after its opening quote.
+    private void readString(StringBuilder out) {
+        while (true) {
+            int b = json.get(position++) & 0xFF;
+            if (b == '"') {
+                return;
+            }
+            if (b == '\\') {
+                char escaped = (char) json.get(position++);
+                switch (escaped) {
+                    case 'n' -> out.append('\n');
+                    case 't' -> out.append('\t');
+                    case 'r' -> out.append('\r');
+                    case 'b' -> out.append('\b');
+                    case 'f' -> out.append('\f');
+                    case 'u' -> {
+                        int code = 0;
+                        for (int i = 0; i < 4; i++) {
+                            code = code << 4 | Character.digit(json.get(position++), 16);
+                        }
+                        // A character outside the Basic Multilingual Plane comes as two escapes, one per surrogate.
+                        out.append((char) code);
+                    }
+                    default -> out.append(escaped);
+                }
+            } else if (b < 0x80) {
+                out.append((char) b);
+            } else if (b < 0xE0) {
+                out.append((char) (((b & 0x1F) << 6) | continuation()));
+            } else if (b < 0xF0) {
+                out.append((char) (((b & 0x0F) << 12) | (continuation() << 6) | continuation()));
+            } else {
+                out.appendCodePoint(((b & 0x07) << 18) | (continuation() << 12) | (continuation() << 6)
+                        | continuation());
+            }
+        }
+    }
+
+    private int continuation() {
+        return json.get(position++) & 0x3F;
+    }
+
+    private long readLong() {
+        boolean negative = json.get(position) == '-';
+        if (negative) {
+            position++;
+        }
+        long value = 0;
+        while (position < json.limit() && json.get(position) >= '0' && json.get(position) <= '9') {
+            value = value * 10 + (json.get(position++) - '0');
+        }
+        // A fraction or exponent is not expected in a count; skip it if there is one.
+        skipLiteral();
+        return negative ? -value : value;
+    }
+
+    // Skips a number, true, false or null.
+    private void skipLiteral() {
+        while (position < json.limit()) {
+            byte b = json.get(position);
+            if (b == ',' || b == '}' || b == ']' || b == ' ' || b == '\n' || b == '\r' || b == '\t') {
+                return;
+            }
+            position++;
+        }
+    }
+
+    private void skipWhitespace() {
+        while (position < json.limit()) {
+            byte b = json.get(position);
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                return;
+            }
+            position++;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.bedrockruntime.libs.streaming;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelWithResponseStreamResponseHandler;
+import software.amazon.awssdk.services.bedrockruntime.model.PayloadPart;
+import software.amazon.awssdk.services.bedrockruntime.model.ResponseStream;
+
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Assembles the text of an InvokeModelWithResponseStream response.
+ *
+ * Each chunk is scanned in place, through a read-only view of its bytes, for
+ * the text the model family puts in it (see {@link StreamFormat}). The text
+ * is passed to the listener as a {@link CharSequence} that is only valid
+ * during the call, and appended to the complete text, so no JSON objects or
+ * strings are created per chunk.
+ *
+ * The next event is requested from the SDK only after the listener returns,
+ * so a slow listener slows down the reads instead of letting chunks pile up
+ * in memory. {@link #cancel()} stops the stream.
+ *
+ * Use one assembler per request:
+ * <pre>{@code
+ * var assembler = new ResponseStreamAssembler(StreamFormat.ANTHROPIC_CLAUDE, System.out::print);
+ * client.invokeModelWithResponseStream(request, assembler.handler());
+ * String text = assembler.text().join();
+ * }</pre>
+ */
+public class ResponseStreamAssembler implements Subscriber<ResponseStream> {
+    private final ChunkScanner scanner;
+    private final Consumer<CharSequence> listener;
+    private final StringBuilder text = new StringBuilder();
+    private final CompletableFuture<String> result = new CompletableFuture<>();
+    private Subscription subscription;
+    private volatile boolean cancelled;
+
+    private long startNanos;
+    private long firstDeltaNanos;
+    private long lastDeltaNanos;
+    private int deltas;
+    private long outputTokens = -1;
+    private long[] gaps = new long[64];
+
+    /**
+     * @param listener receives each piece of text as it arrives; it must not keep the CharSequence
+     */
+    public ResponseStreamAssembler(StreamFormat format, Consumer<CharSequence> listener) {
+        this.scanner = format.newScanner();
+        this.listener = listener;
+    }
+
+    /**
+     * Returns the handler to pass to invokeModelWithResponseStream. Call it
+     * right before sending the request; the time to the first token is
+     * measured from this call.
+     */
+    public InvokeModelWithResponseStreamResponseHandler handler() {
+        startNanos = System.nanoTime();
+        return InvokeModelWithResponseStreamResponseHandler.builder()
+                .subscriber(() -> this)
+                .onError(result::completeExceptionally)
+                .build();
+    }
+
+    // Completes with the whole text when the stream ends.
+    public CompletableFuture<String> text() {
+        return result;
+    }
+
+    // Stops reading the stream. text() completes with a CancellationException.
+    public void cancel() {
+        cancelled = true;
+        Subscription current;
+        synchronized (this) {
+            current = subscription;
+        }
+        if (current != null) {
+            current.cancel();
+        }
+        result.completeExceptionally(new CancellationException("The response stream was cancelled"));
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+        synchronized (this) {
+            this.subscription = subscription;
+        }
+        if (cancelled) {
+            subscription.cancel();
+            return;
+        }
+        subscription.request(1);
+    }
+
+    @Override
+    public void onNext(ResponseStream event) {
+        if (cancelled) {
+            return;
+        }
+        if (event instanceof PayloadPart part) {
+            // asByteBuffer() is a read-only view of the chunk, not a copy.
+            scanner.scan(part.bytes().asByteBuffer());
+            boolean hasText = scanner.hasDelta() && scanner.delta().length() > 0;
+            // Guards the text and timings, which metrics() reads from other threads.
+            synchronized (this) {
+                if (hasText) {
+                    recordDelta(System.nanoTime());
+                    text.append(scanner.delta());
+                }
+                if (scanner.tokenCount() >= 0) {
+                    outputTokens = scanner.tokenCount();
+                }
+            }
+            if (hasText) {
+                listener.accept(scanner.delta());
+            }
+        }
+        if (!cancelled) {
+            subscription.request(1);
+        }
+    }
+
+    private void recordDelta(long now) {
+        if (deltas == 0) {
+            firstDeltaNanos = now;
+        } else {
+            if (deltas - 1 == gaps.length) {
+                gaps = Arrays.copyOf(gaps, gaps.length * 2);
+            }
+            gaps[deltas - 1] = now - lastDeltaNanos;
+        }
+        lastDeltaNanos = now;
+        deltas++;
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        result.completeExceptionally(t);
+    }
+
+    @Override
+    public synchronized void onComplete() {
+        result.complete(text.toString());
+    }
+
+    /**
+     * Returns the timings of the stream so far. Read it after text() completes
+     * for the final values.
+     */
+    public synchronized StreamMetrics metrics() {
+        var sortedGaps = Arrays.copyOf(gaps, Math.max(0, deltas - 1));
+        Arrays.sort(sortedGaps);
+        return new StreamMetrics(
+                deltas == 0 ? -1 : (firstDeltaNanos - startNanos) / 1_000_000.0,
+                deltas == 0 ? 0 : (lastDeltaNanos - firstDeltaNanos) / 1_000_000.0,
+                deltas,
+                text.length(),
+                outputTokens,
+                sortedGaps);
+    }
+}
@@ -0,0 +1,36 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.bedrockruntime.libs.streaming;
+
+/**
+ * Where each model family puts the generated text in the chunks of an
+ * InvokeModelWithResponseStream response. Every family reports the output
+ * token count in the amazon-bedrock-invocationMetrics of its last chunk.
+ */
+public enum StreamFormat {
+    // {"type":"content_block_delta","index":0,"delta":{"type":"text_delta","text":"..."}}
+    ANTHROPIC_CLAUDE("delta", "text"),
+    // {"generation":"...","prompt_token_count":null,"generation_token_count":1,"stop_reason":null}
+    META_LLAMA("generation"),
+    // {"outputs":[{"text":"...","stop_reason":null}]}
+    MISTRAL("outputs", 0, "text"),
+    // {"outputText":"...","index":0,"totalOutputTextTokenCount":1,"completionReason":null}
+    AMAZON_TITAN_TEXT("outputText"),
+    // {"generations":[{"id":"...","text":"...","finish_reason":null}]}
+    COHERE_COMMAND("generations", 0, "text"),
+    // {"is_finished":false,"event_type":"text-generation","text":"..."}
+    COHERE_COMMAND_R("text");
+
+    static final Object[] TOKEN_COUNT_PATH = {"amazon-bedrock-invocationMetrics", "outputTokenCount"};
+
+    private final Object[] deltaPath;
+
+    StreamFormat(Object... deltaPath) {
+        this.deltaPath = deltaPath;
+    }
+
+    ChunkScanner newScanner() {
+        return new ChunkScanner(deltaPath, TOKEN_COUNT_PATH);
+    }
+}
@@ -0,0 +1,42 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.bedrockruntime.libs.streaming;
+
+/**
+ * The timings of a response stream.
+ *
+ * @param firstTokenMillis the time from sending the request to the first text, or -1 if there was none
+ * @param generationMillis the time from the first text to the last
+ * @param deltas           the number of chunks with text
+ * @param chars            the number of characters of text
+ * @param outputTokens     the output token count Bedrock reported, or -1 if the stream ended without it
+ * @param gapNanos         the times between consecutive chunks with text, sorted
+ */
+public record StreamMetrics(double firstTokenMillis, double generationMillis, int deltas, int chars,
+        long outputTokens, long[] gapNanos) {
+
+    /**
+     * Returns the output tokens per second after the first one. Uses the
+     * number of chunks with text when Bedrock didn't report a token count.
+     */
+    public double tokensPerSecond() {
+        long tokens = outputTokens >= 0 ? outputTokens : deltas;
+        return generationMillis <= 0 ? 0 : (tokens - 1) * 1000 / generationMillis;
+    }
+
+    // Returns the gap between chunks below which the given fraction of gaps fall, in milliseconds.
+    public double gapMillis(double percentile) {
+        if (gapNanos.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.min(gapNanos.length - 1, Math.floor(percentile * gapNanos.length));
+        return gapNanos[index] / 1_000_000.0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("first token %.0f ms, %.1f tokens/s, gap p50 %.1f ms, p99 %.1f ms, %d chunks",
+                firstTokenMillis, tokensPerSecond(), gapMillis(0.5), gapMillis(0.99), deltas);
+    }
+}
@@ -71,6 +71,22 @@ public class TextEmbeddingsScenarios {
     }
     // snippet-end:[bedrock-runtime.java2.InvokeModel_TitanTextEmbeddings_AdditionalFields]
 
+    /**
+     * Extract the embedding from a response of Amazon Titan Text Embeddings as floats,
+     * for example to add it to an {@link com.example.bedrockruntime.libs.embeddings.EmbeddingStore}.
+     *
+     * @param modelResponse - The model's response, as returned by {@link #invokeModel}.
+     * @return The embedding.
+     */
+    public static float[] toVector(JSONObject modelResponse) {
+        var embedding = modelResponse.getJSONArray("embedding");
+        var vector = new float[embedding.length()];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = embedding.getFloat(i);
+        }
+        return vector;
+    }
+
     public static void main(String[] args) throws IOException {
         new DemoRunner(List.of(
                 new TextEmbeddingScenario(TextEmbeddingsScenarios::invokeModel)
@@ -7,19 +7,16 @@ package com.example.bedrockruntime.models.cohereCommand;
 // Use the native inference API to send a text message to Cohere Command R
 // and print the response stream.
 
-import org.json.JSONObject;
-import org.json.JSONPointer;
+import com.example.bedrockruntime.libs.streaming.ResponseStreamAssembler;
+import com.example.bedrockruntime.libs.streaming.StreamFormat;
 import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
 import software.amazon.awssdk.core.SdkBytes;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeAsyncClient;
 import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelWithResponseStreamRequest;
-import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelWithResponseStreamResponseHandler;
 
 import java.util.concurrent.ExecutionException;
 
-import static software.amazon.awssdk.services.bedrockruntime.model.InvokeModelWithResponseStreamResponseHandler.Visitor;
-
 public class Command_R_InvokeModelWithResponseStream {
 
     public static String invokeModelWithResponseStream() throws ExecutionException, InterruptedException {
@@ -51,27 +48,16 @@ public class Command_R_InvokeModelWithResponseStream {
                 .modelId(modelId)
                 .build();
 
-        // Prepare a buffer to accumulate the generated response text.
-        var completeResponseTextBuffer = new StringBuilder();
-
-        // Prepare a handler to extract, accumulate, and print the response text in real-time.
-        var responseStreamHandler = InvokeModelWithResponseStreamResponseHandler.builder()
-                .subscriber(Visitor.builder().onChunk(chunk -> {
-                    // Extract and print the text from the model's native response.
-                    var response = new JSONObject(chunk.bytes().asUtf8String());
-                    var text = new JSONPointer("/text").queryFrom(response);
-                    System.out.print(text);
-
-                    // Append the text to the response text buffer.
-                    completeResponseTextBuffer.append(text);
-                }).build()).build();
+        // Prepare an assembler that extracts the text from each chunk without parsing it into
+        // JSON objects, prints it in real-time, and accumulates the complete response text.
+        var assembler = new ResponseStreamAssembler(StreamFormat.COHERE_COMMAND_R, System.out::print);
 
         try {
-            // Send the request and wait for the handler to process the response.
-            client.invokeModelWithResponseStream(request, responseStreamHandler).get();
+            // Send the request and wait for the assembler to process the response.
+            client.invokeModelWithResponseStream(request, assembler.handler()).get();
 
             // Return the complete response text.
-            return completeResponseTextBuffer.toString();
+            return assembler.text().get();
 
         } catch (ExecutionException | InterruptedException e) {
             System.err.printf("Can't invoke '%s': %s", modelId, e.getCause().getMessage());
@@ -0,0 +1,48 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package libs;
+
+import com.example.bedrockruntime.libs.embeddings.EmbeddingCache;
+import com.example.bedrockruntime.libs.embeddings.EmbeddingPipeline;
+import com.example.bedrockruntime.libs.embeddings.EmbeddingPipeline.Document;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * Embeds a corpus with the pipeline against the local Bedrock stub, once with
+ * a cold cache and once with a warm one, and prints the chunks per second,
+ * the requests, the throttled requests and the final concurrency limit.
+ *
+ * Run with: java EmbeddingPipelineBenchmark [documents] [requestsPerSecond] [latencyMillis]
+ */
+public class EmbeddingPipelineBenchmark {
+    public static void main(String[] args) throws Exception {
+        int documents = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+        int requestsPerSecond = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        long latencyMillis = args.length > 2 ? Long.parseLong(args[2]) : 50;
+
+        try (var stub = new LocalBedrockStub(requestsPerSecond, latencyMillis);
+                var client = stub.asyncClient()) {
+            var cache = EmbeddingCache.inMemory(100_000);
+            for (String run : new String[]{"Cold cache", "Warm cache"}) {
+                var pipeline = new EmbeddingPipeline(client, "amazon.titan-embed-text-v2:0", 256, 2_000, 200,
+                        cache, 64);
+                // A corpus where a quarter of the documents repeat another one.
+                var corpus = IntStream.range(0, documents)
+                        .mapToObj(i -> new Document("doc-" + i, ("Paragraph " + i % (documents * 3 / 4) + ". ")
+                                .repeat(100)));
+                var chunks = new AtomicLong();
+                long start = System.nanoTime();
+                pipeline.embed(corpus, chunk -> chunks.incrementAndGet());
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.printf("%s: %,d chunks in %.2f s (%,.0f chunks/s), %,d requests, %,d throttled, "
+                                + "%,d from the cache, %,d shared, final limit %d%n",
+                        run, chunks.get(), seconds, chunks.get() / seconds, pipeline.getRequests(),
+                        pipeline.getThrottledRequests(), pipeline.getCachedChunks(), pipeline.getSharedChunks(),
+                        pipeline.getConcurrencyLimit());
+            }
+        }
+    }
+}
@@ -0,0 +1,167 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package libs;
+
+import com.example.bedrockruntime.libs.embeddings.EmbeddingStore;
+import com.example.bedrockruntime.libs.embeddings.HnswIndex;
+import com.example.bedrockruntime.libs.embeddings.Match;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the exact and approximate search of the embedding store on random
+ * vectors. The sample mode reports the p50 and p99 latency of each search.
+ * The setup prints the build, reopen and index load times, the recall@10 of
+ * the HNSW index for each ef, and the bytes used per vector. Run it with the
+ * main method from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EmbeddingSearchBenchmark {
+    private static final int QUERIES = 200;
+    private static final int K = 10;
+
+    @Param("100000")
+    public int vectors;
+
+    @Param("256")
+    public int dimensions;
+
+    private Path directory;
+    private EmbeddingStore store;
+    private HnswIndex index;
+    private float[][] queries;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("embeddings");
+        Path storeFile = directory.resolve("vectors.bin");
+        Path indexFile = directory.resolve("index.bin");
+        var random = new Random(1);
+
+        long start = System.nanoTime();
+        try (var created = EmbeddingStore.open(storeFile, dimensions, vectors)) {
+            for (int i = 0; i < vectors; i++) {
+                created.add(randomVector(random, dimensions));
+            }
+        }
+        System.out.printf("%nAdded %,d vectors of %d dimensions in %,d ms%n", vectors, dimensions,
+                millisSince(start));
+
+        start = System.nanoTime();
+        store = EmbeddingStore.open(storeFile, dimensions);
+        System.out.printf("Reopened the store in %.2f ms%n", (System.nanoTime() - start) / 1e6);
+
+        start = System.nanoTime();
+        index = new HnswIndex(store, 16, 200);
+        index.update();
+        System.out.printf("Built the index in %,d ms%n", millisSince(start));
+        index.save(indexFile);
+        start = System.nanoTime();
+        index = HnswIndex.load(store, indexFile, 200);
+        System.out.printf("Loaded the index in %.2f ms%n", (System.nanoTime() - start) / 1e6);
+
+        queries = new float[QUERIES][];
+        for (int q = 0; q < QUERIES; q++) {
+            queries[q] = randomVector(random, dimensions);
+        }
+        for (int ef : new int[]{16, 64, 256}) {
+            System.out.printf("HNSW recall@%d with ef %d: %.3f%n", K, ef, recall(ef));
+        }
+        System.out.printf("Bytes per vector: %d in the store, %d in the index%n",
+                (long) dimensions * Float.BYTES, index.memoryBytes() / vectors);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        store.close();
+        Files.deleteIfExists(directory.resolve("index.bin"));
+        Files.deleteIfExists(directory.resolve("vectors.bin"));
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public List<Match> exactSearch() {
+        return store.search(nextQuery(), K);
+    }
+
+    @Benchmark
+    public List<Match> hnswSearchEf16() {
+        return index.search(nextQuery(), K, 16);
+    }
+
+    @Benchmark
+    public List<Match> hnswSearchEf64() {
+        return index.search(nextQuery(), K, 64);
+    }
+
+    @Benchmark
+    public List<Match> hnswSearchEf256() {
+        return index.search(nextQuery(), K, 256);
+    }
+
+    // Cycles through the queries so that every search starts from a different vector.
+    private float[] nextQuery() {
+        float[] query = queries[next];
+        next = (next + 1) % QUERIES;
+        return query;
+    }
+
+    // The share of the exact top k that the index finds.
+    private double recall(int ef) {
+        int found = 0;
+        for (float[] query : queries) {
+            var expected = new HashSet<Integer>();
+            for (Match match : store.search(query, K)) {
+                expected.add(match.id());
+            }
+            found += (int) index.search(query, K, ef).stream().filter(match -> expected.contains(match.id())).count();
+        }
+        return (double) found / (QUERIES * K);
+    }
+
+    private static long millisSince(long start) {
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    private static float[] randomVector(Random random, int dimensions) {
+        var vector = new float[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(EmbeddingSearchBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+}
@@ -0,0 +1,202 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package libs;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.retry.RetryPolicy;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeAsyncClient;
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClient;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A minimal, in-process stand-in for Amazon Bedrock Runtime, so code that
+ * uses it can be tested and benchmarked offline. InvokeModel on an embedding
+ * model returns a vector derived from the input text, so the same text always
+ * gets the same embedding. Converse answers with a numbered reply to the text
+ * of the last message, so callers can tell which request produced a
+ * response. Each request takes the given latency, and requests above the
+ * given rate per second are throttled with a 429 response. Embedding inputs
+ * longer than MAX_INPUT_CHARS are rejected with a ValidationException.
+ */
+class LocalBedrockStub implements AutoCloseable {
+    // The longest text Titan Text Embeddings accepts.
+    static final int MAX_INPUT_CHARS = 50_000;
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final int maxRequestsPerSecond;
+    private final long latencyMillis;
+    private final AtomicLong invokeRequests = new AtomicLong();
+    private final AtomicLong converseRequests = new AtomicLong();
+    private final AtomicLong throttledRequests = new AtomicLong();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+    private long windowStart = System.nanoTime();
+    private int windowRequests;
+
+    LocalBedrockStub(int maxRequestsPerSecond, long latencyMillis) throws IOException {
+        this.maxRequestsPerSecond = maxRequestsPerSecond;
+        this.latencyMillis = latencyMillis;
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    // Returns a client for the stub with SDK retries turned off, so callers see every throttled request.
+    BedrockRuntimeAsyncClient asyncClient() {
+        return BedrockRuntimeAsyncClient.builder()
+                .region(Region.US_EAST_1)
+                .endpointOverride(URI.create("http://localhost:" + server.getAddress().getPort()))
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("stub", "stub")))
+                .overrideConfiguration(config -> config.retryPolicy(RetryPolicy.none()))
+                .build();
+    }
+
+    // Returns a synchronous client for the stub with SDK retries turned off.
+    BedrockRuntimeClient client() {
+        return BedrockRuntimeClient.builder()
+                .region(Region.US_EAST_1)
+                .endpointOverride(URI.create("http://localhost:" + server.getAddress().getPort()))
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("stub", "stub")))
+                .overrideConfiguration(config -> config.retryPolicy(RetryPolicy.none()))
+                .build();
+    }
+
+    long invokeRequests() {
+        return invokeRequests.get();
+    }
+
+    long converseRequests() {
+        return converseRequests.get();
+    }
+
+    long throttledRequests() {
+        return throttledRequests.get();
+    }
+
+    // The largest number of requests that were being handled at once.
+    int maxRunning() {
+        return maxRunning.get();
+    }
+
+    // Returns the embedding the stub returns for the text.
+    static float[] embeddingOf(String text, int dimensions) {
+        var random = new Random(text.hashCode());
+        var vector = new float[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String path = URLDecoder.decode(exchange.getRequestURI().getRawPath(), StandardCharsets.UTF_8);
+            var body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            boolean converse = path.endsWith("/converse");
+            if (!path.startsWith("/model/") || !(converse || path.endsWith("/invoke"))) {
+                sendError(exchange, 404, "UnknownOperationException", "Unsupported path " + path);
+                return;
+            }
+            (converse ? converseRequests : invokeRequests).incrementAndGet();
+            if (!admit()) {
+                throttledRequests.incrementAndGet();
+                sendError(exchange, 429, "ThrottlingException", "Too many requests, please wait before trying again.");
+                return;
+            }
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(latencyMillis);
+                var request = new JSONObject(body);
+                if (!converse && request.getString("inputText").length() > MAX_INPUT_CHARS) {
+                    sendError(exchange, 400, "ValidationException", "Too many input characters.");
+                    return;
+                }
+                send(exchange, 200, (converse ? reply(request, converseRequests.get()) : embed(request)).toString());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                running.decrementAndGet();
+            }
+        }
+    }
+
+    private static JSONObject embed(JSONObject request) {
+        String text = request.getString("inputText");
+        float[] vector = embeddingOf(text, request.optInt("dimensions", 1024));
+        var embedding = new JSONArray();
+        for (float value : vector) {
+            embedding.put(value);
+        }
+        return new JSONObject()
+                .put("embedding", embedding)
+                .put("inputTextTokenCount", text.split("\\s+").length);
+    }
+
+    private JSONObject reply(JSONObject request, long number) {
+        var messages = request.getJSONArray("messages");
+        var content = messages.getJSONObject(messages.length() - 1).getJSONArray("content");
+        String text = "Reply " + number + " to: " + content.getJSONObject(0).getString("text");
+        int inputTokens = request.toString().split("\\s+").length;
+        int outputTokens = text.split("\\s+").length;
+        return new JSONObject()
+                .put("output", new JSONObject().put("message", new JSONObject()
+                        .put("role", "assistant")
+                        .put("content", new JSONArray().put(new JSONObject().put("text", text)))))
+                .put("stopReason", "end_turn")
+                .put("usage", new JSONObject()
+                        .put("inputTokens", inputTokens)
+                        .put("outputTokens", outputTokens)
+                        .put("totalTokens", inputTokens + outputTokens))
+                .put("metrics", new JSONObject().put("latencyMs", latencyMillis));
+    }
+
+    // Admits up to maxRequestsPerSecond requests in each one-second window.
+    private synchronized boolean admit() {
+        long now = System.nanoTime();
+        if (now - windowStart >= 1_000_000_000L) {
+            windowStart = now;
+            windowRequests = 0;
+        }
+        return ++windowRequests <= maxRequestsPerSecond;
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String type, String message) throws IOException {
+        exchange.getResponseHeaders().add("x-amzn-ErrorType", type);
+        send(exchange, status, new JSONObject().put("message", message).toString());
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
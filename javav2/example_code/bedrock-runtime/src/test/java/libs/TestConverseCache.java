@@ -0,0 +1,201 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package libs;
+
+import com.example.bedrockruntime.libs.cache.ConverseCache;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.awssdk.services.bedrockruntime.model.ContentBlock;
+import software.amazon.awssdk.services.bedrockruntime.model.ConversationRole;
+import software.amazon.awssdk.services.bedrockruntime.model.ConverseRequest;
+import software.amazon.awssdk.services.bedrockruntime.model.ConverseResponse;
+import software.amazon.awssdk.services.bedrockruntime.model.Message;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestConverseCache {
+    private static final String MODEL_ID = "anthropic.claude-3-haiku-20240307-v1:0";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void answersRepeatedRequestsFromMemory() throws Exception {
+        try (var stub = new LocalBedrockStub(1_000, 50);
+                var client = stub.client();
+                var cache = ConverseCache.inMemory(100, Duration.ofHours(1))) {
+            var first = cache.converse(client, request("What is a 'hello world' program?", 0.5F));
+            // Differs only in whitespace, so it is the same request.
+            var second = cache.converse(client, request("  What is a 'hello world'\n program? ", 0.5F));
+            var otherConfig = cache.converse(client, request("What is a 'hello world' program?", 0.9F));
+
+            assertEquals(text(first), text(second));
+            assertNotEquals(text(first), text(otherConfig));
+            assertEquals(2, stub.converseRequests());
+            assertEquals(1, cache.getMemoryHits());
+            assertEquals(2, cache.getMisses());
+            assertTrue(cache.getLatencySavedMillis() >= 50);
+        }
+    }
+
+    @Test
+    void sharesOneCallBetweenConcurrentIdenticalRequests() throws Exception {
+        try (var stub = new LocalBedrockStub(1_000, 200);
+                var client = stub.asyncClient();
+                var cache = ConverseCache.inMemory(100, Duration.ofHours(1))) {
+            var responses = new ArrayList<CompletableFuture<ConverseResponse>>();
+            for (int i = 0; i < 10; i++) {
+                responses.add(cache.converseAsync(client, request("Name three primes.", 0.5F)));
+            }
+
+            var texts = responses.stream().map(response -> text(response.join())).distinct().toList();
+
+            assertEquals(1, texts.size());
+            assertEquals(1, stub.converseRequests());
+            assertEquals(9, cache.getSharedRequests());
+        }
+    }
+
+    @Test
+    void expiresResponses() throws Exception {
+        try (var stub = new LocalBedrockStub(1_000, 0);
+                var client = stub.client();
+                var cache = ConverseCache.inMemory(100, Duration.ofMillis(100))) {
+            cache.converse(client, request("Tell me the time.", 0.5F));
+            Thread.sleep(200);
+            cache.converse(client, request("Tell me the time.", 0.5F));
+
+            assertEquals(2, stub.converseRequests());
+            assertEquals(0, cache.getMemoryHits());
+        }
+    }
+
+    @Test
+    void readsResponsesBackFromDisk() throws Exception {
+        Path file = directory.resolve("converse-cache.jsonl");
+        try (var stub = new LocalBedrockStub(1_000, 0);
+                var client = stub.client()) {
+            String expected;
+            try (var cache = ConverseCache.open(file, 100, Duration.ofHours(1))) {
+                expected = text(cache.converse(client, request("Summarize the plot of Hamlet.", 0.5F)));
+            }
+            // A record cut short by a crash is dropped.
+            Files.writeString(file, "{\"key\":\"abc\",\"expi", StandardOpenOption.APPEND);
+
+            try (var cache = ConverseCache.open(file, 100, Duration.ofHours(1))) {
+                var response = cache.converse(client, request("Summarize the plot of Hamlet.", 0.5F));
+
+                assertEquals(expected, text(response));
+                assertEquals(ConversationRole.ASSISTANT, response.output().message().role());
+                assertTrue(response.usage().outputTokens() > 0);
+                assertEquals(1, stub.converseRequests());
+                assertEquals(1, cache.getDiskHits());
+            }
+        }
+    }
+
+    @Test
+    void sendsRequestsWithFieldsTheKeyDoesNotCoverEveryTime() throws Exception {
+        try (var stub = new LocalBedrockStub(1_000, 0);
+                var client = stub.client();
+                var cache = ConverseCache.inMemory(100, Duration.ofHours(1))) {
+            var request = request("What is a 'hello world' program?", 0.5F).toBuilder()
+                    .additionalModelResponseFieldPaths("/stop_sequence")
+                    .build();
+            cache.converse(client, request);
+            cache.converse(client, request);
+
+            assertEquals(2, stub.converseRequests());
+            assertEquals(2, cache.getUncacheableRequests());
+        }
+    }
+
+    @Test
+    void looksUpSimilarQuestionsInAnEmptyCache() throws Exception {
+        try (var stub = new LocalBedrockStub(1_000, 0);
+                var client = stub.client();
+                var cache = ConverseCache.inMemory(100, Duration.ofHours(1))
+                        .enableSemanticLookup(TestConverseCache::embed, 0.95)) {
+            cache.converse(client, request("What is the capital of France?", 0.5F));
+
+            assertEquals(1, stub.converseRequests());
+            assertEquals(0, cache.getSemanticHits());
+        }
+    }
+
+    @Test
+    void answersSimilarQuestionsWithSemanticLookup() throws Exception {
+        try (var stub = new LocalBedrockStub(1_000, 0);
+                var client = stub.client();
+                var cache = ConverseCache.inMemory(100, Duration.ofHours(1))
+                        .enableSemanticLookup(TestConverseCache::embed, 0.95)) {
+            var first = cache.converse(client, request("What is the capital of France?", 0.5F));
+            var similar = cache.converse(client, request("what is the capital of france", 0.5F));
+            var different = cache.converse(client, request("What is the capital of Spain?", 0.5F));
+
+            assertEquals(text(first), text(similar));
+            assertNotEquals(text(first), text(different));
+            assertEquals(2, stub.converseRequests());
+            assertEquals(1, cache.getSemanticHits());
+        }
+    }
+
+    @Test
+    void matchesOnlyResponsesThatAreStillInMemory() throws Exception {
+        // The question is closest to the first answer and close enough to the second one.
+        var vectors = Map.of(
+                "First question", new float[] {1, 0},
+                "Second question", new float[] {0.8F, 0.6F},
+                "Question", new float[] {0.96F, 0.28F},
+                "Unrelated question", new float[] {0, 1});
+        try (var stub = new LocalBedrockStub(1_000, 0);
+                var client = stub.client();
+                var cache = ConverseCache.inMemory(2, Duration.ofHours(1))
+                        .enableSemanticLookup(vectors::get, 0.9)) {
+            cache.converse(client, request("First question", 0.5F));
+            var second = cache.converse(client, request("Second question", 0.5F));
+            // Evicts the first answer, which was used least recently.
+            cache.converse(client, request("Unrelated question", 0.9F));
+            var answer = cache.converse(client, request("Question", 0.5F));
+
+            assertEquals(text(second), text(answer));
+            assertEquals(3, stub.converseRequests());
+            assertEquals(1, cache.getSemanticHits());
+        }
+    }
+
+    // Embeds texts that differ only in case and punctuation to the same vector.
+    private static float[] embed(String text) {
+        return LocalBedrockStub.embeddingOf(text.toLowerCase(Locale.ROOT).replaceAll("\\p{Punct}", ""), 64);
+    }
+
+    private static ConverseRequest request(String text, float temperature) {
+        return ConverseRequest.builder()
+                .modelId(MODEL_ID)
+                .messages(Message.builder()
+                        .content(ContentBlock.fromText(text))
+                        .role(ConversationRole.USER)
+                        .build())
+                .inferenceConfig(config -> config
+                        .maxTokens(512)
+                        .temperature(temperature)
+                        .topP(0.9F))
+                .build();
+    }
+
+    private static String text(ConverseResponse response) {
+        return response.output().message().content().get(0).text();
+    }
+}
@@ -0,0 +1,126 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package libs;
+
+import com.example.bedrockruntime.libs.embeddings.EmbeddingCache;
+import com.example.bedrockruntime.libs.embeddings.EmbeddingPipeline;
+import com.example.bedrockruntime.libs.embeddings.EmbeddingPipeline.Document;
+import com.example.bedrockruntime.libs.embeddings.EmbeddingPipeline.EmbeddedChunk;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestEmbeddingPipeline {
+    private static final String MODEL_ID = "amazon.titan-embed-text-v2:0";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void chunksAtWhitespaceWithOverlap() {
+        var text = "alpha beta gamma delta epsilon zeta eta theta";
+
+        var chunks = EmbeddingPipeline.chunk(new Document("doc", text), 20, 6);
+
+        assertEquals("alpha beta gamma", chunks.get(0).text());
+        assertTrue(chunks.stream().allMatch(chunk -> chunk.text().length() <= 20));
+        assertTrue(chunks.get(chunks.size() - 1).text().endsWith("theta"));
+        // Each chunk starts within the end of the one before.
+        assertTrue(chunks.get(0).text().contains(chunks.get(1).text().split(" ")[0]));
+    }
+
+    @Test
+    void embedsEveryChunkOnceUnderThrottling() throws Exception {
+        try (var stub = new LocalBedrockStub(50, 20);
+                var client = stub.asyncClient()) {
+            var pipeline = new EmbeddingPipeline(client, MODEL_ID, 256, 1_000, 100, EmbeddingCache.inMemory(1_000), 16);
+            // 200 documents, but only 100 different texts.
+            var documents = IntStream.range(0, 200).mapToObj(i -> new Document("doc-" + i, "text number " + i % 100));
+
+            var embedded = new ArrayList<EmbeddedChunk>();
+            pipeline.embed(documents, embedded::add);
+
+            assertEquals(200, embedded.size());
+            assertEquals(0, pipeline.getFailedChunks());
+            assertEquals(100, stub.invokeRequests() - stub.throttledRequests());
+            assertEquals(100, pipeline.getCachedChunks() + pipeline.getSharedChunks());
+            assertTrue(pipeline.getThrottledRequests() > 0);
+            var first = embedded.stream().filter(chunk -> chunk.chunk().documentId().equals("doc-7")).findFirst();
+            assertArrayEquals(LocalBedrockStub.embeddingOf("text number 7", 256), first.orElseThrow().vector());
+        }
+    }
+
+    @Test
+    void countsChunksThatSharedAFailedRequest() throws Exception {
+        try (var stub = new LocalBedrockStub(1_000, 50);
+                var client = stub.asyncClient()) {
+            var pipeline = new EmbeddingPipeline(client, MODEL_ID, 256, 60_000, 100, EmbeddingCache.inMemory(10), 4);
+            var tooLong = "word ".repeat(LocalBedrockStub.MAX_INPUT_CHARS / 5 + 1);
+            var documents = Stream.of(new Document("a", tooLong), new Document("b", tooLong));
+
+            var embedded = new ArrayList<EmbeddedChunk>();
+            pipeline.embed(documents, embedded::add);
+
+            assertEquals(0, embedded.size());
+            assertEquals(1, stub.invokeRequests());
+            assertEquals(1, pipeline.getSharedChunks());
+            assertEquals(2, pipeline.getFailedChunks());
+        }
+    }
+
+    @Test
+    void dropsARecordWithATornHeader() throws Exception {
+        Path file = directory.resolve("embeddings.bin");
+        var key = EmbeddingCache.key(MODEL_ID, 3, true, "text");
+        try (var cache = EmbeddingCache.open(file, 10)) {
+            cache.put(key, new float[]{1, 2, 3});
+        }
+        long recordBytes = Files.size(file);
+        // A torn header whose dimensions would make the next record start where this one does.
+        var torn = ByteBuffer.allocate(64).order(ByteOrder.LITTLE_ENDIAN).position(32).putInt(-9);
+        Files.write(file, torn.array(), StandardOpenOption.APPEND);
+
+        try (var cache = EmbeddingCache.open(file, 10)) {
+            assertEquals(recordBytes, Files.size(file));
+            assertArrayEquals(new float[]{1, 2, 3}, cache.get(key));
+        }
+    }
+
+    @Test
+    void readsEmbeddingsBackFromDisk() throws Exception {
+        Path file = directory.resolve("embeddings.bin");
+        List<Document> documents = List.of(new Document("a", "first text"), new Document("b", "second text"));
+        try (var stub = new LocalBedrockStub(1_000, 0);
+                var client = stub.asyncClient()) {
+            try (var cache = EmbeddingCache.open(file, 10)) {
+                new EmbeddingPipeline(client, MODEL_ID, 256, 1_000, 100, cache, 4)
+                        .embed(documents.stream(), chunk -> { });
+            }
+
+            try (var cache = EmbeddingCache.open(file, 10)) {
+                var pipeline = new EmbeddingPipeline(client, MODEL_ID, 256, 1_000, 100, cache, 4);
+                var embedded = new ArrayList<EmbeddedChunk>();
+                pipeline.embed(Stream.concat(documents.stream(), documents.stream()), embedded::add);
+
+                assertEquals(4, embedded.size());
+                assertEquals(2, stub.invokeRequests());
+                assertEquals(2, cache.getDiskHits());
+                assertEquals(2, cache.getMemoryHits());
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package libs;
+
+import com.example.bedrockruntime.libs.embeddings.EmbeddingStore;
+import com.example.bedrockruntime.libs.embeddings.HnswIndex;
+import com.example.bedrockruntime.libs.embeddings.Match;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestEmbeddingStore {
+    private static final int DIMENSIONS = 64;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void findsTheMostSimilarVectors() throws IOException {
+        try (var store = EmbeddingStore.open(directory.resolve("vectors.bin"), 3)) {
+            store.add(new float[]{1, 0, 0});
+            store.add(new float[]{0, 1, 0});
+            store.add(new float[]{2, 2, 0});
+
+            List<Match> matches = store.search(new float[]{1, 0.1f, 0}, 2);
+
+            assertEquals(0, matches.get(0).id());
+            assertEquals(2, matches.get(1).id());
+            assertEquals(1.1 / Math.sqrt(2 * 1.01), matches.get(1).score(), 1e-5);
+        }
+    }
+
+    @Test
+    void reopensTheStoredVectors() throws IOException {
+        Path file = directory.resolve("vectors.bin");
+        var random = new Random(7);
+        float[] last = null;
+        try (var store = EmbeddingStore.open(file, DIMENSIONS)) {
+            for (int i = 0; i < 1_000; i++) {
+                last = randomVector(random);
+                store.add(last);
+            }
+        }
+
+        try (var store = EmbeddingStore.open(file, DIMENSIONS)) {
+            assertEquals(1_000, store.size());
+            assertEquals(999, store.search(last, 1).get(0).id());
+            assertEquals(1_000, store.add(randomVector(random)));
+        }
+    }
+
+    @Test
+    void sizesTheFirstSegmentFromTheExpectedCount() throws IOException {
+        Path file = directory.resolve("vectors.bin");
+        var random = new Random(11);
+        try (var store = EmbeddingStore.open(file, DIMENSIONS, 100)) {
+            for (int i = 0; i < 100; i++) {
+                store.add(randomVector(random));
+            }
+        }
+        assertEquals(64 + 100L * DIMENSIONS * Float.BYTES, Files.size(file));
+
+        // The stored size of the first segment wins over the expected count, and the store grows past it.
+        float[] last = null;
+        try (var store = EmbeddingStore.open(file, DIMENSIONS, 10_000)) {
+            for (int i = 0; i < 50; i++) {
+                last = randomVector(random);
+                store.add(last);
+            }
+            assertEquals(149, store.search(last, 1).get(0).id());
+        }
+        try (var store = EmbeddingStore.open(file, DIMENSIONS)) {
+            assertEquals(150, store.size());
+            assertEquals(149, store.search(last, 1).get(0).id());
+        }
+    }
+
+    @Test
+    void approximateSearchFindsMostNeighbors() throws IOException {
+        try (var store = EmbeddingStore.open(directory.resolve("vectors.bin"), DIMENSIONS)) {
+            var random = new Random(42);
+            for (int i = 0; i < 5_000; i++) {
+                store.add(randomVector(random));
+            }
+            var index = new HnswIndex(store, 16, 100);
+            index.update();
+
+            int found = 0;
+            for (int q = 0; q < 50; q++) {
+                float[] query = randomVector(random);
+                var exact = ids(store.search(query, 10));
+                for (Match match : index.search(query, 10, 128)) {
+                    if (exact.contains(match.id())) {
+                        found++;
+                    }
+                }
+            }
+
+            assertTrue(found >= 0.9 * 50 * 10, "recall was " + found / 500.0);
+        }
+    }
+
+    @Test
+    void loadsASavedIndex() throws IOException {
+        try (var store = EmbeddingStore.open(directory.resolve("vectors.bin"), DIMENSIONS)) {
+            var random = new Random(3);
+            for (int i = 0; i < 2_000; i++) {
+                store.add(randomVector(random));
+            }
+            var index = new HnswIndex(store, 8, 50);
+            index.update();
+            index.save(directory.resolve("index.bin"));
+
+            var loaded = HnswIndex.load(store, directory.resolve("index.bin"), 50);
+            float[] query = randomVector(random);
+
+            assertEquals(2_000, loaded.size());
+            assertArrayEquals(index.search(query, 10, 40).toArray(), loaded.search(query, 10, 40).toArray());
+        }
+    }
+
+    private static HashSet<Integer> ids(List<Match> matches) {
+        return matches.stream().map(Match::id).collect(Collectors.toCollection(HashSet::new));
+    }
+
+    private static float[] randomVector(Random random) {
+        var vector = new float[DIMENSIONS];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+}
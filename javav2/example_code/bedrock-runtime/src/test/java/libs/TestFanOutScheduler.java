@@ -0,0 +1,148 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package libs;
+
+import com.example.bedrockruntime.libs.scheduling.ComparisonReport;
+import com.example.bedrockruntime.libs.scheduling.FanOutScheduler;
+import com.example.bedrockruntime.libs.scheduling.Job;
+import com.example.bedrockruntime.libs.scheduling.JobResult;
+import com.example.bedrockruntime.libs.scheduling.RateLimit;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.bedrockruntime.model.InferenceConfiguration;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestFanOutScheduler {
+    private static final InferenceConfiguration CONFIG = InferenceConfiguration.builder().maxTokens(512).build();
+    private static final RateLimit UNLIMITED = new RateLimit(1_000, 100);
+
+    @Test
+    void runsEveryModelAtOnce() throws Exception {
+        try (var stub = new LocalBedrockStub(1_000, 200);
+                var client = stub.asyncClient()) {
+            var scheduler = new FanOutScheduler(client, Map.of(), UNLIMITED, 16, CONFIG);
+            var models = List.of("model-a", "model-b", "model-c");
+            var prompts = List.of("first", "second", "third", "fourth");
+
+            var results = scheduler.run(Job.forEachModel(models, prompts));
+
+            // Every request takes 200 ms, so all 12 overlap. Timing the run would also measure the client's warm-up.
+            assertEquals(12, stub.maxRunning());
+            assertTrue(results.stream().allMatch(JobResult::succeeded));
+            assertEquals("model-b", results.get(1).job().modelId());
+            assertTrue(results.get(1).text().endsWith("to: first"));
+            var report = ComparisonReport.of(results);
+            assertEquals(models, report.models().stream().map(ComparisonReport.ModelStats::modelId).toList());
+            assertTrue(report.models().stream().allMatch(model -> model.succeeded() == 4));
+            assertTrue(report.models().get(0).p50LatencyMillis() >= 200);
+        }
+    }
+
+    @Test
+    void keepsEachModelToItsRateLimit() throws Exception {
+        try (var stub = new LocalBedrockStub(1_000, 0);
+                var client = stub.asyncClient()) {
+            var scheduler = new FanOutScheduler(client, Map.of("slow-model", new RateLimit(10, 1)), UNLIMITED, 16,
+                    CONFIG);
+            var jobs = Job.forEachModel(List.of("slow-model", "fast-model"), Collections.nCopies(11, "prompt"));
+
+            var results = scheduler.run(jobs);
+
+            // The slow model gets a request every 100 ms after the first.
+            assertTrue(lastCompleted(results, "slow-model") >= 950);
+            // The fast model isn't held up by the slow one: it is done before the slow model's third request,
+            // which can't be sent until 200 ms in.
+            assertTrue(lastCompleted(results, "fast-model") < completed(results, "slow-model").get(2));
+        }
+    }
+
+    @Test
+    void retriesThrottledRequests() throws Exception {
+        try (var stub = new LocalBedrockStub(10, 0);
+                var client = stub.asyncClient()) {
+            var scheduler = new FanOutScheduler(client, Map.of(), UNLIMITED, 16, CONFIG);
+            var jobs = IntStream.range(0, 20).mapToObj(i -> Job.of("model-a", "prompt " + i)).toList();
+
+            var results = scheduler.run(jobs);
+
+            assertTrue(results.stream().allMatch(JobResult::succeeded));
+            assertTrue(scheduler.getThrottledRequests() > 0);
+            assertEquals(scheduler.getThrottledRequests(), stub.throttledRequests());
+            assertEquals(20, stub.converseRequests() - stub.throttledRequests());
+            assertEquals(scheduler.getThrottledRequests(), ComparisonReport.of(results).models().get(0).retries());
+        }
+    }
+
+    @Test
+    void sendsUrgentJobsFirstAndFailsMissedDeadlines() throws Exception {
+        try (var stub = new LocalBedrockStub(1_000, 0);
+                var client = stub.asyncClient()) {
+            // One request every 200 ms.
+            var scheduler = new FanOutScheduler(client, Map.of(), new RateLimit(5, 1), 16, CONFIG);
+            var jobs = new ArrayList<Job>();
+            for (int i = 0; i < 3; i++) {
+                jobs.add(Job.of("model-a", "background " + i));
+            }
+            jobs.add(new Job("model-a", "urgent", 1, Duration.ofMillis(300)));
+            jobs.add(new Job("model-a", "soon", 0, Duration.ofMillis(300)));
+            jobs.add(new Job("model-a", "too late", 0, Duration.ofMillis(300)));
+
+            var results = scheduler.run(jobs);
+
+            // The urgent job goes first, then the jobs with deadlines, which only one of them can meet.
+            assertTrue(results.get(3).completedMillis() < 100);
+            assertTrue(results.get(4).succeeded());
+            assertInstanceOf(TimeoutException.class, results.get(5).error());
+            assertTrue(results.subList(0, 3).stream().allMatch(JobResult::succeeded));
+            assertTrue(results.subList(0, 3).stream().allMatch(result -> result.completedMillis() >= 350));
+            assertEquals(1, ComparisonReport.of(results).models().get(0).missedDeadlines());
+        }
+    }
+
+    @Test
+    void failsJobsAsSoonAsTheirDeadlinePasses() throws Exception {
+        try (var stub = new LocalBedrockStub(1_000, 0);
+                var client = stub.asyncClient()) {
+            // One request a second, so the job with the deadline waits behind the two urgent ones.
+            var scheduler = new FanOutScheduler(client, Map.of(), new RateLimit(1, 1), 16, CONFIG);
+            var jobs = List.of(
+                    new Job("model-a", "urgent", 1, null),
+                    new Job("model-a", "also urgent", 1, null),
+                    new Job("model-a", "soon", 0, Duration.ofMillis(100)));
+
+            var results = scheduler.run(jobs);
+
+            assertInstanceOf(TimeoutException.class, results.get(2).error());
+            // Not when it reaches the head of the queue, a second later.
+            assertTrue(results.get(2).completedMillis() < 500);
+            assertTrue(results.get(1).succeeded());
+        }
+    }
+
+    private static List<Double> completed(List<JobResult> results, String modelId) {
+        return results.stream()
+                .filter(result -> result.job().modelId().equals(modelId))
+                .map(JobResult::completedMillis)
+                .sorted()
+                .toList();
+    }
+
+    private static double lastCompleted(List<JobResult> results, String modelId) {
+        return results.stream()
+                .filter(result -> result.job().modelId().equals(modelId))
+                .mapToDouble(JobResult::completedMillis)
+                .max()
+                .orElseThrow();
+    }
+}
@@ -0,0 +1,133 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package libs;
+
+import com.example.bedrockruntime.libs.streaming.ResponseStreamAssembler;
+import com.example.bedrockruntime.libs.streaming.StreamFormat;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.bedrockruntime.model.PayloadPart;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestResponseStreamAssembler {
+
+    @Test
+    void assemblesClaudeDeltas() {
+        var pieces = new ArrayList<String>();
+        var assembler = new ResponseStreamAssembler(StreamFormat.ANTHROPIC_CLAUDE, text -> pieces.add(text.toString()));
+        var subscription = new CountingSubscription();
+        assembler.handler();
+        assembler.onSubscribe(subscription);
+
+        send(assembler, """
+                {"type":"message_start","message":{"id":"msg","role":"assistant","content":[]}}""");
+        send(assembler, """
+                {"type":"content_block_start","index":0,"content_block":{"type":"text","text":""}}""");
+        send(assembler, """
+                {"type":"content_block_delta","index":0,"delta":{"type":"text_delta","text":"Hello, "}}""");
+        send(assembler, """
+                {"type":"content_block_delta","index":0,"delta":{"type":"text_delta","text":"\\"world\\" \\u00e9\\n"}}""");
+        send(assembler, """
+                {"type":"message_delta","delta":{"stop_reason":"end_turn"},"usage":{"output_tokens":5}}""");
+        send(assembler, """
+                {"type":"message_stop","amazon-bedrock-invocationMetrics":{"inputTokenCount":9,"outputTokenCount":5}}""");
+        assembler.onComplete();
+
+        assertEquals("Hello, \"world\" é\n", assembler.text().join());
+        assertEquals(List.of("Hello, ", "\"world\" é\n"), pieces);
+        assertEquals(2, assembler.metrics().deltas());
+        assertEquals(5, assembler.metrics().outputTokens());
+        // One event was requested at the start and one after each event.
+        assertEquals(7, subscription.requested);
+    }
+
+    @Test
+    void readsEveryModelFamily() {
+        assertEquals("ab", assemble(StreamFormat.META_LLAMA,
+                "{\"generation\":\"a\",\"prompt_token_count\":8,\"generation_token_count\":1,\"stop_reason\":null}",
+                "{\"generation\":\"b\",\"prompt_token_count\":null,\"generation_token_count\":2,\"stop_reason\":\"stop\"}"));
+        assertEquals("ab", assemble(StreamFormat.MISTRAL,
+                "{\"outputs\":[{\"text\":\"a\",\"stop_reason\":null}]}",
+                "{\"outputs\":[{\"text\":\"b\",\"stop_reason\":\"stop\"}]}"));
+        assertEquals("ab", assemble(StreamFormat.AMAZON_TITAN_TEXT,
+                "{\"outputText\":\"a\",\"index\":0,\"totalOutputTextTokenCount\":1,\"completionReason\":null}",
+                "{\"outputText\":\"b\",\"index\":0,\"totalOutputTextTokenCount\":2,\"completionReason\":\"FINISH\"}"));
+        assertEquals("ab", assemble(StreamFormat.COHERE_COMMAND,
+                "{\"generations\":[{\"id\":\"1\",\"text\":\"a\",\"finish_reason\":null}]}",
+                "{\"generations\":[{\"id\":\"1\",\"text\":\"b\",\"finish_reason\":\"COMPLETE\"}]}"));
+        // The last Command R event repeats the whole text in its response, which must not be added again.
+        assertEquals("ab", assemble(StreamFormat.COHERE_COMMAND_R,
+                "{\"is_finished\":false,\"event_type\":\"text-generation\",\"text\":\"a\"}",
+                "{\"is_finished\":false,\"event_type\":\"text-generation\",\"text\":\"b\"}",
+                "{\"is_finished\":true,\"event_type\":\"stream-end\",\"response\":{\"text\":\"ab\"}}"));
+    }
+
+    @Test
+    void requestsMoreOnlyAfterTheListenerReturns() {
+        var subscription = new CountingSubscription();
+        var requestedDuringListener = new ArrayList<Long>();
+        var assembler = new ResponseStreamAssembler(StreamFormat.META_LLAMA,
+                text -> requestedDuringListener.add(subscription.requested));
+        assembler.onSubscribe(subscription);
+
+        send(assembler, "{\"generation\":\"a\"}");
+        send(assembler, "{\"generation\":\"b\"}");
+
+        // While the listener runs, nothing more than the event it is handling has been requested.
+        assertEquals(List.of(1L, 2L), requestedDuringListener);
+    }
+
+    @Test
+    void cancelsTheStream() {
+        var subscription = new CountingSubscription();
+        var assembler = new ResponseStreamAssembler(StreamFormat.META_LLAMA, text -> { });
+        assembler.onSubscribe(subscription);
+        send(assembler, "{\"generation\":\"a\"}");
+
+        assembler.cancel();
+        send(assembler, "{\"generation\":\"b\"}");
+
+        assertTrue(subscription.cancelled);
+        assertEquals(2, subscription.requested);
+        // join() throws the CancellationException itself rather than wrapping it.
+        assertThrows(CancellationException.class, () -> assembler.text().join());
+    }
+
+    private static String assemble(StreamFormat format, String... chunks) {
+        var assembler = new ResponseStreamAssembler(format, text -> { });
+        assembler.onSubscribe(new CountingSubscription());
+        for (String chunk : chunks) {
+            send(assembler, chunk);
+        }
+        assembler.onComplete();
+        return assembler.text().join();
+    }
+
+    private static void send(ResponseStreamAssembler assembler, String json) {
+        assembler.onNext(PayloadPart.builder().bytes(SdkBytes.fromUtf8String(json)).build());
+    }
+
+    private static final class CountingSubscription implements Subscription {
+        private long requested;
+        private boolean cancelled;
+
+        @Override
+        public void request(long n) {
+            requested += n;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+}
@@ -0,0 +1,525 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.cloudwatch;
+
+import software.amazon.awssdk.core.exception.SdkServiceException;
+import software.amazon.awssdk.services.cloudwatch.CloudWatchAsyncClient;
+import software.amazon.awssdk.services.cloudwatch.model.Dimension;
+import software.amazon.awssdk.services.cloudwatch.model.MetricDatum;
+import software.amazon.awssdk.services.cloudwatch.model.PutMetricDataRequest;
+import software.amazon.awssdk.services.cloudwatch.model.StandardUnit;
+import software.amazon.awssdk.services.cloudwatch.model.StatisticSet;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Publishes metric values to Amazon CloudWatch in batches with a
+ * {@link CloudWatchAsyncClient}.
+ *
+ * {@link #record} puts a value into a bounded, lock-free ring and returns
+ * without calling CloudWatch. A single publisher thread drains the ring and
+ * aggregates the values of each metric, as a {@link StatisticSet} or as the
+ * values and counts arrays that CloudWatch uses for percentiles. Every
+ * {@code flushMillis} it sends the aggregates in PutMetricData requests of up
+ * to 1000 datums and under 1 MB. Memory is bounded by the ring capacity and
+ * the number of distinct metrics, whatever the rate of values.
+ *
+ * At most {@code maxInFlight} requests are outstanding. Throttled and failed
+ * requests are retried with exponential backoff, and while they wait the
+ * publisher thread stops draining. When the ring is full, {@link #record}
+ * either waits for room ({@link OverflowPolicy#BLOCK}) or drops the value
+ * ({@link OverflowPolicy#DROP}).
+ */
+public class BufferedMetricPublisher implements AutoCloseable {
+    public static final int MAX_DATUMS_PER_REQUEST = 1000;
+    public static final int MAX_VALUES_PER_DATUM = 150;
+    // PutMetricData accepts up to 1 MB; this leaves room for the namespace and the HTTP request.
+    private static final int MAX_REQUEST_BYTES = 1_000_000 - 16_384;
+    private static final String MEMBER_PREFIX = "&MetricData.member.1000.";
+    private static final int MAX_METRICS = 10_000;
+    private static final int MAX_ATTEMPTS = 8;
+    private static final long BASE_BACKOFF_MILLIS = 100;
+    private static final long MAX_BACKOFF_MILLIS = 10_000;
+
+    /**
+     * What {@link #record} does when the ring is full, which happens when
+     * values arrive faster than CloudWatch accepts them.
+     */
+    public enum OverflowPolicy {
+        // Wait until the publisher thread makes room. This slows down the callers.
+        BLOCK,
+        // Drop the value and count it in getDropped().
+        DROP
+    }
+
+    /**
+     * How the values of a metric are combined within a flush interval.
+     */
+    public enum Aggregation {
+        // Sample count, sum, minimum and maximum. Cheapest, but CloudWatch cannot compute percentiles.
+        STATISTIC_SET,
+        // Each distinct value and how often it occurred, up to 150 values per datum. Supports percentiles.
+        DISTRIBUTION
+    }
+
+    private final CloudWatchAsyncClient cloudWatchClient;
+    private final String namespace;
+    private final Aggregation aggregation;
+    private final OverflowPolicy overflowPolicy;
+    private final long flushNanos;
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+    private final Thread publisherThread;
+
+    // The ring. A slot may be written when its sequence equals the tail and read when it is one more than the head.
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final MetricKey[] keys;
+    private final double[] values;
+    private final AtomicLong tail = new AtomicLong();
+    private long head;
+
+    // Owned by the publisher thread.
+    private final Map<MetricKey, Aggregate> aggregates = new HashMap<>();
+    private final List<MetricDatum> ready = new ArrayList<>();
+    private volatile boolean closed;
+
+    private final LongAdder recorded = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder datumsSent = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder throttledRequests = new LongAdder();
+    private final LongAdder failedDatums = new LongAdder();
+
+    public BufferedMetricPublisher(CloudWatchAsyncClient cloudWatchClient, String namespace) {
+        this(cloudWatchClient, namespace, Aggregation.DISTRIBUTION, OverflowPolicy.BLOCK, 1 << 16, 10_000, 4);
+    }
+
+    /**
+     * @param ringCapacity the number of values that can wait for the publisher thread, rounded up to a power of two
+     * @param flushMillis  how long values are aggregated before they are sent
+     * @param maxInFlight  the maximum number of outstanding PutMetricData requests
+     */
+    public BufferedMetricPublisher(CloudWatchAsyncClient cloudWatchClient, String namespace, Aggregation aggregation,
+            OverflowPolicy overflowPolicy, int ringCapacity, long flushMillis, int maxInFlight) {
+        if (ringCapacity < 2) {
+            throw new IllegalArgumentException("ringCapacity must be at least 2");
+        }
+        this.cloudWatchClient = cloudWatchClient;
+        this.namespace = namespace;
+        this.aggregation = aggregation;
+        this.overflowPolicy = overflowPolicy;
+        this.flushNanos = TimeUnit.MILLISECONDS.toNanos(flushMillis);
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+
+        int capacity = Integer.highestOneBit(ringCapacity - 1) << 1;
+        this.mask = capacity - 1;
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+        this.keys = new MetricKey[capacity];
+        this.values = new double[capacity];
+
+        this.publisherThread = new Thread(this::run, "cloudwatch-metric-publisher");
+        publisherThread.setDaemon(true);
+        publisherThread.start();
+    }
+
+    /**
+     * Returns the key of a metric. Create keys once and reuse them, so that
+     * recording a value does not allocate.
+     */
+    public static MetricKey metric(String metricName, StandardUnit unit, Dimension... dimensions) {
+        return new MetricKey(metricName, unit, List.of(dimensions));
+    }
+
+    /**
+     * Queues a value of the metric. Returns false if the value was dropped
+     * because the ring is full and the policy is DROP, or the publisher is closed.
+     */
+    public boolean record(MetricKey metric, double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException("CloudWatch does not accept " + value);
+        }
+        while (!closed) {
+            long position = tail.get();
+            int slot = (int) position & mask;
+            long difference = sequences.get(slot) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    keys[slot] = metric;
+                    values[slot] = value;
+                    // Publishes the slot to the publisher thread.
+                    sequences.lazySet(slot, position + 1);
+                    recorded.increment();
+                    return true;
+                }
+            } else if (difference < 0) {
+                // The ring is full.
+                if (overflowPolicy == OverflowPolicy.DROP) {
+                    break;
+                }
+                LockSupport.parkNanos(50_000);
+            }
+        }
+        dropped.increment();
+        return false;
+    }
+
+    private void run() {
+        long nextFlush = System.nanoTime() + flushNanos;
+        while (true) {
+            boolean closing = closed;
+            int drained = drain();
+            // A value is only lost if its slot was claimed but not yet written, so wait for those too.
+            if (closing && drained == 0 && tail.get() == head) {
+                flushAggregates();
+                sendReady(true);
+                return;
+            }
+            if (System.nanoTime() - nextFlush >= 0) {
+                flushAggregates();
+                sendReady(true);
+                nextFlush = System.nanoTime() + flushNanos;
+            } else if (ready.size() >= MAX_DATUMS_PER_REQUEST) {
+                // Full requests do not wait for the timer.
+                sendReady(false);
+            }
+            if (drained == 0) {
+                LockSupport.parkNanos(1_000_000);
+            }
+        }
+    }
+
+    // Moves the values in the ring into the aggregates. Returns the number of values moved.
+    private int drain() {
+        int drained = 0;
+        while (drained < 1 << 16) {
+            int slot = (int) head & mask;
+            if (sequences.get(slot) != head + 1) {
+                break;
+            }
+            MetricKey key = keys[slot];
+            double value = values[slot];
+            keys[slot] = null;
+            sequences.lazySet(slot, head + mask + 1);
+            head++;
+            drained++;
+
+            Aggregate aggregate = aggregates.get(key);
+            if (aggregate == null) {
+                if (aggregates.size() >= MAX_METRICS) {
+                    dropped.increment();
+                    continue;
+                }
+                aggregate = new Aggregate(key);
+                aggregates.put(key, aggregate);
+            }
+            aggregate.add(value);
+        }
+        return drained;
+    }
+
+    // Turns every aggregate into datums and removes metrics that had no values in this interval.
+    private void flushAggregates() {
+        Instant timestamp = Instant.now();
+        Iterator<Aggregate> iterator = aggregates.values().iterator();
+        while (iterator.hasNext()) {
+            Aggregate aggregate = iterator.next();
+            if (aggregate.isEmpty()) {
+                iterator.remove();
+            } else {
+                aggregate.flush(timestamp);
+            }
+        }
+    }
+
+    // Sends the ready datums in requests of up to 1000 datums and under 1 MB. Unless all is
+    // set, datums that do not fill a request are kept for later.
+    private void sendReady(boolean all) {
+        int start = 0;
+        int bytes = 0;
+        for (int i = 0; i < ready.size(); i++) {
+            int datumBytes = encodedBytes(ready.get(i));
+            if (i - start == MAX_DATUMS_PER_REQUEST || bytes + datumBytes > MAX_REQUEST_BYTES) {
+                send(new ArrayList<>(ready.subList(start, i)));
+                start = i;
+                bytes = 0;
+            }
+            bytes += datumBytes;
+        }
+        // A request that is already full is sent now instead of waiting for one more datum.
+        if (start < ready.size() && (all || ready.size() - start == MAX_DATUMS_PER_REQUEST)) {
+            send(new ArrayList<>(ready.subList(start, ready.size())));
+            start = ready.size();
+        }
+        ready.subList(0, start).clear();
+    }
+
+    // Waits for a free request slot, which holds up the publisher thread while CloudWatch is slow or throttling.
+    private void send(List<MetricDatum> batch) {
+        inFlight.acquireUninterruptibly();
+        put(batch, 1).whenComplete((ignored, err) -> inFlight.release());
+    }
+
+    private CompletableFuture<Void> put(List<MetricDatum> batch, int attempt) {
+        requests.increment();
+        return cloudWatchClient.putMetricData(PutMetricDataRequest.builder()
+                .namespace(namespace)
+                .metricData(batch)
+                .build())
+                .handle((response, err) -> {
+                    if (err == null) {
+                        datumsSent.add(batch.size());
+                        return CompletableFuture.<Void>completedFuture(null);
+                    }
+                    Throwable cause = err instanceof CompletionException ? err.getCause() : err;
+                    boolean throttled = cause instanceof SdkServiceException
+                            && ((SdkServiceException) cause).isThrottlingException();
+                    boolean retryable = throttled || !(cause instanceof SdkServiceException)
+                            || ((SdkServiceException) cause).statusCode() >= 500;
+                    if (throttled) {
+                        throttledRequests.increment();
+                    }
+                    if (!retryable || attempt >= MAX_ATTEMPTS) {
+                        failedDatums.add(batch.size());
+                        System.err.println("PutMetricData failed for " + batch.size() + " datums: "
+                                + cause.getMessage());
+                        return CompletableFuture.<Void>completedFuture(null);
+                    }
+                    long ceiling = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << attempt);
+                    long delay = ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1);
+                    return CompletableFuture.supplyAsync(() -> null,
+                            CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS))
+                            .thenCompose(ignored -> put(batch, attempt + 1));
+                })
+                .thenCompose(future -> future);
+    }
+
+    /**
+     * Returns the size of the datum in a PutMetricData request with the query
+     * protocol, where every field is a form-encoded MetricData.member.N.Field=value
+     * pair. N is counted as four digits, the most a request can have.
+     */
+    private static int encodedBytes(MetricDatum datum) {
+        int bytes = field("MetricName", datum.metricName()) + field("Unit", datum.unitAsString())
+                + field("Timestamp", "2024-01-01T00:00:00.000Z");
+        for (int i = 0; i < datum.dimensions().size(); i++) {
+            Dimension dimension = datum.dimensions().get(i);
+            bytes += field("Dimensions.member." + (i + 1) + ".Name", dimension.name())
+                    + field("Dimensions.member." + (i + 1) + ".Value", dimension.value());
+        }
+        StatisticSet statistics = datum.statisticValues();
+        if (statistics != null) {
+            bytes += field("StatisticValues.SampleCount", Double.toString(statistics.sampleCount()))
+                    + field("StatisticValues.Sum", Double.toString(statistics.sum()))
+                    + field("StatisticValues.Minimum", Double.toString(statistics.minimum()))
+                    + field("StatisticValues.Maximum", Double.toString(statistics.maximum()));
+        }
+        for (int i = 0; i < datum.values().size(); i++) {
+            bytes += field("Values.member." + (i + 1), Double.toString(datum.values().get(i)))
+                    + field("Counts.member." + (i + 1), Double.toString(datum.counts().get(i)));
+        }
+        return bytes;
+    }
+
+    private static int field(String name, String value) {
+        int bytes = MEMBER_PREFIX.length() + name.length() + 1;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            boolean unreserved = (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9')
+                    || b == '-' || b == '_' || b == '.' || b == '~';
+            bytes += unreserved ? 1 : 3;
+        }
+        return bytes;
+    }
+
+    // Sends what has been recorded, then waits until every request has completed.
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        LockSupport.unpark(publisherThread);
+        try {
+            publisherThread.join();
+            inFlight.acquire(maxInFlight);
+            inFlight.release(maxInFlight);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long getRecorded() {
+        return recorded.sum();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public long getDatumsSent() {
+        return datumsSent.sum();
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getThrottledRequests() {
+        return throttledRequests.sum();
+    }
+
+    public long getFailedDatums() {
+        return failedDatums.sum();
+    }
+
+    /**
+     * Identifies a metric by its name, unit and dimensions.
+     */
+    public static final class MetricKey {
+        private final String metricName;
+        private final StandardUnit unit;
+        private final List<Dimension> dimensions;
+        private final int hash;
+
+        private MetricKey(String metricName, StandardUnit unit, List<Dimension> dimensions) {
+            this.metricName = Objects.requireNonNull(metricName);
+            this.unit = unit;
+            this.dimensions = dimensions;
+            this.hash = Objects.hash(metricName, unit, dimensions);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof MetricKey)) {
+                return false;
+            }
+            MetricKey key = (MetricKey) other;
+            return metricName.equals(key.metricName) && unit == key.unit && dimensions.equals(key.dimensions);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    // The values of one metric in the current interval.
+    private final class Aggregate {
+        private final MetricKey key;
+        private double count;
+        private double sum;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+        // An open-addressing table from distinct value to count, used for DISTRIBUTION.
+        private double[] distinct;
+        private double[] counts;
+        private int size;
+
+        private Aggregate(MetricKey key) {
+            this.key = key;
+            if (aggregation == Aggregation.DISTRIBUTION) {
+                distinct = new double[256];
+                counts = new double[256];
+            }
+        }
+
+        private boolean isEmpty() {
+            return count == 0;
+        }
+
+        private void add(double value) {
+            if (distinct != null && !addDistinct(value)) {
+                // The datum is full, so it is sent now and the value starts the next one.
+                ready.add(distributionDatum(Instant.now()));
+                addDistinct(value);
+            }
+            count++;
+            sum += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+
+        // Returns false if the value is new and the table already holds 150 values.
+        private boolean addDistinct(double value) {
+            int slot = Double.hashCode(value) * 0x9E3779B9 >>> 24;
+            while (counts[slot] != 0 && distinct[slot] != value) {
+                slot = (slot + 1) & 255;
+            }
+            if (counts[slot] == 0) {
+                if (size == MAX_VALUES_PER_DATUM) {
+                    return false;
+                }
+                distinct[slot] = value;
+                size++;
+            }
+            counts[slot]++;
+            return true;
+        }
+
+        private void flush(Instant timestamp) {
+            if (distinct == null) {
+                ready.add(MetricDatum.builder()
+                        .metricName(key.metricName)
+                        .unit(key.unit)
+                        .dimensions(key.dimensions)
+                        .timestamp(timestamp)
+                        .statisticValues(StatisticSet.builder()
+                                .sampleCount(count)
+                                .sum(sum)
+                                .minimum(min)
+                                .maximum(max)
+                                .build())
+                        .build());
+            } else if (size > 0) {
+                ready.add(distributionDatum(timestamp));
+            }
+            count = 0;
+            sum = 0;
+            min = Double.POSITIVE_INFINITY;
+            max = Double.NEGATIVE_INFINITY;
+        }
+
+        // Returns the distinct values as a datum and clears the table.
+        private MetricDatum distributionDatum(Instant timestamp) {
+            List<Double> valueList = new ArrayList<>(size);
+            List<Double> countList = new ArrayList<>(size);
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] != 0) {
+                    valueList.add(distinct[i]);
+                    countList.add(counts[i]);
+                }
+            }
+            Arrays.fill(counts, 0);
+            size = 0;
+            return MetricDatum.builder()
+                    .metricName(key.metricName)
+                    .unit(key.unit)
+                    .dimensions(key.dimensions)
+                    .timestamp(timestamp)
+                    .values(valueList)
+                    .counts(countList)
+                    .build();
+        }
+    }
+}
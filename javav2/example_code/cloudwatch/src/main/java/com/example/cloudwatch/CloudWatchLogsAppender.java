@@ -0,0 +1,105 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.cloudwatch;
+
+import org.apache.logging.log4j.core.Appender;
+import org.apache.logging.log4j.core.Core;
+import org.apache.logging.log4j.core.Filter;
+import org.apache.logging.log4j.core.Layout;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.appender.AbstractAppender;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.config.plugins.PluginAttribute;
+import org.apache.logging.log4j.core.config.plugins.PluginElement;
+import org.apache.logging.log4j.core.config.plugins.PluginFactory;
+import software.amazon.awssdk.services.cloudwatchlogs.CloudWatchLogsAsyncClient;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A Log4j 2 appender that sends log events to a CloudWatch Logs stream
+ * through a {@link LogShipper}. Appending never blocks the logging thread:
+ * when CloudWatch Logs falls behind, events are spilled to disk if a
+ * spillDirectory is set, and dropped otherwise. Applications that log
+ * through SLF4J reach this appender through the log4j-slf4j2-impl binding.
+ *
+ * <pre>
+ * &lt;CloudWatchLogsAppender name="CloudWatch" logGroupName="my-app" logStreamName="web-1"
+ *         spillDirectory="/var/tmp/my-app"&gt;
+ *     &lt;PatternLayout pattern="%d{ISO8601} %p %c - %m"/&gt;
+ * &lt;/CloudWatchLogsAppender&gt;
+ * </pre>
+ *
+ * Do not route the DEBUG logs of software.amazon.awssdk to this appender,
+ * because every request it sends would log more events to send.
+ */
+@Plugin(
+        name = "CloudWatchLogsAppender",
+        category = Core.CATEGORY_NAME,
+        elementType = Appender.ELEMENT_TYPE)
+public class CloudWatchLogsAppender extends AbstractAppender {
+
+    private final LogShipper shipper;
+    private final String logStreamName;
+    // The client created by the plugin factory, closed when the appender stops.
+    private final CloudWatchLogsAsyncClient ownedClient;
+
+    protected CloudWatchLogsAppender(String name, Filter filter, Layout<? extends Serializable> layout,
+            LogShipper shipper, String logStreamName, CloudWatchLogsAsyncClient ownedClient) {
+        super(name, filter, layout);
+        this.shipper = shipper;
+        this.logStreamName = logStreamName;
+        this.ownedClient = ownedClient;
+    }
+
+    @PluginFactory
+    public static CloudWatchLogsAppender createAppender(
+            @PluginAttribute("name") String name,
+            @PluginAttribute("logGroupName") String logGroupName,
+            @PluginAttribute("logStreamName") String logStreamName,
+            @PluginAttribute(value = "maxBufferedBytes", defaultLong = 16 * 1024 * 1024) long maxBufferedBytes,
+            @PluginAttribute(value = "flushMillis", defaultLong = 1000) long flushMillis,
+            @PluginAttribute("spillDirectory") String spillDirectory,
+            @PluginElement("Layout") Layout<? extends Serializable> layout,
+            @PluginElement("Filter") Filter filter) {
+        CloudWatchLogsAsyncClient logsClient = CloudWatchLogsAsyncClient.create();
+        LogShipper shipper = new LogShipper(logsClient, logGroupName, maxBufferedBytes,
+                spillDirectory == null ? null : Paths.get(spillDirectory), flushMillis);
+        return new CloudWatchLogsAppender(name, filter, layout, shipper, logStreamName, logsClient);
+    }
+
+    // Creates an appender that sends through an existing shipper, which the appender closes when it stops.
+    public static CloudWatchLogsAppender createAppender(String name, LogShipper shipper, String logStreamName,
+            Layout<? extends Serializable> layout) {
+        return new CloudWatchLogsAppender(name, null, layout, shipper, logStreamName, null);
+    }
+
+    @Override
+    public void append(LogEvent event) {
+        Layout<? extends Serializable> layout = getLayout();
+        String message = layout == null
+                ? event.getMessage().getFormattedMessage()
+                : new String(layout.toByteArray(event), StandardCharsets.UTF_8);
+        shipper.offer(logStreamName, event.getTimeMillis(), message);
+    }
+
+    // Sends the buffered events before the appender stops.
+    @Override
+    public boolean stop(long timeout, TimeUnit timeUnit) {
+        setStopping();
+        boolean stopped = super.stop(timeout, timeUnit, false);
+        shipper.close();
+        if (ownedClient != null) {
+            ownedClient.close();
+        }
+        setStopped();
+        return stopped;
+    }
+
+    public LogShipper getShipper() {
+        return shipper;
+    }
+}
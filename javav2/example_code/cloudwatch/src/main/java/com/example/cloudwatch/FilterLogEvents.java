@@ -5,7 +5,6 @@ package com.example.cloudwatch;
 
 // snippet-start:[cloudwatch.java2.filter_logs.main]
 // snippet-start:[cloudwatch.java2.filter_logs.import]
-import java.util.List;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.cloudwatch.model.CloudWatchException;
 import software.amazon.awssdk.services.cloudwatchlogs.CloudWatchLogsClient;
@@ -61,8 +60,8 @@ public class FilterLogEvents {
                     .endTime(endTime)
                     .build();
 
-            List<FilteredLogEvent> events = cloudWatchLogsClient.filterLogEvents(filterLogEventsRequest).events();
-            for (FilteredLogEvent event : events) {
+            // The paginator follows nextToken, so events past the first page are read too.
+            for (FilteredLogEvent event : cloudWatchLogsClient.filterLogEventsPaginator(filterLogEventsRequest).events()) {
                 System.out.println(event.message());
             }
 
@@ -9,6 +9,8 @@ import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.cloudwatch.model.CloudWatchException;
 import software.amazon.awssdk.services.cloudwatchlogs.CloudWatchLogsClient;
 import software.amazon.awssdk.services.cloudwatchlogs.model.GetLogEventsRequest;
+import software.amazon.awssdk.services.cloudwatchlogs.model.GetLogEventsResponse;
+import software.amazon.awssdk.services.cloudwatchlogs.model.OutputLogEvent;
 // snippet-end:[cloudwatch.java2.get_logs.import]
 
 /**
@@ -52,15 +54,26 @@ public class GetLogEvents {
     public static void getCWLogEvents(CloudWatchLogsClient cloudWatchLogsClient, String logGroupName,
             String logStreamName) {
         try {
-            GetLogEventsRequest getLogEventsRequest = GetLogEventsRequest.builder()
-                    .logGroupName(logGroupName)
-                    .logStreamName(logStreamName)
-                    .startFromHead(true)
-                    .build();
+            String nextToken = null;
+            while (true) {
+                GetLogEventsRequest getLogEventsRequest = GetLogEventsRequest.builder()
+                        .logGroupName(logGroupName)
+                        .logStreamName(logStreamName)
+                        .startFromHead(true)
+                        .nextToken(nextToken)
+                        .build();
 
-            int logLimit = cloudWatchLogsClient.getLogEvents(getLogEventsRequest).events().size();
-            for (int c = 0; c < logLimit; c++) {
-                System.out.println(cloudWatchLogsClient.getLogEvents(getLogEventsRequest).events().get(c).message());
+                // Each call returns one page, so print all of its events before asking for the next one.
+                GetLogEventsResponse response = cloudWatchLogsClient.getLogEvents(getLogEventsRequest);
+                for (OutputLogEvent event : response.events()) {
+                    System.out.println(event.message());
+                }
+
+                // The end of the stream is reached when the same forward token comes back.
+                if (response.nextForwardToken() == null || response.nextForwardToken().equals(nextToken)) {
+                    break;
+                }
+                nextToken = response.nextForwardToken();
             }
 
             System.out.println("Successfully got CloudWatch log events!");
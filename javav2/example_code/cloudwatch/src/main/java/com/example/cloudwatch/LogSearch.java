@@ -0,0 +1,348 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.cloudwatch;
+
+import software.amazon.awssdk.services.cloudwatchlogs.CloudWatchLogsAsyncClient;
+import software.amazon.awssdk.services.cloudwatchlogs.model.FilterLogEventsRequest;
+import software.amazon.awssdk.services.cloudwatchlogs.model.FilteredLogEvent;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Searches a log group with FilterLogEvents over a time range of any length.
+ *
+ * The range is split into windows aligned to multiples of the window size.
+ * Each window is fetched with every nextToken page, once per log stream when
+ * streams are given, so windows and streams are queried in parallel with up
+ * to {@code maxConcurrency} queries at a time. The pages of each query are
+ * sorted, and the queries of a window are combined in timestamp order by a
+ * k-way merge. Windows are fetched at most {@code maxConcurrency} ahead of the
+ * caller, so results stream lazily and memory stays bounded however long the
+ * range is.
+ *
+ * The results of windows that ended more than {@link #SETTLE_TIME} ago are
+ * cached, so searching the same period again, or an overlapping one, skips
+ * the windows already fetched. Events that are ingested with an older
+ * timestamp after a window was cached are not seen until {@link #clearCache()}.
+ *
+ * FilterLogEvents has a low per-account request quota; throttled requests
+ * are retried by the SDK, so keep maxConcurrency small.
+ */
+public class LogSearch {
+    // How long after a window ends its events are considered complete.
+    public static final Duration SETTLE_TIME = Duration.ofMinutes(10);
+    private static final Comparator<FilteredLogEvent> IN_ORDER = Comparator
+            .comparingLong(FilteredLogEvent::timestamp)
+            .thenComparing(FilteredLogEvent::logStreamName, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(FilteredLogEvent::eventId, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    private final CloudWatchLogsAsyncClient logsClient;
+    private final long windowMillis;
+    private final int maxConcurrency;
+    private final Map<WindowKey, List<FilteredLogEvent>> cache;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+
+    /**
+     * @param window           the length of the windows a range is split into
+     * @param maxConcurrency   the number of window queries that run at a time
+     * @param maxCachedWindows the number of window results that are kept
+     */
+    public LogSearch(CloudWatchLogsAsyncClient logsClient, Duration window, int maxConcurrency, int maxCachedWindows) {
+        if (window.toMillis() <= 0 || maxConcurrency < 1) {
+            throw new IllegalArgumentException("window and maxConcurrency must be positive");
+        }
+        this.logsClient = logsClient;
+        this.windowMillis = window.toMillis();
+        this.maxConcurrency = maxConcurrency;
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<WindowKey, List<FilteredLogEvent>> eldest) {
+                return size() > maxCachedWindows;
+            }
+        });
+    }
+
+    /**
+     * Returns the events of the log group between startTime and endTime,
+     * inclusive, in timestamp order. Nothing is fetched until the stream is
+     * consumed; close the stream to stop fetching early.
+     *
+     * @param logStreamNames the streams to search, each queried separately, or an empty list for all of them
+     * @param filterPattern  a CloudWatch Logs filter pattern, or null for every event
+     */
+    public Stream<FilteredLogEvent> search(String logGroupName, List<String> logStreamNames, String filterPattern,
+            long startTime, long endTime) {
+        Query query = new Query(logGroupName, logStreamNames, filterPattern, startTime, endTime);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(query,
+                Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(query::cancel);
+    }
+
+    public void clearCache() {
+        cache.clear();
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    // Fetches every page of one window of one stream, or of the whole group when the stream is null.
+    private CompletableFuture<List<FilteredLogEvent>> fetch(WindowKey key) {
+        List<FilteredLogEvent> cached = cache.get(key);
+        if (cached != null) {
+            cacheHits.increment();
+            return CompletableFuture.completedFuture(cached);
+        }
+        cacheMisses.increment();
+        FilterLogEventsRequest.Builder request = FilterLogEventsRequest.builder()
+                .logGroupName(key.logGroupName)
+                .filterPattern(key.filterPattern)
+                .startTime(key.windowStart)
+                .endTime(key.windowStart + windowMillis - 1);
+        if (key.logStreamName != null) {
+            request.logStreamNames(key.logStreamName);
+        }
+        return fetchPages(request, null, new ArrayList<>()).thenApply(events -> {
+            // FilterLogEvents returns the streams of a group one after another, so the pages are not in order.
+            events.sort(IN_ORDER);
+            List<FilteredLogEvent> result = Collections.unmodifiableList(events);
+            long settled = System.currentTimeMillis() - SETTLE_TIME.toMillis();
+            if (key.windowStart + windowMillis <= settled) {
+                cache.put(key, result);
+            }
+            return result;
+        });
+    }
+
+    private CompletableFuture<List<FilteredLogEvent>> fetchPages(FilterLogEventsRequest.Builder request,
+            String nextToken, List<FilteredLogEvent> events) {
+        requests.increment();
+        return logsClient.filterLogEvents(request.nextToken(nextToken).build()).thenCompose(response -> {
+            events.addAll(response.events());
+            if (response.nextToken() == null) {
+                return CompletableFuture.completedFuture(events);
+            }
+            return fetchPages(request, response.nextToken(), events);
+        });
+    }
+
+    // The events of one search, fetched window by window as the caller reads them.
+    private final class Query implements Iterator<FilteredLogEvent> {
+        private final long startTime;
+        private final long endTime;
+        private final List<WindowKey> shards = new ArrayList<>();
+        private final List<CompletableFuture<List<FilteredLogEvent>>> results = new ArrayList<>();
+        private final int shardsPerWindow;
+        private final PriorityQueue<Cursor> merge = new PriorityQueue<>();
+        private int nextToStart;
+        private int running;
+        private int window;
+        private boolean cancelled;
+        private FilteredLogEvent next;
+
+        private Query(String logGroupName, List<String> logStreamNames, String filterPattern, long startTime,
+                long endTime) {
+            this.startTime = startTime;
+            this.endTime = endTime;
+            List<String> streams = logStreamNames.isEmpty() ? Collections.singletonList(null) : logStreamNames;
+            this.shardsPerWindow = streams.size();
+            for (long start = Math.floorDiv(startTime, windowMillis) * windowMillis; start <= endTime;
+                    start += windowMillis) {
+                for (String stream : streams) {
+                    shards.add(new WindowKey(logGroupName, stream, filterPattern, start));
+                    results.add(null);
+                }
+            }
+            this.window = -1;
+        }
+
+        // Returns false once the search is cancelled, because no more windows are started then.
+        @Override
+        public boolean hasNext() {
+            if (isCancelled()) {
+                next = null;
+                return false;
+            }
+            while (next == null) {
+                if (merge.isEmpty() && !nextWindow()) {
+                    return false;
+                }
+                Cursor cursor = merge.poll();
+                if (cursor != null) {
+                    FilteredLogEvent event = cursor.events.get(cursor.index++);
+                    if (cursor.index < cursor.events.size()) {
+                        merge.add(cursor);
+                    }
+                    if (event.timestamp() >= startTime && event.timestamp() <= endTime) {
+                        next = event;
+                    }
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public FilteredLogEvent next() {
+            // An event that hasNext already found is returned even if the search was cancelled since.
+            if (next == null && !hasNext()) {
+                throw new NoSuchElementException();
+            }
+            FilteredLogEvent event = next;
+            next = null;
+            return event;
+        }
+
+        // Waits for the shards of the next window and puts them in the merge. Returns false after the last window
+        // or when the search is cancelled.
+        private boolean nextWindow() {
+            window++;
+            int first = window * shardsPerWindow;
+            if (first >= shards.size()) {
+                return false;
+            }
+            startMore();
+            for (int i = first; i < first + shardsPerWindow; i++) {
+                CompletableFuture<List<FilteredLogEvent>> result = future(i);
+                if (result == null) {
+                    merge.clear();
+                    return false;
+                }
+                List<FilteredLogEvent> events;
+                try {
+                    events = result.join();
+                } catch (CompletionException e) {
+                    throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+                }
+                // Frees the window for the garbage collector; a cached copy stays in the cache.
+                results.set(i, null);
+                if (!events.isEmpty()) {
+                    merge.add(new Cursor(events));
+                }
+            }
+            return true;
+        }
+
+        // Waits until the shard has been started. Returns null if the search is cancelled before that.
+        private synchronized CompletableFuture<List<FilteredLogEvent>> future(int shard) {
+            try {
+                while (results.get(shard) == null && !cancelled) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+            return results.get(shard);
+        }
+
+        // Starts shards in order, up to maxConcurrency at a time and maxConcurrency windows ahead of the caller.
+        private void startMore() {
+            while (true) {
+                int shard;
+                synchronized (this) {
+                    boolean ahead = nextToStart / shardsPerWindow > window + maxConcurrency;
+                    if (cancelled || running >= maxConcurrency || nextToStart >= shards.size() || ahead) {
+                        return;
+                    }
+                    shard = nextToStart++;
+                    running++;
+                }
+                CompletableFuture<List<FilteredLogEvent>> result = fetch(shards.get(shard));
+                synchronized (this) {
+                    results.set(shard, result);
+                    notifyAll();
+                }
+                result.whenComplete((events, err) -> {
+                    synchronized (this) {
+                        running--;
+                    }
+                    startMore();
+                });
+            }
+        }
+
+        private synchronized boolean isCancelled() {
+            return cancelled;
+        }
+
+        // Also wakes a caller that waits for a shard, which will not be started now.
+        private synchronized void cancel() {
+            cancelled = true;
+            notifyAll();
+        }
+    }
+
+    // A position in the sorted events of one shard.
+    private static final class Cursor implements Comparable<Cursor> {
+        private final List<FilteredLogEvent> events;
+        private int index;
+
+        private Cursor(List<FilteredLogEvent> events) {
+            this.events = events;
+        }
+
+        @Override
+        public int compareTo(Cursor other) {
+            return IN_ORDER.compare(events.get(index), other.events.get(other.index));
+        }
+    }
+
+    // Identifies the events of one window of one stream, or of a whole log group.
+    private static final class WindowKey {
+        private final String logGroupName;
+        private final String logStreamName;
+        private final String filterPattern;
+        private final long windowStart;
+
+        private WindowKey(String logGroupName, String logStreamName, String filterPattern, long windowStart) {
+            this.logGroupName = logGroupName;
+            this.logStreamName = logStreamName;
+            this.filterPattern = filterPattern;
+            this.windowStart = windowStart;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof WindowKey)) {
+                return false;
+            }
+            WindowKey key = (WindowKey) other;
+            return windowStart == key.windowStart && logGroupName.equals(key.logGroupName)
+                    && Objects.equals(logStreamName, key.logStreamName)
+                    && Objects.equals(filterPattern, key.filterPattern);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(logGroupName, logStreamName, filterPattern, windowStart);
+        }
+    }
+}
@@ -0,0 +1,509 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.cloudwatch;
+
+import software.amazon.awssdk.core.exception.SdkServiceException;
+import software.amazon.awssdk.services.cloudwatchlogs.CloudWatchLogsAsyncClient;
+import software.amazon.awssdk.services.cloudwatchlogs.model.InputLogEvent;
+import software.amazon.awssdk.services.cloudwatchlogs.model.PutLogEventsRequest;
+import software.amazon.awssdk.services.cloudwatchlogs.model.RejectedLogEventsInfo;
+import software.amazon.awssdk.services.cloudwatchlogs.model.ResourceAlreadyExistsException;
+import software.amazon.awssdk.services.cloudwatchlogs.model.ResourceNotFoundException;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Ships log events to Amazon CloudWatch Logs in batches with a
+ * {@link CloudWatchLogsAsyncClient}.
+ *
+ * {@link #offer} adds an event to a lock-free queue and returns at once; it
+ * never waits for the network or for the disk. A background thread moves the
+ * events into a buffer per log stream and sends each buffer in PutLogEvents
+ * requests of up to 10,000 events and 1 MB, sorted by timestamp. A stream has
+ * at most one request in flight, so its events arrive in order. Throttled and
+ * failed requests are retried with exponential backoff, and a stream that does
+ * not exist yet is created.
+ *
+ * The queue and the stream buffers each hold up to {@code maxBufferedBytes} of
+ * messages. When the buffers are full, the background thread appends the
+ * queued events to a file in {@code spillDirectory} and reads them back as
+ * the buffers empty. Without a spill directory, or when the queue itself is
+ * full, {@link #offer} drops the event and counts it in {@link #getDropped()}.
+ *
+ * PutLogEvents no longer requires a sequence token, so none is fetched.
+ */
+public class LogShipper implements AutoCloseable {
+    public static final int MAX_EVENTS_PER_REQUEST = 10_000;
+    public static final int MAX_REQUEST_BYTES = 1_048_576;
+    // CloudWatch Logs counts each event as its UTF-8 message plus 26 bytes.
+    public static final int EVENT_OVERHEAD_BYTES = 26;
+    // Longer messages are truncated to fit in the 256 KB event limit.
+    public static final int MAX_MESSAGE_BYTES = 256 * 1024 - EVENT_OVERHEAD_BYTES;
+    // The events of a request must not span more than 24 hours.
+    private static final long MAX_BATCH_SPAN_MILLIS = TimeUnit.HOURS.toMillis(24);
+    private static final int MAX_ATTEMPTS = 8;
+    private static final long BASE_BACKOFF_MILLIS = 100;
+    private static final long MAX_BACKOFF_MILLIS = 10_000;
+    private static final Comparator<Event> BY_TIMESTAMP = Comparator.comparingLong(event -> event.timestamp);
+
+    private final CloudWatchLogsAsyncClient logsClient;
+    private final String logGroupName;
+    private final long maxBufferedBytes;
+    private final long flushNanos;
+    private final Thread shipperThread;
+
+    private final ConcurrentLinkedQueue<Event> incoming = new ConcurrentLinkedQueue<>();
+    private final AtomicLong queuedBytes = new AtomicLong();
+    private volatile boolean closed;
+
+    // Owned by the shipper thread.
+    private final Map<String, StreamBuffer> streams = new HashMap<>();
+    private final SpillFile spillFile;
+    private long bufferedBytes;
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder spilled = new LongAdder();
+    private final LongAdder eventsSent = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder throttledRequests = new LongAdder();
+    private final LongAdder rejectedEvents = new LongAdder();
+    private final LongAdder failedEvents = new LongAdder();
+
+    /**
+     * @param maxBufferedBytes the bytes of messages that may wait in memory, both in the queue and in the buffers
+     * @param spillDirectory   where events are written when the buffers are full, or null to drop them instead
+     * @param flushMillis      how long an event may wait for a batch to fill up
+     */
+    public LogShipper(CloudWatchLogsAsyncClient logsClient, String logGroupName, long maxBufferedBytes,
+            Path spillDirectory, long flushMillis) {
+        this.logsClient = logsClient;
+        this.logGroupName = logGroupName;
+        this.maxBufferedBytes = maxBufferedBytes;
+        this.flushNanos = TimeUnit.MILLISECONDS.toNanos(flushMillis);
+        this.spillFile = spillDirectory == null ? null : new SpillFile(spillDirectory);
+
+        this.shipperThread = new Thread(this::run, "cloudwatch-log-shipper");
+        shipperThread.setDaemon(true);
+        shipperThread.start();
+    }
+
+    /**
+     * Queues an event for the log stream. Returns false if the event was
+     * dropped because the queue is full or the shipper is closed.
+     */
+    public boolean offer(String logStreamName, long timestamp, String message) {
+        if (closed) {
+            dropped.increment();
+            return false;
+        }
+        String text = truncate(message);
+        int size = utf8Length(text) + EVENT_OVERHEAD_BYTES;
+        if (queuedBytes.addAndGet(size) > maxBufferedBytes) {
+            queuedBytes.addAndGet(-size);
+            dropped.increment();
+            return false;
+        }
+        incoming.add(new Event(logStreamName, timestamp, text, size));
+        accepted.increment();
+        return true;
+    }
+
+    private void run() {
+        long nextFlush = System.nanoTime() + flushNanos;
+        while (true) {
+            boolean closing = closed;
+            int moved = drainIncoming();
+            moved += refillFromSpill();
+
+            boolean flushDue = System.nanoTime() - nextFlush >= 0;
+            boolean idle = true;
+            for (StreamBuffer stream : streams.values()) {
+                if (!stream.inFlight && !stream.pending.isEmpty()
+                        && (flushDue || closing || stream.isFull() || bufferedBytes >= maxBufferedBytes)) {
+                    ship(stream);
+                }
+                idle &= !stream.inFlight && stream.pending.isEmpty();
+            }
+            if (flushDue) {
+                nextFlush = System.nanoTime() + flushNanos;
+            }
+            if (closing && idle && incoming.isEmpty() && (spillFile == null || spillFile.isEmpty())) {
+                if (spillFile != null) {
+                    spillFile.delete();
+                }
+                return;
+            }
+            if (moved == 0) {
+                LockSupport.parkNanos(1_000_000);
+            }
+        }
+    }
+
+    // Moves queued events into the stream buffers, or into the spill file once the buffers are full.
+    private int drainIncoming() {
+        int moved = 0;
+        Event event;
+        while (moved < 1 << 16 && (event = incoming.peek()) != null) {
+            boolean full = bufferedBytes + event.size > maxBufferedBytes;
+            // Once events are spilled, later ones follow them through the file so that they keep their order.
+            boolean spill = spillFile != null && (full || !spillFile.isEmpty());
+            if (full && !spill) {
+                // Leave the event queued; the queue fills up and offer starts dropping.
+                break;
+            }
+            incoming.poll();
+            queuedBytes.addAndGet(-event.size);
+            moved++;
+            if (spill) {
+                try {
+                    spillFile.append(event);
+                    spilled.increment();
+                } catch (IOException e) {
+                    dropped.increment();
+                    System.err.println("Could not spill a log event to " + spillFile.path + ": " + e.getMessage());
+                }
+            } else {
+                buffer(event);
+            }
+        }
+        return moved;
+    }
+
+    private int refillFromSpill() {
+        int moved = 0;
+        if (spillFile == null || spillFile.isEmpty()) {
+            return 0;
+        }
+        try {
+            spillFile.flush();
+            while (!spillFile.isEmpty() && bufferedBytes < maxBufferedBytes) {
+                buffer(spillFile.next());
+                moved++;
+            }
+        } catch (IOException e) {
+            System.err.println("Could not read spilled log events from " + spillFile.path + ": " + e.getMessage());
+            dropped.add(spillFile.discard());
+        }
+        return moved;
+    }
+
+    private void buffer(Event event) {
+        StreamBuffer stream = streams.computeIfAbsent(event.logStreamName, StreamBuffer::new);
+        stream.pending.add(event);
+        stream.bytes += event.size;
+        bufferedBytes += event.size;
+    }
+
+    // Sends the oldest events of the stream that fit in one request. The rest wait for it to complete.
+    private void ship(StreamBuffer stream) {
+        stream.pending.sort(BY_TIMESTAMP);
+        long first = stream.pending.get(0).timestamp;
+        List<InputLogEvent> batch = new ArrayList<>();
+        int bytes = 0;
+        for (Event event : stream.pending) {
+            if (batch.size() == MAX_EVENTS_PER_REQUEST || bytes + event.size > MAX_REQUEST_BYTES
+                    || event.timestamp - first >= MAX_BATCH_SPAN_MILLIS) {
+                break;
+            }
+            batch.add(InputLogEvent.builder().timestamp(event.timestamp).message(event.message).build());
+            bytes += event.size;
+        }
+        stream.pending.subList(0, batch.size()).clear();
+        stream.bytes -= bytes;
+        bufferedBytes -= bytes;
+
+        stream.inFlight = true;
+        put(stream, batch, 1).whenComplete((ignored, err) -> {
+            stream.inFlight = false;
+            LockSupport.unpark(shipperThread);
+        });
+    }
+
+    private CompletableFuture<Void> put(StreamBuffer stream, List<InputLogEvent> batch, int attempt) {
+        requests.increment();
+        return logsClient.putLogEvents(PutLogEventsRequest.builder()
+                .logGroupName(logGroupName)
+                .logStreamName(stream.name)
+                .logEvents(batch)
+                .build())
+                .handle((response, err) -> {
+                    if (err == null) {
+                        eventsSent.add(batch.size());
+                        countRejected(response.rejectedLogEventsInfo(), batch.size());
+                        return CompletableFuture.<Void>completedFuture(null);
+                    }
+                    Throwable cause = err instanceof CompletionException ? err.getCause() : err;
+                    if (cause instanceof ResourceNotFoundException && attempt < MAX_ATTEMPTS) {
+                        return createStream(stream).thenCompose(created -> created
+                                ? put(stream, batch, attempt + 1)
+                                : fail(batch, cause));
+                    }
+                    boolean throttled = cause instanceof SdkServiceException
+                            && ((SdkServiceException) cause).isThrottlingException();
+                    boolean retryable = throttled || !(cause instanceof SdkServiceException)
+                            || ((SdkServiceException) cause).statusCode() >= 500;
+                    if (throttled) {
+                        throttledRequests.increment();
+                    }
+                    if (!retryable || attempt >= MAX_ATTEMPTS) {
+                        return fail(batch, cause);
+                    }
+                    long ceiling = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << attempt);
+                    long delay = ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1);
+                    return CompletableFuture.supplyAsync(() -> null,
+                            CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS))
+                            .thenCompose(ignored -> put(stream, batch, attempt + 1));
+                })
+                .thenCompose(future -> future);
+    }
+
+    // Creates the log stream. Completes with false if it could not be created.
+    private CompletableFuture<Boolean> createStream(StreamBuffer stream) {
+        return logsClient.createLogStream(request -> request.logGroupName(logGroupName).logStreamName(stream.name))
+                .handle((response, err) -> {
+                    Throwable cause = err instanceof CompletionException ? err.getCause() : err;
+                    if (cause != null && !(cause instanceof ResourceAlreadyExistsException)) {
+                        System.err.println("Could not create log stream " + stream.name + ": " + cause.getMessage());
+                        return false;
+                    }
+                    return true;
+                });
+    }
+
+    private CompletableFuture<Void> fail(List<InputLogEvent> batch, Throwable cause) {
+        failedEvents.add(batch.size());
+        System.err.println("PutLogEvents failed for " + batch.size() + " events: " + cause.getMessage());
+        return CompletableFuture.completedFuture(null);
+    }
+
+    // CloudWatch Logs accepts the request but skips events that are too old or too far in the future.
+    private void countRejected(RejectedLogEventsInfo info, int batchSize) {
+        if (info == null) {
+            return;
+        }
+        int rejected = 0;
+        Integer tooOld = info.tooOldLogEventEndIndex();
+        Integer expired = info.expiredLogEventEndIndex();
+        if (tooOld != null || expired != null) {
+            rejected += Math.max(tooOld == null ? -1 : tooOld, expired == null ? -1 : expired) + 1;
+        }
+        if (info.tooNewLogEventStartIndex() != null) {
+            rejected += batchSize - info.tooNewLogEventStartIndex();
+        }
+        rejectedEvents.add(rejected);
+    }
+
+    // Returns the message, shortened if its UTF-8 encoding is longer than MAX_MESSAGE_BYTES.
+    static String truncate(String message) {
+        if (message.length() * 3 <= MAX_MESSAGE_BYTES) {
+            return message;
+        }
+        int bytes = 0;
+        for (int i = 0; i < message.length(); i++) {
+            char c = message.charAt(i);
+            int length = c < 0x80 ? 1 : c < 0x800 ? 2 : Character.isHighSurrogate(c) ? 4 : 3;
+            if (bytes + length > MAX_MESSAGE_BYTES) {
+                return message.substring(0, i);
+            }
+            bytes += length;
+            if (length == 4) {
+                i++;
+            }
+        }
+        return message;
+    }
+
+    // Counts the bytes of the UTF-8 encoding without encoding the string.
+    static int utf8Length(String text) {
+        int bytes = text.length();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= 0x800) {
+                // A surrogate pair is two chars and four bytes.
+                bytes += Character.isSurrogate(c) ? 1 : 2;
+            } else if (c >= 0x80) {
+                bytes++;
+            }
+        }
+        return bytes;
+    }
+
+    // Ships what has been offered, then waits until every request has completed.
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        LockSupport.unpark(shipperThread);
+        try {
+            shipperThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long getAccepted() {
+        return accepted.sum();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public long getSpilled() {
+        return spilled.sum();
+    }
+
+    public long getEventsSent() {
+        return eventsSent.sum();
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getThrottledRequests() {
+        return throttledRequests.sum();
+    }
+
+    public long getRejectedEvents() {
+        return rejectedEvents.sum();
+    }
+
+    public long getFailedEvents() {
+        return failedEvents.sum();
+    }
+
+    private static final class Event {
+        private final String logStreamName;
+        private final long timestamp;
+        private final String message;
+        private final int size;
+
+        private Event(String logStreamName, long timestamp, String message, int size) {
+            this.logStreamName = logStreamName;
+            this.timestamp = timestamp;
+            this.message = message;
+            this.size = size;
+        }
+    }
+
+    // The events of one log stream that have not been sent.
+    private static final class StreamBuffer {
+        private final String name;
+        private final List<Event> pending = new ArrayList<>();
+        private long bytes;
+        // Set by the shipper thread and cleared when the request completes.
+        private volatile boolean inFlight;
+
+        private StreamBuffer(String name) {
+            this.name = name;
+        }
+
+        private boolean isFull() {
+            return pending.size() >= MAX_EVENTS_PER_REQUEST || bytes >= MAX_REQUEST_BYTES;
+        }
+    }
+
+    /**
+     * Events written to disk in the order they arrived. The file is read from
+     * the start while new events are appended, and deleted once every event
+     * has been read back.
+     */
+    private static final class SpillFile {
+        private final Path path;
+        private DataOutputStream out;
+        private DataInputStream in;
+        private long written;
+        private long read;
+
+        private SpillFile(Path directory) {
+            this.path = directory.resolve("cloudwatch-log-shipper-" + ProcessHandle.current().pid() + ".spill");
+        }
+
+        private boolean isEmpty() {
+            return read == written;
+        }
+
+        private void append(Event event) throws IOException {
+            if (out == null) {
+                Files.createDirectories(path.getParent());
+                out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 64 * 1024));
+            }
+            byte[] message = event.message.getBytes(StandardCharsets.UTF_8);
+            out.writeUTF(event.logStreamName);
+            out.writeLong(event.timestamp);
+            out.writeInt(message.length);
+            out.write(message);
+            written++;
+        }
+
+        // Makes the events appended so far visible to the reader.
+        private void flush() throws IOException {
+            out.flush();
+        }
+
+        private Event next() throws IOException {
+            if (in == null) {
+                in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 64 * 1024));
+            }
+            String logStreamName = in.readUTF();
+            long timestamp = in.readLong();
+            byte[] message = new byte[in.readInt()];
+            in.readFully(message);
+            read++;
+            if (read == written) {
+                delete();
+            }
+            return new Event(logStreamName, timestamp, new String(message, StandardCharsets.UTF_8),
+                    message.length + EVENT_OVERHEAD_BYTES);
+        }
+
+        // Deletes the file and returns how many events in it were not read.
+        private long discard() {
+            long unread = written - read;
+            delete();
+            return unread;
+        }
+
+        private void delete() {
+            try {
+                if (out != null) {
+                    out.close();
+                }
+                if (in != null) {
+                    in.close();
+                }
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                System.err.println("Could not delete " + path + ": " + e.getMessage());
+            }
+            out = null;
+            in = null;
+            written = 0;
+            read = 0;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.cloudwatch;
+
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.cloudwatch.CloudWatchAsyncClient;
+import software.amazon.awssdk.services.cloudwatch.model.Dimension;
+import software.amazon.awssdk.services.cloudwatch.model.StandardUnit;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Before running this Java V2 code example, set up your development
+ * environment, including your credentials.
+ *
+ * For more information, see the following documentation topic:
+ *
+ * https://docs.aws.amazon.com/sdk-for-java/latest/developer-guide/get-started.html
+ */
+public class PutMetricDataBuffered {
+    public static void main(String[] args) {
+        final String usage = """
+
+                Usage:
+                  <count>\s
+
+                Where:
+                  count - The number of random data points to put.
+                """;
+
+        if (args.length != 1) {
+            System.out.println(usage);
+            System.exit(1);
+        }
+
+        int count = Integer.parseInt(args[0]);
+        double[] dataPoints = new double[count];
+        for (int i = 0; i < count; i++) {
+            dataPoints[i] = ThreadLocalRandom.current().nextInt(100);
+        }
+
+        Region region = Region.US_WEST_2;
+        CloudWatchAsyncClient cw = CloudWatchAsyncClient.builder()
+                .region(region)
+                .build();
+
+        putMetDataBuffered(cw, dataPoints);
+        cw.close();
+    }
+
+    /**
+     * Puts many data points without a PutMetricData call for each one. The
+     * publisher aggregates the values into datums of up to 150 distinct values
+     * and sends them in batches from a background thread. Use this when an
+     * application records values at a high rate, for example once per request.
+     */
+    public static void putMetDataBuffered(CloudWatchAsyncClient cw, double[] dataPoints) {
+        Dimension dimension = Dimension.builder()
+                .name("UNIQUE_PAGES")
+                .value("URLS")
+                .build();
+
+        BufferedMetricPublisher.MetricKey pagesVisited = BufferedMetricPublisher.metric("PAGES_VISITED",
+                StandardUnit.NONE, dimension);
+        try (BufferedMetricPublisher publisher = new BufferedMetricPublisher(cw, "SITE/TRAFFIC")) {
+            for (double dataPoint : dataPoints) {
+                publisher.record(pagesVisited, dataPoint);
+            }
+            // Closing the publisher sends what is left and waits for the requests to complete.
+            publisher.close();
+            System.out.printf("Put %d data points in %d PutMetricData requests, %d datums failed%n",
+                    publisher.getRecorded(), publisher.getRequests(), publisher.getFailedDatums());
+        }
+    }
+}
@@ -0,0 +1,69 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.cloudwatch;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.cloudwatchlogs.CloudWatchLogsAsyncClient;
+import software.amazon.awssdk.services.cloudwatchlogs.model.FilteredLogEvent;
+
+/**
+ * Before running this Java V2 code example, set up your development
+ * environment, including your credentials.
+ *
+ * For more information, see the following documentation topic:
+ *
+ * https://docs.aws.amazon.com/sdk-for-java/latest/developer-guide/get-started.html
+ */
+public class SearchLogEvents {
+    public static void main(String[] args) {
+
+        final String usage = """
+
+                Usage:
+                  <logGroupName> <logStreamNames> <startTime> <endTime>
+
+                Where:
+                  logGroupName - The name of the log group (for example, myloggroup).
+                  logStreamNames - A comma-separated list of log stream names (for example, stream1,stream2).
+                  startTime - The start of the time range, expressed as the number of milliseconds after Jan 1, 1970 00:00:00 UTC (for example, 1620940080).
+                  endTime - The end of the time range, expressed as the number of milliseconds after Jan 1, 1970 00:00:00 UTC (for example, 1620949080)
+                """;
+
+        if (args.length != 4) {
+            System.out.print(usage);
+            System.exit(1);
+        }
+
+        String logGroupName = args[0];
+        List<String> logStreamNames = Arrays.asList(args[1].split(","));
+        Long startTime = Long.parseLong(args[2]);
+        Long endTime = Long.parseLong(args[3]);
+        Region region = Region.US_WEST_2;
+        CloudWatchLogsAsyncClient cloudWatchLogsAsyncClient = CloudWatchLogsAsyncClient.builder()
+                .region(region)
+                .build();
+
+        searchCWLogEvents(cloudWatchLogsAsyncClient, logGroupName, logStreamNames, startTime, endTime);
+        cloudWatchLogsAsyncClient.close();
+    }
+
+    /**
+     * Searches a long time range by querying one-hour windows of the given
+     * log streams in parallel, and prints the events in timestamp order as
+     * they arrive.
+     */
+    public static void searchCWLogEvents(CloudWatchLogsAsyncClient cloudWatchLogsAsyncClient, String logGroupName,
+            List<String> logStreamNames, Long startTime, Long endTime) {
+        LogSearch logSearch = new LogSearch(cloudWatchLogsAsyncClient, Duration.ofHours(1), 4, 1000);
+        try (Stream<FilteredLogEvent> events = logSearch.search(logGroupName, logStreamNames, null, startTime,
+                endTime)) {
+            events.forEach(event -> System.out.println(event.logStreamName() + " " + event.message()));
+        }
+        System.out.println("Searched with " + logSearch.getRequests() + " FilterLogEvents requests");
+    }
+}
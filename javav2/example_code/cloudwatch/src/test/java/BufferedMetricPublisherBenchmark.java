@@ -0,0 +1,60 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+import com.example.cloudwatch.BufferedMetricPublisher;
+import com.example.cloudwatch.BufferedMetricPublisher.MetricKey;
+import software.amazon.awssdk.services.cloudwatch.CloudWatchAsyncClient;
+import software.amazon.awssdk.services.cloudwatch.model.Dimension;
+import software.amazon.awssdk.services.cloudwatch.model.StandardUnit;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Records values from several threads into a BufferedMetricPublisher that
+ * sends to a local CloudWatch stub, and prints how many values per second
+ * were recorded and how many PutMetricData requests that took.
+ *
+ * Usage: BufferedMetricPublisherBenchmark [threads] [valuesPerThread] [metrics]
+ */
+public class BufferedMetricPublisherBenchmark {
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int perThread = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        int metricCount = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+
+        MetricKey[] metrics = new MetricKey[metricCount];
+        for (int i = 0; i < metricCount; i++) {
+            metrics[i] = BufferedMetricPublisher.metric("Latency", StandardUnit.MILLISECONDS,
+                    Dimension.builder().name("Route").value("/route/" + i).build());
+        }
+
+        try (LocalCloudWatchStub stub = new LocalCloudWatchStub(150);
+                CloudWatchAsyncClient client = stub.asyncClient()) {
+            BufferedMetricPublisher publisher = new BufferedMetricPublisher(client, "Benchmark");
+            Thread[] workers = new Thread[threads];
+            long start = System.nanoTime();
+            for (int t = 0; t < threads; t++) {
+                workers[t] = new Thread(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < perThread; i++) {
+                        // Whole milliseconds, as most latency metrics are reported.
+                        publisher.record(metrics[random.nextInt(metricCount)], random.nextInt(1, 500));
+                    }
+                });
+                workers[t].start();
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            double recordSeconds = (System.nanoTime() - start) / 1_000_000_000.0;
+            publisher.close();
+            double totalSeconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+            System.out.printf("Recorded %,d values in %.2f s (%,.0f values/s), sent in %.2f s%n",
+                    publisher.getRecorded(), recordSeconds, publisher.getRecorded() / recordSeconds, totalSeconds);
+            System.out.printf("%,d datums in %,d PutMetricData requests (%,d throttled by the stub), %,d dropped%n",
+                    publisher.getDatumsSent(), publisher.getRequests(), stub.throttledRequests(),
+                    publisher.getDropped());
+        }
+    }
+}
@@ -0,0 +1,172 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+import com.example.cloudwatch.BufferedMetricPublisher;
+import com.example.cloudwatch.BufferedMetricPublisher.Aggregation;
+import com.example.cloudwatch.BufferedMetricPublisher.MetricKey;
+import com.example.cloudwatch.BufferedMetricPublisher.OverflowPolicy;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.cloudwatch.CloudWatchAsyncClient;
+import software.amazon.awssdk.services.cloudwatch.model.Dimension;
+import software.amazon.awssdk.services.cloudwatch.model.MetricDatum;
+import software.amazon.awssdk.services.cloudwatch.model.PutMetricDataRequest;
+import software.amazon.awssdk.services.cloudwatch.model.PutMetricDataResponse;
+import software.amazon.awssdk.services.cloudwatch.model.StandardUnit;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BufferedMetricPublisherTest {
+    private static final MetricKey[] METRICS = {
+            BufferedMetricPublisher.metric("Latency", StandardUnit.MILLISECONDS,
+                    Dimension.builder().name("Operation").value("Get").build()),
+            BufferedMetricPublisher.metric("Latency", StandardUnit.MILLISECONDS,
+                    Dimension.builder().name("Operation").value("Put").build()),
+            BufferedMetricPublisher.metric("PayloadSize", StandardUnit.BYTES)
+    };
+
+    @Test
+    @Tag("IntegrationTest")
+    public void sendsEveryValueWhileThrottled() throws Exception {
+        int threads = 8;
+        int perThread = 50_000;
+        try (LocalCloudWatchStub stub = new LocalCloudWatchStub(2);
+                CloudWatchAsyncClient client = stub.asyncClient()) {
+            BufferedMetricPublisher publisher = new BufferedMetricPublisher(client, "Test", Aggregation.DISTRIBUTION,
+                    OverflowPolicy.BLOCK, 1024, 50, 4);
+            AtomicLong rejected = new AtomicLong();
+            runThreads(threads, perThread, publisher, rejected);
+            publisher.close();
+
+            // Every thread records the values 0 to 999 in turn, so each metric sums to a known total.
+            double expectedSum = threads * (perThread / 1000) * 499_500.0;
+            assertEquals(0, rejected.get());
+            assertEquals(0, publisher.getDropped());
+            assertEquals(0, publisher.getFailedDatums());
+            assertEquals((double) threads * perThread, stub.sampleCount("Latency") + stub.sampleCount("PayloadSize"));
+            assertEquals(expectedSum, stub.sum("Latency") + stub.sum("PayloadSize"), 1e-6);
+            assertTrue(stub.throttledRequests() > 0);
+            assertTrue(stub.maxDatumsPerRequest() <= BufferedMetricPublisher.MAX_DATUMS_PER_REQUEST);
+        }
+    }
+
+    @Test
+    @Tag("IntegrationTest")
+    public void dropsValuesWhenTheRingIsFull() throws Exception {
+        int threads = 8;
+        int perThread = 100_000;
+        try (LocalCloudWatchStub stub = new LocalCloudWatchStub(5);
+                CloudWatchAsyncClient client = stub.asyncClient()) {
+            BufferedMetricPublisher publisher = new BufferedMetricPublisher(client, "Test", Aggregation.STATISTIC_SET,
+                    OverflowPolicy.DROP, 16, 10, 1);
+            AtomicLong rejected = new AtomicLong();
+            runThreads(threads, perThread, publisher, rejected);
+            publisher.close();
+
+            assertTrue(rejected.get() > 0);
+            assertEquals(rejected.get(), publisher.getDropped());
+            assertEquals((long) threads * perThread, publisher.getRecorded() + publisher.getDropped());
+            assertEquals((double) publisher.getRecorded(),
+                    stub.sampleCount("Latency") + stub.sampleCount("PayloadSize"));
+        }
+    }
+
+    @Test
+    public void splitsRequestsToStayUnderTheSizeLimit() {
+        List<PutMetricDataRequest> requests = new CopyOnWriteArrayList<>();
+        CloudWatchAsyncClient client = new CloudWatchAsyncClient() {
+            @Override
+            public CompletableFuture<PutMetricDataResponse> putMetricData(PutMetricDataRequest request) {
+                requests.add(request);
+                return CompletableFuture.completedFuture(PutMetricDataResponse.builder().build());
+            }
+
+            @Override
+            public String serviceName() {
+                return SERVICE_NAME;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        BufferedMetricPublisher publisher = new BufferedMetricPublisher(client, "Test", Aggregation.DISTRIBUTION,
+                OverflowPolicy.BLOCK, 1 << 16, 60_000, 4);
+        // Values such as -1.4285714285714286E-8 take up to 24 characters, so each datum is close to 20 KB.
+        int metrics = 200;
+        for (int m = 0; m < metrics; m++) {
+            MetricKey metric = BufferedMetricPublisher.metric("Latency", StandardUnit.SECONDS,
+                    Dimension.builder().name("Operation").value("Operation" + m).build());
+            for (int i = 0; i < BufferedMetricPublisher.MAX_VALUES_PER_DATUM; i++) {
+                publisher.record(metric, -(i + 1) / 7e7);
+            }
+        }
+        publisher.close();
+
+        assertTrue(requests.size() > 1);
+        long values = 0;
+        for (PutMetricDataRequest request : requests) {
+            int bytes = formEncodedBytes(request);
+            assertTrue(bytes < 1_000_000, "A request of " + bytes + " bytes");
+            values += request.metricData().stream().mapToLong(datum -> datum.values().size()).sum();
+        }
+        assertEquals((long) metrics * BufferedMetricPublisher.MAX_VALUES_PER_DATUM, values);
+    }
+
+    // Form-encodes the request with the query protocol, as the SDK does.
+    private static int formEncodedBytes(PutMetricDataRequest request) {
+        StringBuilder body = new StringBuilder("Action=PutMetricData&Version=2010-08-01&Namespace=")
+                .append(encode(request.namespace()));
+        for (int i = 0; i < request.metricData().size(); i++) {
+            MetricDatum datum = request.metricData().get(i);
+            String prefix = "&MetricData.member." + (i + 1) + ".";
+            body.append(prefix).append("MetricName=").append(encode(datum.metricName()))
+                    .append(prefix).append("Unit=").append(encode(datum.unitAsString()))
+                    .append(prefix).append("Timestamp=").append(encode(datum.timestamp().toString()));
+            for (int d = 0; d < datum.dimensions().size(); d++) {
+                Dimension dimension = datum.dimensions().get(d);
+                body.append(prefix).append("Dimensions.member.").append(d + 1).append(".Name=")
+                        .append(encode(dimension.name()))
+                        .append(prefix).append("Dimensions.member.").append(d + 1).append(".Value=")
+                        .append(encode(dimension.value()));
+            }
+            for (int v = 0; v < datum.values().size(); v++) {
+                body.append(prefix).append("Values.member.").append(v + 1).append('=').append(datum.values().get(v))
+                        .append(prefix).append("Counts.member.").append(v + 1).append('=').append(datum.counts().get(v));
+            }
+        }
+        return body.length();
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private static void runThreads(int threads, int perThread, BufferedMetricPublisher publisher, AtomicLong rejected)
+            throws InterruptedException {
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    if (!publisher.record(METRICS[i % METRICS.length], i % 1000)) {
+                        rejected.incrementAndGet();
+                    }
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+    }
+}
@@ -0,0 +1,294 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.cloudwatchlogs.CloudWatchLogsAsyncClient;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A minimal, in-process stand-in for Amazon CloudWatch Logs that accepts
+ * CreateLogStream, PutLogEvents and FilterLogEvents over the JSON protocol.
+ * It checks the limits of each PutLogEvents request, records how often a
+ * stream had more than one request in flight, and throttles requests above
+ * the given rate per second, so shippers and searches can be tested without
+ * an AWS account. Filter patterns are matched as plain substrings, and
+ * FilterLogEvents returns pages of 100 events.
+ */
+class LocalCloudWatchLogsStub implements AutoCloseable {
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final int PAGE_SIZE = 100;
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final int maxRequestsPerSecond;
+    private final long latencyMillis;
+    private final boolean keepMessages;
+    private final Map<String, List<String>> messages = new ConcurrentHashMap<>();
+    private final List<StoredEvent> stored = Collections.synchronizedList(new ArrayList<>());
+    private final Map<String, AtomicLong> eventCounts = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong throttledRequests = new AtomicLong();
+    private final AtomicLong concurrentRequests = new AtomicLong();
+    private final AtomicLong invalidRequests = new AtomicLong();
+    private final AtomicLong filterRequests = new AtomicLong();
+    private long windowStart = System.nanoTime();
+    private int windowRequests;
+
+    /**
+     * @param latencyMillis how long each PutLogEvents call takes
+     * @param keepMessages  whether to keep every event for {@link #messages} and FilterLogEvents
+     */
+    LocalCloudWatchLogsStub(int maxRequestsPerSecond, long latencyMillis, boolean keepMessages) throws IOException {
+        this.maxRequestsPerSecond = maxRequestsPerSecond;
+        this.latencyMillis = latencyMillis;
+        this.keepMessages = keepMessages;
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    CloudWatchLogsAsyncClient asyncClient() {
+        return CloudWatchLogsAsyncClient.builder()
+                .endpointOverride(URI.create("http://localhost:" + server.getAddress().getPort()))
+                .region(Region.US_EAST_1)
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("stub", "stub")))
+                .build();
+    }
+
+    // Returns the messages the stream received, in the order they were accepted.
+    List<String> messages(String logStreamName) {
+        List<String> received = messages.get(logStreamName);
+        if (received == null) {
+            return List.of();
+        }
+        synchronized (received) {
+            return new ArrayList<>(received);
+        }
+    }
+
+    // Adds an event to the stream as if it had been put, creating the stream if needed.
+    void addEvent(String logStreamName, long timestamp, String message) {
+        messages.computeIfAbsent(logStreamName, k -> Collections.synchronizedList(new ArrayList<>())).add(message);
+        eventCounts.computeIfAbsent(logStreamName, k -> new AtomicLong()).incrementAndGet();
+        stored.add(new StoredEvent(logStreamName, timestamp, message, stored.size()));
+    }
+
+    long eventCount(String logStreamName) {
+        AtomicLong count = eventCounts.get(logStreamName);
+        return count == null ? 0 : count.get();
+    }
+
+    long totalEvents() {
+        return eventCounts.values().stream().mapToLong(AtomicLong::get).sum();
+    }
+
+    long requests() {
+        return requests.get();
+    }
+
+    long throttledRequests() {
+        return throttledRequests.get();
+    }
+
+    // The number of requests that arrived while the same stream had another one in flight.
+    long concurrentRequests() {
+        return concurrentRequests.get();
+    }
+
+    // The number of requests that broke a PutLogEvents limit or were not in chronological order.
+    long invalidRequests() {
+        return invalidRequests.get();
+    }
+
+    long filterRequests() {
+        return filterRequests.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String target = exchange.getRequestHeaders().getFirst("X-Amz-Target");
+            JsonNode request = JSON.readTree(exchange.getRequestBody());
+            String stream = request.path("logStreamName").asText();
+            if ("Logs_20140328.CreateLogStream".equals(target)) {
+                if (messages.putIfAbsent(stream, Collections.synchronizedList(new ArrayList<>())) != null) {
+                    send(exchange, 400, error("ResourceAlreadyExistsException", "The specified log stream already exists"));
+                } else {
+                    eventCounts.putIfAbsent(stream, new AtomicLong());
+                    send(exchange, 200, "{}");
+                }
+            } else if ("Logs_20140328.PutLogEvents".equals(target)) {
+                putLogEvents(exchange, stream, request.path("logEvents"));
+            } else if ("Logs_20140328.FilterLogEvents".equals(target)) {
+                filterLogEvents(exchange, request);
+            } else {
+                send(exchange, 400, error("UnknownOperationException", "Unsupported target " + target));
+            }
+        }
+    }
+
+    private void putLogEvents(HttpExchange exchange, String stream, JsonNode events) throws IOException {
+        requests.incrementAndGet();
+        if (!admit()) {
+            throttledRequests.incrementAndGet();
+            send(exchange, 400, error("ThrottlingException", "Rate exceeded"));
+            return;
+        }
+        List<String> received = messages.get(stream);
+        if (received == null) {
+            send(exchange, 400, error("ResourceNotFoundException", "The specified log stream does not exist."));
+            return;
+        }
+
+        AtomicInteger streamInFlight = inFlight.computeIfAbsent(stream, k -> new AtomicInteger());
+        if (streamInFlight.incrementAndGet() > 1) {
+            concurrentRequests.incrementAndGet();
+        }
+        try {
+            long bytes = 0;
+            long previous = Long.MIN_VALUE;
+            boolean valid = events.size() <= 10_000;
+            for (JsonNode event : events) {
+                long timestamp = event.path("timestamp").asLong();
+                valid &= timestamp >= previous;
+                previous = timestamp;
+                bytes += event.path("message").asText().getBytes(StandardCharsets.UTF_8).length + 26;
+            }
+            if (!valid || bytes > 1_048_576) {
+                invalidRequests.incrementAndGet();
+                send(exchange, 400, error("InvalidParameterException", "The batch is too large or out of order"));
+                return;
+            }
+            if (latencyMillis > 0) {
+                Thread.sleep(latencyMillis);
+            }
+            if (keepMessages) {
+                synchronized (received) {
+                    for (JsonNode event : events) {
+                        received.add(event.path("message").asText());
+                        stored.add(new StoredEvent(stream, event.path("timestamp").asLong(),
+                                event.path("message").asText(), stored.size()));
+                    }
+                }
+            }
+            eventCounts.get(stream).addAndGet(events.size());
+            send(exchange, 200, "{\"nextSequenceToken\":\"" + requests.get() + "\"}");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            streamInFlight.decrementAndGet();
+        }
+    }
+
+    // Returns the matching events of the streams one after another, as FilterLogEvents does for a log group.
+    private void filterLogEvents(HttpExchange exchange, JsonNode request) throws IOException {
+        filterRequests.incrementAndGet();
+        if (!admit()) {
+            throttledRequests.incrementAndGet();
+            send(exchange, 400, error("ThrottlingException", "Rate exceeded"));
+            return;
+        }
+        long startTime = request.path("startTime").asLong(Long.MIN_VALUE);
+        long endTime = request.path("endTime").asLong(Long.MAX_VALUE);
+        String pattern = request.path("filterPattern").asText("");
+        Set<String> streams = new HashSet<>();
+        request.path("logStreamNames").forEach(name -> streams.add(name.asText()));
+
+        List<StoredEvent> matches = new ArrayList<>();
+        synchronized (stored) {
+            for (StoredEvent event : stored) {
+                if (event.timestamp >= startTime && event.timestamp <= endTime
+                        && (streams.isEmpty() || streams.contains(event.stream)) && event.message.contains(pattern)) {
+                    matches.add(event);
+                }
+            }
+        }
+        matches.sort(Comparator.comparing((StoredEvent event) -> event.stream).thenComparingLong(event -> event.timestamp));
+
+        int from = request.hasNonNull("nextToken") ? Integer.parseInt(request.get("nextToken").asText()) : 0;
+        int to = Math.min(matches.size(), from + PAGE_SIZE);
+        ObjectNode response = JSON.createObjectNode();
+        ArrayNode events = response.putArray("events");
+        for (StoredEvent event : matches.subList(from, to)) {
+            events.addObject()
+                    .put("logStreamName", event.stream)
+                    .put("timestamp", event.timestamp)
+                    .put("ingestionTime", event.timestamp)
+                    .put("message", event.message)
+                    .put("eventId", String.format("%020d", event.id));
+        }
+        if (to < matches.size()) {
+            response.put("nextToken", String.valueOf(to));
+        }
+        send(exchange, 200, JSON.writeValueAsString(response));
+    }
+
+    // Admits up to maxRequestsPerSecond requests in each one-second window.
+    private synchronized boolean admit() {
+        long now = System.nanoTime();
+        if (now - windowStart >= 1_000_000_000L) {
+            windowStart = now;
+            windowRequests = 0;
+        }
+        return ++windowRequests <= maxRequestsPerSecond;
+    }
+
+    private static String error(String type, String message) {
+        return "{\"__type\":\"" + type + "\",\"message\":\"" + message + "\"}";
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/x-amz-json-1.1");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private static final class StoredEvent {
+        private final String stream;
+        private final long timestamp;
+        private final String message;
+        private final long id;
+
+        private StoredEvent(String stream, long timestamp, String message, long id) {
+            this.stream = stream;
+            this.timestamp = timestamp;
+            this.message = message;
+            this.id = id;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.cloudwatch.CloudWatchAsyncClient;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A minimal, in-process stand-in for Amazon CloudWatch that accepts
+ * PutMetricData over the query protocol, gzip-compressed or not. It adds up
+ * the sample count and sum of every metric it receives, and throttles
+ * requests above the given rate per second, so publishers can be tested and
+ * benchmarked without an AWS account.
+ */
+class LocalCloudWatchStub implements AutoCloseable {
+    private static final Pattern DATUM_PARAMETER = Pattern.compile("MetricData\\.member\\.(\\d+)\\.(.+)");
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final int maxRequestsPerSecond;
+    private final Map<String, DoubleAdder> sampleCounts = new ConcurrentHashMap<>();
+    private final Map<String, DoubleAdder> sums = new ConcurrentHashMap<>();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong throttledRequests = new AtomicLong();
+    private final AtomicLong datums = new AtomicLong();
+    private final AtomicLong maxDatumsPerRequest = new AtomicLong();
+    private long windowStart = System.nanoTime();
+    private int windowRequests;
+
+    LocalCloudWatchStub(int maxRequestsPerSecond) throws IOException {
+        this.maxRequestsPerSecond = maxRequestsPerSecond;
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    CloudWatchAsyncClient asyncClient() {
+        return CloudWatchAsyncClient.builder()
+                .endpointOverride(URI.create("http://localhost:" + server.getAddress().getPort()))
+                .region(Region.US_EAST_1)
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("stub", "stub")))
+                .build();
+    }
+
+    double sampleCount(String metricName) {
+        DoubleAdder count = sampleCounts.get(metricName);
+        return count == null ? 0 : count.sum();
+    }
+
+    double sum(String metricName) {
+        DoubleAdder sum = sums.get(metricName);
+        return sum == null ? 0 : sum.sum();
+    }
+
+    long requests() {
+        return requests.get();
+    }
+
+    long throttledRequests() {
+        return throttledRequests.get();
+    }
+
+    long datums() {
+        return datums.get();
+    }
+
+    long maxDatumsPerRequest() {
+        return maxDatumsPerRequest.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            InputStream in = exchange.getRequestBody();
+            if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+                in = new GZIPInputStream(in);
+            }
+            Map<String, String> parameters = formParameters(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            if (!"PutMetricData".equals(parameters.get("Action"))) {
+                send(exchange, 400, error("InvalidAction", "Unsupported action " + parameters.get("Action")));
+                return;
+            }
+            requests.incrementAndGet();
+            if (!admit()) {
+                throttledRequests.incrementAndGet();
+                send(exchange, 400, error("Throttling", "Rate exceeded"));
+                return;
+            }
+            putMetricData(parameters);
+            send(exchange, 200, "<PutMetricDataResponse xmlns=\"http://monitoring.amazonaws.com/doc/2010-08-01/\">"
+                    + "<ResponseMetadata><RequestId>stub</RequestId></ResponseMetadata></PutMetricDataResponse>");
+        }
+    }
+
+    private void putMetricData(Map<String, String> parameters) {
+        Map<String, Map<String, String>> members = new HashMap<>();
+        for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+            Matcher matcher = DATUM_PARAMETER.matcher(parameter.getKey());
+            if (matcher.matches()) {
+                members.computeIfAbsent(matcher.group(1), k -> new HashMap<>())
+                        .put(matcher.group(2), parameter.getValue());
+            }
+        }
+        datums.addAndGet(members.size());
+        maxDatumsPerRequest.accumulateAndGet(members.size(), Math::max);
+
+        for (Map<String, String> datum : members.values()) {
+            String name = datum.get("MetricName");
+            double count = 0;
+            double sum = 0;
+            if (datum.containsKey("Value")) {
+                count = 1;
+                sum = Double.parseDouble(datum.get("Value"));
+            } else if (datum.containsKey("StatisticValues.SampleCount")) {
+                count = Double.parseDouble(datum.get("StatisticValues.SampleCount"));
+                sum = Double.parseDouble(datum.get("StatisticValues.Sum"));
+            } else {
+                for (int i = 1; datum.containsKey("Values.member." + i); i++) {
+                    double value = Double.parseDouble(datum.get("Values.member." + i));
+                    String counts = datum.get("Counts.member." + i);
+                    double n = counts == null ? 1 : Double.parseDouble(counts);
+                    count += n;
+                    sum += value * n;
+                }
+            }
+            sampleCounts.computeIfAbsent(name, k -> new DoubleAdder()).add(count);
+            sums.computeIfAbsent(name, k -> new DoubleAdder()).add(sum);
+        }
+    }
+
+    // Admits up to maxRequestsPerSecond requests in each one-second window.
+    private synchronized boolean admit() {
+        long now = System.nanoTime();
+        if (now - windowStart >= 1_000_000_000L) {
+            windowStart = now;
+            windowRequests = 0;
+        }
+        return ++windowRequests <= maxRequestsPerSecond;
+    }
+
+    private static Map<String, String> formParameters(String body) {
+        Map<String, String> parameters = new HashMap<>();
+        for (String pair : body.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                parameters.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return parameters;
+    }
+
+    private static String error(String code, String message) {
+        return "<ErrorResponse xmlns=\"http://monitoring.amazonaws.com/doc/2010-08-01/\"><Error><Type>Sender</Type>"
+                + "<Code>" + code + "</Code><Message>" + message + "</Message></Error>"
+                + "<RequestId>stub</RequestId></ErrorResponse>";
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "text/xml");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
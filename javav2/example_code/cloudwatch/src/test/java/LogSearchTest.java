@@ -0,0 +1,124 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+import com.example.cloudwatch.LogSearch;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.cloudwatchlogs.CloudWatchLogsAsyncClient;
+import software.amazon.awssdk.services.cloudwatchlogs.model.FilteredLogEvent;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LogSearchTest {
+    private static final List<String> STREAMS = List.of("web-1", "web-2", "worker");
+    private static final long WINDOW = Duration.ofMinutes(5).toMillis();
+    private static final long HOUR = Duration.ofHours(1).toMillis();
+    // Two days ago, so every window is settled and can be cached, and aligned to the start of a window.
+    private static final long START = (System.currentTimeMillis() - Duration.ofDays(2).toMillis()) / WINDOW * WINDOW;
+
+    @Test
+    @Tag("IntegrationTest")
+    public void mergesEveryPageOfEveryWindowInOrder() throws Exception {
+        try (LocalCloudWatchLogsStub stub = new LocalCloudWatchLogsStub(1_000, 0, true);
+                CloudWatchLogsAsyncClient client = stub.asyncClient()) {
+            List<Long> expected = addEvents(stub, 30_000);
+            LogSearch logSearch = new LogSearch(client, Duration.ofMillis(WINDOW), 4, 1_000);
+
+            List<Long> timestamps;
+            try (Stream<FilteredLogEvent> events = logSearch.search("app", STREAMS, null, START, START + HOUR)) {
+                timestamps = events.map(FilteredLogEvent::timestamp).collect(Collectors.toList());
+            }
+
+            assertEquals(expected, timestamps);
+            // 13 windows of 3 streams, with about 800 events each, which takes several pages.
+            assertTrue(logSearch.getRequests() > 13 * STREAMS.size());
+        }
+    }
+
+    @Test
+    @Tag("IntegrationTest")
+    public void readsCachedWindowsWithoutRequests() throws Exception {
+        try (LocalCloudWatchLogsStub stub = new LocalCloudWatchLogsStub(1_000, 0, true);
+                CloudWatchLogsAsyncClient client = stub.asyncClient()) {
+            addEvents(stub, 30_000);
+            LogSearch logSearch = new LogSearch(client, Duration.ofMillis(WINDOW), 4, 1_000);
+
+            long first;
+            try (Stream<FilteredLogEvent> events = logSearch.search("app", List.of(), "GET", START, START + HOUR)) {
+                first = events.count();
+            }
+            long requests = stub.filterRequests();
+            long second;
+            // The second range overlaps the first, so only its last half hour is fetched.
+            try (Stream<FilteredLogEvent> events = logSearch.search("app", List.of(), "GET",
+                    START + HOUR / 2, START + HOUR + HOUR / 2)) {
+                second = events.count();
+            }
+
+            assertTrue(first > 0 && second > 0);
+            // The windows from half past to the end of the first hour.
+            assertEquals(7, logSearch.getCacheHits());
+            assertTrue(stub.filterRequests() - requests < requests);
+        }
+    }
+
+    @Test
+    @Tag("IntegrationTest")
+    public void fetchesLazily() throws Exception {
+        try (LocalCloudWatchLogsStub stub = new LocalCloudWatchLogsStub(1_000, 0, true);
+                CloudWatchLogsAsyncClient client = stub.asyncClient()) {
+            addEvents(stub, 30_000);
+            LogSearch logSearch = new LogSearch(client, Duration.ofMillis(WINDOW), 2, 1_000);
+
+            try (Stream<FilteredLogEvent> events = logSearch.search("app", STREAMS, null, START, START + HOUR)) {
+                assertEquals(10, events.limit(10).count());
+            }
+            // Only the first window and the two fetched ahead of it have been requested.
+            assertTrue(logSearch.getCacheMisses() <= 3 * STREAMS.size());
+        }
+    }
+
+    @Test
+    @Tag("IntegrationTest")
+    public void endsTheIteratorWhenTheStreamIsClosed() throws Exception {
+        try (LocalCloudWatchLogsStub stub = new LocalCloudWatchLogsStub(1_000, 0, true);
+                CloudWatchLogsAsyncClient client = stub.asyncClient()) {
+            addEvents(stub, 30_000);
+            LogSearch logSearch = new LogSearch(client, Duration.ofMillis(WINDOW), 2, 1_000);
+
+            Stream<FilteredLogEvent> events = logSearch.search("app", STREAMS, null, START, START + HOUR);
+            Iterator<FilteredLogEvent> iterator = events.iterator();
+            for (int i = 0; i < 10; i++) {
+                iterator.next();
+            }
+            events.close();
+            // The windows that were not started when the stream was closed never will be, so this must not wait.
+            assertTimeoutPreemptively(Duration.ofSeconds(5), () -> assertFalse(iterator.hasNext()));
+        }
+    }
+
+    // Adds events at random times in the hour after START. Returns their timestamps in order.
+    private static List<Long> addEvents(LocalCloudWatchLogsStub stub, int count) {
+        Random random = new Random(42);
+        List<Long> timestamps = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            long timestamp = START + (long) (random.nextDouble() * HOUR);
+            String method = i % 2 == 0 ? "GET" : "POST";
+            stub.addEvent(STREAMS.get(i % STREAMS.size()), timestamp, method + " /items/" + i);
+            timestamps.add(timestamp);
+        }
+        timestamps.sort(null);
+        return timestamps;
+    }
+}
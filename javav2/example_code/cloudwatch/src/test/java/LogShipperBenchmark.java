@@ -0,0 +1,61 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+import com.example.cloudwatch.LogShipper;
+import software.amazon.awssdk.services.cloudwatchlogs.CloudWatchLogsAsyncClient;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Measures the maximum throughput of a LogShipper against a local CloudWatch
+ * Logs stub. Prints how fast the logging threads could offer events, how
+ * long offer took per event, and how fast the events were shipped.
+ *
+ * Usage: LogShipperBenchmark [threads] [eventsPerThread] [streams] [stubLatencyMillis] [spill]
+ */
+public class LogShipperBenchmark {
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int perThread = args.length > 1 ? Integer.parseInt(args[1]) : 250_000;
+        int streams = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        long latencyMillis = args.length > 3 ? Long.parseLong(args[3]) : 20;
+        boolean spill = args.length > 4 && Boolean.parseBoolean(args[4]);
+        Path spillDirectory = spill ? Files.createTempDirectory("log-shipper") : null;
+
+        try (LocalCloudWatchLogsStub stub = new LocalCloudWatchLogsStub(100_000, latencyMillis, false);
+                CloudWatchLogsAsyncClient client = stub.asyncClient()) {
+            LogShipper shipper = new LogShipper(client, "benchmark", 64L * 1024 * 1024, spillDirectory, 1000);
+            String[] streamNames = new String[streams];
+            for (int s = 0; s < streams; s++) {
+                streamNames[s] = "stream-" + s;
+            }
+
+            Thread[] workers = new Thread[threads];
+            long start = System.nanoTime();
+            for (int t = 0; t < threads; t++) {
+                workers[t] = new Thread(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        shipper.offer(streamNames[i % streams], System.currentTimeMillis(),
+                                "2024-01-01T00:00:00Z INFO com.example.Service - handled request " + i);
+                    }
+                });
+                workers[t].start();
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            long offerNanos = System.nanoTime() - start;
+            shipper.close();
+            double totalSeconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+            long offered = (long) threads * perThread;
+            System.out.printf("Offered %,d events in %.2f s (%,.0f events/s, %.0f ns per offer per thread)%n",
+                    offered, offerNanos / 1e9, offered / (offerNanos / 1e9), (double) offerNanos * threads / offered);
+            System.out.printf("Shipped %,d events in %.2f s (%,.0f events/s) with %,d PutLogEvents requests%n",
+                    stub.totalEvents(), totalSeconds, stub.totalEvents() / totalSeconds, stub.requests());
+            System.out.printf("%,d dropped, %,d spilled, %,d failed%n",
+                    shipper.getDropped(), shipper.getSpilled(), shipper.getFailedEvents());
+        }
+    }
+}
@@ -0,0 +1,132 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+import com.example.cloudwatch.CloudWatchLogsAppender;
+import com.example.cloudwatch.LogShipper;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.awssdk.services.cloudwatchlogs.CloudWatchLogsAsyncClient;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LogShipperTest {
+
+    @Test
+    @Tag("IntegrationTest")
+    public void shipsEveryEventInOrderPerStream() throws Exception {
+        int threads = 8;
+        int perThread = 20_000;
+        try (LocalCloudWatchLogsStub stub = new LocalCloudWatchLogsStub(5, 10, true);
+                CloudWatchLogsAsyncClient client = stub.asyncClient()) {
+            LogShipper shipper = new LogShipper(client, "app", 64L * 1024 * 1024, null, 100);
+            offerFromThreads(shipper, threads, perThread, 4);
+            shipper.close();
+
+            assertEquals(0, shipper.getDropped());
+            assertEquals(0, shipper.getFailedEvents());
+            assertEquals((long) threads * perThread, stub.totalEvents());
+            assertEquals(0, stub.concurrentRequests());
+            assertEquals(0, stub.invalidRequests());
+            // The events of each thread reach each stream in the order they were logged.
+            for (int s = 0; s < 4; s++) {
+                Map<String, Integer> lastSequence = new HashMap<>();
+                for (String message : stub.messages("stream-" + s)) {
+                    String[] parts = message.split(":");
+                    int sequence = Integer.parseInt(parts[1]);
+                    Integer last = lastSequence.put(parts[0], sequence);
+                    assertTrue(last == null || last < sequence, message + " arrived after " + last);
+                }
+            }
+        }
+    }
+
+    @Test
+    @Tag("IntegrationTest")
+    public void spillsToDiskWhenTheBufferIsFull(@TempDir Path dir) throws Exception {
+        int threads = 4;
+        int perThread = 20_000;
+        try (LocalCloudWatchLogsStub stub = new LocalCloudWatchLogsStub(1_000, 50, false);
+                CloudWatchLogsAsyncClient client = stub.asyncClient()) {
+            LogShipper shipper = new LogShipper(client, "app", 256 * 1024, dir, 100);
+            offerFromThreads(shipper, threads, perThread, 1);
+            shipper.close();
+
+            assertTrue(shipper.getSpilled() > 0);
+            assertEquals((long) threads * perThread, shipper.getAccepted() + shipper.getDropped());
+            assertEquals(0, shipper.getFailedEvents());
+            assertEquals(shipper.getAccepted(), stub.totalEvents());
+            assertEquals(0, stub.invalidRequests());
+        }
+    }
+
+    @Test
+    @Tag("IntegrationTest")
+    public void dropsWithoutASpillDirectory() throws Exception {
+        int threads = 4;
+        int perThread = 20_000;
+        try (LocalCloudWatchLogsStub stub = new LocalCloudWatchLogsStub(1_000, 50, false);
+                CloudWatchLogsAsyncClient client = stub.asyncClient()) {
+            LogShipper shipper = new LogShipper(client, "app", 64 * 1024, null, 100);
+            offerFromThreads(shipper, threads, perThread, 1);
+            shipper.close();
+
+            assertTrue(shipper.getDropped() > 0);
+            assertEquals((long) threads * perThread, shipper.getAccepted() + shipper.getDropped());
+            assertEquals(shipper.getAccepted(), stub.totalEvents());
+        }
+    }
+
+    @Test
+    @Tag("IntegrationTest")
+    public void appenderShipsFormattedEvents() throws Exception {
+        try (LocalCloudWatchLogsStub stub = new LocalCloudWatchLogsStub(1_000, 0, true);
+                CloudWatchLogsAsyncClient client = stub.asyncClient()) {
+            LogShipper shipper = new LogShipper(client, "app", 1024 * 1024, null, 100);
+            CloudWatchLogsAppender appender = CloudWatchLogsAppender.createAppender("CloudWatch", shipper, "web-1",
+                    PatternLayout.newBuilder().withPattern("%p %m").build());
+            appender.start();
+            appender.append(Log4jLogEvent.newBuilder()
+                    .setLoggerName("test")
+                    .setLevel(Level.INFO)
+                    .setMessage(new SimpleMessage("hello"))
+                    .setTimeMillis(System.currentTimeMillis())
+                    .build());
+            appender.stop(10, TimeUnit.SECONDS);
+
+            assertEquals(List.of("INFO hello"), stub.messages("web-1"));
+        }
+    }
+
+    // Each thread offers events named thread:sequence to the streams in turn.
+    private static void offerFromThreads(LogShipper shipper, int threads, int perThread, int streams)
+            throws InterruptedException {
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            String name = "t" + t;
+            Thread worker = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    shipper.offer("stream-" + i % streams, System.currentTimeMillis(),
+                            name + ":" + i + ": GET /items/" + i + " 200 OK");
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.dynamodb;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads the movies of a moviedata.json file one at a time with the streaming
+ * {@link JsonParser}, so only the current movie is held in memory. The info
+ * object of a movie is copied token by token into its JSON string.
+ */
+public class MoviesJsonReader implements Iterator<Movies>, Closeable {
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    private final JsonParser parser;
+    private Movies next;
+
+    public MoviesJsonReader(File file) throws IOException {
+        parser = FACTORY.createParser(file);
+        if (parser.nextToken() != JsonToken.START_ARRAY) {
+            throw new IOException("Expected a JSON array of movies in " + file);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            try {
+                next = readMovie();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public Movies next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Movies movie = next;
+        next = null;
+        return movie;
+    }
+
+    // Returns null at the end of the array.
+    private Movies readMovie() throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return null;
+        }
+        Movies movie = new Movies();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "year":
+                    movie.setYear(parser.getIntValue());
+                    break;
+                case "title":
+                    movie.setTitle(parser.getText());
+                    break;
+                case "info":
+                    StringWriter info = new StringWriter();
+                    try (JsonGenerator generator = FACTORY.createGenerator(info)) {
+                        generator.copyCurrentStructure(parser);
+                    }
+                    movie.setInfo(info.toString());
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return movie;
+    }
+
+    @Override
+    public void close() throws IOException {
+        parser.close();
+    }
+}
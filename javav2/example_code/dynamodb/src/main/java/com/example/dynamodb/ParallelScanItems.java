@@ -0,0 +1,65 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.dynamodb;
+
+import com.example.dynamodb.scan.FileScanCheckpointStore;
+import com.example.dynamodb.scan.ParallelScanEngine;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import java.nio.file.Path;
+
+/**
+ * Before running this Java V2 code example, set up your development
+ * environment, including your credentials.
+ *
+ * For more information, see the following documentation topic:
+ *
+ * https://docs.aws.amazon.com/sdk-for-java/latest/developer-guide/get-started.html
+ */
+public class ParallelScanItems {
+    public static void main(String[] args) throws InterruptedException {
+        final String usage = """
+
+                Usage:
+                    <tableName> <segments> <maxReadCapacityPerSecond> <checkpointFile>
+
+                Where:
+                    tableName - The Amazon DynamoDB table to export (for example, Music3).
+                    segments - The number of segments that are scanned in parallel (for example, 8).
+                    maxReadCapacityPerSecond - The read capacity units the scan may consume per second (for example, 100).
+                    checkpointFile - The local file that records the progress of each segment (for example, scan.properties).
+                """;
+
+        if (args.length != 4) {
+            System.out.println(usage);
+            System.exit(1);
+        }
+
+        String tableName = args[0];
+        int segments = Integer.parseInt(args[1]);
+        double maxReadCapacityPerSecond = Double.parseDouble(args[2]);
+        Path checkpointFile = Path.of(args[3]);
+        Region region = Region.US_EAST_1;
+        DynamoDbAsyncClient ddbAsync = DynamoDbAsyncClient.builder()
+                .region(region)
+                .build();
+
+        parallelScanItems(ddbAsync, tableName, segments, maxReadCapacityPerSecond, checkpointFile);
+        ddbAsync.close();
+    }
+
+    /**
+     * Exports the whole table with a parallel scan that consumes at most
+     * maxReadCapacityPerSecond read capacity units. Run it again with the same
+     * checkpoint file to resume an export that was interrupted.
+     */
+    public static void parallelScanItems(DynamoDbAsyncClient ddbAsync, String tableName, int segments,
+            double maxReadCapacityPerSecond, Path checkpointFile) throws InterruptedException {
+        ParallelScanEngine engine = new ParallelScanEngine(ddbAsync, tableName, segments, maxReadCapacityPerSecond,
+                new FileScanCheckpointStore(checkpointFile));
+        long count = engine.scan(item -> System.out.println(item));
+        System.out.printf("Scanned %d items in %d pages, consuming %.1f RCU%n", count, engine.getPages(),
+                engine.getConsumedCapacity());
+    }
+}
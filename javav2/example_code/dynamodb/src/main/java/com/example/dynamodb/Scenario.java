@@ -4,7 +4,7 @@
 package com.example.dynamodb;
 
 // snippet-start:[dynamodb.java2.scenario.import]
-import com.fasterxml.jackson.databind.JsonNode;
+import com.example.dynamodb.bulk.BulkLoader;
 import software.amazon.awssdk.core.waiters.WaiterResponse;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
@@ -12,6 +12,7 @@ import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
 import software.amazon.awssdk.enhanced.dynamodb.Key;
 import software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
 import software.amazon.awssdk.services.dynamodb.model.AttributeDefinition;
@@ -30,10 +31,6 @@ import software.amazon.awssdk.services.dynamodb.model.AttributeAction;
 import software.amazon.awssdk.services.dynamodb.model.DeleteTableRequest;
 import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
 import software.amazon.awssdk.services.dynamodb.waiters.DynamoDbWaiter;
-import com.fasterxml.jackson.core.JsonFactory;
-import com.fasterxml.jackson.core.JsonParser;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -89,6 +86,9 @@ public class Scenario {
         DynamoDbClient ddb = DynamoDbClient.builder()
                 .region(region)
                 .build();
+        DynamoDbAsyncClient ddbAsync = DynamoDbAsyncClient.builder()
+                .region(region)
+                .build();
 
         System.out.println(DASHES);
         System.out.println("Welcome to the Amazon DynamoDB example scenario.");
@@ -102,7 +102,7 @@ public class Scenario {
 
         System.out.println(DASHES);
         System.out.println("2. Loading data into the Amazon DynamoDB table.");
-        loadData(ddb, tableName, fileName);
+        loadData(ddbAsync, tableName, fileName);
         System.out.println(DASHES);
 
         System.out.println(DASHES);
@@ -136,6 +136,7 @@ public class Scenario {
         System.out.println(DASHES);
 
         ddb.close();
+        ddbAsync.close();
     }
 
     // snippet-start:[dynamodb.java2.scenario.create_table.main]
@@ -256,35 +257,27 @@ public class Scenario {
 
     // snippet-start:[dynamodb.java2.scenario.populate_table.main]
     // Load data into the table.
-    public static void loadData(DynamoDbClient ddb, String tableName, String fileName) throws IOException {
-        DynamoDbEnhancedClient enhancedClient = DynamoDbEnhancedClient.builder()
-                .dynamoDbClient(ddb)
-                .build();
+    public static void loadData(DynamoDbAsyncClient ddbAsync, String tableName, String fileName) throws IOException {
+        // Only add 200 Movies to the table.
+        bulkLoadData(ddbAsync, tableName, fileName, 200);
+    }
 
-        DynamoDbTable<Movies> mappedTable = enhancedClient.table("Movies", TableSchema.fromBean(Movies.class));
-        JsonParser parser = new JsonFactory().createParser(new File(fileName));
-        com.fasterxml.jackson.databind.JsonNode rootNode = new ObjectMapper().readTree(parser);
-        Iterator<JsonNode> iter = rootNode.iterator();
-        ObjectNode currentNode;
-        int t = 0;
-        while (iter.hasNext()) {
-            // Only add 200 Movies to the table.
-            if (t == 200)
-                break;
-            currentNode = (ObjectNode) iter.next();
-
-            int year = currentNode.path("year").asInt();
-            String title = currentNode.path("title").asText();
-            String info = currentNode.path("info").toString();
-
-            Movies movies = new Movies();
-            movies.setYear(year);
-            movies.setTitle(title);
-            movies.setInfo(info);
-
-            // Put the data into the Amazon DynamoDB Movie table.
-            mappedTable.putItem(movies);
-            t++;
+    // Streams up to maxMovies movies from the JSON file into the table with parallel BatchWriteItem calls.
+    public static long bulkLoadData(DynamoDbAsyncClient ddbAsync, String tableName, String fileName, long maxMovies)
+            throws IOException {
+        TableSchema<Movies> schema = TableSchema.fromBean(Movies.class);
+        try (MoviesJsonReader movies = new MoviesJsonReader(new File(fileName));
+                BulkLoader loader = new BulkLoader(ddbAsync, tableName)) {
+            long count = 0;
+            while (count < maxMovies && movies.hasNext()) {
+                // Put the data into the Amazon DynamoDB Movie table.
+                loader.put(schema, movies.next());
+                count++;
+            }
+            loader.close();
+            System.out.println("Loaded " + loader.getItemsWritten() + " movies in " + loader.getBatches()
+                    + " batches");
+            return loader.getItemsWritten();
         }
     }
     // snippet-end:[dynamodb.java2.scenario.populate_table.main]
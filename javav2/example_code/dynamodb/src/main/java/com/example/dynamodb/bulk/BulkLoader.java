@@ -0,0 +1,169 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.dynamodb.bulk;
+
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughputExceededException;
+import software.amazon.awssdk.services.dynamodb.model.PutRequest;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Loads items into an Amazon DynamoDB table with {@code BatchWriteItem} calls
+ * on a {@link DynamoDbAsyncClient}.
+ *
+ * Items are grouped into batches of 25 and up to maxConcurrentBatches batches
+ * are written at the same time; {@link #put} blocks when that limit is
+ * reached, so the caller can stream any number of items in flat memory.
+ * {@code UnprocessedItems} and throttled batches are retried with capped
+ * exponential backoff and full jitter. A batch must not hold two items with
+ * the same key, so load data with duplicate keys in separate runs.
+ */
+public class BulkLoader implements AutoCloseable {
+    public static final int MAX_ITEMS_PER_BATCH = 25;
+    private static final int MAX_ATTEMPTS = 10;
+    private static final long BASE_BACKOFF_MILLIS = 50;
+    private static final long MAX_BACKOFF_MILLIS = 10_000;
+
+    private final DynamoDbAsyncClient dynamoDbClient;
+    private final String tableName;
+    private final int maxConcurrentBatches;
+    private final Semaphore inFlight;
+    private List<WriteRequest> batch = new ArrayList<>(MAX_ITEMS_PER_BATCH);
+    private boolean closed;
+
+    private final LongAdder itemsWritten = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder retriedItems = new LongAdder();
+    private final LongAdder failedItems = new LongAdder();
+
+    public BulkLoader(DynamoDbAsyncClient dynamoDbClient, String tableName) {
+        this(dynamoDbClient, tableName, 16);
+    }
+
+    /**
+     * @param maxConcurrentBatches the maximum number of outstanding BatchWriteItem calls
+     */
+    public BulkLoader(DynamoDbAsyncClient dynamoDbClient, String tableName, int maxConcurrentBatches) {
+        this.dynamoDbClient = dynamoDbClient;
+        this.tableName = tableName;
+        this.maxConcurrentBatches = maxConcurrentBatches;
+        this.inFlight = new Semaphore(maxConcurrentBatches);
+    }
+
+    // Converts the item with an enhanced client table schema and queues it.
+    public <T> void put(TableSchema<T> tableSchema, T item) {
+        put(tableSchema.itemToMap(item, true));
+    }
+
+    public synchronized void put(Map<String, AttributeValue> item) {
+        if (closed) {
+            throw new IllegalStateException("The loader is closed");
+        }
+        batch.add(WriteRequest.builder()
+                .putRequest(PutRequest.builder().item(item).build())
+                .build());
+        if (batch.size() == MAX_ITEMS_PER_BATCH) {
+            sendBatch();
+        }
+    }
+
+    private void sendBatch() {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<WriteRequest> toSend = batch;
+        batch = new ArrayList<>(MAX_ITEMS_PER_BATCH);
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to send a batch", e);
+        }
+        write(toSend, 1).whenComplete((ignored, err) -> inFlight.release());
+    }
+
+    private CompletableFuture<Void> write(List<WriteRequest> requests, int attempt) {
+        batches.increment();
+        return dynamoDbClient.batchWriteItem(BatchWriteItemRequest.builder()
+                .requestItems(Map.of(tableName, requests))
+                .build())
+                .handle((response, err) -> {
+                    Throwable cause = err instanceof CompletionException ? err.getCause() : err;
+                    List<WriteRequest> unprocessed;
+                    if (err == null) {
+                        unprocessed = response.unprocessedItems().getOrDefault(tableName, List.of());
+                        itemsWritten.add(requests.size() - unprocessed.size());
+                    } else if (cause instanceof ProvisionedThroughputExceededException) {
+                        unprocessed = requests;
+                    } else {
+                        failedItems.add(requests.size());
+                        System.err.println("BatchWriteItem failed: " + cause.getMessage());
+                        return CompletableFuture.<Void>completedFuture(null);
+                    }
+                    if (unprocessed.isEmpty()) {
+                        return CompletableFuture.<Void>completedFuture(null);
+                    }
+                    if (attempt >= MAX_ATTEMPTS) {
+                        failedItems.add(unprocessed.size());
+                        System.err.println("Giving up on " + unprocessed.size() + " items after " + attempt
+                                + " attempts");
+                        return CompletableFuture.<Void>completedFuture(null);
+                    }
+
+                    retriedItems.add(unprocessed.size());
+                    long ceiling = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << attempt);
+                    long delay = ThreadLocalRandom.current().nextLong(ceiling + 1);
+                    return CompletableFuture.supplyAsync(() -> null,
+                            CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS))
+                            .thenCompose(ignored -> write(unprocessed, attempt + 1));
+                })
+                .thenCompose(future -> future);
+    }
+
+    // Writes the last partial batch and waits until every batch has completed.
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            sendBatch();
+            closed = true;
+        }
+        try {
+            inFlight.acquire(maxConcurrentBatches);
+            inFlight.release(maxConcurrentBatches);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long getItemsWritten() {
+        return itemsWritten.sum();
+    }
+
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    public long getRetriedItems() {
+        return retriedItems.sum();
+    }
+
+    public long getFailedItems() {
+        return failedItems.sum();
+    }
+}
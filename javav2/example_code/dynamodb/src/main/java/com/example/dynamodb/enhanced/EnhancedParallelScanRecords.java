@@ -0,0 +1,64 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.dynamodb.enhanced;
+
+import com.example.dynamodb.Customer;
+import com.example.dynamodb.scan.FileScanCheckpointStore;
+import com.example.dynamodb.scan.ParallelScanEngine;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import java.nio.file.Path;
+
+/*
+ * Before running this code example, create an Amazon DynamoDB table named Customer with these columns:
+ *   - id - the id of the record that is the key
+ *   - custName - the customer name
+ *   - email - the email value
+ *   - registrationDate - an instant value when the item was added to the table
+ *
+ * Also, ensure that you have set up your development environment, including your credentials.
+ *
+ * For information, see this documentation topic:
+ *
+ * https://docs.aws.amazon.com/sdk-for-java/latest/developer-guide/get-started.html
+ */
+public class EnhancedParallelScanRecords {
+
+    public static void main(String[] args) throws InterruptedException {
+        final String usage = """
+
+                Usage:
+                    <checkpointFile>
+
+                Where:
+                    checkpointFile - The local file that records the progress of each segment (for example, customer-scan.properties).
+                """;
+
+        if (args.length != 1) {
+            System.out.println(usage);
+            System.exit(1);
+        }
+
+        Path checkpointFile = Path.of(args[0]);
+        Region region = Region.US_EAST_1;
+        DynamoDbAsyncClient ddbAsync = DynamoDbAsyncClient.builder()
+                .region(region)
+                .build();
+
+        parallelScan(ddbAsync, checkpointFile);
+        ddbAsync.close();
+    }
+
+    // Reads the Customer table with an eight-segment parallel scan that consumes at most 100 RCU per second.
+    public static void parallelScan(DynamoDbAsyncClient ddbAsync, Path checkpointFile) throws InterruptedException {
+        ParallelScanEngine engine = new ParallelScanEngine(ddbAsync, "Customer", 8, 100,
+                new FileScanCheckpointStore(checkpointFile));
+        engine.scan(TableSchema.fromBean(Customer.class), rec -> {
+            System.out.println("The record id is " + rec.getId());
+            System.out.println("The name is " + rec.getCustName());
+        });
+        System.out.println("Done");
+    }
+}
@@ -0,0 +1,71 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.dynamodb.scan;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket for read or write capacity units.
+ *
+ * The cost of a DynamoDB call is only known after it returns, so callers take
+ * an estimate up front with {@link #acquire} and settle the difference with
+ * {@link #adjust}. The bucket may go into debt; later callers then wait until
+ * the debt is paid off. The bucket holds at most one second of tokens.
+ *
+ * The rate starts at the configured maximum. It is halved when the table
+ * throttles and grows back by a twentieth of the maximum after every
+ * successful call.
+ */
+public class AdaptiveRateLimiter {
+    private final double maxRate;
+    private final double minRate;
+    private double rate;
+    private double tokens;
+    private long lastRefillNanos = System.nanoTime();
+
+    public AdaptiveRateLimiter(double unitsPerSecond) {
+        if (unitsPerSecond <= 0) {
+            throw new IllegalArgumentException("unitsPerSecond must be positive");
+        }
+        this.maxRate = unitsPerSecond;
+        this.minRate = Math.max(unitsPerSecond / 100, 0.5);
+        this.rate = unitsPerSecond;
+    }
+
+    // Takes the units and waits until the bucket is out of debt.
+    public void acquire(double units) throws InterruptedException {
+        long waitNanos;
+        synchronized (this) {
+            refill();
+            tokens -= units;
+            waitNanos = tokens >= 0 ? 0 : (long) (-tokens / rate * 1_000_000_000L);
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    // Settles the difference between the estimate passed to acquire and the actual cost.
+    public synchronized void adjust(double extraUnits) {
+        refill();
+        tokens -= extraUnits;
+        rate = Math.min(maxRate, rate + maxRate / 20);
+    }
+
+    public synchronized void throttled() {
+        refill();
+        rate = Math.max(minRate, rate / 2);
+        tokens = Math.min(tokens, 0);
+    }
+
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(rate, tokens + (now - lastRefillNanos) / 1_000_000_000.0 * rate);
+        lastRefillNanos = now;
+    }
+}
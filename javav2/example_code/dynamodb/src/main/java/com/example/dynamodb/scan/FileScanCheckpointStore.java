@@ -0,0 +1,117 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.dynamodb.scan;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Keeps scan checkpoints in a local properties file, one entry per segment.
+ * A key is written as DynamoDB JSON, for example {"id":{"S":"42"}}. Every
+ * checkpoint rewrites a temporary file and moves it over the old one, so the
+ * file is never left half written.
+ */
+public class FileScanCheckpointStore implements ScanCheckpointStore {
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private final Path file;
+    private final Properties checkpoints = new Properties();
+
+    public FileScanCheckpointStore(Path file) {
+        this.file = file;
+        if (Files.exists(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                checkpoints.load(in);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    @Override
+    public synchronized Map<String, AttributeValue> getCheckpoint(int segment, int totalSegments) {
+        String value = checkpoints.getProperty(name(segment, totalSegments));
+        return value == null ? null : decode(value);
+    }
+
+    @Override
+    public synchronized void checkpoint(int segment, int totalSegments, Map<String, AttributeValue> lastEvaluatedKey) {
+        checkpoints.setProperty(name(segment, totalSegments), encode(lastEvaluatedKey));
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                checkpoints.store(out, "DynamoDB parallel scan checkpoints");
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Checkpoints of a scan with a different number of segments do not apply, so the count is part of the name.
+    private static String name(int segment, int totalSegments) {
+        return "segment." + segment + ".of." + totalSegments;
+    }
+
+    // Key attributes can only be strings, numbers or binary values.
+    private static String encode(Map<String, AttributeValue> key) {
+        ObjectNode node = JSON.createObjectNode();
+        for (Map.Entry<String, AttributeValue> entry : key.entrySet()) {
+            AttributeValue value = entry.getValue();
+            ObjectNode attribute = node.putObject(entry.getKey());
+            if (value.s() != null) {
+                attribute.put("S", value.s());
+            } else if (value.n() != null) {
+                attribute.put("N", value.n());
+            } else if (value.b() != null) {
+                attribute.put("B", Base64.getEncoder().encodeToString(value.b().asByteArray()));
+            } else {
+                throw new IllegalArgumentException("Unsupported key attribute " + entry.getKey());
+            }
+        }
+        return node.toString();
+    }
+
+    private static Map<String, AttributeValue> decode(String value) {
+        JsonNode node;
+        try {
+            node = JSON.readTree(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Corrupt scan checkpoint: " + value, e);
+        }
+        Map<String, AttributeValue> key = new HashMap<>();
+        Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            JsonNode attribute = field.getValue();
+            if (attribute.has("S")) {
+                key.put(field.getKey(), AttributeValue.builder().s(attribute.get("S").asText()).build());
+            } else if (attribute.has("N")) {
+                key.put(field.getKey(), AttributeValue.builder().n(attribute.get("N").asText()).build());
+            } else {
+                key.put(field.getKey(), AttributeValue.builder()
+                        .b(SdkBytes.fromByteArray(Base64.getDecoder().decode(attribute.get("B").asText())))
+                        .build());
+            }
+        }
+        return key;
+    }
+}
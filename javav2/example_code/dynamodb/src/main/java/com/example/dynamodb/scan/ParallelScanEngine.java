@@ -0,0 +1,226 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.dynamodb.scan;
+
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughputExceededException;
+import software.amazon.awssdk.services.dynamodb.model.ReturnConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Scans an Amazon DynamoDB table with a parallel scan on a
+ * {@link DynamoDbAsyncClient}.
+ *
+ * The totalSegments segments are read page by page by up to
+ * MAX_SEGMENT_THREADS threads, each of which reads one segment to the end
+ * before it takes the next, so a large segment count doesn't mean a large
+ * number of threads. All segments share an {@link AdaptiveRateLimiter}, so together they never
+ * consume more than maxReadCapacityPerSecond read capacity units, and they slow
+ * down when the table throttles. Pages go into a bounded queue that the
+ * calling thread drains, so a slow consumer holds back the scan instead of
+ * filling the heap.
+ *
+ * After all items of a page have been consumed, the LastEvaluatedKey of the
+ * page is saved in the {@link ScanCheckpointStore}. A scan that is started
+ * again with the same store and segment count skips the finished segments and
+ * continues the others after their last consumed page.
+ */
+public class ParallelScanEngine {
+    private static final int MAX_THROTTLED_ATTEMPTS = 10;
+    private static final int MAX_SEGMENT_THREADS = 16;
+
+    private final DynamoDbAsyncClient dynamoDbClient;
+    private final String tableName;
+    private final int totalSegments;
+    private final int pageLimit;
+    private final int queueCapacity;
+    private final AdaptiveRateLimiter rateLimiter;
+    private final ScanCheckpointStore checkpoints;
+
+    private final LongAdder items = new LongAdder();
+    private final LongAdder pages = new LongAdder();
+    private final LongAdder throttles = new LongAdder();
+    private final DoubleAdder consumedCapacity = new DoubleAdder();
+
+    public ParallelScanEngine(DynamoDbAsyncClient dynamoDbClient, String tableName, int totalSegments,
+            double maxReadCapacityPerSecond, ScanCheckpointStore checkpoints) {
+        this(dynamoDbClient, tableName, totalSegments, maxReadCapacityPerSecond, checkpoints, 1_000,
+                Math.min(totalSegments, MAX_SEGMENT_THREADS) * 2);
+    }
+
+    /**
+     * @param pageLimit     the maximum number of items a Scan call evaluates
+     * @param queueCapacity the number of pages that may wait for the consumer
+     */
+    public ParallelScanEngine(DynamoDbAsyncClient dynamoDbClient, String tableName, int totalSegments,
+            double maxReadCapacityPerSecond, ScanCheckpointStore checkpoints, int pageLimit, int queueCapacity) {
+        if (totalSegments < 1 || totalSegments > 1_000_000) {
+            throw new IllegalArgumentException("totalSegments must be between 1 and 1000000");
+        }
+        this.dynamoDbClient = dynamoDbClient;
+        this.tableName = tableName;
+        this.totalSegments = totalSegments;
+        this.pageLimit = pageLimit;
+        this.queueCapacity = queueCapacity;
+        this.rateLimiter = new AdaptiveRateLimiter(maxReadCapacityPerSecond);
+        this.checkpoints = checkpoints;
+    }
+
+    // Scans the table and maps every item to T with an enhanced client table schema.
+    public <T> long scan(TableSchema<T> tableSchema, Consumer<T> consumer) throws InterruptedException {
+        return scan(item -> consumer.accept(tableSchema.mapToItem(item)));
+    }
+
+    /**
+     * Scans the table, passing every item to the consumer on the calling
+     * thread, and returns the number of items consumed. If the consumer or a
+     * Scan call fails, the exception is rethrown and the checkpoints point at
+     * the last fully consumed page of each segment.
+     */
+    public long scan(Consumer<Map<String, AttributeValue>> consumer) throws InterruptedException {
+        BlockingQueue<Page> queue = new ArrayBlockingQueue<>(queueCapacity);
+        ExecutorService segmentThreads = Executors.newFixedThreadPool(Math.min(totalSegments, MAX_SEGMENT_THREADS));
+        long consumed = 0;
+        int remaining = 0;
+        try {
+            for (int segment = 0; segment < totalSegments; segment++) {
+                Map<String, AttributeValue> start = checkpoints.getCheckpoint(segment, totalSegments);
+                if (start != null && start.isEmpty()) {
+                    continue;
+                }
+                int current = segment;
+                segmentThreads.execute(() -> scanSegment(current, start, queue));
+                remaining++;
+            }
+
+            while (remaining > 0) {
+                Page page = queue.take();
+                if (page.error != null) {
+                    throw page.error;
+                }
+                for (Map<String, AttributeValue> item : page.items) {
+                    consumer.accept(item);
+                    consumed++;
+                }
+                items.add(page.items.size());
+                checkpoints.checkpoint(page.segment, totalSegments, page.lastEvaluatedKey);
+                if (page.lastEvaluatedKey.isEmpty()) {
+                    remaining--;
+                }
+            }
+        } finally {
+            segmentThreads.shutdownNow();
+        }
+        return consumed;
+    }
+
+    private void scanSegment(int segment, Map<String, AttributeValue> start, BlockingQueue<Page> queue) {
+        Map<String, AttributeValue> exclusiveStartKey = start;
+        // The first page is estimated at one unit; after that, each page is estimated at the cost of the one before.
+        double estimate = 1;
+        int throttledAttempts = 0;
+        try {
+            do {
+                rateLimiter.acquire(estimate);
+                ScanResponse response;
+                try {
+                    response = dynamoDbClient.scan(request(segment, exclusiveStartKey)).join();
+                } catch (CompletionException e) {
+                    if (!(e.getCause() instanceof ProvisionedThroughputExceededException)
+                            || ++throttledAttempts >= MAX_THROTTLED_ATTEMPTS) {
+                        throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+                    }
+                    // The SDK has already retried; slow every segment down before trying the page again.
+                    throttles.increment();
+                    rateLimiter.throttled();
+                    Thread.sleep(ThreadLocalRandom.current().nextLong(100L << Math.min(throttledAttempts, 6)));
+                    continue;
+                }
+                throttledAttempts = 0;
+
+                double cost = response.consumedCapacity() != null
+                        && response.consumedCapacity().capacityUnits() != null
+                                ? response.consumedCapacity().capacityUnits()
+                                : estimate;
+                rateLimiter.adjust(cost - estimate);
+                consumedCapacity.add(cost);
+                pages.increment();
+                estimate = Math.max(cost, 0.5);
+
+                exclusiveStartKey = response.lastEvaluatedKey();
+                queue.put(new Page(segment, response.items(), exclusiveStartKey, null));
+            } while (!exclusiveStartKey.isEmpty());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            try {
+                queue.put(new Page(segment, List.of(), Map.of(), e));
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private ScanRequest request(int segment, Map<String, AttributeValue> exclusiveStartKey) {
+        ScanRequest.Builder builder = ScanRequest.builder()
+                .tableName(tableName)
+                .segment(segment)
+                .totalSegments(totalSegments)
+                .limit(pageLimit)
+                .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL);
+        if (exclusiveStartKey != null && !exclusiveStartKey.isEmpty()) {
+            builder.exclusiveStartKey(exclusiveStartKey);
+        }
+        return builder.build();
+    }
+
+    public long getItems() {
+        return items.sum();
+    }
+
+    public long getPages() {
+        return pages.sum();
+    }
+
+    public long getThrottles() {
+        return throttles.sum();
+    }
+
+    public double getConsumedCapacity() {
+        return consumedCapacity.sum();
+    }
+
+    public double getReadRate() {
+        return rateLimiter.getRate();
+    }
+
+    private static class Page {
+        final int segment;
+        final List<Map<String, AttributeValue>> items;
+        final Map<String, AttributeValue> lastEvaluatedKey;
+        final RuntimeException error;
+
+        Page(int segment, List<Map<String, AttributeValue>> items, Map<String, AttributeValue> lastEvaluatedKey,
+                RuntimeException error) {
+            this.segment = segment;
+            this.items = items;
+            this.lastEvaluatedKey = lastEvaluatedKey;
+            this.error = error;
+        }
+    }
+}
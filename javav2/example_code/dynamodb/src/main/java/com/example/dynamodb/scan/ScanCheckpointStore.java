@@ -0,0 +1,22 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.dynamodb.scan;
+
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import java.util.Map;
+
+/**
+ * Stores the LastEvaluatedKey of each scan segment so a parallel scan can
+ * resume where it stopped.
+ */
+public interface ScanCheckpointStore {
+    /**
+     * Returns the key to continue the segment after, or null when the segment
+     * has not been read yet. An empty map means the segment has been read to
+     * its end.
+     */
+    Map<String, AttributeValue> getCheckpoint(int segment, int totalSegments);
+
+    void checkpoint(int segment, int totalSegments, Map<String, AttributeValue> lastEvaluatedKey);
+}
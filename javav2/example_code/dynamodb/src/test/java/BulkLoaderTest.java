@@ -0,0 +1,56 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+import com.example.dynamodb.Scenario;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BulkLoaderTest {
+
+    @Test
+    @Tag("IntegrationTest")
+    public void loadsEveryMovieDespiteUnprocessedItems(@TempDir Path dir) throws Exception {
+        int count = 20_000;
+        Path file = dir.resolve("moviedata.json");
+        try (JsonGenerator generator = new JsonFactory().createGenerator(file.toFile(), JsonEncoding.UTF8)) {
+            generator.writeStartArray();
+            for (int i = 0; i < count; i++) {
+                generator.writeStartObject();
+                generator.writeNumberField("year", 1950 + i % 70);
+                generator.writeStringField("title", "Movie " + i);
+                generator.writeObjectFieldStart("info");
+                generator.writeStringField("plot", "The plot of movie " + i);
+                generator.writeArrayFieldStart("actors");
+                generator.writeString("Actor " + i);
+                generator.writeEndArray();
+                generator.writeEndObject();
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        }
+
+        try (LocalDynamoDbStub stub = new LocalDynamoDbStub(1_000, 0.2, "year", "title");
+                DynamoDbAsyncClient client = stub.asyncClient()) {
+            long start = System.nanoTime();
+            long loaded = Scenario.bulkLoadData(client, "Movies", file.toString(), Long.MAX_VALUE);
+            double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+            System.out.printf("Loaded %d movies in %.2f s with %d BatchWriteItem calls%n", loaded, seconds,
+                    stub.batchWriteCalls());
+
+            assertEquals(count, loaded);
+            assertEquals(count, stub.itemCount());
+            // 800 full batches plus the retries of roughly a fifth of the items.
+            assertTrue(stub.batchWriteCalls() >= count / 25);
+        }
+    }
+}
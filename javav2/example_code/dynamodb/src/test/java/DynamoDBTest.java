@@ -27,6 +27,7 @@ import org.junit.jupiter.api.TestInstance;
 import org.junit.jupiter.api.TestMethodOrder;
 import software.amazon.awssdk.auth.credentials.EnvironmentVariableCredentialsProvider;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.secretsmanager.SecretsManagerClient;
 import software.amazon.awssdk.services.secretsmanager.model.GetSecretValueRequest;
@@ -46,6 +47,7 @@ import static org.junit.jupiter.api.Assertions.assertFalse;
 public class DynamoDBTest {
 
     private static DynamoDbClient ddb;
+    private static DynamoDbAsyncClient ddbAsync;
 
     // Define the data members required for the test.
     private static String tableName = "";
@@ -69,6 +71,10 @@ public class DynamoDBTest {
                 .region(region)
                 .credentialsProvider(EnvironmentVariableCredentialsProvider.create())
                 .build();
+        ddbAsync = DynamoDbAsyncClient.builder()
+                .region(region)
+                .credentialsProvider(EnvironmentVariableCredentialsProvider.create())
+                .build();
 
         // Get the values to run these tests from AWS Secrets Manager.
         Gson gson = new Gson();
@@ -241,7 +247,7 @@ public class DynamoDBTest {
     @Order(13)
     public void testScenario() throws IOException {
         assertDoesNotThrow(() -> Scenario.createTable(ddb, tableName2));
-        assertDoesNotThrow(() -> Scenario.loadData(ddb, tableName2, fileName));
+        assertDoesNotThrow(() -> Scenario.loadData(ddbAsync, tableName2, fileName));
         assertDoesNotThrow(() -> Scenario.getItem(ddb));
         assertDoesNotThrow(() -> Scenario.putRecord(ddb));
         assertDoesNotThrow(() -> Scenario.updateTableItem(ddb, tableName2));
@@ -0,0 +1,228 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A minimal, in-process stand-in for Amazon DynamoDB that speaks the JSON
+ * protocol. It holds one table, keyed by the given key attributes ("id" by
+ * default), and supports segmented, paged Scan calls and BatchWriteItem.
+ * Reads are charged like an eventually consistent scan and throttled above
+ * the provisioned read capacity, and batch writes leave a random share of
+ * their items unprocessed, so clients can be tested and benchmarked without
+ * an AWS account.
+ */
+class LocalDynamoDbStub implements AutoCloseable {
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newFixedThreadPool(32);
+    private final double provisionedReadCapacity;
+    private final double unprocessedRate;
+    private final List<String> keyNames;
+    private final NavigableMap<String, ObjectNode> items = new ConcurrentSkipListMap<>();
+    private final AtomicLong scanCalls = new AtomicLong();
+    private final AtomicLong throttledCalls = new AtomicLong();
+    private final AtomicLong batchWriteCalls = new AtomicLong();
+    private long windowStart = System.nanoTime();
+    private double windowReads;
+
+    LocalDynamoDbStub(double provisionedReadCapacity) throws IOException {
+        this(provisionedReadCapacity, 0, "id");
+    }
+
+    LocalDynamoDbStub(double provisionedReadCapacity, double unprocessedRate, String... keyNames) throws IOException {
+        this.provisionedReadCapacity = provisionedReadCapacity;
+        this.unprocessedRate = unprocessedRate;
+        this.keyNames = List.of(keyNames);
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    DynamoDbAsyncClient asyncClient() {
+        return DynamoDbAsyncClient.builder()
+                .endpointOverride(URI.create("http://localhost:" + server.getAddress().getPort()))
+                .region(Region.US_EAST_1)
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("stub", "stub")))
+                .httpClientBuilder(NettyNioAsyncHttpClient.builder().maxConcurrency(64))
+                .build();
+    }
+
+    void putItem(String id, Map<String, String> attributes) {
+        ObjectNode item = JSON.createObjectNode();
+        item.putObject("id").put("S", id);
+        attributes.forEach((name, value) -> item.putObject(name).put("S", value));
+        items.put(keyOf(item), item);
+    }
+
+    int itemCount() {
+        return items.size();
+    }
+
+    long scanCalls() {
+        return scanCalls.get();
+    }
+
+    long throttledCalls() {
+        return throttledCalls.get();
+    }
+
+    long batchWriteCalls() {
+        return batchWriteCalls.get();
+    }
+
+    // Items are ordered by the JSON text of their key attributes.
+    private String keyOf(JsonNode item) {
+        StringBuilder key = new StringBuilder();
+        for (String name : keyNames) {
+            key.append(item.get(name)).append('\u0000');
+        }
+        return key.toString();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String target = String.valueOf(exchange.getRequestHeaders().getFirst("X-Amz-Target"));
+            JsonNode request = JSON.readTree(exchange.getRequestBody());
+            if (target.equals("DynamoDB_20120810.Scan")) {
+                scan(exchange, request);
+            } else if (target.equals("DynamoDB_20120810.BatchWriteItem")) {
+                send(exchange, 200, batchWriteItem(request));
+            } else {
+                send(exchange, 400, error("UnknownOperationException", "Unsupported operation " + target));
+            }
+        }
+    }
+
+    private void scan(HttpExchange exchange, JsonNode request) throws IOException {
+        scanCalls.incrementAndGet();
+        int segment = request.path("Segment").asInt(0);
+        int totalSegments = request.path("TotalSegments").asInt(1);
+        int limit = request.path("Limit").asInt(Integer.MAX_VALUE);
+        String start = request.has("ExclusiveStartKey") ? keyOf(request.get("ExclusiveStartKey")) : null;
+
+        ObjectNode response = JSON.createObjectNode();
+        ArrayNode page = response.putArray("Items");
+        int evaluated = 0;
+        long bytes = 0;
+        ObjectNode last = null;
+        NavigableMap<String, ObjectNode> range = start == null ? items : items.tailMap(start, false);
+        for (Map.Entry<String, ObjectNode> entry : range.entrySet()) {
+            if (Math.floorMod(entry.getKey().hashCode(), totalSegments) != segment) {
+                continue;
+            }
+            if (evaluated == limit) {
+                ObjectNode lastEvaluatedKey = response.putObject("LastEvaluatedKey");
+                for (String name : keyNames) {
+                    lastEvaluatedKey.set(name, last.get(name));
+                }
+                break;
+            }
+            page.add(entry.getValue());
+            bytes += entry.getValue().toString().getBytes(StandardCharsets.UTF_8).length;
+            evaluated++;
+            last = entry.getValue();
+        }
+        response.put("Count", evaluated);
+        response.put("ScannedCount", evaluated);
+
+        // An eventually consistent read costs half a unit per started 4 KB.
+        double units = Math.max(1, Math.ceil(bytes / 4096.0)) * 0.5;
+        if (!charge(units)) {
+            throttledCalls.incrementAndGet();
+            send(exchange, 400, error("ProvisionedThroughputExceededException",
+                    "The level of configured provisioned throughput for the table was exceeded."));
+            return;
+        }
+        response.putObject("ConsumedCapacity")
+                .put("TableName", "stub-table")
+                .put("CapacityUnits", units);
+        send(exchange, 200, response);
+    }
+
+    private JsonNode batchWriteItem(JsonNode request) {
+        batchWriteCalls.incrementAndGet();
+        ObjectNode response = JSON.createObjectNode();
+        ObjectNode unprocessed = response.putObject("UnprocessedItems");
+        Iterator<Map.Entry<String, JsonNode>> tables = request.get("RequestItems").fields();
+        while (tables.hasNext()) {
+            Map.Entry<String, JsonNode> table = tables.next();
+            for (JsonNode writeRequest : table.getValue()) {
+                if (ThreadLocalRandom.current().nextDouble() < unprocessedRate) {
+                    if (!unprocessed.has(table.getKey())) {
+                        unprocessed.putArray(table.getKey());
+                    }
+                    ((ArrayNode) unprocessed.get(table.getKey())).add(writeRequest);
+                } else if (writeRequest.has("PutRequest")) {
+                    ObjectNode item = (ObjectNode) writeRequest.get("PutRequest").get("Item");
+                    items.put(keyOf(item), item);
+                } else {
+                    items.remove(keyOf(writeRequest.get("DeleteRequest").get("Key")));
+                }
+            }
+        }
+        return response;
+    }
+
+    // Charges the read units against a one-second window of provisioned capacity.
+    private synchronized boolean charge(double units) {
+        long now = System.nanoTime();
+        if (now - windowStart >= 1_000_000_000L) {
+            windowStart = now;
+            windowReads = 0;
+        }
+        if (windowReads + units > provisionedReadCapacity) {
+            return false;
+        }
+        windowReads += units;
+        return true;
+    }
+
+    private static ObjectNode error(String type, String message) {
+        return JSON.createObjectNode()
+                .put("__type", "com.amazonaws.dynamodb.v20120810#" + type)
+                .put("message", message);
+    }
+
+    private static void send(HttpExchange exchange, int status, JsonNode body) throws IOException {
+        byte[] bytes = JSON.writeValueAsBytes(body);
+        exchange.getResponseHeaders().add("Content-Type", "application/x-amz-json-1.0");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
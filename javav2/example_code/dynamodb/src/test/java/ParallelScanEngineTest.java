@@ -0,0 +1,80 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+import com.example.dynamodb.scan.FileScanCheckpointStore;
+import com.example.dynamodb.scan.ParallelScanEngine;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ParallelScanEngineTest {
+
+    @Test
+    @Tag("IntegrationTest")
+    public void scansEverySegmentWithinTheReadCapacityAndResumesFromCheckpoints(@TempDir Path dir) throws Exception {
+        int count = 5_000;
+        double maxReadCapacity = 40;
+        try (LocalDynamoDbStub stub = new LocalDynamoDbStub(60);
+                DynamoDbAsyncClient client = stub.asyncClient()) {
+            for (int i = 0; i < count; i++) {
+                stub.putItem(String.format("item-%05d", i), Map.of("payload", "value-" + i));
+            }
+
+            Path checkpoints = dir.resolve("scan.properties");
+            Set<String> seen = ConcurrentHashMap.newKeySet();
+            AtomicInteger consumed = new AtomicInteger();
+            ParallelScanEngine interrupted = new ParallelScanEngine(client, "stub-table", 4, maxReadCapacity,
+                    new FileScanCheckpointStore(checkpoints), 50, 8);
+            assertThrows(IllegalStateException.class, () -> interrupted.scan(item -> {
+                if (consumed.incrementAndGet() > 1_000) {
+                    throw new IllegalStateException("Simulated crash");
+                }
+                seen.add(item.get("id").s());
+            }));
+
+            ParallelScanEngine resumed = new ParallelScanEngine(client, "stub-table", 4, maxReadCapacity,
+                    new FileScanCheckpointStore(checkpoints), 50, 8);
+            long start = System.nanoTime();
+            long resumedItems = resumed.scan(item -> seen.add(item.get("id").s()));
+            double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+            assertEquals(count, seen.size());
+            // Only the pages that were not fully consumed before the crash are read again.
+            assertTrue(resumedItems < count - 1_000 + 4 * 50);
+            assertEquals(0, stub.throttledCalls());
+            // The bucket starts empty, so the scan cannot run ahead of the configured rate.
+            assertTrue(seconds >= resumed.getConsumedCapacity() / maxReadCapacity - 0.5);
+        }
+    }
+
+    @Test
+    @Tag("IntegrationTest")
+    public void scansMoreSegmentsThanThreads(@TempDir Path dir) throws Exception {
+        int count = 2_000;
+        try (LocalDynamoDbStub stub = new LocalDynamoDbStub(1_000);
+                DynamoDbAsyncClient client = stub.asyncClient()) {
+            for (int i = 0; i < count; i++) {
+                stub.putItem(String.format("item-%05d", i), Map.of("payload", "value-" + i));
+            }
+
+            Set<String> seen = ConcurrentHashMap.newKeySet();
+            ParallelScanEngine engine = new ParallelScanEngine(client, "stub-table", 256, 10_000,
+                    new FileScanCheckpointStore(dir.resolve("scan.properties")));
+            long scanned = engine.scan(item -> seen.add(item.get("id").s()));
+
+            assertEquals(count, scanned);
+            assertEquals(count, seen.size());
+        }
+    }
+}
@@ -0,0 +1,74 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.kinesis;
+
+import com.example.kinesis.consumer.FileCheckpointStore;
+import com.example.kinesis.consumer.ShardConsumerEngine;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.kinesis.KinesisClient;
+import software.amazon.awssdk.services.kinesis.model.Record;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Before running this Java V2 code example, set up your development
+ * environment, including your credentials.
+ *
+ * For more information, see the following documentation topic:
+ *
+ * https://docs.aws.amazon.com/sdk-for-java/latest/developer-guide/get-started.html
+ */
+public class ConsumeStockTrades {
+    public static void main(String[] args) throws InterruptedException {
+        final String usage = """
+
+                Usage:
+                    <streamName> <checkpointFile> <runSeconds>
+
+                Where:
+                    streamName - The Amazon Kinesis data stream to read from (for example, StockTradeStream)
+                    checkpointFile - The local file that stores the position reached in each shard (for example, checkpoints.properties)
+                    runSeconds - How long to read from the stream (for example, 60)
+                """;
+
+        if (args.length != 3) {
+            System.out.println(usage);
+            System.exit(1);
+        }
+
+        String streamName = args[0];
+        Path checkpointFile = Path.of(args[1]);
+        Duration runTime = Duration.ofSeconds(Long.parseLong(args[2]));
+        Region region = Region.US_EAST_1;
+        KinesisClient kinesisClient = KinesisClient.builder()
+                .region(region)
+                .build();
+
+        consumeStockTrades(kinesisClient, streamName, checkpointFile, runTime);
+        kinesisClient.close();
+    }
+
+    /**
+     * Reads all shards in parallel with a {@link ShardConsumerEngine} for the given time.
+     * Progress is checkpointed to a local file, so a second run continues where the
+     * first one stopped.
+     */
+    public static void consumeStockTrades(KinesisClient kinesisClient, String streamName, Path checkpointFile,
+            Duration runTime) throws InterruptedException {
+        ShardConsumerEngine.RecordProcessor processor = (shardId, records) -> {
+            for (Record record : records) {
+                for (StockTrade trade : StockTradeCodec.decodeAll(record.data().asByteArrayUnsafe())) {
+                    System.out.printf("%s Seq No: %s - %s%n", shardId, record.sequenceNumber(), trade);
+                }
+            }
+        };
+        try (ShardConsumerEngine engine = new ShardConsumerEngine(kinesisClient, streamName,
+                new FileCheckpointStore(checkpointFile), processor)) {
+            engine.start();
+            Thread.sleep(runTime.toMillis());
+            engine.getMetrics().values().forEach(System.out::println);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.kinesis;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Packs several small payloads into one Amazon Kinesis record and unpacks them
+ * again on the consumer side.
+ *
+ * An aggregated record starts with the MAGIC byte, followed by each payload
+ * as a 4-byte big-endian length and the payload bytes. The magic byte can never
+ * start a JSON document, so consumers can tell aggregated records from plain
+ * ones by looking at the first byte.
+ */
+public final class RecordAggregation {
+    public static final byte MAGIC = (byte) 0xA1;
+    public static final int HEADER_BYTES = 1;
+    public static final int LENGTH_BYTES = 4;
+
+    private RecordAggregation() {
+    }
+
+    public static boolean isAggregated(byte[] data) {
+        return data.length > 0 && data[0] == MAGIC;
+    }
+
+    // Returns the size of an aggregated record holding payloads of the given total size.
+    public static int aggregatedSize(int payloadCount, int payloadBytes) {
+        return HEADER_BYTES + payloadCount * LENGTH_BYTES + payloadBytes;
+    }
+
+    public static byte[] aggregate(List<byte[]> payloads) {
+        if (payloads.size() == 1) {
+            // A single payload is sent as is, so consumers without de-aggregation can still read it.
+            return payloads.get(0);
+        }
+
+        int payloadBytes = 0;
+        for (byte[] payload : payloads) {
+            payloadBytes += payload.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(aggregatedSize(payloads.size(), payloadBytes));
+        buffer.put(MAGIC);
+        for (byte[] payload : payloads) {
+            buffer.putInt(payload.length);
+            buffer.put(payload);
+        }
+        return buffer.array();
+    }
+
+    public static List<byte[]> deaggregate(byte[] data) {
+        if (!isAggregated(data)) {
+            return List.of(data);
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(data, HEADER_BYTES, data.length - HEADER_BYTES);
+        List<byte[]> payloads = new ArrayList<>();
+        while (buffer.hasRemaining()) {
+            int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                throw new IllegalArgumentException("Corrupt aggregated record");
+            }
+            byte[] payload = new byte[length];
+            buffer.get(payload);
+            payloads.add(payload);
+        }
+        return payloads;
+    }
+}
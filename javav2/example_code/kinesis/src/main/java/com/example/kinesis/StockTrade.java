@@ -73,6 +73,11 @@ public class StockTrade {
         }
     }
 
+    // See StockTradeCodec for the binary layout.
+    public byte[] toBinaryAsBytes() {
+        return StockTradeCodec.encode(this);
+    }
+
     public static StockTrade fromJsonAsBytes(byte[] bytes) {
         try {
             return JSON.readValue(bytes, StockTrade.class);
@@ -87,4 +92,4 @@ public class StockTrade {
                 id, tradeType, quantity, tickerSymbol, price);
     }
 
-}
\ No newline at end of file
+}
\ No newline at end of file
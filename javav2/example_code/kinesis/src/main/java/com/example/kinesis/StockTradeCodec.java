@@ -0,0 +1,173 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.kinesis;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A compact, fixed-layout binary encoding for {@link StockTrade}.
+ *
+ * Every record starts with a format byte. JSON records start with '{', binary
+ * records with FORMAT_BINARY_V1, and aggregated records with
+ * {@link RecordAggregation#MAGIC}, so a consumer can read all three from the
+ * same stream. A binary record is RECORD_BYTES long, big-endian:
+ *
+ * <pre>
+ * offset  size  field
+ *      0     1  format (FORMAT_BINARY_V1)
+ *      1     1  trade type (0 = BUY, 1 = SELL)
+ *      2     8  id
+ *     10     8  quantity
+ *     18     8  price (IEEE 754 double)
+ *     26     8  ticker symbol (US-ASCII, padded with zero bytes)
+ * </pre>
+ */
+public final class StockTradeCodec {
+    public static final byte FORMAT_JSON = '{';
+    public static final byte FORMAT_BINARY_V1 = 0x01;
+    public static final int RECORD_BYTES = 34;
+    public static final int MAX_TICKER_LENGTH = 8;
+
+    private static final int TYPE_OFFSET = 1;
+    private static final int ID_OFFSET = 2;
+    private static final int QUANTITY_OFFSET = 10;
+    private static final int PRICE_OFFSET = 18;
+    private static final int TICKER_OFFSET = 26;
+    private static final StockTrade.TradeType[] TRADE_TYPES = StockTrade.TradeType.values();
+
+    private StockTradeCodec() {
+    }
+
+    /**
+     * Writes the trade at the buffer's position and advances the position by
+     * RECORD_BYTES. Nothing is allocated, so the buffer can be reused for
+     * every trade.
+     */
+    public static void encode(StockTrade trade, ByteBuffer buffer) {
+        String ticker = trade.getTickerSymbol();
+        if (ticker.length() > MAX_TICKER_LENGTH) {
+            throw new IllegalArgumentException("Ticker symbol is longer than " + MAX_TICKER_LENGTH + ": " + ticker);
+        }
+
+        buffer.put(FORMAT_BINARY_V1);
+        buffer.put((byte) trade.getTradeType().ordinal());
+        buffer.putLong(trade.getId());
+        buffer.putLong(trade.getQuantity());
+        buffer.putDouble(trade.getPrice());
+        for (int i = 0; i < MAX_TICKER_LENGTH; i++) {
+            char c = i < ticker.length() ? ticker.charAt(i) : 0;
+            if (c > 0x7F) {
+                throw new IllegalArgumentException("Ticker symbol is not ASCII: " + ticker);
+            }
+            buffer.put((byte) c);
+        }
+    }
+
+    public static byte[] encode(StockTrade trade) {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_BYTES);
+        encode(trade, buffer);
+        return buffer.array();
+    }
+
+    /**
+     * Decodes a single JSON or binary record.
+     */
+    public static StockTrade decode(byte[] data) {
+        if (data.length > 0 && data[0] == FORMAT_BINARY_V1) {
+            return new View().wrap(ByteBuffer.wrap(data), 0).toStockTrade();
+        }
+        return StockTrade.fromJsonAsBytes(data);
+    }
+
+    /**
+     * Decodes every trade in a Kinesis record, whether it is a JSON, binary or
+     * aggregated record.
+     */
+    public static List<StockTrade> decodeAll(byte[] data) {
+        List<StockTrade> trades = new ArrayList<>();
+        for (byte[] payload : RecordAggregation.deaggregate(data)) {
+            StockTrade trade = decode(payload);
+            if (trade != null) {
+                trades.add(trade);
+            }
+        }
+        return trades;
+    }
+
+    /**
+     * A flyweight that reads the fields of a binary record in place. Wrap it
+     * around a buffer and an offset and read the primitive fields without
+     * copying or allocating; one View can be reused for any number of records.
+     */
+    public static final class View {
+        private ByteBuffer buffer;
+        private int offset;
+
+        public View wrap(ByteBuffer buffer, int offset) {
+            if (buffer.get(offset) != FORMAT_BINARY_V1) {
+                throw new IllegalArgumentException("Unknown record format " + buffer.get(offset));
+            }
+            this.buffer = buffer;
+            this.offset = offset;
+            return this;
+        }
+
+        public StockTrade.TradeType tradeType() {
+            byte type = buffer.get(offset + TYPE_OFFSET);
+            if (type < 0 || type >= TRADE_TYPES.length) {
+                throw new IllegalArgumentException("Unknown trade type " + type);
+            }
+            return TRADE_TYPES[type];
+        }
+
+        public long id() {
+            return buffer.getLong(offset + ID_OFFSET);
+        }
+
+        public long quantity() {
+            return buffer.getLong(offset + QUANTITY_OFFSET);
+        }
+
+        public double price() {
+            return buffer.getDouble(offset + PRICE_OFFSET);
+        }
+
+        // Compares the ticker symbol without creating a String.
+        public boolean tickerEquals(String ticker) {
+            int length = tickerLength();
+            if (length != ticker.length()) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (buffer.get(offset + TICKER_OFFSET + i) != ticker.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public String tickerSymbol() {
+            byte[] bytes = new byte[tickerLength()];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = buffer.get(offset + TICKER_OFFSET + i);
+            }
+            return new String(bytes, StandardCharsets.US_ASCII);
+        }
+
+        public StockTrade toStockTrade() {
+            return new StockTrade(tickerSymbol(), tradeType(), price(), quantity(), id());
+        }
+
+        private int tickerLength() {
+            int length = 0;
+            while (length < MAX_TICKER_LENGTH && buffer.get(offset + TICKER_OFFSET + length) != 0) {
+                length++;
+            }
+            return length;
+        }
+    }
+}
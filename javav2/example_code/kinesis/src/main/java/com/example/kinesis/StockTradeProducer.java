@@ -0,0 +1,332 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.kinesis;
+
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.kinesis.KinesisAsyncClient;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsRequest;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsRequestEntry;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsResponse;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsResultEntry;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sends stock trades to an Amazon Kinesis data stream with batched
+ * {@code PutRecords} calls on a {@link KinesisAsyncClient}.
+ *
+ * Trades with the same partition key are packed into aggregated records (see
+ * {@link RecordAggregation}) of up to {@code aggregationBytes}. Records are
+ * grouped into requests of up to 500 records or 5 MB, and a request is sent as
+ * soon as it is full or {@code lingerMillis} after the first trade was added.
+ * Only the entries that fail inside a request are retried, with exponential
+ * backoff, and only when the failure is throttling or a server error. At most
+ * {@code maxInFlight} requests are outstanding; {@link #put} blocks when that
+ * limit is reached.
+ */
+public class StockTradeProducer implements AutoCloseable {
+    public static final int MAX_RECORDS_PER_REQUEST = 500;
+    public static final int MAX_BYTES_PER_REQUEST = 5 * 1024 * 1024;
+    public static final int MAX_BYTES_PER_RECORD = 1024 * 1024;
+    private static final int MAX_ATTEMPTS = 10;
+    private static final long BASE_BACKOFF_MILLIS = 50;
+    private static final long MAX_BACKOFF_MILLIS = 5_000;
+    // The error codes PutRecords reports for records that may succeed when sent again.
+    private static final Set<String> RETRYABLE_ERROR_CODES =
+            Set.of("ProvisionedThroughputExceededException", "InternalFailure");
+
+    private final KinesisAsyncClient kinesisClient;
+    private final String streamName;
+    private final long lingerMillis;
+    private final int aggregationBytes;
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final Map<String, Aggregate> aggregates = new HashMap<>();
+    private List<Pending> batch = new ArrayList<>();
+    private int batchBytes;
+    private ScheduledFuture<?> lingerTask;
+    private boolean closed;
+
+    private final LongAdder tradesSent = new LongAdder();
+    private final LongAdder recordsSent = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder retriedRecords = new LongAdder();
+    private final LongAdder failedTrades = new LongAdder();
+
+    public StockTradeProducer(KinesisAsyncClient kinesisClient, String streamName) {
+        this(kinesisClient, streamName, 100, 25 * 1024, 16);
+    }
+
+    /**
+     * @param lingerMillis     how long a partly filled request may wait for more trades
+     * @param aggregationBytes the target size of an aggregated record, or 0 to send one record per trade
+     * @param maxInFlight      the maximum number of outstanding PutRecords requests
+     */
+    public StockTradeProducer(KinesisAsyncClient kinesisClient, String streamName, long lingerMillis,
+            int aggregationBytes, int maxInFlight) {
+        if (aggregationBytes < 0 || aggregationBytes > MAX_BYTES_PER_RECORD) {
+            throw new IllegalArgumentException("aggregationBytes must be between 0 and " + MAX_BYTES_PER_RECORD);
+        }
+        this.kinesisClient = kinesisClient;
+        this.streamName = streamName;
+        this.lingerMillis = lingerMillis;
+        this.aggregationBytes = aggregationBytes;
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+    }
+
+    public void put(StockTrade trade) {
+        byte[] bytes = trade.toJsonAsBytes();
+
+        // The bytes could be null if there is an issue with the JSON serialization by
+        // the Jackson JSON library.
+        if (bytes == null) {
+            System.out.println("Could not get JSON bytes for stock trade");
+            return;
+        }
+        put(trade.getTickerSymbol(), bytes);
+    }
+
+    // Sends the trade in the compact binary format of StockTradeCodec instead of JSON.
+    public void putBinary(StockTrade trade) {
+        put(trade.getTickerSymbol(), StockTradeCodec.encode(trade));
+    }
+
+    public synchronized void put(String partitionKey, byte[] payload) {
+        if (closed) {
+            throw new IllegalStateException("The producer is closed");
+        }
+        if (aggregationBytes == 0) {
+            addToBatch(new Pending(partitionKey, payload, 1));
+            return;
+        }
+
+        Aggregate aggregate = aggregates.computeIfAbsent(partitionKey, key -> new Aggregate());
+        if (!aggregate.payloads.isEmpty()
+                && RecordAggregation.aggregatedSize(aggregate.payloads.size() + 1,
+                        aggregate.bytes + payload.length) > aggregationBytes) {
+            seal(partitionKey, aggregate);
+        }
+        aggregate.payloads.add(payload);
+        aggregate.bytes += payload.length;
+        scheduleLinger();
+    }
+
+    // Sends everything that is buffered without waiting for the linger time.
+    public synchronized void flush() {
+        for (Map.Entry<String, Aggregate> entry : aggregates.entrySet()) {
+            if (!entry.getValue().payloads.isEmpty()) {
+                seal(entry.getKey(), entry.getValue());
+            }
+        }
+        sendBatch();
+    }
+
+    private void seal(String partitionKey, Aggregate aggregate) {
+        byte[] data = RecordAggregation.aggregate(aggregate.payloads);
+        int trades = aggregate.payloads.size();
+        aggregate.payloads = new ArrayList<>();
+        aggregate.bytes = 0;
+        addToBatch(new Pending(partitionKey, data, trades));
+    }
+
+    private void addToBatch(Pending pending) {
+        if (batch.size() == MAX_RECORDS_PER_REQUEST || batchBytes + pending.size() > MAX_BYTES_PER_REQUEST) {
+            sendBatch();
+        }
+        batch.add(pending);
+        batchBytes += pending.size();
+        scheduleLinger();
+    }
+
+    private void scheduleLinger() {
+        if (lingerTask == null) {
+            lingerTask = scheduler.schedule(this::flush, lingerMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void sendBatch() {
+        if (lingerTask != null) {
+            lingerTask.cancel(false);
+            lingerTask = null;
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        List<Pending> toSend = batch;
+        batch = new ArrayList<>();
+        batchBytes = 0;
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to send a batch", e);
+        }
+        send(toSend, 1).whenComplete((ignored, err) -> inFlight.release());
+    }
+
+    private CompletableFuture<Void> send(List<Pending> entries, int attempt) {
+        List<PutRecordsRequestEntry> requestEntries = new ArrayList<>(entries.size());
+        for (Pending pending : entries) {
+            requestEntries.add(pending.entry);
+        }
+        requests.increment();
+
+        return kinesisClient.putRecords(PutRecordsRequest.builder()
+                .streamName(streamName)
+                .records(requestEntries)
+                .build())
+                .handle((response, err) -> {
+                    List<Pending> failed;
+                    if (err == null) {
+                        failed = failedEntries(entries, response);
+                    } else if (isRetryable(err)) {
+                        failed = entries;
+                    } else {
+                        giveUp(entries, "request failed: " + unwrap(err).getMessage());
+                        return CompletableFuture.<Void>completedFuture(null);
+                    }
+                    if (failed.isEmpty()) {
+                        return CompletableFuture.<Void>completedFuture(null);
+                    }
+                    if (attempt >= MAX_ATTEMPTS) {
+                        giveUp(failed, "still failing after " + attempt + " attempts");
+                        return CompletableFuture.<Void>completedFuture(null);
+                    }
+
+                    retriedRecords.add(failed.size());
+                    long ceiling = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << attempt);
+                    long delay = ThreadLocalRandom.current().nextLong(ceiling + 1);
+                    return CompletableFuture.supplyAsync(() -> null,
+                            CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS))
+                            .thenCompose(ignored -> send(failed, attempt + 1));
+                })
+                .thenCompose(future -> future);
+    }
+
+    // Counts the entries that succeeded and returns the ones that have to be retried.
+    private List<Pending> failedEntries(List<Pending> entries, PutRecordsResponse response) {
+        List<Pending> failed = new ArrayList<>();
+        List<Pending> rejected = new ArrayList<>();
+        String rejectedCode = null;
+        List<PutRecordsResultEntry> results = response.records();
+        for (int i = 0; i < entries.size(); i++) {
+            Pending pending = entries.get(i);
+            String errorCode = i < results.size() ? results.get(i).errorCode() : "InternalFailure";
+            if (errorCode == null) {
+                tradesSent.add(pending.trades);
+                recordsSent.increment();
+                bytesSent.add(pending.size());
+            } else if (RETRYABLE_ERROR_CODES.contains(errorCode)) {
+                failed.add(pending);
+            } else {
+                rejected.add(pending);
+                rejectedCode = errorCode;
+            }
+        }
+        if (!rejected.isEmpty()) {
+            giveUp(rejected, "rejected with " + rejectedCode);
+        }
+        return failed;
+    }
+
+    // Only throttling and server errors are worth retrying; validation or access errors fail the same way again.
+    private static boolean isRetryable(Throwable err) {
+        return unwrap(err) instanceof AwsServiceException e && (e.isThrottlingException() || e.statusCode() >= 500);
+    }
+
+    private static Throwable unwrap(Throwable err) {
+        return err instanceof CompletionException && err.getCause() != null ? err.getCause() : err;
+    }
+
+    private void giveUp(List<Pending> entries, String reason) {
+        for (Pending pending : entries) {
+            failedTrades.add(pending.trades);
+        }
+        System.err.println("Giving up on " + entries.size() + " records, " + reason);
+    }
+
+    // Flushes the buffered trades and waits until every request has completed.
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            flush();
+            closed = true;
+        }
+        try {
+            inFlight.acquire(maxInFlight);
+            inFlight.release(maxInFlight);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    public long getTradesSent() {
+        return tradesSent.sum();
+    }
+
+    public long getRecordsSent() {
+        return recordsSent.sum();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getRetriedRecords() {
+        return retriedRecords.sum();
+    }
+
+    public long getFailedTrades() {
+        return failedTrades.sum();
+    }
+
+    private static class Aggregate {
+        List<byte[]> payloads = new ArrayList<>();
+        int bytes;
+    }
+
+    private static class Pending {
+        final PutRecordsRequestEntry entry;
+        final int trades;
+
+        Pending(String partitionKey, byte[] data, int trades) {
+            this.entry = PutRecordsRequestEntry.builder()
+                    .partitionKey(partitionKey)
+                    .data(SdkBytes.fromByteArrayUnsafe(data))
+                    .build();
+            this.trades = trades;
+        }
+
+        // The request limits count both the data and the partition key.
+        int size() {
+            return entry.data().asByteArrayUnsafe().length + entry.partitionKey().length();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.kinesis;
+
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.kinesis.KinesisAsyncClient;
+
+/**
+ * Before running this Java V2 code example, set up your development
+ * environment, including your credentials.
+ *
+ * For more information, see the following documentation topic:
+ *
+ * https://docs.aws.amazon.com/sdk-for-java/latest/developer-guide/get-started.html
+ */
+public class StockTradesBatchWriter {
+    public static void main(String[] args) {
+        final String usage = """
+
+                Usage:
+                    <streamName> <count>
+
+                Where:
+                    streamName - The Amazon Kinesis data stream to which records are written (for example, StockTradeStream)
+                    count - The number of random stock trades to write (for example, 10000)
+                """;
+
+        if (args.length != 2) {
+            System.out.println(usage);
+            System.exit(1);
+        }
+
+        String streamName = args[0];
+        int count = Integer.parseInt(args[1]);
+        Region region = Region.US_EAST_1;
+        KinesisAsyncClient kinesisClient = KinesisAsyncClient.builder()
+                .region(region)
+                .build();
+
+        setStockDataBatched(kinesisClient, streamName, count);
+        kinesisClient.close();
+    }
+
+    /**
+     * Sends the trades with a {@link StockTradeProducer}, which batches them into
+     * PutRecords requests instead of sending one PutRecord request per trade.
+     */
+    public static void setStockDataBatched(KinesisAsyncClient kinesisClient, String streamName, int count) {
+        StockTradeGenerator stockTradeGenerator = new StockTradeGenerator();
+        long start = System.nanoTime();
+        try (StockTradeProducer producer = new StockTradeProducer(kinesisClient, streamName)) {
+            for (int x = 0; x < count; x++) {
+                producer.put(stockTradeGenerator.getRandomTrade());
+            }
+            producer.close();
+            double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+            System.out.printf("Sent %d trades in %d records and %d requests (%.0f trades/s, %d failed)%n",
+                    producer.getTradesSent(), producer.getRecordsSent(), producer.getRequests(),
+                    producer.getTradesSent() / seconds, producer.getFailedTrades());
+        }
+    }
+}
@@ -0,0 +1,23 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.kinesis.consumer;
+
+/**
+ * Stores the last processed sequence number of each shard so a consumer can
+ * resume where it stopped.
+ */
+public interface CheckpointStore {
+    /**
+     * The checkpoint of a shard that has been read to its end. Child shards
+     * are only read once all of their parents carry this checkpoint.
+     */
+    String SHARD_END = "SHARD_END";
+
+    /**
+     * Returns the checkpoint of the shard, or null when the shard has not been read yet.
+     */
+    String getCheckpoint(String shardId);
+
+    void checkpoint(String shardId, String sequenceNumber);
+}
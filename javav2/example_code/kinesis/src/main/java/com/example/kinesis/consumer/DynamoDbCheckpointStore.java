@@ -0,0 +1,52 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.kinesis.consumer;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import java.util.Map;
+
+/**
+ * Keeps checkpoints in an Amazon DynamoDB table with a string partition key
+ * named "leaseKey". Each item holds the checkpoint of one shard of one stream,
+ * so several consumers can share a table.
+ */
+public class DynamoDbCheckpointStore implements CheckpointStore {
+    private final DynamoDbClient dynamoDbClient;
+    private final String tableName;
+    private final String streamName;
+
+    public DynamoDbCheckpointStore(DynamoDbClient dynamoDbClient, String tableName, String streamName) {
+        this.dynamoDbClient = dynamoDbClient;
+        this.tableName = tableName;
+        this.streamName = streamName;
+    }
+
+    @Override
+    public String getCheckpoint(String shardId) {
+        Map<String, AttributeValue> item = dynamoDbClient.getItem(GetItemRequest.builder()
+                .tableName(tableName)
+                .key(Map.of("leaseKey", AttributeValue.fromS(leaseKey(shardId))))
+                .consistentRead(true)
+                .build())
+                .item();
+        return (item == null || !item.containsKey("checkpoint")) ? null : item.get("checkpoint").s();
+    }
+
+    @Override
+    public void checkpoint(String shardId, String sequenceNumber) {
+        dynamoDbClient.putItem(PutItemRequest.builder()
+                .tableName(tableName)
+                .item(Map.of(
+                        "leaseKey", AttributeValue.fromS(leaseKey(shardId)),
+                        "checkpoint", AttributeValue.fromS(sequenceNumber)))
+                .build());
+    }
+
+    private String leaseKey(String shardId) {
+        return streamName + "/" + shardId;
+    }
+}
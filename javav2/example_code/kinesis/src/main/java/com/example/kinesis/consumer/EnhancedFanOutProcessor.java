@@ -0,0 +1,264 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.kinesis.consumer;
+
+import org.reactivestreams.Publisher;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+import software.amazon.awssdk.services.kinesis.KinesisAsyncClient;
+import software.amazon.awssdk.services.kinesis.model.Record;
+import software.amazon.awssdk.services.kinesis.model.ShardIteratorType;
+import software.amazon.awssdk.services.kinesis.model.StartingPosition;
+import software.amazon.awssdk.services.kinesis.model.SubscribeToShardEvent;
+import software.amazon.awssdk.services.kinesis.model.SubscribeToShardEventStream;
+import software.amazon.awssdk.services.kinesis.model.SubscribeToShardRequest;
+import software.amazon.awssdk.services.kinesis.model.SubscribeToShardResponseHandler;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A processing stage for the event stream of an enhanced fan-out
+ * SubscribeToShard call.
+ *
+ * Records are requested from the stream in bounded amounts, so a slow handler
+ * slows the subscription down instead of filling the heap. They are grouped
+ * into micro-batches of up to maxBatchSize records or maxBatchWait, whichever
+ * comes first. Within a batch, the records of each partition key are passed to
+ * the {@link RecordHandler} in order, and up to parallelism keys are handled at
+ * the same time. The next batch starts when the current one is done, so the
+ * order of a key is kept across batches as well.
+ *
+ * A subscription ends after five minutes. {@link #start} subscribes again
+ * whenever that happens, and backs off when the subscription fails. It resumes
+ * after the continuation sequence number of the last event whose records have
+ * all been handled, or after the last handled record if an event is only
+ * partly done, so an idle shard doesn't fall back to the initial position. It
+ * stops when the shard is closed, which an event reports with child shards
+ * and no continuation sequence number.
+ */
+public class EnhancedFanOutProcessor implements AutoCloseable {
+    private final KinesisAsyncClient kinesisClient;
+    private final String consumerArn;
+    private final String shardId;
+    private final StartingPosition initialPosition;
+    private final RecordHandler handler;
+    private final int maxBatchSize;
+    private final Duration maxBatchWait;
+    private final int parallelism;
+    private final Scheduler scheduler;
+    private final long startNanos = System.nanoTime();
+    private final LongAdder records = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder subscriptions = new LongAdder();
+    private final LatencyHistogram handlerLatency = new LatencyHistogram();
+    private volatile String lastSequenceNumber;
+    private volatile String continuationSequenceNumber;
+    private volatile boolean shardEnded;
+    private volatile boolean stopped;
+    private Disposable running;
+    private volatile Disposable subscription;
+
+    /**
+     * Handles the records of one partition key from one micro-batch, in
+     * sequence number order.
+     */
+    public interface RecordHandler {
+        void handle(String partitionKey, List<Record> records);
+    }
+
+    public EnhancedFanOutProcessor(KinesisAsyncClient kinesisClient, String consumerArn, String shardId,
+            StartingPosition initialPosition, RecordHandler handler) {
+        this(kinesisClient, consumerArn, shardId, initialPosition, handler, 500, Duration.ofMillis(200), 8);
+    }
+
+    /**
+     * @param maxBatchSize the maximum number of records in a micro-batch
+     * @param maxBatchWait how long a partly filled micro-batch waits for more records
+     * @param parallelism  the number of partition keys that are handled at the same time
+     */
+    public EnhancedFanOutProcessor(KinesisAsyncClient kinesisClient, String consumerArn, String shardId,
+            StartingPosition initialPosition, RecordHandler handler, int maxBatchSize, Duration maxBatchWait,
+            int parallelism) {
+        this.kinesisClient = kinesisClient;
+        this.consumerArn = consumerArn;
+        this.shardId = shardId;
+        this.initialPosition = initialPosition;
+        this.handler = handler;
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchWait = maxBatchWait;
+        this.parallelism = parallelism;
+        this.scheduler = Schedulers.newBoundedElastic(parallelism, maxBatchSize, "efo-" + shardId);
+    }
+
+    /**
+     * Applies the stage to an event stream. The returned publisher emits each
+     * micro-batch after it has been handled. It works with any Reactive Streams
+     * library, for example {@code Flowable.fromPublisher(processor.process(p))}
+     * in RxJava.
+     */
+    public Flux<List<Record>> process(Publisher<SubscribeToShardEventStream> events) {
+        return Flux.from(events)
+                .limitRate(Math.max(1, maxBatchSize / 100))
+                .ofType(SubscribeToShardEvent.class)
+                .concatMapIterable(EnhancedFanOutProcessor::items)
+                // Fair backpressure keeps the time-based flush from emitting batches nobody requested.
+                .bufferTimeout(maxBatchSize, maxBatchWait, true)
+                .concatMap(this::handleBatch, 1)
+                .filter(batch -> !batch.isEmpty());
+    }
+
+    // The records of the event, followed by the event itself to mark where it ends.
+    private static List<Item> items(SubscribeToShardEvent event) {
+        List<Item> items = new ArrayList<>(event.records().size() + 1);
+        for (Record record : event.records()) {
+            items.add(new Item(record, null));
+        }
+        items.add(new Item(null, event));
+        return items;
+    }
+
+    // Subscribes to the shard and keeps subscribing again until close is called or the shard ends.
+    public Disposable start() {
+        running = Mono.defer(this::subscribeOnce)
+                .repeat(() -> !stopped && !shardEnded)
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofSeconds(30))
+                        .filter(err -> !stopped))
+                .subscribe(null, err -> System.err.println("Processing of " + shardId + " stopped: " + err));
+        return running;
+    }
+
+    private Mono<Void> subscribeOnce() {
+        return Mono.create(sink -> {
+            subscriptions.increment();
+            SubscribeToShardResponseHandler responseHandler = SubscribeToShardResponseHandler.builder()
+                    .onError(sink::error)
+                    .onEventStream(publisher -> {
+                        subscription = process(publisher).subscribe(batch -> {
+                        }, sink::error, sink::success);
+                        sink.onDispose(subscription);
+                    })
+                    .build();
+            kinesisClient.subscribeToShard(request(), responseHandler)
+                    .whenComplete((ignored, err) -> {
+                        if (err != null) {
+                            sink.error(err);
+                        }
+                    });
+        });
+    }
+
+    private SubscribeToShardRequest request() {
+        String sequenceNumber = continuationSequenceNumber;
+        StartingPosition position = sequenceNumber == null
+                ? initialPosition
+                : StartingPosition.builder()
+                        .type(ShardIteratorType.AFTER_SEQUENCE_NUMBER)
+                        .sequenceNumber(sequenceNumber)
+                        .build();
+        return SubscribeToShardRequest.builder()
+                .consumerARN(consumerArn)
+                .shardId(shardId)
+                .startingPosition(position)
+                .build();
+    }
+
+    private Mono<List<Record>> handleBatch(List<Item> items) {
+        List<Record> batch = new ArrayList<>(items.size());
+        Map<String, List<Record>> byKey = new LinkedHashMap<>();
+        for (Item item : items) {
+            if (item.record() != null) {
+                batch.add(item.record());
+                byKey.computeIfAbsent(item.record().partitionKey(), key -> new ArrayList<>()).add(item.record());
+            }
+        }
+
+        return Flux.fromIterable(byKey.entrySet())
+                .flatMap(entry -> Mono.fromRunnable(() -> {
+                    long start = System.nanoTime();
+                    handler.handle(entry.getKey(), entry.getValue());
+                    handlerLatency.recordNanos(System.nanoTime() - start);
+                }).subscribeOn(scheduler), parallelism)
+                .then(Mono.fromRunnable(() -> {
+                    for (Item item : items) {
+                        if (item.record() != null) {
+                            lastSequenceNumber = item.record().sequenceNumber();
+                            continuationSequenceNumber = lastSequenceNumber;
+                        } else if (item.endOf().continuationSequenceNumber() != null) {
+                            continuationSequenceNumber = item.endOf().continuationSequenceNumber();
+                        } else if (item.endOf().hasChildShards() && !item.endOf().childShards().isEmpty()) {
+                            shardEnded = true;
+                        }
+                    }
+                    records.add(batch.size());
+                    if (!batch.isEmpty()) {
+                        batches.increment();
+                    }
+                }))
+                .thenReturn(batch);
+    }
+
+    // Prints a metrics line at the given interval until the processor is closed.
+    public Disposable reportEvery(Duration interval) {
+        return Flux.interval(interval)
+                .takeWhile(tick -> !stopped)
+                .subscribe(tick -> System.out.println(shardId + ": " + metrics()));
+    }
+
+    public long getRecords() {
+        return records.sum();
+    }
+
+    public double getRecordsPerSecond() {
+        double seconds = (System.nanoTime() - startNanos) / 1_000_000_000.0;
+        return seconds > 0 ? getRecords() / seconds : 0;
+    }
+
+    public LatencyHistogram getHandlerLatency() {
+        return handlerLatency;
+    }
+
+    public String getLastSequenceNumber() {
+        return lastSequenceNumber;
+    }
+
+    // The sequence number the next subscription starts after.
+    public String getContinuationSequenceNumber() {
+        return continuationSequenceNumber;
+    }
+
+    public boolean isShardEnded() {
+        return shardEnded;
+    }
+
+    public String metrics() {
+        return String.format("records=%d (%.1f/s), batches=%d, subscriptions=%d, handler latency %s", getRecords(),
+                getRecordsPerSecond(), batches.sum(), subscriptions.sum(), handlerLatency);
+    }
+
+    @Override
+    public void close() {
+        stopped = true;
+        if (running != null) {
+            running.dispose();
+        }
+        Disposable current = subscription;
+        if (current != null) {
+            current.dispose();
+        }
+        scheduler.dispose();
+    }
+
+    // A record, or the end of the event that carried the records before it.
+    private record Item(Record record, SubscribeToShardEvent endOf) {
+    }
+}
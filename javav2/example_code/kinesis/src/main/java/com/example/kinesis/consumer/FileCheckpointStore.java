@@ -0,0 +1,54 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.kinesis.consumer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Keeps checkpoints in a local properties file. Every checkpoint rewrites a
+ * temporary file and moves it over the old one, so the file is never left half
+ * written.
+ */
+public class FileCheckpointStore implements CheckpointStore {
+    private final Path file;
+    private final Properties checkpoints = new Properties();
+
+    public FileCheckpointStore(Path file) {
+        this.file = file;
+        if (Files.exists(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                checkpoints.load(in);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    @Override
+    public synchronized String getCheckpoint(String shardId) {
+        return checkpoints.getProperty(shardId);
+    }
+
+    @Override
+    public synchronized void checkpoint(String shardId, String sequenceNumber) {
+        checkpoints.setProperty(shardId, sequenceNumber);
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                checkpoints.store(out, "Kinesis shard checkpoints");
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
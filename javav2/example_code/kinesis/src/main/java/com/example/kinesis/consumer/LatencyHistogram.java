@@ -0,0 +1,53 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.kinesis.consumer;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free latency histogram with power-of-two microsecond buckets.
+ * Bucket i counts values below 2^i microseconds, so percentiles are reported as
+ * the upper bound of their bucket, within a factor of two of the true value.
+ */
+public class LatencyHistogram {
+    private static final int BUCKETS = 40;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    public void recordNanos(long nanos) {
+        long micros = Math.max(1, nanos / 1_000);
+        int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        counts.incrementAndGet(bucket);
+    }
+
+    public long count() {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    // Returns the upper bound, in microseconds, of the bucket holding the given percentile (0-100).
+    public long percentileMicros(double percentile) {
+        long total = count();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= Math.max(1, rank)) {
+                return 1L << i;
+            }
+        }
+        return 1L << (BUCKETS - 1);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d p50<=%dus p90<=%dus p99<=%dus max<=%dus", count(), percentileMicros(50),
+                percentileMicros(90), percentileMicros(99), percentileMicros(100));
+    }
+}
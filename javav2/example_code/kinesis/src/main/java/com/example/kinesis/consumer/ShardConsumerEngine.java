@@ -0,0 +1,294 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.kinesis.consumer;
+
+import software.amazon.awssdk.services.kinesis.KinesisClient;
+import software.amazon.awssdk.services.kinesis.model.ExpiredIteratorException;
+import software.amazon.awssdk.services.kinesis.model.GetRecordsRequest;
+import software.amazon.awssdk.services.kinesis.model.GetRecordsResponse;
+import software.amazon.awssdk.services.kinesis.model.GetShardIteratorRequest;
+import software.amazon.awssdk.services.kinesis.model.KinesisException;
+import software.amazon.awssdk.services.kinesis.model.ListShardsRequest;
+import software.amazon.awssdk.services.kinesis.model.ListShardsResponse;
+import software.amazon.awssdk.services.kinesis.model.ProvisionedThroughputExceededException;
+import software.amazon.awssdk.services.kinesis.model.Record;
+import software.amazon.awssdk.services.kinesis.model.Shard;
+import software.amazon.awssdk.services.kinesis.model.ShardIteratorType;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads every shard of an Amazon Kinesis data stream in parallel, with one
+ * worker thread per shard.
+ *
+ * Each worker polls its shard with GetRecords, hands the records to the
+ * {@link RecordProcessor} and then checkpoints the last sequence number in the
+ * {@link CheckpointStore}, so a restarted consumer resumes after the last
+ * processed record. Throttled calls back off exponentially with jitter.
+ *
+ * The shard list is refreshed periodically and whenever a shard is closed.
+ * After a reshard, a child shard is only read once its parent shards have been
+ * read to the end, which keeps the records of a partition key in order.
+ *
+ * Shards are leased within this process only. Run one engine per stream and
+ * checkpoint store.
+ */
+public class ShardConsumerEngine implements AutoCloseable {
+    private static final long MAX_BACKOFF_MILLIS = 10_000;
+
+    private final KinesisClient kinesisClient;
+    private final String streamName;
+    private final CheckpointStore checkpointStore;
+    private final RecordProcessor processor;
+    private final int maxRecords;
+    private final Duration idleTime;
+    private final Duration discoveryInterval;
+    private final ExecutorService workers = Executors.newCachedThreadPool();
+    private final ScheduledExecutorService discovery = Executors.newSingleThreadScheduledExecutor();
+    private final Set<String> leases = ConcurrentHashMap.newKeySet();
+    private final Map<String, ShardMetrics> metrics = new ConcurrentHashMap<>();
+    private volatile boolean running;
+
+    /**
+     * Receives the records of one GetRecords call. Calls for the same shard
+     * never overlap; calls for different shards run concurrently.
+     */
+    public interface RecordProcessor {
+        void processRecords(String shardId, List<Record> records);
+    }
+
+    public ShardConsumerEngine(KinesisClient kinesisClient, String streamName, CheckpointStore checkpointStore,
+            RecordProcessor processor) {
+        this(kinesisClient, streamName, checkpointStore, processor, 1000, Duration.ofSeconds(1),
+                Duration.ofSeconds(30));
+    }
+
+    /**
+     * @param maxRecords        the maximum number of records per GetRecords call
+     * @param idleTime          how long a worker waits before polling a shard that has no new records
+     * @param discoveryInterval how often the shard list is refreshed
+     */
+    public ShardConsumerEngine(KinesisClient kinesisClient, String streamName, CheckpointStore checkpointStore,
+            RecordProcessor processor, int maxRecords, Duration idleTime, Duration discoveryInterval) {
+        this.kinesisClient = kinesisClient;
+        this.streamName = streamName;
+        this.checkpointStore = checkpointStore;
+        this.processor = processor;
+        this.maxRecords = maxRecords;
+        this.idleTime = idleTime;
+        this.discoveryInterval = discoveryInterval;
+    }
+
+    public void start() {
+        running = true;
+        discovery.scheduleWithFixedDelay(this::discoverShards, 0, discoveryInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    // Returns the metrics of every shard that has been leased so far.
+    public Map<String, ShardMetrics> getMetrics() {
+        return Map.copyOf(metrics);
+    }
+
+    // Returns true when every known shard has been read to its end.
+    public boolean isFinished() {
+        return !metrics.isEmpty() && leases.isEmpty()
+                && metrics.keySet().stream()
+                        .allMatch(shardId -> CheckpointStore.SHARD_END.equals(checkpointStore.getCheckpoint(shardId)));
+    }
+
+    private synchronized void discoverShards() {
+        if (!running) {
+            return;
+        }
+        try {
+            List<Shard> shards = listShards();
+            Set<String> known = new HashSet<>();
+            for (Shard shard : shards) {
+                known.add(shard.shardId());
+            }
+
+            for (Shard shard : shards) {
+                String shardId = shard.shardId();
+                if (leases.contains(shardId) || CheckpointStore.SHARD_END.equals(checkpointStore.getCheckpoint(shardId))) {
+                    continue;
+                }
+                if (parentFinished(shard.parentShardId(), known) && parentFinished(shard.adjacentParentShardId(), known)) {
+                    leases.add(shardId);
+                    metrics.computeIfAbsent(shardId, ShardMetrics::new);
+                    workers.submit(() -> consumeShard(shardId));
+                }
+            }
+        } catch (KinesisException e) {
+            System.err.println("Failed to list the shards of " + streamName + ": " + e.getMessage());
+        }
+    }
+
+    // A parent that is no longer listed has expired, so it cannot hold unread records.
+    private boolean parentFinished(String parentShardId, Set<String> knownShards) {
+        return parentShardId == null || !knownShards.contains(parentShardId)
+                || CheckpointStore.SHARD_END.equals(checkpointStore.getCheckpoint(parentShardId));
+    }
+
+    private List<Shard> listShards() {
+        List<Shard> shards = new ArrayList<>();
+        String nextToken = null;
+        do {
+            // The stream name must not be sent together with a pagination token.
+            ListShardsRequest request = nextToken == null
+                    ? ListShardsRequest.builder().streamName(streamName).build()
+                    : ListShardsRequest.builder().nextToken(nextToken).build();
+            ListShardsResponse response = kinesisClient.listShards(request);
+            shards.addAll(response.shards());
+            nextToken = response.nextToken();
+        } while (nextToken != null);
+        return shards;
+    }
+
+    private void consumeShard(String shardId) {
+        ShardMetrics shardMetrics = metrics.get(shardId);
+        String lastSequenceNumber = checkpointStore.getCheckpoint(shardId);
+        int throttles = 0;
+        boolean failed = false;
+
+        try {
+            String iterator = shardIterator(shardId, lastSequenceNumber);
+            while (running) {
+                GetRecordsResponse response;
+                try {
+                    response = kinesisClient.getRecords(GetRecordsRequest.builder()
+                            .shardIterator(iterator)
+                            .limit(maxRecords)
+                            .build());
+                    throttles = 0;
+                } catch (ProvisionedThroughputExceededException e) {
+                    shardMetrics.throttles.incrementAndGet();
+                    sleep(Math.min(MAX_BACKOFF_MILLIS, 100L << Math.min(throttles++, 10)), true);
+                    continue;
+                } catch (ExpiredIteratorException e) {
+                    iterator = shardIterator(shardId, lastSequenceNumber);
+                    continue;
+                }
+
+                List<Record> records = response.records();
+                if (!records.isEmpty()) {
+                    processor.processRecords(shardId, records);
+                    lastSequenceNumber = records.get(records.size() - 1).sequenceNumber();
+                    checkpointStore.checkpoint(shardId, lastSequenceNumber);
+                    shardMetrics.recordsProcessed.addAndGet(records.size());
+                }
+                if (response.millisBehindLatest() != null) {
+                    shardMetrics.millisBehindLatest.set(response.millisBehindLatest());
+                }
+
+                iterator = response.nextShardIterator();
+                if (iterator == null) {
+                    // The shard was closed by a reshard and every record has been read.
+                    checkpointStore.checkpoint(shardId, CheckpointStore.SHARD_END);
+                    shardMetrics.millisBehindLatest.set(0);
+                    break;
+                }
+
+                // A shard supports five GetRecords calls per second. Poll more slowly
+                // once the worker has caught up.
+                boolean caughtUp = records.isEmpty()
+                        || (response.millisBehindLatest() != null && response.millisBehindLatest() == 0);
+                sleep(caughtUp ? idleTime.toMillis() : 200, false);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            System.err.println("Worker for " + shardId + " failed: " + e.getMessage());
+            failed = true;
+        } finally {
+            leases.remove(shardId);
+        }
+
+        // Start the children of a closed shard, or lease this shard again a little
+        // later after a failure.
+        if (running) {
+            discovery.schedule(this::discoverShards, failed ? idleTime.toMillis() : 0, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private String shardIterator(String shardId, String sequenceNumber) {
+        GetShardIteratorRequest.Builder request = GetShardIteratorRequest.builder()
+                .streamName(streamName)
+                .shardId(shardId);
+        if (sequenceNumber == null) {
+            request.shardIteratorType(ShardIteratorType.TRIM_HORIZON);
+        } else {
+            request.shardIteratorType(ShardIteratorType.AFTER_SEQUENCE_NUMBER)
+                    .startingSequenceNumber(sequenceNumber);
+        }
+        return kinesisClient.getShardIterator(request.build()).shardIterator();
+    }
+
+    private static void sleep(long millis, boolean jitter) throws InterruptedException {
+        Thread.sleep(jitter ? ThreadLocalRandom.current().nextLong(millis / 2, millis + 1) : millis);
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        discovery.shutdownNow();
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(30, TimeUnit.SECONDS)) {
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Progress of one shard. millisBehindLatest is the lag reported by the last
+     * GetRecords call: how far the worker is behind the tip of the shard.
+     */
+    public static class ShardMetrics {
+        private final String shardId;
+        private final AtomicLong recordsProcessed = new AtomicLong();
+        private final AtomicLong millisBehindLatest = new AtomicLong();
+        private final AtomicLong throttles = new AtomicLong();
+
+        ShardMetrics(String shardId) {
+            this.shardId = shardId;
+        }
+
+        public String getShardId() {
+            return shardId;
+        }
+
+        public long getRecordsProcessed() {
+            return recordsProcessed.get();
+        }
+
+        public long getMillisBehindLatest() {
+            return millisBehindLatest.get();
+        }
+
+        public long getThrottles() {
+            return throttles.get();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: records=%d, millisBehindLatest=%d, throttles=%d", shardId,
+                    getRecordsProcessed(), getMillisBehindLatest(), getThrottles());
+        }
+    }
+}
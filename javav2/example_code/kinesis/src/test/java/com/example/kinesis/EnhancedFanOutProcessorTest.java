@@ -0,0 +1,123 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.kinesis;
+
+import com.example.kinesis.consumer.EnhancedFanOutProcessor;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.kinesis.model.ChildShard;
+import software.amazon.awssdk.services.kinesis.model.Record;
+import software.amazon.awssdk.services.kinesis.model.ShardIteratorType;
+import software.amazon.awssdk.services.kinesis.model.StartingPosition;
+import software.amazon.awssdk.services.kinesis.model.SubscribeToShardEvent;
+import software.amazon.awssdk.services.kinesis.model.SubscribeToShardEventStream;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class EnhancedFanOutProcessorTest {
+
+    @Test
+    @Tag("IntegrationTest")
+    public void batchesRecordsAndKeepsTheOrderOfEachPartitionKey() {
+        List<SubscribeToShardEventStream> events = new ArrayList<>();
+        int sequence = 0;
+        for (int event = 0; event < 100; event++) {
+            List<Record> records = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                sequence++;
+                records.add(Record.builder()
+                        .partitionKey("key-" + (sequence % 16))
+                        .sequenceNumber(String.format("%020d", sequence))
+                        .data(SdkBytes.fromUtf8String("record-" + sequence))
+                        .build());
+            }
+            events.add(SubscribeToShardEvent.builder()
+                    .records(records)
+                    .continuationSequenceNumber(String.format("%020d", sequence))
+                    .millisBehindLatest(0L)
+                    .build());
+        }
+
+        Map<String, List<String>> seen = new ConcurrentHashMap<>();
+        List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        StartingPosition latest = StartingPosition.builder().type(ShardIteratorType.LATEST).build();
+        try (EnhancedFanOutProcessor processor = new EnhancedFanOutProcessor(null, "consumer", "shardId-000000000000",
+                latest, (partitionKey, records) -> {
+                    List<String> list = seen.computeIfAbsent(partitionKey, key -> new CopyOnWriteArrayList<>());
+                    for (Record record : records) {
+                        list.add(record.sequenceNumber());
+                    }
+                }, 300, Duration.ofMillis(50), 4)) {
+
+            processor.process(Flux.fromIterable(events))
+                    .doOnNext(batch -> batchSizes.add(batch.size()))
+                    .blockLast(Duration.ofSeconds(30));
+
+            assertEquals(5_000, processor.getRecords());
+            assertEquals(String.format("%020d", sequence), processor.getLastSequenceNumber());
+            assertEquals(5_000, batchSizes.stream().mapToInt(Integer::intValue).sum());
+            assertTrue(processor.getHandlerLatency().count() > 0);
+            assertTrue(batchSizes.stream().allMatch(size -> size <= 300));
+        }
+
+        assertEquals(16, seen.size());
+        for (List<String> sequenceNumbers : seen.values()) {
+            List<String> sorted = new ArrayList<>(sequenceNumbers);
+            sorted.sort(null);
+            assertEquals(sorted, sequenceNumbers);
+        }
+    }
+
+    @Test
+    @Tag("IntegrationTest")
+    public void resumesAfterTheContinuationAndStopsAtTheEndOfTheShard() {
+        Record record = Record.builder()
+                .partitionKey("key")
+                .sequenceNumber("00000000000000000001")
+                .data(SdkBytes.fromUtf8String("record"))
+                .build();
+        SubscribeToShardEvent withRecord = SubscribeToShardEvent.builder()
+                .records(record)
+                .continuationSequenceNumber("00000000000000000002")
+                .millisBehindLatest(0L)
+                .build();
+        // An idle shard still moves the continuation forward.
+        SubscribeToShardEvent idle = SubscribeToShardEvent.builder()
+                .records(List.of())
+                .continuationSequenceNumber("00000000000000000009")
+                .millisBehindLatest(0L)
+                .build();
+        SubscribeToShardEvent closed = SubscribeToShardEvent.builder()
+                .records(List.of())
+                .childShards(ChildShard.builder().shardId("shardId-000000000001").build())
+                .millisBehindLatest(0L)
+                .build();
+
+        StartingPosition latest = StartingPosition.builder().type(ShardIteratorType.LATEST).build();
+        try (EnhancedFanOutProcessor processor = new EnhancedFanOutProcessor(null, "consumer", "shardId-000000000000",
+                latest, (partitionKey, records) -> {
+                }, 300, Duration.ofMillis(50), 4)) {
+
+            processor.process(Flux.just(withRecord, idle)).blockLast(Duration.ofSeconds(30));
+            assertEquals("00000000000000000001", processor.getLastSequenceNumber());
+            assertEquals("00000000000000000009", processor.getContinuationSequenceNumber());
+            assertFalse(processor.isShardEnded());
+
+            processor.process(Flux.just(closed)).blockLast(Duration.ofSeconds(30));
+            assertTrue(processor.isShardEnded());
+            assertEquals(1, processor.getRecords());
+        }
+    }
+}
@@ -0,0 +1,257 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.kinesis;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.http.Protocol;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.kinesis.KinesisAsyncClient;
+import software.amazon.awssdk.services.kinesis.KinesisClient;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A minimal, in-process stand-in for Amazon Kinesis Data Streams that speaks
+ * the JSON protocol. PutRecords entries fail at random with the configured
+ * rate, so producers can be tested and benchmarked without an AWS account.
+ * Shards added with addShard can be read with ListShards, GetShardIterator
+ * and GetRecords; GetRecords calls fail with the same rate.
+ */
+class LocalKinesisStub implements AutoCloseable {
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newFixedThreadPool(16);
+    private final double failureRate;
+    private final AtomicLong sequence = new AtomicLong();
+    private final Queue<byte[]> accepted = new ConcurrentLinkedQueue<>();
+    private final AtomicLong putRecordsCalls = new AtomicLong();
+    private final Map<String, StubShard> shards = new ConcurrentHashMap<>();
+
+    LocalKinesisStub(double failureRate) throws IOException {
+        this.failureRate = failureRate;
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    KinesisAsyncClient asyncClient() {
+        // The stub only understands JSON, not CBOR.
+        System.setProperty("aws.cborEnabled", "false");
+        return KinesisAsyncClient.builder()
+                .endpointOverride(URI.create("http://localhost:" + server.getAddress().getPort()))
+                .region(Region.US_EAST_1)
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("stub", "stub")))
+                .httpClientBuilder(NettyNioAsyncHttpClient.builder()
+                        .protocol(Protocol.HTTP1_1)
+                        .maxConcurrency(64))
+                .build();
+    }
+
+    KinesisClient syncClient() {
+        System.setProperty("aws.cborEnabled", "false");
+        return KinesisClient.builder()
+                .endpointOverride(URI.create("http://localhost:" + server.getAddress().getPort()))
+                .region(Region.US_EAST_1)
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("stub", "stub")))
+                .build();
+    }
+
+    // Adds a shard. A closed shard returns no next iterator once its records have been read.
+    void addShard(String shardId, String parentShardId, boolean closed) {
+        shards.put(shardId, new StubShard(shardId, parentShardId, closed));
+    }
+
+    void addRecord(String shardId, String partitionKey, byte[] data) {
+        StubShard shard = shards.get(shardId);
+        synchronized (shard) {
+            shard.records.add(new StubRecord(partitionKey, data,
+                    String.format("%020d", sequence.incrementAndGet())));
+        }
+    }
+
+    Queue<byte[]> accepted() {
+        return accepted;
+    }
+
+    long putRecordsCalls() {
+        return putRecordsCalls.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String target = String.valueOf(exchange.getRequestHeaders().getFirst("X-Amz-Target"));
+            JsonNode request = JSON.readTree(exchange.getRequestBody());
+            switch (target) {
+                case "Kinesis_20131202.PutRecords":
+                    send(exchange, 200, putRecords(request));
+                    break;
+                case "Kinesis_20131202.ListShards":
+                    send(exchange, 200, listShards());
+                    break;
+                case "Kinesis_20131202.GetShardIterator":
+                    send(exchange, 200, shardIterator(request));
+                    break;
+                case "Kinesis_20131202.GetRecords":
+                    if (ThreadLocalRandom.current().nextDouble() < failureRate) {
+                        send(exchange, 400, JSON.createObjectNode()
+                                .put("__type", "ProvisionedThroughputExceededException")
+                                .put("message", "Rate exceeded"));
+                    } else {
+                        send(exchange, 200, getRecords(request));
+                    }
+                    break;
+                default:
+                    send(exchange, 400, JSON.createObjectNode()
+                            .put("__type", "UnknownOperationException")
+                            .put("message", "Unsupported operation " + target));
+            }
+        }
+    }
+
+    private JsonNode putRecords(JsonNode request) {
+        putRecordsCalls.incrementAndGet();
+        ObjectNode response = JSON.createObjectNode();
+        ArrayNode results = response.putArray("Records");
+        int failed = 0;
+        for (JsonNode record : request.get("Records")) {
+            ObjectNode result = results.addObject();
+            if (ThreadLocalRandom.current().nextDouble() < failureRate) {
+                failed++;
+                result.put("ErrorCode", "ProvisionedThroughputExceededException");
+                result.put("ErrorMessage", "Rate exceeded for shard shardId-000000000000");
+            } else {
+                accepted.add(Base64.getDecoder().decode(record.get("Data").asText()));
+                result.put("SequenceNumber", Long.toString(sequence.incrementAndGet()));
+                result.put("ShardId", "shardId-000000000000");
+            }
+        }
+        response.put("FailedRecordCount", failed);
+        return response;
+    }
+
+    private JsonNode listShards() {
+        ObjectNode response = JSON.createObjectNode();
+        ArrayNode list = response.putArray("Shards");
+        shards.values().stream()
+                .sorted((a, b) -> a.shardId.compareTo(b.shardId))
+                .forEach(shard -> {
+                    ObjectNode node = list.addObject()
+                            .put("ShardId", shard.shardId);
+                    if (shard.parentShardId != null) {
+                        node.put("ParentShardId", shard.parentShardId);
+                    }
+                    node.putObject("HashKeyRange")
+                            .put("StartingHashKey", "0")
+                            .put("EndingHashKey", "340282366920938463463374607431768211455");
+                    node.putObject("SequenceNumberRange")
+                            .put("StartingSequenceNumber", "0");
+                });
+        return response;
+    }
+
+    private JsonNode shardIterator(JsonNode request) {
+        StubShard shard = shards.get(request.get("ShardId").asText());
+        int position = 0;
+        if ("AFTER_SEQUENCE_NUMBER".equals(request.get("ShardIteratorType").asText())) {
+            String sequenceNumber = request.get("StartingSequenceNumber").asText();
+            synchronized (shard) {
+                while (position < shard.records.size()
+                        && !shard.records.get(position).sequenceNumber.equals(sequenceNumber)) {
+                    position++;
+                }
+            }
+            position++;
+        }
+        return JSON.createObjectNode().put("ShardIterator", shard.shardId + "|" + position);
+    }
+
+    private JsonNode getRecords(JsonNode request) {
+        String[] iterator = request.get("ShardIterator").asText().split("\\|");
+        StubShard shard = shards.get(iterator[0]);
+        int position = Integer.parseInt(iterator[1]);
+        int limit = request.has("Limit") ? request.get("Limit").asInt() : 10_000;
+
+        ObjectNode response = JSON.createObjectNode();
+        ArrayNode list = response.putArray("Records");
+        synchronized (shard) {
+            int end = Math.min(shard.records.size(), position + limit);
+            for (int i = position; i < end; i++) {
+                StubRecord record = shard.records.get(i);
+                list.addObject()
+                        .put("SequenceNumber", record.sequenceNumber)
+                        .put("PartitionKey", record.partitionKey)
+                        .put("Data", Base64.getEncoder().encodeToString(record.data));
+            }
+            response.put("MillisBehindLatest", end < shard.records.size() ? 1_000 : 0);
+            if (!shard.closed || end < shard.records.size()) {
+                response.put("NextShardIterator", shard.shardId + "|" + end);
+            }
+        }
+        return response;
+    }
+
+    private static void send(HttpExchange exchange, int status, JsonNode body) throws IOException {
+        byte[] bytes = JSON.writeValueAsBytes(body);
+        exchange.getResponseHeaders().add("Content-Type", "application/x-amz-json-1.1");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static class StubShard {
+        final String shardId;
+        final String parentShardId;
+        final boolean closed;
+        final List<StubRecord> records = new ArrayList<>();
+
+        StubShard(String shardId, String parentShardId, boolean closed) {
+            this.shardId = shardId;
+            this.parentShardId = parentShardId;
+            this.closed = closed;
+        }
+    }
+
+    private static class StubRecord {
+        final String partitionKey;
+        final byte[] data;
+        final String sequenceNumber;
+
+        StubRecord(String partitionKey, byte[] data, String sequenceNumber) {
+            this.partitionKey = partitionKey;
+            this.data = data;
+            this.sequenceNumber = sequenceNumber;
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
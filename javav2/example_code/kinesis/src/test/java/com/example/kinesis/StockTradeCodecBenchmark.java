@@ -0,0 +1,89 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.kinesis;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the JSON and binary encodings of StockTrade. The GC profiler
+ * reports the allocation rate (gc.alloc.rate.norm is bytes allocated per
+ * operation). Run it with the main method from the test classpath.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StockTradeCodecBenchmark {
+    private StockTrade trade;
+    private byte[] json;
+    private byte[] binary;
+    private final ByteBuffer buffer = ByteBuffer.allocate(StockTradeCodec.RECORD_BYTES);
+    private final StockTradeCodec.View view = new StockTradeCodec.View();
+
+    @Setup
+    public void setUp() {
+        trade = new StockTradeGenerator().getRandomTrade();
+        json = trade.toJsonAsBytes();
+        binary = trade.toBinaryAsBytes();
+        StockTradeCodec.encode(trade, buffer);
+        System.out.printf("%nbytes per record: json=%d binary=%d%n", json.length, binary.length);
+    }
+
+    @Benchmark
+    public byte[] encodeJson() {
+        return trade.toJsonAsBytes();
+    }
+
+    @Benchmark
+    public ByteBuffer encodeBinaryIntoReusedBuffer() {
+        buffer.clear();
+        StockTradeCodec.encode(trade, buffer);
+        return buffer;
+    }
+
+    @Benchmark
+    public StockTrade decodeJson() {
+        return StockTrade.fromJsonAsBytes(json);
+    }
+
+    @Benchmark
+    public StockTrade decodeBinary() {
+        return StockTradeCodec.decode(binary);
+    }
+
+    @Benchmark
+    public void readBinaryInPlace(Blackhole blackhole) {
+        view.wrap(buffer, 0);
+        blackhole.consume(view.id());
+        blackhole.consume(view.price());
+        blackhole.consume(view.quantity());
+        blackhole.consume(view.tradeType());
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(StockTradeCodecBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+}
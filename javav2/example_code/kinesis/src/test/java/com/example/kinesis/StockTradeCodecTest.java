@@ -0,0 +1,75 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.kinesis;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StockTradeCodecTest {
+
+    @Test
+    @Tag("IntegrationTest")
+    public void readsBinaryJsonAndAggregatedRecords() {
+        StockTrade buy = new StockTrade("BRK.A", StockTrade.TradeType.BUY, 223999.88, 3, 1);
+        StockTrade sell = new StockTrade("T", StockTrade.TradeType.SELL, 34.64, 10_000, 2);
+
+        byte[] binary = buy.toBinaryAsBytes();
+        assertEquals(StockTradeCodec.RECORD_BYTES, binary.length);
+        assertSame(buy, StockTradeCodec.decode(binary));
+        assertSame(sell, StockTradeCodec.decode(sell.toJsonAsBytes()));
+
+        byte[] aggregated = RecordAggregation.aggregate(List.of(binary, sell.toJsonAsBytes()));
+        List<StockTrade> trades = StockTradeCodec.decodeAll(aggregated);
+        assertEquals(2, trades.size());
+        assertSame(buy, trades.get(0));
+        assertSame(sell, trades.get(1));
+    }
+
+    @Test
+    @Tag("IntegrationTest")
+    public void viewReadsRecordsInPlace() {
+        ByteBuffer buffer = ByteBuffer.allocate(StockTradeCodec.RECORD_BYTES * 2);
+        StockTradeCodec.encode(new StockTrade("AAPL", StockTrade.TradeType.SELL, 119.72, 50, 7), buffer);
+        StockTradeCodec.encode(new StockTrade("GOOG", StockTrade.TradeType.BUY, 527.83, 5, 8), buffer);
+
+        StockTradeCodec.View view = new StockTradeCodec.View();
+        view.wrap(buffer, StockTradeCodec.RECORD_BYTES);
+        assertEquals(8, view.id());
+        assertEquals(5, view.quantity());
+        assertEquals(527.83, view.price());
+        assertEquals(StockTrade.TradeType.BUY, view.tradeType());
+        assertTrue(view.tickerEquals("GOOG"));
+        assertEquals("AAPL", view.wrap(buffer, 0).tickerSymbol());
+    }
+
+    @Test
+    @Tag("IntegrationTest")
+    public void rejectsLongTickers() {
+        StockTrade trade = new StockTrade("TOOLONGTICKER", StockTrade.TradeType.BUY, 1, 1, 1);
+        assertThrows(IllegalArgumentException.class, trade::toBinaryAsBytes);
+    }
+
+    @Test
+    @Tag("IntegrationTest")
+    public void rejectsUnknownTradeTypes() {
+        byte[] binary = new StockTrade("AMZN", StockTrade.TradeType.BUY, 1, 1, 1).toBinaryAsBytes();
+        binary[1] = 5;
+        assertThrows(IllegalArgumentException.class, () -> StockTradeCodec.decode(binary));
+    }
+
+    private static void assertSame(StockTrade expected, StockTrade actual) {
+        assertEquals(expected.getTickerSymbol(), actual.getTickerSymbol());
+        assertEquals(expected.getTradeType(), actual.getTradeType());
+        assertEquals(expected.getPrice(), actual.getPrice());
+        assertEquals(expected.getQuantity(), actual.getQuantity());
+        assertEquals(expected.getId(), actual.getId());
+    }
+}
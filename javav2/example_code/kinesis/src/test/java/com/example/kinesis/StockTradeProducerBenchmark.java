@@ -0,0 +1,55 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.kinesis;
+
+import software.amazon.awssdk.services.kinesis.KinesisAsyncClient;
+
+/**
+ * Measures StockTradeProducer throughput against LocalKinesisStub for several
+ * producer settings. Run it with:
+ *
+ *   <tradeCount> <failureRate>
+ *
+ * For example: 200000 0.05
+ */
+public class StockTradeProducerBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        double failureRate = args.length > 1 ? Double.parseDouble(args[1]) : 0.05;
+
+        try (LocalKinesisStub stub = new LocalKinesisStub(failureRate);
+                KinesisAsyncClient client = stub.asyncClient()) {
+            // Warm up the client and the JIT.
+            run(client, count / 10, 0, 16);
+
+            run(client, count, 0, 1);
+            run(client, count, 0, 16);
+            run(client, count, 25 * 1024, 16);
+            run(client, count, 256 * 1024, 16);
+            System.out.println("PutRecords calls handled by the stub: " + stub.putRecordsCalls());
+        }
+    }
+
+    private static void run(KinesisAsyncClient client, int count, int aggregationBytes, int maxInFlight) {
+        StockTradeGenerator generator = new StockTradeGenerator();
+        StockTrade[] trades = new StockTrade[count];
+        for (int i = 0; i < count; i++) {
+            trades[i] = generator.getRandomTrade();
+        }
+
+        StockTradeProducer producer = new StockTradeProducer(client, "stub-stream", 50, aggregationBytes,
+                maxInFlight);
+        long start = System.nanoTime();
+        for (StockTrade trade : trades) {
+            producer.put(trade);
+        }
+        producer.close();
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+        System.out.printf("aggregation=%7d B  inFlight=%2d  %10.0f trades/s  records=%7d  requests=%6d  retried=%6d%n",
+                aggregationBytes, maxInFlight, producer.getTradesSent() / seconds, producer.getRecordsSent(),
+                producer.getRequests(), producer.getRetriedRecords());
+    }
+}
@@ -0,0 +1,46 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.kinesis;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.kinesis.KinesisAsyncClient;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StockTradeProducerTest {
+
+    @Test
+    @Tag("IntegrationTest")
+    public void deliversEveryTradeDespitePartialFailures() throws IOException {
+        int count = 5_000;
+        try (LocalKinesisStub stub = new LocalKinesisStub(0.2);
+                KinesisAsyncClient client = stub.asyncClient()) {
+            StockTradeGenerator generator = new StockTradeGenerator();
+            StockTradeProducer producer = new StockTradeProducer(client, "stub-stream", 20, 8 * 1024, 4);
+            for (int i = 0; i < count; i++) {
+                producer.put(generator.getRandomTrade());
+            }
+            producer.close();
+
+            Set<Long> ids = new HashSet<>();
+            for (byte[] record : stub.accepted()) {
+                for (byte[] payload : RecordAggregation.deaggregate(record)) {
+                    ids.add(StockTrade.fromJsonAsBytes(payload).getId());
+                }
+            }
+            assertEquals(count, producer.getTradesSent());
+            assertEquals(0, producer.getFailedTrades());
+            assertEquals(count, ids.size());
+            assertTrue(producer.getRetriedRecords() > 0);
+            // Aggregation packs many trades into each record.
+            assertTrue(producer.getRecordsSent() < count / 10);
+        }
+    }
+}
@@ -4,8 +4,10 @@
 package com.example.s3;
 
 import software.amazon.awssdk.core.ResponseBytes;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
 import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectResponse;
@@ -16,7 +18,13 @@ import software.amazon.awssdk.services.s3.presigner.model.GetObjectPresignReques
 import software.amazon.awssdk.services.s3.presigner.model.PresignedGetObjectRequest;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -62,52 +70,127 @@ public class S3ZipExample {
         // Create a ByteArrayOutputStream to write the ZIP file to.
         ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
 
-        // Create a ZipOutputStream to write the files to the ZIP file.
-        ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream);
-
         try {
-            // Loop through each object key.
-            for (String imageKey : imageKeys) {
-                // Get the object data from S3.
-                GetObjectRequest getObjectRequest = GetObjectRequest.builder()
-                        .bucket(bucketName)
-                        .key(imageKey)
-                        .build();
-                ResponseBytes<GetObjectResponse> responseBytes = s3.getObjectAsBytes(getObjectRequest);
+            writeZip(s3, bucketName, imageKeys, outputStream);
+            uploadZip(s3, bucketName, zipName, outputStream);
+
+        } catch (S3Exception | IOException e) {
+            System.err.println(e.getMessage());
+            e.printStackTrace();
+        }
+    }
 
-                // Create a ZipEntry for the object and add it to the ZipOutputStream.
-                ZipEntry zipEntry = new ZipEntry(imageKey);
-                zipOutputStream.putNextEntry(zipEntry);
+    /**
+     * Creates the ZIP file with an {@link S3AsyncClient} that keeps up to
+     * {@code maxConcurrency} GET requests in flight. Finished objects are
+     * held in a reorder buffer and written to the ZIP file in the order of
+     * {@code imageKeys}. No new request is started while the buffered object
+     * bytes exceed {@code maxBufferedBytes}.
+     */
+    public static void createZIPFilePipelined(S3Client s3, S3AsyncClient s3Async, String bucketName,
+            String[] imageKeys, int maxConcurrency, long maxBufferedBytes) {
+        String uuid = java.util.UUID.randomUUID().toString();
+        String zipName = uuid + ".zip";
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
 
-                // Write the data to the ZipOutputStream.
-                zipOutputStream.write(responseBytes.asByteArray(), 0, responseBytes.asByteArray().length);
+        try {
+            writeZipPipelined(s3Async, bucketName, imageKeys, outputStream, maxConcurrency, maxBufferedBytes);
+            uploadZip(s3, bucketName, zipName, outputStream);
 
-                // Close the ZipEntry.
-                zipOutputStream.closeEntry();
-            }
+        } catch (S3Exception | IOException e) {
+            System.err.println(e.getMessage());
+            e.printStackTrace();
+        }
+    }
 
-            // Close the ZipOutputStream.
-            zipOutputStream.close();
+    // Writes the objects to the ZIP file one GET request at a time.
+    public static void writeZip(S3Client s3, String bucketName, String[] imageKeys, OutputStream out)
+            throws IOException {
+        // Create a ZipOutputStream to write the files to the ZIP file.
+        ZipOutputStream zipOutputStream = new ZipOutputStream(out);
 
-            // Upload the ZIP file to S3.
-            PutObjectRequest putObjectRequest = PutObjectRequest.builder()
+        // Loop through each object key.
+        for (String imageKey : imageKeys) {
+            // Get the object data from S3.
+            GetObjectRequest getObjectRequest = GetObjectRequest.builder()
                     .bucket(bucketName)
-                    .key(zipName)
+                    .key(imageKey)
                     .build();
-            s3.putObject(putObjectRequest, RequestBody.fromBytes(outputStream.toByteArray()));
-            String preSignUrl = signObjectToDownload(bucketName, zipName);
-            System.out.println("The Presigned URL is " + preSignUrl);
+            ResponseBytes<GetObjectResponse> responseBytes = s3.getObjectAsBytes(getObjectRequest);
+            writeEntry(zipOutputStream, imageKey, responseBytes.asByteArrayUnsafe());
+        }
 
-        } catch (S3Exception | IOException e) {
-            System.err.println(e.getMessage());
-            e.printStackTrace();
-        } finally {
+        // Close the ZipOutputStream.
+        zipOutputStream.close();
+    }
+
+    // Writes the objects to the ZIP file while up to maxConcurrency GET requests are in flight.
+    public static void writeZipPipelined(S3AsyncClient s3Async, String bucketName, String[] imageKeys,
+            OutputStream out, int maxConcurrency, long maxBufferedBytes) throws IOException {
+        if (maxConcurrency < 1 || maxBufferedBytes < 1) {
+            throw new IllegalArgumentException("maxConcurrency and maxBufferedBytes must be positive");
+        }
+
+        ZipOutputStream zipOutputStream = new ZipOutputStream(out);
+        // The reorder buffer. Requests are queued in key order, so the head of the
+        // queue is always the next entry to write, no matter which request finishes first.
+        Deque<CompletableFuture<ResponseBytes<GetObjectResponse>>> pending = new ArrayDeque<>();
+        AtomicLong bufferedBytes = new AtomicLong();
+        int next = 0;
+        int written = 0;
+
+        while (written < imageKeys.length) {
+            while (next < imageKeys.length && pending.size() < maxConcurrency
+                    && bufferedBytes.get() < maxBufferedBytes) {
+                GetObjectRequest getObjectRequest = GetObjectRequest.builder()
+                        .bucket(bucketName)
+                        .key(imageKeys[next++])
+                        .build();
+                pending.addLast(s3Async.getObject(getObjectRequest, AsyncResponseTransformer.toBytes())
+                        .thenApply(bytes -> {
+                            bufferedBytes.addAndGet(bytes.asByteArrayUnsafe().length);
+                            return bytes;
+                        }));
+            }
+
+            byte[] data;
             try {
-                outputStream.close();
-            } catch (IOException e) {
-                e.printStackTrace();
+                data = pending.removeFirst().join().asByteArrayUnsafe();
+            } catch (CompletionException e) {
+                pending.forEach(future -> future.cancel(true));
+                if (e.getCause() instanceof S3Exception) {
+                    throw (S3Exception) e.getCause();
+                }
+                throw new IOException(e.getCause());
             }
+            writeEntry(zipOutputStream, imageKeys[written++], data);
+            bufferedBytes.addAndGet(-data.length);
         }
+
+        zipOutputStream.close();
+    }
+
+    private static void writeEntry(ZipOutputStream zipOutputStream, String key, byte[] data) throws IOException {
+        // Create a ZipEntry for the object and add it to the ZipOutputStream.
+        ZipEntry zipEntry = new ZipEntry(key);
+        zipOutputStream.putNextEntry(zipEntry);
+
+        // Write the data to the ZipOutputStream.
+        zipOutputStream.write(data, 0, data.length);
+
+        // Close the ZipEntry.
+        zipOutputStream.closeEntry();
+    }
+
+    private static void uploadZip(S3Client s3, String bucketName, String zipName, ByteArrayOutputStream outputStream) {
+        // Upload the ZIP file to S3.
+        PutObjectRequest putObjectRequest = PutObjectRequest.builder()
+                .bucket(bucketName)
+                .key(zipName)
+                .build();
+        s3.putObject(putObjectRequest, RequestBody.fromBytes(outputStream.toByteArray()));
+        String preSignUrl = signObjectToDownload(bucketName, zipName);
+        System.out.println("The Presigned URL is " + preSignUrl);
     }
 
     public static String signObjectToDownload(String bucketName, String keyName) {
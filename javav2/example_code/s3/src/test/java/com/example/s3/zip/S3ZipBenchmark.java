@@ -0,0 +1,64 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.s3.zip;
+
+import com.example.s3.S3ZipExample;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.io.OutputStream;
+import java.util.Random;
+
+/**
+ * Compares the sequential and pipelined ZIP writers in S3ZipExample against
+ * LocalS3Stub. Run it with:
+ *
+ *   <objectCount> <objectSizeBytes> <latencyMillis> <maxConcurrency>
+ *
+ * For example: 200 262144 20 16
+ */
+public class S3ZipBenchmark {
+    private static final String BUCKET = "zip-benchmark";
+
+    public static void main(String[] args) throws Exception {
+        int objectCount = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int objectSize = args.length > 1 ? Integer.parseInt(args[1]) : 256 * 1024;
+        long latencyMillis = args.length > 2 ? Long.parseLong(args[2]) : 20;
+        int maxConcurrency = args.length > 3 ? Integer.parseInt(args[3]) : 16;
+        long maxBufferedBytes = 64L * 1024 * 1024;
+
+        try (LocalS3Stub stub = new LocalS3Stub(latencyMillis);
+                S3Client s3 = stub.syncClient();
+                S3AsyncClient s3Async = stub.asyncClient()) {
+            String[] keys = new String[objectCount];
+            Random random = new Random(42);
+            for (int i = 0; i < objectCount; i++) {
+                byte[] data = new byte[objectSize];
+                random.nextBytes(data);
+                keys[i] = "image-" + i + ".jpg";
+                stub.putObject(BUCKET, keys[i], data);
+            }
+
+            // Warm up both paths so connection setup is not measured.
+            S3ZipExample.writeZip(s3, BUCKET, keys, OutputStream.nullOutputStream());
+            S3ZipExample.writeZipPipelined(s3Async, BUCKET, keys, OutputStream.nullOutputStream(), maxConcurrency,
+                    maxBufferedBytes);
+
+            long start = System.nanoTime();
+            S3ZipExample.writeZip(s3, BUCKET, keys, OutputStream.nullOutputStream());
+            report("sequential", objectCount, objectSize, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            S3ZipExample.writeZipPipelined(s3Async, BUCKET, keys, OutputStream.nullOutputStream(), maxConcurrency,
+                    maxBufferedBytes);
+            report("pipelined(" + maxConcurrency + ")", objectCount, objectSize, System.nanoTime() - start);
+        }
+    }
+
+    private static void report(String mode, int objectCount, int objectSize, long nanos) {
+        double seconds = nanos / 1_000_000_000.0;
+        System.out.printf("%-16s %8.1f ms %10.1f objects/s %8.1f MiB/s%n", mode, nanos / 1_000_000.0,
+                objectCount / seconds, (double) objectCount * objectSize / (1024 * 1024) / seconds);
+    }
+}
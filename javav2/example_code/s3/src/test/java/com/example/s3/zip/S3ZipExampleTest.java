@@ -0,0 +1,69 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.s3.zip;
+
+import com.example.s3.S3ZipExample;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class S3ZipExampleTest {
+    private static final String BUCKET = "zip-test";
+
+    @Test
+    @Tag("IntegrationTest")
+    void pipelinedZipMatchesSequentialZip() throws IOException {
+        try (LocalS3Stub stub = new LocalS3Stub(5);
+                S3Client s3 = stub.syncClient();
+                S3AsyncClient s3Async = stub.asyncClient()) {
+            String[] keys = new String[40];
+            Random random = new Random(7);
+            for (int i = 0; i < keys.length; i++) {
+                // Vary the sizes so requests finish out of order.
+                byte[] data = new byte[random.nextInt(64 * 1024)];
+                random.nextBytes(data);
+                keys[i] = "image-" + i + ".jpg";
+                stub.putObject(BUCKET, keys[i], data);
+            }
+
+            ByteArrayOutputStream sequential = new ByteArrayOutputStream();
+            S3ZipExample.writeZip(s3, BUCKET, keys, sequential);
+            ByteArrayOutputStream pipelined = new ByteArrayOutputStream();
+            // A small buffer cap forces the writer to throttle new requests.
+            S3ZipExample.writeZipPipelined(s3Async, BUCKET, keys, pipelined, 8, 128 * 1024);
+
+            Map<String, byte[]> expected = readZip(sequential.toByteArray());
+            Map<String, byte[]> actual = readZip(pipelined.toByteArray());
+            assertEquals(List.of(keys), List.copyOf(actual.keySet()));
+            for (String key : keys) {
+                assertArrayEquals(expected.get(key), actual.get(key));
+            }
+        }
+    }
+
+    private static Map<String, byte[]> readZip(byte[] zip) throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(zip))) {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                entries.put(entry.getName(), in.readAllBytes());
+            }
+        }
+        return entries;
+    }
+}
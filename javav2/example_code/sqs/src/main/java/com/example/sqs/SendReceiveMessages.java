@@ -4,6 +4,7 @@
 package com.example.sqs;
 
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.sqs.SqsAsyncClient;
 import software.amazon.awssdk.services.sqs.SqsClient;
 import software.amazon.awssdk.services.sqs.model.CreateQueueRequest;
 import software.amazon.awssdk.services.sqs.model.CreateQueueResponse;
@@ -14,8 +15,10 @@ import software.amazon.awssdk.services.sqs.model.ReceiveMessageRequest;
 import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
 import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
 import software.amazon.awssdk.services.sqs.model.SendMessageRequest;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public class SendReceiveMessages {
         private static final String QUEUE_NAME = "testQueue" + new Date().getTime();
@@ -74,4 +77,28 @@ public class SendReceiveMessages {
                         throw e;
                 }
         }
+
+        /**
+         * Sends and receives messages with SqsBatchEngine, which groups the
+         * single sends and deletes into batch requests of up to 10 entries.
+         */
+        public static void sendReceiveBatched(SqsAsyncClient sqsAsyncClient, String queueUrl, int count)
+                        throws InterruptedException {
+                try (SqsBatchEngine engine = new SqsBatchEngine(sqsAsyncClient, queueUrl)) {
+                        List<CompletableFuture<String>> sent = new ArrayList<>();
+                        for (int i = 0; i < count; i++) {
+                                sent.add(engine.send("Hello from message " + i));
+                        }
+                        CompletableFuture.allOf(sent.toArray(new CompletableFuture[0])).join();
+
+                        engine.startReceiving(2, 4, m -> System.out.println(m.body()));
+                        while (engine.getMessagesDeleted() < count) {
+                                Thread.sleep(100);
+                                engine.flush();
+                        }
+                        System.out.println("Sent " + engine.getMessagesSent() + " and deleted "
+                                        + engine.getMessagesDeleted() + " messages in " + engine.getRequests()
+                                        + " batch requests");
+                }
+        }
 }
@@ -0,0 +1,469 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.sqs;
+
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.services.sqs.SqsAsyncClient;
+import software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchResultEntry;
+import software.amazon.awssdk.services.sqs.model.Message;
+import software.amazon.awssdk.services.sqs.model.ReceiveMessageRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResultEntry;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Sends, receives and deletes Amazon SQS messages in batches with an
+ * {@link SqsAsyncClient}.
+ *
+ * Calls to {@link #send} and {@link #delete} are coalesced into
+ * {@code SendMessageBatch} and {@code DeleteMessageBatch} requests of up to
+ * {@code maxBatchSize} entries. A batch is sent as soon as it is full, when the
+ * next message would push a send batch over 256 KiB, or {@code lingerMillis}
+ * after its first entry was added. Entries that fail inside a batch are
+ * retried with exponential backoff unless SQS reports a sender fault. A request
+ * that fails as a whole is only retried when it was throttled or hit a server
+ * error; any other error fails every entry of the batch at once. At most
+ * {@code maxInFlight} batch requests are outstanding; callers block when that
+ * limit is reached.
+ *
+ * {@link #startReceiving} runs several long-poll receivers that pass messages
+ * to a fixed pool of workers. A receiver only polls when the workers have room
+ * for the messages it asks for, and a message is deleted once its handler
+ * returns without an exception.
+ */
+public class SqsBatchEngine implements AutoCloseable {
+    public static final int MAX_ENTRIES_PER_BATCH = 10;
+    public static final int MAX_BYTES_PER_BATCH = 256 * 1024;
+    private static final int MAX_ATTEMPTS = 8;
+    private static final long BASE_BACKOFF_MILLIS = 50;
+    private static final long MAX_BACKOFF_MILLIS = 5_000;
+
+    private final SqsAsyncClient sqsClient;
+    private final String queueUrl;
+    private final int maxBatchSize;
+    private final long lingerMillis;
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final Batcher sends;
+    private final Batcher deletes;
+    private final List<Thread> receivers = new ArrayList<>();
+    private ExecutorService workers;
+    private volatile boolean receiving;
+    private volatile boolean closed;
+
+    private final LongAdder messagesSent = new LongAdder();
+    private final LongAdder messagesReceived = new LongAdder();
+    private final LongAdder messagesDeleted = new LongAdder();
+    private final LongAdder handlerFailures = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder retriedEntries = new LongAdder();
+
+    /**
+     * Handles one received message. The message is deleted when the method
+     * returns; if it throws, the message becomes visible again after the
+     * visibility timeout of the queue.
+     */
+    public interface MessageHandler {
+        void handle(Message message) throws Exception;
+    }
+
+    public SqsBatchEngine(SqsAsyncClient sqsClient, String queueUrl) {
+        this(sqsClient, queueUrl, MAX_ENTRIES_PER_BATCH, 20, 16);
+    }
+
+    /**
+     * @param maxBatchSize the maximum number of entries in a batch request, from 1 to 10
+     * @param lingerMillis how long a partly filled batch may wait for more entries
+     * @param maxInFlight  the maximum number of outstanding batch requests
+     */
+    public SqsBatchEngine(SqsAsyncClient sqsClient, String queueUrl, int maxBatchSize, long lingerMillis,
+            int maxInFlight) {
+        if (maxBatchSize < 1 || maxBatchSize > MAX_ENTRIES_PER_BATCH) {
+            throw new IllegalArgumentException("maxBatchSize must be between 1 and " + MAX_ENTRIES_PER_BATCH);
+        }
+        this.sqsClient = sqsClient;
+        this.queueUrl = queueUrl;
+        this.maxBatchSize = maxBatchSize;
+        this.lingerMillis = lingerMillis;
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.sends = new Batcher(MAX_BYTES_PER_BATCH, this::sendBatch);
+        this.deletes = new Batcher(Integer.MAX_VALUE, this::deleteBatch);
+    }
+
+    // Queues a message for sending. The future completes with the message ID.
+    public CompletableFuture<String> send(String messageBody) {
+        return sends.add(messageBody, messageBody.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    // Queues a received message for deletion.
+    public CompletableFuture<String> delete(String receiptHandle) {
+        return deletes.add(receiptHandle, 0);
+    }
+
+    public void startReceiving(int receiverCount, int workerCount, MessageHandler handler) {
+        startReceiving(receiverCount, workerCount, 20, handler);
+    }
+
+    /**
+     * Starts receiverCount long-poll receivers that feed workerCount workers.
+     * At most twice as many messages as there are workers are held in memory.
+     *
+     * @param waitTimeSeconds the long-poll wait time of each ReceiveMessage call, up to 20
+     */
+    public synchronized void startReceiving(int receiverCount, int workerCount, int waitTimeSeconds,
+            MessageHandler handler) {
+        if (receiving || closed) {
+            throw new IllegalStateException("The engine is already receiving or is closed");
+        }
+        int capacity = Math.max(workerCount * 2, 1);
+        Semaphore room = new Semaphore(capacity);
+        workers = new ThreadPoolExecutor(workerCount, workerCount, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(capacity));
+        receiving = true;
+        for (int i = 0; i < receiverCount; i++) {
+            Thread receiver = new Thread(() -> receiveLoop(Math.min(MAX_ENTRIES_PER_BATCH, capacity),
+                    waitTimeSeconds, room, handler), "sqs-receiver-" + i);
+            receiver.setDaemon(true);
+            receiver.start();
+            receivers.add(receiver);
+        }
+    }
+
+    private void receiveLoop(int maxMessages, int waitTimeSeconds, Semaphore room, MessageHandler handler) {
+        int failures = 0;
+        while (receiving) {
+            try {
+                room.acquire(maxMessages);
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            List<Message> messages;
+            try {
+                messages = sqsClient.receiveMessage(ReceiveMessageRequest.builder()
+                        .queueUrl(queueUrl)
+                        .maxNumberOfMessages(maxMessages)
+                        .waitTimeSeconds(waitTimeSeconds)
+                        .build())
+                        .join()
+                        .messages();
+                failures = 0;
+            } catch (RuntimeException e) {
+                room.release(maxMessages);
+                failures++;
+                System.err.println("ReceiveMessage failed: " + e.getMessage());
+                if (!sleepQuietly(backoffMillis(failures))) {
+                    return;
+                }
+                continue;
+            }
+
+            room.release(maxMessages - messages.size());
+            messagesReceived.add(messages.size());
+            for (Message message : messages) {
+                workers.execute(() -> {
+                    try {
+                        handler.handle(message);
+                        delete(message.receiptHandle());
+                    } catch (Exception e) {
+                        handlerFailures.increment();
+                    } finally {
+                        room.release();
+                    }
+                });
+            }
+        }
+    }
+
+    // Stops the receivers and waits until every received message has been handled.
+    public void stopReceiving() {
+        synchronized (this) {
+            if (!receiving) {
+                return;
+            }
+            receiving = false;
+        }
+        try {
+            for (Thread receiver : receivers) {
+                receiver.join();
+            }
+            workers.shutdown();
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        receivers.clear();
+    }
+
+    // Sends every buffered entry without waiting for the linger time.
+    public void flush() {
+        sends.flush();
+        deletes.flush();
+    }
+
+    private CompletableFuture<Outcome> sendBatch(List<Pending> entries) {
+        List<SendMessageBatchRequestEntry> requestEntries = new ArrayList<>(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            requestEntries.add(SendMessageBatchRequestEntry.builder()
+                    .id(Integer.toString(i))
+                    .messageBody(entries.get(i).payload)
+                    .build());
+        }
+        return sqsClient.sendMessageBatch(SendMessageBatchRequest.builder()
+                .queueUrl(queueUrl)
+                .entries(requestEntries)
+                .build())
+                .thenApply(response -> {
+                    Map<String, String> succeeded = new HashMap<>();
+                    for (SendMessageBatchResultEntry entry : response.successful()) {
+                        succeeded.put(entry.id(), entry.messageId());
+                    }
+                    messagesSent.add(succeeded.size());
+                    return new Outcome(succeeded, response.failed());
+                });
+    }
+
+    private CompletableFuture<Outcome> deleteBatch(List<Pending> entries) {
+        List<DeleteMessageBatchRequestEntry> requestEntries = new ArrayList<>(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            requestEntries.add(DeleteMessageBatchRequestEntry.builder()
+                    .id(Integer.toString(i))
+                    .receiptHandle(entries.get(i).payload)
+                    .build());
+        }
+        return sqsClient.deleteMessageBatch(DeleteMessageBatchRequest.builder()
+                .queueUrl(queueUrl)
+                .entries(requestEntries)
+                .build())
+                .thenApply(response -> {
+                    Map<String, String> succeeded = new HashMap<>();
+                    for (DeleteMessageBatchResultEntry entry : response.successful()) {
+                        succeeded.put(entry.id(), entries.get(Integer.parseInt(entry.id())).payload);
+                    }
+                    messagesDeleted.add(succeeded.size());
+                    return new Outcome(succeeded, response.failed());
+                });
+    }
+
+    // Only throttling and server errors are worth retrying; validation or access errors fail the same way again.
+    private static boolean isRetryable(Throwable err) {
+        return unwrap(err) instanceof AwsServiceException e && (e.isThrottlingException() || e.statusCode() >= 500);
+    }
+
+    private static Throwable unwrap(Throwable err) {
+        return err instanceof CompletionException && err.getCause() != null ? err.getCause() : err;
+    }
+
+    private static long backoffMillis(int attempt) {
+        long ceiling = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << Math.min(attempt, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    private static boolean sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    // Stops receiving, sends everything that is buffered and waits until every request has completed.
+    @Override
+    public void close() {
+        stopReceiving();
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        flush();
+        try {
+            inFlight.acquire(maxInFlight);
+            inFlight.release(maxInFlight);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    public long getMessagesSent() {
+        return messagesSent.sum();
+    }
+
+    public long getMessagesReceived() {
+        return messagesReceived.sum();
+    }
+
+    public long getMessagesDeleted() {
+        return messagesDeleted.sum();
+    }
+
+    public long getHandlerFailures() {
+        return handlerFailures.sum();
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getRetriedEntries() {
+        return retriedEntries.sum();
+    }
+
+    /**
+     * Buffers the entries of one kind of batch request and sends them when the
+     * batch is full or the linger time has run out.
+     */
+    private class Batcher {
+        private final int maxBytes;
+        private final Function<List<Pending>, CompletableFuture<Outcome>> call;
+        private List<Pending> batch = new ArrayList<>();
+        private int batchBytes;
+        private ScheduledFuture<?> lingerTask;
+
+        Batcher(int maxBytes, Function<List<Pending>, CompletableFuture<Outcome>> call) {
+            this.maxBytes = maxBytes;
+            this.call = call;
+        }
+
+        synchronized CompletableFuture<String> add(String payload, int bytes) {
+            if (closed) {
+                throw new IllegalStateException("The engine is closed");
+            }
+            if (bytes > maxBytes) {
+                throw new IllegalArgumentException("A message can be at most " + maxBytes + " bytes");
+            }
+            if (batchBytes + bytes > maxBytes) {
+                sendBatch();
+            }
+            Pending pending = new Pending(payload);
+            batch.add(pending);
+            batchBytes += bytes;
+            if (batch.size() == maxBatchSize) {
+                sendBatch();
+            } else if (lingerTask == null) {
+                lingerTask = scheduler.schedule(this::flush, lingerMillis, TimeUnit.MILLISECONDS);
+            }
+            return pending.result;
+        }
+
+        synchronized void flush() {
+            sendBatch();
+        }
+
+        private void sendBatch() {
+            if (lingerTask != null) {
+                lingerTask.cancel(false);
+                lingerTask = null;
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+
+            List<Pending> toSend = batch;
+            batch = new ArrayList<>();
+            batchBytes = 0;
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                IllegalStateException err = new IllegalStateException("Interrupted while waiting to send a batch", e);
+                toSend.forEach(pending -> pending.result.completeExceptionally(err));
+                return;
+            }
+            send(toSend, 1).whenComplete((ignored, err) -> inFlight.release());
+        }
+
+        private CompletableFuture<Void> send(List<Pending> entries, int attempt) {
+            requests.increment();
+            return call.apply(entries)
+                    .handle((outcome, err) -> {
+                        List<Pending> retry = new ArrayList<>();
+                        if (err != null) {
+                            if (!isRetryable(err)) {
+                                Throwable cause = unwrap(err);
+                                entries.forEach(pending -> pending.result.completeExceptionally(cause));
+                                return CompletableFuture.<Void>completedFuture(null);
+                            }
+                            retry.addAll(entries);
+                        } else {
+                            for (Map.Entry<String, String> entry : outcome.succeeded.entrySet()) {
+                                entries.get(Integer.parseInt(entry.getKey())).result.complete(entry.getValue());
+                            }
+                            for (BatchResultErrorEntry failure : outcome.failed) {
+                                Pending pending = entries.get(Integer.parseInt(failure.id()));
+                                if (Boolean.TRUE.equals(failure.senderFault())) {
+                                    pending.result.completeExceptionally(new IllegalStateException(
+                                            failure.code() + ": " + failure.message()));
+                                } else {
+                                    retry.add(pending);
+                                }
+                            }
+                        }
+                        if (retry.isEmpty()) {
+                            return CompletableFuture.<Void>completedFuture(null);
+                        }
+                        if (attempt >= MAX_ATTEMPTS) {
+                            IllegalStateException giveUp = new IllegalStateException(
+                                    "Giving up after " + attempt + " attempts", err);
+                            retry.forEach(pending -> pending.result.completeExceptionally(giveUp));
+                            return CompletableFuture.<Void>completedFuture(null);
+                        }
+
+                        retriedEntries.add(retry.size());
+                        return CompletableFuture.supplyAsync(() -> null,
+                                CompletableFuture.delayedExecutor(backoffMillis(attempt), TimeUnit.MILLISECONDS))
+                                .thenCompose(ignored -> send(retry, attempt + 1));
+                    })
+                    .thenCompose(future -> future);
+        }
+    }
+
+    private static class Pending {
+        final String payload;
+        final CompletableFuture<String> result = new CompletableFuture<>();
+
+        Pending(String payload) {
+            this.payload = payload;
+        }
+    }
+
+    // The entries of a batch response. Succeeded maps an entry ID to the message ID or receipt handle.
+    private static class Outcome {
+        final Map<String, String> succeeded;
+        final List<BatchResultErrorEntry> failed;
+
+        Outcome(Map<String, String> succeeded, List<BatchResultErrorEntry> failed) {
+            this.succeeded = succeeded;
+            this.failed = failed;
+        }
+    }
+}
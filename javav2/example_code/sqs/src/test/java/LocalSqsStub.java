@@ -0,0 +1,352 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.sqs.SqsAsyncClient;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A minimal, in-process stand-in for Amazon SQS in the spirit of ElasticMQ.
+ * It serves a single queue and supports SendMessageBatch, ReceiveMessage with
+ * long polling, and DeleteMessageBatch over both the JSON and the query
+ * protocol. Batch entries fail at random with the configured rate, so clients
+ * can be tested and benchmarked without an AWS account. Received messages are
+ * not redelivered.
+ */
+class LocalSqsStub implements AutoCloseable {
+    private static final Pattern ENTRY_PARAMETER = Pattern.compile("(?:.*\\.)?(\\d+)\\.(Id|MessageBody|ReceiptHandle)");
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final double failureRate;
+    private final BlockingQueue<StubMessage> visible = new LinkedBlockingQueue<>();
+    private final Map<String, StubMessage> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong batchCalls = new AtomicLong();
+
+    LocalSqsStub(double failureRate) throws IOException {
+        this.failureRate = failureRate;
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    String queueUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + "/000000000000/stub-queue";
+    }
+
+    SqsAsyncClient asyncClient() {
+        return SqsAsyncClient.builder()
+                .endpointOverride(URI.create("http://localhost:" + server.getAddress().getPort()))
+                .region(Region.US_EAST_1)
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("stub", "stub")))
+                .httpClientBuilder(NettyNioAsyncHttpClient.builder().maxConcurrency(128))
+                .build();
+    }
+
+    int visibleMessages() {
+        return visible.size();
+    }
+
+    int inFlightMessages() {
+        return inFlight.size();
+    }
+
+    long batchCalls() {
+        return batchCalls.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            String target = exchange.getRequestHeaders().getFirst("X-Amz-Target");
+            boolean json = target != null;
+            String action;
+            Map<String, String> parameters;
+            List<Map<String, String>> entries;
+            if (json) {
+                action = target.substring(target.indexOf('.') + 1);
+                JsonObject request = JsonParser.parseString(body).getAsJsonObject();
+                parameters = new HashMap<>();
+                for (Map.Entry<String, JsonElement> member : request.entrySet()) {
+                    if (member.getValue().isJsonPrimitive()) {
+                        parameters.put(member.getKey(), member.getValue().getAsString());
+                    }
+                }
+                entries = jsonEntries(request);
+            } else {
+                parameters = formParameters(body);
+                action = parameters.get("Action");
+                entries = queryEntries(parameters);
+            }
+
+            Response response;
+            switch (String.valueOf(action)) {
+                case "SendMessageBatch":
+                    response = sendMessageBatch(entries);
+                    break;
+                case "DeleteMessageBatch":
+                    response = deleteMessageBatch(entries);
+                    break;
+                case "ReceiveMessage":
+                    response = receiveMessage(parameters);
+                    break;
+                default:
+                    send(exchange, 400, json, "{\"__type\":\"InvalidAction\",\"message\":\"Unsupported\"}",
+                            "<ErrorResponse><Error><Type>Sender</Type><Code>InvalidAction</Code>"
+                                    + "<Message>Unsupported</Message></Error></ErrorResponse>");
+                    return;
+            }
+            send(exchange, 200, json, response.toJson().toString(), response.toXml(action));
+        }
+    }
+
+    private Response sendMessageBatch(List<Map<String, String>> entries) {
+        batchCalls.incrementAndGet();
+        Response response = new Response("Successful", "Failed", "SendMessageBatchResultEntry");
+        for (Map<String, String> entry : entries) {
+            if (failed(response, entry)) {
+                continue;
+            }
+            String body = entry.get("MessageBody");
+            StubMessage message = new StubMessage(UUID.randomUUID().toString(), body);
+            visible.add(message);
+            Map<String, String> result = new TreeMap<>();
+            result.put("Id", entry.get("Id"));
+            result.put("MessageId", message.messageId);
+            result.put("MD5OfMessageBody", md5(body));
+            response.items.add(result);
+        }
+        return response;
+    }
+
+    private Response deleteMessageBatch(List<Map<String, String>> entries) {
+        batchCalls.incrementAndGet();
+        Response response = new Response("Successful", "Failed", "DeleteMessageBatchResultEntry");
+        for (Map<String, String> entry : entries) {
+            if (failed(response, entry)) {
+                continue;
+            }
+            inFlight.remove(entry.get("ReceiptHandle"));
+            Map<String, String> result = new TreeMap<>();
+            result.put("Id", entry.get("Id"));
+            response.items.add(result);
+        }
+        return response;
+    }
+
+    private boolean failed(Response response, Map<String, String> entry) {
+        if (ThreadLocalRandom.current().nextDouble() >= failureRate) {
+            return false;
+        }
+        Map<String, String> failure = new TreeMap<>();
+        failure.put("Id", entry.get("Id"));
+        failure.put("Code", "InternalError");
+        failure.put("Message", "Simulated failure");
+        failure.put("SenderFault", "false");
+        response.failures.add(failure);
+        return true;
+    }
+
+    private Response receiveMessage(Map<String, String> parameters) {
+        int max = Integer.parseInt(parameters.getOrDefault("MaxNumberOfMessages", "1"));
+        long waitMillis = Long.parseLong(parameters.getOrDefault("WaitTimeSeconds", "0")) * 1_000;
+        Response response = new Response("Messages", null, "Message");
+        try {
+            StubMessage first = visible.poll(waitMillis, TimeUnit.MILLISECONDS);
+            List<StubMessage> received = new ArrayList<>();
+            if (first != null) {
+                received.add(first);
+                visible.drainTo(received, max - 1);
+            }
+            for (StubMessage message : received) {
+                String receiptHandle = UUID.randomUUID().toString();
+                inFlight.put(receiptHandle, message);
+                Map<String, String> item = new TreeMap<>();
+                item.put("MessageId", message.messageId);
+                item.put("ReceiptHandle", receiptHandle);
+                item.put("MD5OfBody", md5(message.body));
+                item.put("Body", message.body);
+                response.items.add(item);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return response;
+    }
+
+    private static List<Map<String, String>> jsonEntries(JsonObject request) {
+        List<Map<String, String>> entries = new ArrayList<>();
+        if (request.has("Entries")) {
+            for (JsonElement element : request.getAsJsonArray("Entries")) {
+                Map<String, String> entry = new HashMap<>();
+                for (Map.Entry<String, JsonElement> member : element.getAsJsonObject().entrySet()) {
+                    if (member.getValue().isJsonPrimitive()) {
+                        entry.put(member.getKey(), member.getValue().getAsString());
+                    }
+                }
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    // Groups parameters such as SendMessageBatchRequestEntry.1.Id by their entry index.
+    private static List<Map<String, String>> queryEntries(Map<String, String> parameters) {
+        Map<Integer, Map<String, String>> byIndex = new TreeMap<>();
+        for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+            Matcher matcher = ENTRY_PARAMETER.matcher(parameter.getKey());
+            if (matcher.matches()) {
+                byIndex.computeIfAbsent(Integer.parseInt(matcher.group(1)), index -> new HashMap<>())
+                        .put(matcher.group(2), parameter.getValue());
+            }
+        }
+        return new ArrayList<>(byIndex.values());
+    }
+
+    private static Map<String, String> formParameters(String body) {
+        Map<String, String> parameters = new HashMap<>();
+        for (String pair : body.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                parameters.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return parameters;
+    }
+
+    private static String md5(String body) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            return HexFormat.of().formatHex(digest.digest(body.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, boolean json, String jsonBody, String xmlBody)
+            throws IOException {
+        byte[] bytes = (json ? jsonBody : xmlBody).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", json ? "application/x-amz-json-1.0" : "text/xml");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String escape(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    // A response made of a list of items and, for batch calls, a list of failed entries.
+    private static class Response {
+        final String itemsName;
+        final String failuresName;
+        final String xmlItemName;
+        final List<Map<String, String>> items = new ArrayList<>();
+        final List<Map<String, String>> failures = new ArrayList<>();
+
+        Response(String itemsName, String failuresName, String xmlItemName) {
+            this.itemsName = itemsName;
+            this.failuresName = failuresName;
+            this.xmlItemName = xmlItemName;
+        }
+
+        JsonObject toJson() {
+            JsonObject response = new JsonObject();
+            response.add(itemsName, toJsonArray(items));
+            if (failuresName != null) {
+                response.add(failuresName, toJsonArray(failures));
+            }
+            return response;
+        }
+
+        String toXml(String action) {
+            StringBuilder xml = new StringBuilder()
+                    .append("<").append(action).append("Response xmlns=\"http://queue.amazonaws.com/doc/2012-11-05/\">")
+                    .append("<").append(action).append("Result>");
+            appendXml(xml, xmlItemName, items);
+            appendXml(xml, "BatchResultErrorEntry", failures);
+            return xml.append("</").append(action).append("Result>")
+                    .append("<ResponseMetadata><RequestId>").append(UUID.randomUUID()).append("</RequestId>")
+                    .append("</ResponseMetadata></").append(action).append("Response>")
+                    .toString();
+        }
+
+        private static JsonArray toJsonArray(List<Map<String, String>> list) {
+            JsonArray array = new JsonArray();
+            for (Map<String, String> item : list) {
+                JsonObject object = new JsonObject();
+                item.forEach((name, value) -> {
+                    if (name.equals("SenderFault")) {
+                        object.addProperty(name, Boolean.parseBoolean(value));
+                    } else {
+                        object.addProperty(name, value);
+                    }
+                });
+                array.add(object);
+            }
+            return array;
+        }
+
+        private static void appendXml(StringBuilder xml, String element, List<Map<String, String>> list) {
+            for (Map<String, String> item : list) {
+                xml.append("<").append(element).append(">");
+                item.forEach((name, value) -> xml.append("<").append(name).append(">").append(escape(value))
+                        .append("</").append(name).append(">"));
+                xml.append("</").append(element).append(">");
+            }
+        }
+    }
+
+    private static class StubMessage {
+        final String messageId;
+        final String body;
+
+        StubMessage(String messageId, String body) {
+            this.messageId = messageId;
+            this.body = body;
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
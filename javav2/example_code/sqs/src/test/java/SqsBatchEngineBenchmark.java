@@ -0,0 +1,62 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+import com.example.sqs.SqsBatchEngine;
+import software.amazon.awssdk.services.sqs.SqsAsyncClient;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures SqsBatchEngine throughput against LocalSqsStub for batch sizes 1 to
+ * 10. Each run sends the messages, then receives and deletes them. Run it with:
+ *
+ *   <messageCount> <failureRate>
+ *
+ * For example: 50000 0.01
+ */
+public class SqsBatchEngineBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        double failureRate = args.length > 1 ? Double.parseDouble(args[1]) : 0.01;
+
+        try (LocalSqsStub stub = new LocalSqsStub(failureRate);
+                SqsAsyncClient client = stub.asyncClient()) {
+            // Warm up the client and the JIT.
+            run(stub, client, count / 10, 10);
+
+            for (int batchSize = 1; batchSize <= SqsBatchEngine.MAX_ENTRIES_PER_BATCH; batchSize++) {
+                run(stub, client, count, batchSize);
+            }
+        }
+    }
+
+    private static void run(LocalSqsStub stub, SqsAsyncClient client, int count, int batchSize) throws Exception {
+        long calls = stub.batchCalls();
+        LongAdder handled = new LongAdder();
+        double sendSeconds;
+        double receiveSeconds;
+        try (SqsBatchEngine engine = new SqsBatchEngine(client, stub.queueUrl(), batchSize, 5, 32)) {
+            long start = System.nanoTime();
+            CompletableFuture<?>[] sent = new CompletableFuture<?>[count];
+            for (int i = 0; i < count; i++) {
+                sent[i] = engine.send("message-" + i);
+            }
+            CompletableFuture.allOf(sent).join();
+            sendSeconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+            start = System.nanoTime();
+            engine.startReceiving(8, 16, 1, message -> handled.increment());
+            while (handled.sum() < count) {
+                Thread.sleep(1);
+            }
+            engine.stopReceiving();
+            engine.flush();
+            receiveSeconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        }
+
+        System.out.printf("batch=%2d  send %9.0f msg/s  receive+delete %9.0f msg/s  batch calls=%7d%n", batchSize,
+                count / sendSeconds, count / receiveSeconds, stub.batchCalls() - calls);
+    }
+}
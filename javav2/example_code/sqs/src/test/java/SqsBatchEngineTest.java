@@ -0,0 +1,94 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+import com.example.sqs.SqsBatchEngine;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.sqs.SqsAsyncClient;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
+import software.amazon.awssdk.services.sqs.model.SqsException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SqsBatchEngineTest {
+
+    @Test
+    @Tag("IntegrationTest")
+    public void sendsReceivesAndDeletesEveryMessageDespiteFailedEntries() throws Exception {
+        int count = 2_000;
+        Set<String> handled = ConcurrentHashMap.newKeySet();
+        try (LocalSqsStub stub = new LocalSqsStub(0.1);
+                SqsAsyncClient client = stub.asyncClient()) {
+            try (SqsBatchEngine engine = new SqsBatchEngine(client, stub.queueUrl(), 10, 10, 8)) {
+                List<CompletableFuture<String>> sent = new ArrayList<>();
+                for (int i = 0; i < count; i++) {
+                    sent.add(engine.send("message-" + i));
+                }
+                CompletableFuture.allOf(sent.toArray(new CompletableFuture[0])).get(60, TimeUnit.SECONDS);
+                assertEquals(count, engine.getMessagesSent());
+                assertTrue(engine.getRequests() < count / 5);
+
+                engine.startReceiving(4, 8, 1, message -> handled.add(message.body()));
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+                while (handled.size() < count && System.nanoTime() < deadline) {
+                    Thread.sleep(50);
+                }
+            }
+            assertEquals(count, handled.size());
+            assertEquals(0, stub.visibleMessages());
+            assertEquals(0, stub.inFlightMessages());
+        }
+    }
+
+    @Test
+    public void failsTheBatchAtOnceOnErrorsThatAreNotRetryable() throws Exception {
+        SqsException denied = (SqsException) SqsException.builder()
+                .message("Access to the resource is denied.")
+                .statusCode(403)
+                .build();
+        AtomicInteger calls = new AtomicInteger();
+        SqsAsyncClient client = new SqsAsyncClient() {
+            @Override
+            public CompletableFuture<SendMessageBatchResponse> sendMessageBatch(SendMessageBatchRequest request) {
+                calls.incrementAndGet();
+                return CompletableFuture.failedFuture(denied);
+            }
+
+            @Override
+            public String serviceName() {
+                return "sqs";
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        try (SqsBatchEngine engine = new SqsBatchEngine(client, "https://sqs.local/queue", 10, 10, 8)) {
+            List<CompletableFuture<String>> sent = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                sent.add(engine.send("message-" + i));
+            }
+            engine.flush();
+            for (CompletableFuture<String> future : sent) {
+                ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+                assertSame(denied, e.getCause());
+            }
+            assertEquals(1, calls.get());
+            assertEquals(0, engine.getRetriedEntries());
+        }
+    }
+}
@@ -0,0 +1,303 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.timestream.write;
+
+import software.amazon.awssdk.services.timestreamwrite.TimestreamWriteClient;
+import software.amazon.awssdk.services.timestreamwrite.model.Dimension;
+import software.amazon.awssdk.services.timestreamwrite.model.InternalServerException;
+import software.amazon.awssdk.services.timestreamwrite.model.MeasureValue;
+import software.amazon.awssdk.services.timestreamwrite.model.MeasureValueType;
+import software.amazon.awssdk.services.timestreamwrite.model.Record;
+import software.amazon.awssdk.services.timestreamwrite.model.RejectedRecord;
+import software.amazon.awssdk.services.timestreamwrite.model.RejectedRecordsException;
+import software.amazon.awssdk.services.timestreamwrite.model.ThrottlingException;
+import software.amazon.awssdk.services.timestreamwrite.model.TimeUnit;
+import software.amazon.awssdk.services.timestreamwrite.model.TimestreamWriteException;
+import software.amazon.awssdk.services.timestreamwrite.model.WriteRecordsRequest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Writes data points to an Amazon Timestream table at a high rate.
+ *
+ * Each data point is one multi-measure record that holds every measure, such
+ * as cpu_utilization and memory_utilization, instead of one record per
+ * measure. Points are batched per series, the set of dimensions they share,
+ * into WriteRecords requests of up to 100 records. The dimensions, measure
+ * name, type and time unit of a batch are sent once in CommonAttributes, so
+ * each record only carries its time and values.
+ *
+ * Full batches are written by a pool of writer threads. When the writers fall
+ * behind, {@link #write} waits for room in the queue. Throttled requests are
+ * retried with backoff. Records that Timestream rejects are handled one by
+ * one: when upsert is enabled, a record rejected because a record with the
+ * same time already exists is written again with the next version, which
+ * replaces the stored values. Other rejected records are counted and logged.
+ * A batch is sent at most MAX_ATTEMPTS times, counting both throttled and
+ * upserted attempts.
+ *
+ * These attempts come on top of the retries of the client's retry policy,
+ * which by default sends a throttled request up to three more times before
+ * the ingestor sees the ThrottlingException. Build the client with
+ * {@code RetryPolicy.none()} to leave the retries to the ingestor.
+ */
+public class TimestreamIngestor implements AutoCloseable {
+    public static final int MAX_RECORDS_PER_REQUEST = 100;
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long BASE_BACKOFF_MILLIS = 100;
+
+    private final TimestreamWriteClient timestreamWriteClient;
+    private final String dbName;
+    private final String tableName;
+    private final String measureName;
+    private final List<String> measureNames;
+    private final boolean upsert;
+    private final Map<List<Dimension>, Series> series = new ConcurrentHashMap<>();
+    private final BlockingQueue<Batch> queue;
+    private final List<Thread> writers = new ArrayList<>();
+    private volatile boolean closed;
+
+    private final LongAdder recordsWritten = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder throttledRequests = new LongAdder();
+    private final LongAdder upsertedRecords = new LongAdder();
+    private final LongAdder rejectedRecords = new LongAdder();
+    private final LongAdder failedRecords = new LongAdder();
+
+    /**
+     * @param measureName  the name of the multi-measure records, for example "metrics"
+     * @param measureNames the names of the measures in each record, in the order write() takes their values
+     * @param writerCount  the number of WriteRecords requests that run at a time
+     * @param upsert       whether records that already exist are replaced with a higher version
+     */
+    public TimestreamIngestor(TimestreamWriteClient timestreamWriteClient, String dbName, String tableName,
+            String measureName, List<String> measureNames, int writerCount, boolean upsert) {
+        this.timestreamWriteClient = timestreamWriteClient;
+        this.dbName = dbName;
+        this.tableName = tableName;
+        this.measureName = measureName;
+        this.measureNames = List.copyOf(measureNames);
+        this.upsert = upsert;
+        this.queue = new ArrayBlockingQueue<>(writerCount * 4);
+        for (int i = 0; i < writerCount; i++) {
+            Thread writer = new Thread(this::runWriter, "timestream-writer-" + i);
+            writer.setDaemon(true);
+            writer.start();
+            writers.add(writer);
+        }
+    }
+
+    /**
+     * Returns the series with the dimensions. Get each series once and reuse
+     * it, because its points are batched together.
+     */
+    public Series series(Dimension... dimensions) {
+        return series.computeIfAbsent(List.of(dimensions), Series::new);
+    }
+
+    /**
+     * Adds a data point with one value for each measure name. Waits while the
+     * writers are behind.
+     */
+    public void write(Series target, long timeMillis, double... values) throws InterruptedException {
+        if (values.length != measureNames.size()) {
+            throw new IllegalArgumentException("Expected " + measureNames.size() + " values but got " + values.length);
+        }
+        if (closed) {
+            throw new IllegalStateException("The ingestor is closed");
+        }
+        List<MeasureValue> measureValues = new ArrayList<>(values.length);
+        for (int i = 0; i < values.length; i++) {
+            measureValues.add(MeasureValue.builder()
+                    .name(measureNames.get(i))
+                    .value(Double.toString(values[i]))
+                    .type(MeasureValueType.DOUBLE)
+                    .build());
+        }
+        Record record = Record.builder()
+                .time(Long.toString(timeMillis))
+                .measureValues(measureValues)
+                .build();
+        List<Record> full = target.add(record);
+        if (full != null) {
+            queue.put(new Batch(target, full));
+        }
+    }
+
+    // Queues the points that have not filled a batch yet.
+    public void flush() throws InterruptedException {
+        for (Series target : series.values()) {
+            List<Record> records = target.takeAll();
+            if (!records.isEmpty()) {
+                queue.put(new Batch(target, records));
+            }
+        }
+    }
+
+    private void runWriter() {
+        try {
+            while (!closed || !queue.isEmpty()) {
+                Batch batch = queue.poll(100, java.util.concurrent.TimeUnit.MILLISECONDS);
+                if (batch != null) {
+                    writeBatch(batch);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeBatch(Batch batch) throws InterruptedException {
+        Record commonAttributes = Record.builder()
+                .dimensions(batch.series.dimensions)
+                .measureName(measureName)
+                .measureValueType(MeasureValueType.MULTI)
+                .timeUnit(TimeUnit.MILLISECONDS)
+                .build();
+        List<Record> records = batch.records;
+        int attempt = 1;
+        while (true) {
+            requests.increment();
+            try {
+                timestreamWriteClient.writeRecords(WriteRecordsRequest.builder()
+                        .databaseName(dbName)
+                        .tableName(tableName)
+                        .commonAttributes(commonAttributes)
+                        .records(records)
+                        .build());
+                recordsWritten.add(records.size());
+                return;
+
+            } catch (RejectedRecordsException e) {
+                // The records that are not listed were written.
+                recordsWritten.add(records.size() - e.rejectedRecords().size());
+                records = retryableRejections(records, e.rejectedRecords());
+                if (records.isEmpty()) {
+                    return;
+                }
+                // Another writer may keep replacing the same points, so upserts share the attempt limit.
+                if (attempt++ >= MAX_ATTEMPTS) {
+                    failedRecords.add(records.size());
+                    System.err.println("WriteRecords failed for " + records.size() + " records: " + e.getMessage());
+                    return;
+                }
+                // Records with a new version are not throttled, so they are sent again at once.
+                upsertedRecords.add(records.size());
+
+            } catch (ThrottlingException | InternalServerException e) {
+                if (e instanceof ThrottlingException) {
+                    throttledRequests.increment();
+                }
+                if (attempt++ >= MAX_ATTEMPTS) {
+                    failedRecords.add(records.size());
+                    System.err.println("WriteRecords failed for " + records.size() + " records: " + e.getMessage());
+                    return;
+                }
+                long ceiling = BASE_BACKOFF_MILLIS << attempt;
+                Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1));
+
+            } catch (TimestreamWriteException e) {
+                failedRecords.add(records.size());
+                System.err.println("WriteRecords failed for " + records.size() + " records: "
+                        + e.awsErrorDetails().errorMessage());
+                return;
+            }
+        }
+    }
+
+    // Returns the rejected records that can be written again with the next version, and counts the others.
+    private List<Record> retryableRejections(List<Record> records, List<RejectedRecord> rejections) {
+        List<Record> retry = new ArrayList<>();
+        for (RejectedRecord rejection : rejections) {
+            Record record = records.get(rejection.recordIndex());
+            if (upsert && rejection.existingVersion() != null) {
+                retry.add(record.toBuilder().version(rejection.existingVersion() + 1).build());
+            } else {
+                rejectedRecords.increment();
+                System.err.println("Rejected record at " + record.time() + ": " + rejection.reason());
+            }
+        }
+        return retry;
+    }
+
+    // Writes the remaining points and waits for the writers to finish.
+    @Override
+    public void close() throws InterruptedException {
+        if (closed) {
+            return;
+        }
+        flush();
+        closed = true;
+        for (Thread writer : writers) {
+            writer.join();
+        }
+    }
+
+    public long getRecordsWritten() {
+        return recordsWritten.sum();
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getThrottledRequests() {
+        return throttledRequests.sum();
+    }
+
+    public long getUpsertedRecords() {
+        return upsertedRecords.sum();
+    }
+
+    public long getRejectedRecords() {
+        return rejectedRecords.sum();
+    }
+
+    public long getFailedRecords() {
+        return failedRecords.sum();
+    }
+
+    /**
+     * The points that share a set of dimensions.
+     */
+    public static final class Series {
+        private final List<Dimension> dimensions;
+        private List<Record> pending = new ArrayList<>(MAX_RECORDS_PER_REQUEST);
+
+        private Series(List<Dimension> dimensions) {
+            this.dimensions = dimensions;
+        }
+
+        // Adds the record and returns the batch if it is now full.
+        private synchronized List<Record> add(Record record) {
+            pending.add(record);
+            if (pending.size() < MAX_RECORDS_PER_REQUEST) {
+                return null;
+            }
+            return takeAll();
+        }
+
+        private synchronized List<Record> takeAll() {
+            List<Record> records = pending;
+            pending = new ArrayList<>(MAX_RECORDS_PER_REQUEST);
+            return records;
+        }
+    }
+
+    private static final class Batch {
+        private final Series series;
+        private final List<Record> records;
+
+        private Batch(Series series, List<Record> records) {
+            this.series = series;
+            this.records = records;
+        }
+    }
+}
@@ -8,10 +8,12 @@ package com.timestream.write;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.timestreamwrite.TimestreamWriteClient;
 import software.amazon.awssdk.services.timestreamwrite.model.Dimension;
+import software.amazon.awssdk.services.timestreamwrite.model.MeasureValue;
 import software.amazon.awssdk.services.timestreamwrite.model.MeasureValueType;
 import software.amazon.awssdk.services.timestreamwrite.model.Record;
 import software.amazon.awssdk.services.timestreamwrite.model.RejectedRecord;
 import software.amazon.awssdk.services.timestreamwrite.model.RejectedRecordsException;
+import software.amazon.awssdk.services.timestreamwrite.model.TimeUnit;
 import software.amazon.awssdk.services.timestreamwrite.model.WriteRecordsRequest;
 import software.amazon.awssdk.services.timestreamwrite.model.WriteRecordsResponse;
 import java.util.ArrayList;
@@ -76,28 +78,38 @@ public class WriteData {
                 dimensions.add(az);
                 dimensions.add(hostname);
 
-                Record cpuUtilization = Record.builder()
+                // The attributes that every record in the request shares are sent once.
+                Record commonAttributes = Record.builder()
                                 .dimensions(dimensions)
-                                .measureValueType(MeasureValueType.DOUBLE)
-                                .measureName("cpu_utilization")
-                                .measureValue("13.5")
-                                .time(String.valueOf(time))
+                                .measureName("metrics")
+                                .measureValueType(MeasureValueType.MULTI)
+                                .timeUnit(TimeUnit.MILLISECONDS)
                                 .build();
 
-                Record memoryUtilization = Record.builder()
-                                .dimensions(dimensions)
-                                .measureValueType(MeasureValueType.DOUBLE)
-                                .measureName("memory_utilization")
-                                .measureValue("40")
+                MeasureValue cpuUtilization = MeasureValue.builder()
+                                .name("cpu_utilization")
+                                .value("13.5")
+                                .type(MeasureValueType.DOUBLE)
+                                .build();
+
+                MeasureValue memoryUtilization = MeasureValue.builder()
+                                .name("memory_utilization")
+                                .value("40")
+                                .type(MeasureValueType.DOUBLE)
+                                .build();
+
+                // One multi-measure record holds both measures of the point in time.
+                Record utilization = Record.builder()
+                                .measureValues(cpuUtilization, memoryUtilization)
                                 .time(String.valueOf(time))
                                 .build();
 
-                records.add(cpuUtilization);
-                records.add(memoryUtilization);
+                records.add(utilization);
 
                 WriteRecordsRequest writeRecordsRequest = WriteRecordsRequest.builder()
                                 .databaseName(dbName)
                                 .tableName(tableName)
+                                .commonAttributes(commonAttributes)
                                 .records(records)
                                 .build();
 
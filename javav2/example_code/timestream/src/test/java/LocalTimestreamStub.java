@@ -0,0 +1,227 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+import software.amazon.awssdk.http.SdkHttpRequest;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.timestreamwrite.TimestreamWriteClient;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A minimal, in-process stand-in for Amazon Timestream that accepts
+ * DescribeEndpoints and WriteRecords over the JSON protocol. It keeps one
+ * version of each record, keyed by its dimensions, measure name and time, and
+ * rejects a record that has different values and no higher version, the way
+ * Timestream does. Requests above the given rate per second are throttled.
+ *
+ * Timestream clients must discover their endpoint and cannot use an endpoint
+ * override, so {@link #client()} redirects every request to the stub with an
+ * interceptor instead.
+ */
+class LocalTimestreamStub implements AutoCloseable {
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final int maxRequestsPerSecond;
+    private final Map<String, StoredRecord> records = new ConcurrentHashMap<>();
+    private final AtomicLong writeRequests = new AtomicLong();
+    private final AtomicLong throttledRequests = new AtomicLong();
+    private final AtomicLong requestBytes = new AtomicLong();
+    private final AtomicLong maxRecordsPerRequest = new AtomicLong();
+    private long windowStart = System.nanoTime();
+    private int windowRequests;
+
+    LocalTimestreamStub(int maxRequestsPerSecond) throws IOException {
+        this.maxRequestsPerSecond = maxRequestsPerSecond;
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    TimestreamWriteClient client() {
+        int port = server.getAddress().getPort();
+        ExecutionInterceptor redirect = new ExecutionInterceptor() {
+            @Override
+            public SdkHttpRequest modifyHttpRequest(Context.ModifyHttpRequest context,
+                    ExecutionAttributes executionAttributes) {
+                return context.httpRequest().toBuilder().protocol("http").host("localhost").port(port).build();
+            }
+        };
+        return TimestreamWriteClient.builder()
+                .region(Region.US_EAST_1)
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("stub", "stub")))
+                .overrideConfiguration(config -> config.addExecutionInterceptor(redirect))
+                .build();
+    }
+
+    int recordCount() {
+        return records.size();
+    }
+
+    long recordsWithVersion(long version) {
+        return records.values().stream().filter(record -> record.version == version).count();
+    }
+
+    long writeRequests() {
+        return writeRequests.get();
+    }
+
+    long throttledRequests() {
+        return throttledRequests.get();
+    }
+
+    // The bytes of every WriteRecords request body that was accepted.
+    long requestBytes() {
+        return requestBytes.get();
+    }
+
+    long maxRecordsPerRequest() {
+        return maxRecordsPerRequest.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String target = exchange.getRequestHeaders().getFirst("X-Amz-Target");
+            byte[] body = exchange.getRequestBody().readAllBytes();
+            if ("Timestream_20181101.DescribeEndpoints".equals(target)) {
+                send(exchange, 200, "{\"Endpoints\":[{\"Address\":\"ingest.timestream.local\",\"CachePeriodInMinutes\":1440}]}");
+            } else if ("Timestream_20181101.WriteRecords".equals(target)) {
+                writeRecords(exchange, body);
+            } else {
+                send(exchange, 400, error("ValidationException", "Unsupported target " + target));
+            }
+        }
+    }
+
+    private void writeRecords(HttpExchange exchange, byte[] body) throws IOException {
+        writeRequests.incrementAndGet();
+        if (!admit()) {
+            throttledRequests.incrementAndGet();
+            send(exchange, 400, error("ThrottlingException", "Rate exceeded"));
+            return;
+        }
+        JsonObject request = JsonParser.parseString(new String(body, StandardCharsets.UTF_8)).getAsJsonObject();
+        JsonObject common = request.has("CommonAttributes") ? request.getAsJsonObject("CommonAttributes")
+                : new JsonObject();
+        JsonArray batch = request.getAsJsonArray("Records");
+        if (batch.size() > 100) {
+            send(exchange, 400, error("ValidationException", "A request can contain up to 100 records"));
+            return;
+        }
+        requestBytes.addAndGet(body.length);
+        maxRecordsPerRequest.accumulateAndGet(batch.size(), Math::max);
+
+        JsonArray rejected = new JsonArray();
+        for (int i = 0; i < batch.size(); i++) {
+            JsonObject record = batch.get(i).getAsJsonObject();
+            Map<String, String> dimensions = new TreeMap<>();
+            addDimensions(dimensions, common);
+            addDimensions(dimensions, record);
+            String key = dimensions + "|" + field(record, common, "MeasureName") + "|" + field(record, common, "Time");
+            String values = record.has("MeasureValues") ? record.get("MeasureValues").toString()
+                    : field(record, common, "MeasureValue");
+            long version = record.has("Version") ? record.get("Version").getAsLong() : 1;
+
+            StoredRecord incoming = new StoredRecord(values, version);
+            StoredRecord existing = records.putIfAbsent(key, incoming);
+            if (existing != null && !existing.values.equals(values)) {
+                if (version > existing.version) {
+                    records.put(key, incoming);
+                } else {
+                    JsonObject rejection = new JsonObject();
+                    rejection.addProperty("RecordIndex", i);
+                    rejection.addProperty("Reason", "A record with the same time, dimensions and measure name "
+                            + "already exists with different values and a version of " + existing.version);
+                    rejection.addProperty("ExistingVersion", existing.version);
+                    rejected.add(rejection);
+                }
+            }
+        }
+
+        if (rejected.size() > 0) {
+            JsonObject response = new JsonObject();
+            response.addProperty("__type", "RejectedRecordsException");
+            response.addProperty("message", "One or more records have been rejected.");
+            response.add("RejectedRecords", rejected);
+            send(exchange, 419, response.toString());
+        } else {
+            int written = batch.size();
+            send(exchange, 200, "{\"RecordsIngested\":{\"Total\":" + written + ",\"MemoryStore\":" + written
+                    + ",\"MagneticStore\":0}}");
+        }
+    }
+
+    private static void addDimensions(Map<String, String> dimensions, JsonObject record) {
+        if (record.has("Dimensions")) {
+            for (JsonElement dimension : record.getAsJsonArray("Dimensions")) {
+                JsonObject pair = dimension.getAsJsonObject();
+                dimensions.put(pair.get("Name").getAsString(), pair.get("Value").getAsString());
+            }
+        }
+    }
+
+    // Returns the record's value for the field, or the common attribute if the record has none.
+    private static String field(JsonObject record, JsonObject common, String name) {
+        JsonElement value = record.has(name) ? record.get(name) : common.get(name);
+        return value == null ? "" : value.getAsString();
+    }
+
+    // Admits up to maxRequestsPerSecond requests in each one-second window.
+    private synchronized boolean admit() {
+        long now = System.nanoTime();
+        if (now - windowStart >= 1_000_000_000L) {
+            windowStart = now;
+            windowRequests = 0;
+        }
+        return ++windowRequests <= maxRequestsPerSecond;
+    }
+
+    private static String error(String type, String message) {
+        return "{\"__type\":\"" + type + "\",\"message\":\"" + message + "\"}";
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/x-amz-json-1.0");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private static final class StoredRecord {
+        private final String values;
+        private final long version;
+
+        private StoredRecord(String values, long version) {
+            this.values = values;
+            this.version = version;
+        }
+    }
+}
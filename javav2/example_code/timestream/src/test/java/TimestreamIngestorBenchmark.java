@@ -0,0 +1,93 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+import com.timestream.write.TimestreamIngestor;
+import software.amazon.awssdk.services.timestreamwrite.TimestreamWriteClient;
+import software.amazon.awssdk.services.timestreamwrite.model.Dimension;
+import software.amazon.awssdk.services.timestreamwrite.model.MeasureValueType;
+import software.amazon.awssdk.services.timestreamwrite.model.Record;
+import software.amazon.awssdk.services.timestreamwrite.model.WriteRecordsRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes the same data points to a local Timestream stub twice: once as one
+ * single-measure record per measure with the dimensions in every record, the
+ * way WriteData used to, and once through TimestreamIngestor. Prints the
+ * points per second and the request bytes per point of each.
+ *
+ * Usage: TimestreamIngestorBenchmark [hosts] [pointsPerHost] [writers]
+ */
+public class TimestreamIngestorBenchmark {
+    private static final List<String> MEASURES = List.of("cpu_utilization", "memory_utilization",
+            "disk_io_reads", "network_bytes_in");
+
+    public static void main(String[] args) throws Exception {
+        int hosts = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int pointsPerHost = args.length > 1 ? Integer.parseInt(args[1]) : 1_000;
+        int writers = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        long start = System.currentTimeMillis() - 3_600_000;
+        long points = (long) hosts * pointsPerHost;
+
+        try (LocalTimestreamStub stub = new LocalTimestreamStub(Integer.MAX_VALUE);
+                TimestreamWriteClient client = stub.client()) {
+            long begin = System.nanoTime();
+            for (int h = 0; h < hosts; h++) {
+                List<Dimension> dimensions = dimensions(h);
+                List<Record> records = new ArrayList<>();
+                for (int i = 0; i < pointsPerHost; i++) {
+                    for (String measure : MEASURES) {
+                        records.add(Record.builder()
+                                .dimensions(dimensions)
+                                .measureName(measure)
+                                .measureValueType(MeasureValueType.DOUBLE)
+                                .measureValue(Double.toString(i % 100))
+                                .time(Long.toString(start + i * 1000L))
+                                .build());
+                        if (records.size() == TimestreamIngestor.MAX_RECORDS_PER_REQUEST) {
+                            client.writeRecords(WriteRecordsRequest.builder()
+                                    .databaseName("db").tableName("single").records(records).build());
+                            records = new ArrayList<>();
+                        }
+                    }
+                }
+                if (!records.isEmpty()) {
+                    client.writeRecords(WriteRecordsRequest.builder()
+                            .databaseName("db").tableName("single").records(records).build());
+                }
+            }
+            report("Single-measure records", points, System.nanoTime() - begin, stub.requestBytes(),
+                    stub.writeRequests());
+
+            long bytesBefore = stub.requestBytes();
+            long requestsBefore = stub.writeRequests();
+            begin = System.nanoTime();
+            TimestreamIngestor ingestor = new TimestreamIngestor(client, "db", "multi", "metrics", MEASURES, writers,
+                    false);
+            for (int h = 0; h < hosts; h++) {
+                TimestreamIngestor.Series host = ingestor.series(dimensions(h).toArray(new Dimension[0]));
+                for (int i = 0; i < pointsPerHost; i++) {
+                    double value = i % 100;
+                    ingestor.write(host, start + i * 1000L, value, value, value, value);
+                }
+            }
+            ingestor.close();
+            report("TimestreamIngestor", points, System.nanoTime() - begin, stub.requestBytes() - bytesBefore,
+                    stub.writeRequests() - requestsBefore);
+        }
+    }
+
+    private static List<Dimension> dimensions(int host) {
+        return List.of(
+                Dimension.builder().name("region").value("us-east-1").build(),
+                Dimension.builder().name("az").value("us-east-1a").build(),
+                Dimension.builder().name("hostname").value("host-" + host).build());
+    }
+
+    private static void report(String name, long points, long nanos, long bytes, long requests) {
+        double seconds = nanos / 1_000_000_000.0;
+        System.out.printf("%s: %,d points of %d measures in %.2f s (%,.0f points/s), %,d requests, %.1f bytes/point%n",
+                name, points, MEASURES.size(), seconds, points / seconds, requests, (double) bytes / points);
+    }
+}
@@ -0,0 +1,106 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+import com.timestream.write.TimestreamIngestor;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.timestreamwrite.TimestreamWriteClient;
+import software.amazon.awssdk.services.timestreamwrite.model.Dimension;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TimestreamIngestorTest {
+    private static final List<String> MEASURES = List.of("cpu_utilization", "memory_utilization");
+    private static final long START = System.currentTimeMillis() - 60_000_000;
+
+    @Test
+    @Tag("IntegrationTest")
+    public void writesFullMultiMeasureBatches() throws Exception {
+        try (LocalTimestreamStub stub = new LocalTimestreamStub(100_000);
+                TimestreamWriteClient client = stub.client()) {
+            TimestreamIngestor ingestor = new TimestreamIngestor(client, "db", "table", "metrics", MEASURES, 4, false);
+            writeFromThreads(ingestor, 4, 10, 1_000, 0);
+            ingestor.close();
+
+            assertEquals(40_000, stub.recordCount());
+            assertEquals(40_000, ingestor.getRecordsWritten());
+            // Every series gets a multiple of 100 points, so every request is full.
+            assertEquals(400, ingestor.getRequests());
+            assertEquals(100, stub.maxRecordsPerRequest());
+        }
+    }
+
+    @Test
+    @Tag("IntegrationTest")
+    public void upsertsRecordsThatAlreadyExist() throws Exception {
+        try (LocalTimestreamStub stub = new LocalTimestreamStub(100_000);
+                TimestreamWriteClient client = stub.client()) {
+            TimestreamIngestor first = new TimestreamIngestor(client, "db", "table", "metrics", MEASURES, 2, false);
+            writeFromThreads(first, 1, 1, 250, 0);
+            first.close();
+
+            // The same points with new values replace the stored ones with version 2.
+            TimestreamIngestor upserting = new TimestreamIngestor(client, "db", "table", "metrics", MEASURES, 2, true);
+            writeFromThreads(upserting, 1, 1, 250, 1);
+            upserting.close();
+            assertEquals(250, upserting.getUpsertedRecords());
+            assertEquals(0, upserting.getRejectedRecords());
+            assertEquals(250, stub.recordsWithVersion(2));
+
+            // Without upsert, changed points are rejected one by one and the batch's other records are kept.
+            TimestreamIngestor rejecting = new TimestreamIngestor(client, "db", "table", "metrics", MEASURES, 2, false);
+            writeFromThreads(rejecting, 1, 1, 300, 2);
+            rejecting.close();
+            assertEquals(250, rejecting.getRejectedRecords());
+            assertEquals(50, rejecting.getRecordsWritten());
+            assertEquals(300, stub.recordCount());
+        }
+    }
+
+    @Test
+    @Tag("IntegrationTest")
+    public void retriesThrottledBatches() throws Exception {
+        try (LocalTimestreamStub stub = new LocalTimestreamStub(5);
+                TimestreamWriteClient client = stub.client()) {
+            TimestreamIngestor ingestor = new TimestreamIngestor(client, "db", "table", "metrics", MEASURES, 4, false);
+            writeFromThreads(ingestor, 2, 5, 200, 0);
+            ingestor.close();
+
+            assertTrue(stub.throttledRequests() > 0);
+            assertEquals(0, ingestor.getFailedRecords());
+            assertEquals(2_000, stub.recordCount());
+        }
+    }
+
+    // Each thread writes points for its own hosts, one per second per host, with values that depend on the offset.
+    private static void writeFromThreads(TimestreamIngestor ingestor, int threads, int hostsPerThread,
+            int pointsPerHost, int offset) throws InterruptedException {
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            Thread worker = new Thread(() -> {
+                try {
+                    for (int h = 0; h < hostsPerThread; h++) {
+                        TimestreamIngestor.Series host = ingestor.series(
+                                Dimension.builder().name("region").value("us-east-1").build(),
+                                Dimension.builder().name("hostname").value("host-" + thread + "-" + h).build());
+                        for (int i = 0; i < pointsPerHost; i++) {
+                            ingestor.write(host, START + i * 1000L, i % 100 + offset, 40 + offset);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+    }
+}
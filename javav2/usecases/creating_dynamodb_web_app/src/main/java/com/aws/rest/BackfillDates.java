@@ -0,0 +1,18 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.aws.rest;
+
+/*
+ A one-off migration for a Work table that held items before the archive-index global secondary index was added.
+ The index is sparse, so those items have no date and are missing from the open and closed lists. This gives each of
+ them the current date. Run it once after you create the index, for example:
+
+ mvn compile exec:java -Dexec.mainClass=com.aws.rest.BackfillDates
+ */
+public class BackfillDates {
+    public static void main(String[] args) {
+        int updated = new DynamoDBService().backfillDates();
+        System.out.println("Set the date of " + updated + " items");
+    }
+}
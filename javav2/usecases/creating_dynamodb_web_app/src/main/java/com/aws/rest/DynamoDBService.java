@@ -3,71 +3,68 @@
 
 package com.aws.rest;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbIndex;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
-import software.amazon.awssdk.enhanced.dynamodb.Expression;
 import software.amazon.awssdk.enhanced.dynamodb.Key;
 import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.model.Page;
+import software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional;
+import software.amazon.awssdk.enhanced.dynamodb.model.QueryEnhancedRequest;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.enhanced.dynamodb.model.ScanEnhancedRequest;
+import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Calendar;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import org.springframework.stereotype.Component;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
 import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
 
 /*
- Before running this code example, create an Amazon DynamoDB table named Work with a primary key named id.
+ Before running this code example, create an Amazon DynamoDB table named Work with a primary key named id,
+ and a global secondary index named archive-index with the partition key archive (Number) and the sort key date (String).
+ The index is sparse, so items without a date are not in it. If the table already holds such items, run the
+ BackfillDates migration once to give them the current date.
  */
 @Component
 public class DynamoDBService {
+    private static final ObjectMapper JSON = new ObjectMapper();
 
-    private DynamoDbClient getClient() {
-        Region region = Region.US_EAST_1;
-        return DynamoDbClient.builder()
-                .region(region)
-                .build();
+    private final DynamoDbClient client;
+
+    public DynamoDBService() {
+        this(DynamoDbClient.builder()
+                .region(Region.US_EAST_1)
+                .build());
     }
 
-    // Get All items from the DynamoDB table.
-    public List<WorkItem> getAllItems() {
-        DynamoDbEnhancedClient enhancedClient = DynamoDbEnhancedClient.builder()
-                .dynamoDbClient(getClient())
-                .build();
+    DynamoDBService(DynamoDbClient client) {
+        this.client = client;
+    }
 
-        try {
-            DynamoDbTable<Work> table = enhancedClient.table("Work", TableSchema.fromBean(Work.class));
-            Iterator<Work> results = table.scan().items().iterator();
-            WorkItem workItem;
-            ArrayList<WorkItem> itemList = new ArrayList<>();
-
-            while (results.hasNext()) {
-                workItem = new WorkItem();
-                Work work = results.next();
-                workItem.setName(work.getName());
-                workItem.setGuide(work.getGuide());
-                workItem.setDescription(work.getDescription());
-                workItem.setStatus(work.getStatus());
-                workItem.setDate(work.getDate());
-                workItem.setId(work.getId());
-                workItem.setArchived(work.getArchive());
-
-                // Push the workItem to the list.
-                itemList.add(workItem);
-            }
-            return itemList;
+    private DynamoDbClient getClient() {
+        return client;
+    }
 
-        } catch (DynamoDbException e) {
-            System.err.println(e.getMessage());
-            System.exit(1);
-        }
-        return null;
+    // Get All items from the DynamoDB table. The items are read page by page
+    // while the caller iterates, so they are never all held in memory.
+    public Iterable<WorkItem> getAllItems() {
+        DynamoDbTable<Work> table = getTable();
+        return () -> table.scan().items().stream()
+                .map(DynamoDBService::toWorkItem)
+                .iterator();
     }
 
     // Archives an item based on the key.
@@ -96,119 +93,149 @@ public class DynamoDBService {
     }
 
     // Get Open items from the DynamoDB table.
-    public List<WorkItem> getOpenItems() {
-        DynamoDbEnhancedClient enhancedClient = DynamoDbEnhancedClient.builder()
-                .dynamoDbClient(getClient())
-                .build();
-
-        try {
-            DynamoDbTable<Work> table = enhancedClient.table("Work", TableSchema.fromBean(Work.class));
-            AttributeValue attr = AttributeValue.builder()
-                    .n("0")
-                    .build();
+    public Iterable<WorkItem> getOpenItems() {
+        return queryItems(0);
+    }
 
-            Map<String, AttributeValue> myMap = new HashMap<>();
-            myMap.put(":val1", attr);
+    // Get Closed Items from the DynamoDB table.
+    public Iterable<WorkItem> getClosedItems() {
+        return queryItems(1);
+    }
 
-            Map<String, String> myExMap = new HashMap<>();
-            myExMap.put("#archive", "archive");
+    // Queries the archive index for the items with the given archive value, one
+    // page at a time while the caller iterates.
+    private Iterable<WorkItem> queryItems(int archived) {
+        DynamoDbIndex<Work> index = getTable().index(Work.ARCHIVE_INDEX);
+        QueryEnhancedRequest request = QueryEnhancedRequest.builder()
+                .queryConditional(QueryConditional.keyEqualTo(k -> k.partitionValue(archived)))
+                .build();
+        return () -> index.query(request).stream()
+                .flatMap(page -> page.items().stream())
+                .map(DynamoDBService::toWorkItem)
+                .iterator();
+    }
 
-            // Set the Expression so only active items are queried from the Work table.
-            Expression expression = Expression.builder()
-                    .expressionValues(myMap)
-                    .expressionNames(myExMap)
-                    .expression("#archive = :val1")
-                    .build();
+    /**
+     * Returns one page of up to limit items. When archived is null, the page
+     * comes from a scan of the table; otherwise it comes from the archive
+     * index. Pass the nextCursor of a page to get the page after it.
+     */
+    public WorkItemPage getItemsPage(Integer archived, String cursor, int limit) {
+        Map<String, AttributeValue> exclusiveStartKey = decodeCursor(cursor);
+        Page<Work> page;
+        if (archived == null) {
+            page = getTable().scan(ScanEnhancedRequest.builder()
+                    .exclusiveStartKey(exclusiveStartKey)
+                    .limit(limit)
+                    .build())
+                    .iterator().next();
+        } else {
+            page = getTable().index(Work.ARCHIVE_INDEX).query(QueryEnhancedRequest.builder()
+                    .queryConditional(QueryConditional.keyEqualTo(k -> k.partitionValue(archived)))
+                    .exclusiveStartKey(exclusiveStartKey)
+                    .limit(limit)
+                    .build())
+                    .iterator().next();
+        }
 
-            ScanEnhancedRequest enhancedRequest = ScanEnhancedRequest.builder()
-                    .filterExpression(expression)
-                    .limit(15)
-                    .build();
+        List<WorkItem> items = new ArrayList<>(page.items().size());
+        for (Work work : page.items()) {
+            items.add(toWorkItem(work));
+        }
+        return new WorkItemPage(items, encodeCursor(page.lastEvaluatedKey()));
+    }
 
-            // Scan items.
-            Iterator<Work> results = table.scan(enhancedRequest).items().iterator();
-            WorkItem workItem;
-            ArrayList<WorkItem> itemList = new ArrayList<>();
-
-            while (results.hasNext()) {
-                workItem = new WorkItem();
-                Work work = results.next();
-                workItem.setName(work.getName());
-                workItem.setGuide(work.getGuide());
-                workItem.setDescription(work.getDescription());
-                workItem.setStatus(work.getStatus());
-                workItem.setDate(work.getDate());
-                workItem.setId(work.getId());
-                workItem.setArchived(work.getArchive());
-
-                // Push the workItem to the list.
-                itemList.add(workItem);
+    /**
+     * Sets the date of every item that has none to the current date, so that
+     * the item shows up in the archive index. Returns the number of items
+     * updated. Items that get a date in the meantime are left alone. This
+     * scans the whole table, so it is run once by {@link BackfillDates} and
+     * never on the request path.
+     */
+    public int backfillDates() {
+        ScanRequest request = ScanRequest.builder()
+                .tableName("Work")
+                .projectionExpression("id")
+                .filterExpression("attribute_not_exists(#date)")
+                .expressionAttributeNames(Map.of("#date", "date"))
+                .build();
+        String date = now();
+        int updated = 0;
+        for (Map<String, AttributeValue> key : getClient().scanPaginator(request).items()) {
+            try {
+                getClient().updateItem(UpdateItemRequest.builder()
+                        .tableName("Work")
+                        .key(key)
+                        .updateExpression("SET #date = :date")
+                        .conditionExpression("attribute_exists(id) AND attribute_not_exists(#date)")
+                        .expressionAttributeNames(Map.of("#date", "date"))
+                        .expressionAttributeValues(Map.of(":date", AttributeValue.builder().s(date).build()))
+                        .build());
+                updated++;
+            } catch (ConditionalCheckFailedException e) {
+                // The item was deleted or given a date since the scan.
             }
-            return itemList;
-
-        } catch (DynamoDbException e) {
-            System.err.println(e.getMessage());
-            System.exit(1);
         }
-        return null;
+        return updated;
     }
 
-    // Get Closed Items from the DynamoDB table.
-    public List<WorkItem> getClosedItems() {
+    private DynamoDbTable<Work> getTable() {
         DynamoDbEnhancedClient enhancedClient = DynamoDbEnhancedClient.builder()
                 .dynamoDbClient(getClient())
                 .build();
+        return enhancedClient.table("Work", TableSchema.fromBean(Work.class));
+    }
 
-        try {
-            // Create a DynamoDbTable object.
-            DynamoDbTable<Work> table = enhancedClient.table("Work", TableSchema.fromBean(Work.class));
-            AttributeValue attr = AttributeValue.builder()
-                    .n("1")
-                    .build();
-
-            Map<String, AttributeValue> myMap = new HashMap<>();
-            myMap.put(":val1", attr);
-            Map<String, String> myExMap = new HashMap<>();
-            myExMap.put("#archive", "archive");
-
-            // Set the Expression so only Closed items are queried from the Work table.
-            Expression expression = Expression.builder()
-                    .expressionValues(myMap)
-                    .expressionNames(myExMap)
-                    .expression("#archive = :val1")
-                    .build();
-
-            ScanEnhancedRequest enhancedRequest = ScanEnhancedRequest.builder()
-                    .filterExpression(expression)
-                    .limit(15)
-                    .build();
+    private static WorkItem toWorkItem(Work work) {
+        WorkItem workItem = new WorkItem();
+        workItem.setName(work.getName());
+        workItem.setGuide(work.getGuide());
+        workItem.setDescription(work.getDescription());
+        workItem.setStatus(work.getStatus());
+        workItem.setDate(work.getDate());
+        workItem.setId(work.getId());
+        workItem.setArchived(work.getArchive());
+        return workItem;
+    }
 
-            // Get items.
-            Iterator<Work> results = table.scan(enhancedRequest).items().iterator();
-            WorkItem workItem;
-            ArrayList<WorkItem> itemList = new ArrayList<>();
-
-            while (results.hasNext()) {
-                workItem = new WorkItem();
-                Work work = results.next();
-                workItem.setName(work.getName());
-                workItem.setGuide(work.getGuide());
-                workItem.setDescription(work.getDescription());
-                workItem.setStatus(work.getStatus());
-                workItem.setDate(work.getDate());
-                workItem.setId(work.getId());
-                workItem.setArchived(work.getArchive());
-
-                // Push the workItem to the list.
-                itemList.add(workItem);
-            }
-            return itemList;
+    // A cursor is the LastEvaluatedKey of a page as URL-safe Base64 of its DynamoDB JSON.
+    // Key attributes are always strings or numbers in the Work table.
+    private static String encodeCursor(Map<String, AttributeValue> lastEvaluatedKey) {
+        if (lastEvaluatedKey == null || lastEvaluatedKey.isEmpty()) {
+            return null;
+        }
+        Map<String, Map<String, String>> key = new HashMap<>();
+        for (Map.Entry<String, AttributeValue> entry : lastEvaluatedKey.entrySet()) {
+            AttributeValue value = entry.getValue();
+            key.put(entry.getKey(), value.n() != null ? Map.of("N", value.n()) : Map.of("S", value.s()));
+        }
+        try {
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(JSON.writeValueAsBytes(key));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 
-        } catch (DynamoDbException e) {
-            System.err.println(e.getMessage());
-            System.exit(1);
+    private static Map<String, AttributeValue> decodeCursor(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        Map<String, Map<String, String>> key;
+        try {
+            key = JSON.readValue(Base64.getUrlDecoder().decode(cursor),
+                    new TypeReference<Map<String, Map<String, String>>>() {
+                    });
+        } catch (IOException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+        Map<String, AttributeValue> exclusiveStartKey = new HashMap<>();
+        for (Map.Entry<String, Map<String, String>> entry : key.entrySet()) {
+            Map<String, String> value = entry.getValue();
+            exclusiveStartKey.put(entry.getKey(), value.containsKey("N")
+                    ? AttributeValue.builder().n(value.get("N")).build()
+                    : AttributeValue.builder().s(value.get("S")).build());
         }
-        return null;
+        return exclusiveStartKey;
     }
 
     public void setItem(WorkItem item) {
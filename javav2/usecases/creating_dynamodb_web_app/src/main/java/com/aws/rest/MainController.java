@@ -5,6 +5,7 @@ package com.aws.rest;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.ComponentScan;
+import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -14,6 +15,7 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
@@ -26,6 +28,7 @@ import java.util.stream.StreamSupport;
 @RestController
 @RequestMapping("api/items")
 public class MainController {
+    private static final int MAX_PAGE_SIZE = 100;
     private final DynamoDBService dbService;
 
     @Autowired
@@ -48,6 +51,29 @@ public class MainController {
                 .collect(Collectors.toUnmodifiableList());
     }
 
+    // Returns one page of items. Pass the nextCursor of a page as the cursor
+    // parameter to get the next one, for example
+    // GET api/items?archived=false&limit=25&cursor=...
+    @GetMapping(value = "", params = "limit")
+    public WorkItemPage getItemsPage(@RequestParam(required = false) String archived,
+            @RequestParam(required = false) String cursor,
+            @RequestParam int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        Integer archive = null;
+        if (archived != null && archived.compareTo("false") == 0)
+            archive = 0;
+        else if (archived != null && archived.compareTo("true") == 0)
+            archive = 1;
+
+        try {
+            return dbService.getItemsPage(archive, cursor, limit);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
     // Notice the : character which is used for custom methods. More information can
     // be found here:
     // https://cloud.google.com/apis/design/custom_methods
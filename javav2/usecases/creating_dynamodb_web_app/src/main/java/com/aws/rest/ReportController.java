@@ -3,13 +3,18 @@
 
 package com.aws.rest;
 
-import jxl.write.WriteException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Map;
@@ -40,9 +45,29 @@ public class ReportController {
             InputStream is = writeExcel.write(list);
             sm.sendReport(is, body.get("email"));
             return "Report generated & sent";
-        } catch (IOException | WriteException e) {
+        } catch (IOException e) {
             e.printStackTrace();
         }
         return "Failed to generate report";
     }
+
+    // Downloads the report. Rows are written to the response while the items
+    // are read from the table, so the size of the report is not limited by
+    // the heap, for example GET api/items:report?archived=false
+    @GetMapping("")
+    public ResponseEntity<StreamingResponseBody> downloadReport(@RequestParam(required = false) String archived) {
+        Iterable<WorkItem> items;
+        if (archived != null && archived.compareTo("false") == 0)
+            items = dynamoDBService.getOpenItems();
+        else if (archived != null && archived.compareTo("true") == 0)
+            items = dynamoDBService.getClosedItems();
+        else
+            items = dynamoDBService.getAllItems();
+
+        StreamingResponseBody body = out -> writeExcel.write(items, out);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"WorkReport.xlsx\"")
+                .contentType(MediaType.parseMediaType(WriteExcel.CONTENT_TYPE))
+                .body(body);
+    }
 }
\ No newline at end of file
@@ -6,9 +6,13 @@ package com.aws.rest;
 import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSortKey;
 import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbBean;
 import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbPartitionKey;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSecondaryPartitionKey;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSecondarySortKey;
 
 @DynamoDbBean
 public class Work {
+    public static final String ARCHIVE_INDEX = "archive-index";
+
     private String id;
     private String date;
     private String description;
@@ -35,6 +39,7 @@ public class Work {
         this.archive = archive;
     }
 
+    @DynamoDbSecondaryPartitionKey(indexNames = { ARCHIVE_INDEX })
     public int getArchive() {
         return this.archive;
     }
@@ -63,6 +68,7 @@ public class Work {
         return this.guide;
     }
 
+    @DynamoDbSecondarySortKey(indexNames = { ARCHIVE_INDEX })
     public String getDate() {
         return this.date;
     }
@@ -0,0 +1,28 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.aws.rest;
+
+import java.util.List;
+
+/**
+ * One page of work items. The nextCursor is an opaque token for the page that
+ * follows, or null when this is the last page.
+ */
+public class WorkItemPage {
+    private final List<WorkItem> items;
+    private final String nextCursor;
+
+    public WorkItemPage(List<WorkItem> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<WorkItem> getItems() {
+        return this.items;
+    }
+
+    public String getNextCursor() {
+        return this.nextCursor;
+    }
+}
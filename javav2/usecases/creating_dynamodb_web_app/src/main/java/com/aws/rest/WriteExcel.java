@@ -3,16 +3,6 @@
 
 package com.aws.rest;
 
-import jxl.CellView;
-import jxl.Workbook;
-import jxl.WorkbookSettings;
-import jxl.format.UnderlineStyle;
-import jxl.write.Label;
-import jxl.write.WritableCellFormat;
-import jxl.write.WritableFont;
-import jxl.write.WritableSheet;
-import jxl.write.WritableWorkbook;
-import jxl.write.WriteException;
 import org.apache.commons.io.IOUtils;
 import org.springframework.stereotype.Component;
 import software.amazon.awssdk.core.SdkBytes;
@@ -35,85 +25,46 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
-import java.util.Locale;
 import java.util.Properties;
 
+/**
+ * Writes work items to an Excel (.xlsx) report one row at a time, so the
+ * report can be streamed to an HTTP response or a file without holding the
+ * whole workbook in memory.
+ */
 @Component
 public class WriteExcel {
-    static WritableCellFormat times;
-    static WritableCellFormat timesBoldUnderline;
-
-    static {
-        try {
-            WritableFont times10pt = new WritableFont(WritableFont.TIMES, 10);
-            times = new WritableCellFormat(times10pt);
-            times.setWrap(true);
-
-            WritableFont times10ptBoldUnderline = new WritableFont(WritableFont.TIMES, 10, WritableFont.BOLD, false,
-                    UnderlineStyle.SINGLE);
-            timesBoldUnderline = new WritableCellFormat(times10ptBoldUnderline);
-            timesBoldUnderline.setWrap(true);
-        } catch (WriteException e) {
-            e.printStackTrace();
-        }
-    }
+    public static final String CONTENT_TYPE = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+    private static final String[] CAPTIONS = { "Writer", "Date", "Guide", "Description", "Status" };
+    private static final int[] COLUMN_WIDTHS = { 20, 12, 20, 60, 20 };
 
-    public InputStream write(Iterable<WorkItem> items) throws IOException, WriteException {
+    // Writes the report into memory, for callers that need it as a whole, such as an email attachment.
+    public InputStream write(Iterable<WorkItem> items) throws IOException {
         ByteArrayOutputStream os = new ByteArrayOutputStream();
-        WorkbookSettings wbSettings = new WorkbookSettings();
-        wbSettings.setLocale(new Locale("en", "US"));
-
-        WritableWorkbook workbook = Workbook.createWorkbook(os, wbSettings);
-        workbook.createSheet("Work Item Report", 0);
-        WritableSheet excelSheet = workbook.getSheet(0);
-
-        addLabels(excelSheet);
-        fillContent(excelSheet, items);
-
-        workbook.write();
-        workbook.close();
-
+        write(items, os);
         return new ByteArrayInputStream(os.toByteArray());
     }
 
-    private void addLabels(WritableSheet sheet) throws WriteException {
-        CellView cv = new CellView();
-        cv.setFormat(timesBoldUnderline);
-        cv.setAutosize(true);
-
-        addCaption(sheet, 0, 0, "Writer");
-        addCaption(sheet, 1, 0, "Date");
-        addCaption(sheet, 2, 0, "Guide");
-        addCaption(sheet, 3, 0, "Description");
-        addCaption(sheet, 4, 0, "Status");
-    }
-
-    private void addCaption(WritableSheet sheet, int column, int row, String s) throws WriteException {
-        Label label = new Label(column, row, s, timesBoldUnderline);
-        int cc = s.length();
-        sheet.setColumnView(column, cc);
-        sheet.addCell(label);
-    }
-
-    private void addField(WritableSheet sheet, int column, int row, String s) throws WriteException {
-        Label label = new Label(column, row, s, timesBoldUnderline);
-        int cc = s.length();
-        cc = cc > 200 ? 150 : cc + 6;
-        sheet.setColumnView(column, cc);
-        sheet.addCell(label);
-    }
-
-    private void fillContent(WritableSheet sheet, Iterable<WorkItem> items) throws WriteException {
-        int row = 2;
+    /**
+     * Streams the report to the output stream as the items are read and
+     * closes it. Returns the number of work items written. If reading or
+     * writing fails, the stream is left open so that the caller does not
+     * mistake a partial report for a complete one.
+     */
+    public long write(Iterable<WorkItem> items, OutputStream out) throws IOException {
+        long count = 0;
+        XlsxStreamWriter writer = new XlsxStreamWriter(out);
+        writer.startSheet("Work Item Report", COLUMN_WIDTHS);
+        writer.writeHeader(CAPTIONS);
         for (WorkItem item : items) {
-            addField(sheet, 0, row, item.getName());
-            addField(sheet, 1, row, item.getDate());
-            addField(sheet, 2, row, item.getGuide());
-            addField(sheet, 3, row, item.getDescription());
-            addField(sheet, 4, row, item.getStatus());
-            row += 1;
+            writer.writeRow(item.getName(), item.getDate(), item.getGuide(), item.getDescription(),
+                    item.getStatus());
+            count++;
         }
+        writer.close();
+        return count;
     }
 
     @Component
@@ -122,7 +73,7 @@ public class WriteExcel {
         private static String subject = "Weekly AWS Status Report";
         private static String bodyText = "Hello,\r\n\r\nPlease see the attached file for a weekly update.";
         private static String bodyHTML = "<!DOCTYPE html><html lang=\"en-US\"><body><h1>Hello!</h1><p>Please see the attached file for a weekly update.</p></body></html>";
-        private static String attachmentName = "WorkReport.xls";
+        private static String attachmentName = "WorkReport.xlsx";
 
         public void sendReport(InputStream is, String emailAddress) throws IOException {
             byte[] fileContent = IOUtils.toByteArray(is);
@@ -178,8 +129,7 @@ public class WriteExcel {
             msg.addBodyPart(wrap);
 
             MimeBodyPart att = new MimeBodyPart();
-            DataSource fds = new ByteArrayDataSource(attachment,
-                    "application/vnc.openxmlformats-officedocument.spreadsheetml.sheet");
+            DataSource fds = new ByteArrayDataSource(attachment, CONTENT_TYPE);
             att.setDataHandler(new DataHandler(fds));
             att.setFileName(attachmentName);
 
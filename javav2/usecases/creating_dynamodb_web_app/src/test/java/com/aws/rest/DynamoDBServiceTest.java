@@ -0,0 +1,128 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.aws.rest;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.StreamSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class DynamoDBServiceTest {
+
+    @Test
+    public void queriesOpenAndClosedItemsThroughTheArchiveIndex() {
+        InMemoryDynamoDbClient client = new InMemoryDynamoDbClient();
+        client.put("1", 0, "2024-01-02 10:00:00");
+        client.put("2", 1, "2024-01-03 10:00:00");
+        client.put("3", 0, "2024-01-01 10:00:00");
+        // Written before the index existed.
+        client.put("4", 0, null);
+        DynamoDBService service = new DynamoDBService(client);
+
+        // Requests only query the index and never scan the table.
+        assertEquals(List.of("3", "1"), ids(service.getOpenItems()));
+        assertEquals(List.of("2"), ids(service.getClosedItems()));
+        assertEquals(2, service.getItemsPage(0, null, 10).getItems().size());
+        assertEquals(0, client.scans);
+        assertEquals(0, client.updates);
+        assertEquals(3, client.queries);
+    }
+
+    @Test
+    public void backfillsTheDatesOfItemsWrittenBeforeTheIndex() {
+        InMemoryDynamoDbClient client = new InMemoryDynamoDbClient();
+        client.put("1", 0, "2024-01-02 10:00:00");
+        client.put("2", 1, null);
+        client.put("3", 0, null);
+        DynamoDBService service = new DynamoDBService(client);
+
+        assertEquals(2, service.backfillDates());
+        assertEquals(1, client.scans);
+        assertEquals(List.of("1", "3"), ids(service.getOpenItems()));
+        assertEquals(List.of("2"), ids(service.getClosedItems()));
+
+        // A second run finds nothing left to update.
+        assertEquals(0, service.backfillDates());
+        assertEquals(2, client.updates);
+    }
+
+    private static List<String> ids(Iterable<WorkItem> items) {
+        return StreamSupport.stream(items.spliterator(), false).map(WorkItem::getId).toList();
+    }
+
+    // Holds the Work table and answers scans and archive index queries in a single page.
+    private static class InMemoryDynamoDbClient implements DynamoDbClient {
+        private final Map<String, Map<String, AttributeValue>> items = new LinkedHashMap<>();
+        private int scans;
+        private int updates;
+        private int queries;
+
+        void put(String id, int archive, String date) {
+            Map<String, AttributeValue> item = new HashMap<>();
+            item.put("id", AttributeValue.builder().s(id).build());
+            item.put("username", AttributeValue.builder().s("user-" + id).build());
+            item.put("archive", AttributeValue.builder().n(Integer.toString(archive)).build());
+            if (date != null) {
+                item.put("date", AttributeValue.builder().s(date).build());
+            }
+            items.put(id, item);
+        }
+
+        @Override
+        public ScanResponse scan(ScanRequest request) {
+            scans++;
+            List<Map<String, AttributeValue>> result = new ArrayList<>();
+            for (Map<String, AttributeValue> item : items.values()) {
+                if (request.filterExpression() == null || !item.containsKey("date")) {
+                    result.add(request.projectionExpression() == null ? item : Map.of("id", item.get("id")));
+                }
+            }
+            return ScanResponse.builder().items(result).count(result.size()).build();
+        }
+
+        @Override
+        public QueryResponse query(QueryRequest request) {
+            queries++;
+            assertEquals(Work.ARCHIVE_INDEX, request.indexName());
+            String archive = request.expressionAttributeValues().values().iterator().next().n();
+            // Like the index, only items with both key attributes are returned.
+            List<Map<String, AttributeValue>> result = items.values().stream()
+                    .filter(item -> item.containsKey("date") && item.get("archive").n().equals(archive))
+                    .sorted(Comparator.comparing(item -> item.get("date").s()))
+                    .toList();
+            return QueryResponse.builder().items(result).count(result.size()).build();
+        }
+
+        @Override
+        public UpdateItemResponse updateItem(UpdateItemRequest request) {
+            updates++;
+            items.get(request.key().get("id").s()).put("date", request.expressionAttributeValues().get(":date"));
+            return UpdateItemResponse.builder().build();
+        }
+
+        @Override
+        public String serviceName() {
+            return SERVICE_NAME;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,94 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.aws.rest;
+
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how long the streaming report takes to write 10,000, 100,000 and
+ * 1,000,000 work items, and the peak heap used while it runs. The report is
+ * written to a stream that only counts bytes, so the numbers cover the
+ * writer itself and not a disk or a network. Run it with a small heap, such
+ * as -Xmx64m, to confirm that the heap does not grow with the number of rows.
+ */
+public class WriteExcelBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        WriteExcel writeExcel = new WriteExcel();
+        // Warm up the JIT compiler before measuring.
+        writeExcel.write(items(10_000), new CountingOutputStream());
+
+        for (int rows : new int[] { 10_000, 100_000, 1_000_000 }) {
+            System.gc();
+            MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+            long baseline = memory.getHeapMemoryUsage().getUsed();
+            AtomicLong peak = new AtomicLong(baseline);
+            Thread sampler = new Thread(() -> {
+                while (!Thread.currentThread().isInterrupted()) {
+                    peak.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+                    try {
+                        Thread.sleep(5);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            });
+            sampler.setDaemon(true);
+            sampler.start();
+
+            CountingOutputStream out = new CountingOutputStream();
+            long start = System.nanoTime();
+            writeExcel.write(items(rows), out);
+            double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+            sampler.interrupt();
+            sampler.join();
+
+            System.out.printf("%,9d rows: %6.2f s, %,10.0f rows/s, %,6d KiB written, peak heap %,d KiB above baseline%n",
+                    rows, seconds, rows / seconds, out.count / 1024, (peak.get() - baseline) / 1024);
+        }
+    }
+
+    // Creates the work items one at a time, like a paged DynamoDB query does.
+    private static Iterable<WorkItem> items(int count) {
+        return () -> new Iterator<>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < count;
+            }
+
+            @Override
+            public WorkItem next() {
+                WorkItem item = new WorkItem();
+                item.setId("id-" + next);
+                item.setName("Writer " + (next % 50));
+                item.setDate("2023-01-" + (10 + next % 20));
+                item.setGuide("Guide " + (next % 7));
+                item.setDescription("Description of work item " + next + " with some <markup> & text");
+                item.setStatus(next % 3 == 0 ? "Done" : "Started");
+                next++;
+                return item;
+            }
+        };
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.aws.rest;
+
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class XlsxStreamWriterTest {
+
+    @Test
+    public void writesAWorkbookThatReadsBack() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (XlsxStreamWriter writer = new XlsxStreamWriter(out)) {
+            writer.startSheet("Report", 20, 40);
+            writer.writeHeader("Name", "Notes");
+            writer.writeRow("Tom & Jerry", "<b>\"quoted\"</b>\u0001");
+            writer.writeRow("Second", null);
+            writer.startSheet("Q&A");
+            writer.writeRow("Answer");
+        }
+
+        Map<String, Document> parts = readParts(out.toByteArray());
+
+        assertTrue(parts.keySet().containsAll(List.of("[Content_Types].xml", "_rels/.rels", "xl/workbook.xml",
+                "xl/_rels/workbook.xml.rels", "xl/styles.xml", "xl/worksheets/sheet1.xml",
+                "xl/worksheets/sheet2.xml")));
+        assertEquals(List.of("Report", "Q&A"), attributes(parts.get("xl/workbook.xml"), "sheet", "name"));
+        assertEquals(List.of("Name", "Notes", "Tom & Jerry", "<b>\"quoted\"</b>", "Second", ""),
+                texts(parts.get("xl/worksheets/sheet1.xml")));
+        assertEquals(List.of("Answer"), texts(parts.get("xl/worksheets/sheet2.xml")));
+        assertEquals(3, parts.get("xl/worksheets/sheet1.xml").getElementsByTagName("row").getLength());
+        assertEquals(List.of("1", "1", "", "", "", ""),
+                attributes(parts.get("xl/worksheets/sheet1.xml"), "c", "s"));
+    }
+
+    @Test
+    public void rejectsSheetNamesThatExcelDoesNotAllow() throws Exception {
+        try (XlsxStreamWriter writer = new XlsxStreamWriter(new ByteArrayOutputStream())) {
+            writer.startSheet("Work Items");
+            assertThrows(IllegalArgumentException.class, () -> writer.startSheet(""));
+            assertThrows(IllegalArgumentException.class, () -> writer.startSheet("x".repeat(32)));
+            for (char c : "[]:*?/\\".toCharArray()) {
+                assertThrows(IllegalArgumentException.class, () -> writer.startSheet("Sheet " + c));
+            }
+            assertThrows(IllegalArgumentException.class, () -> writer.startSheet("WORK ITEMS"));
+            // The current sheet is still open.
+            writer.writeRow("still writing");
+        }
+    }
+
+    // Unzips the workbook and parses every part as XML.
+    private static Map<String, Document> readParts(byte[] workbook) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        Map<String, Document> parts = new LinkedHashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(workbook))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                byte[] content = zip.readAllBytes();
+                parts.put(entry.getName(), factory.newDocumentBuilder().parse(new ByteArrayInputStream(content)));
+            }
+        }
+        return parts;
+    }
+
+    private static List<String> texts(Document sheet) {
+        List<String> texts = new ArrayList<>();
+        NodeList cells = sheet.getElementsByTagName("t");
+        for (int i = 0; i < cells.getLength(); i++) {
+            texts.add(cells.item(i).getTextContent());
+        }
+        return texts;
+    }
+
+    private static List<String> attributes(Document document, String tag, String attribute) {
+        List<String> values = new ArrayList<>();
+        NodeList elements = document.getElementsByTagName(tag);
+        for (int i = 0; i < elements.getLength(); i++) {
+            values.add(((Element) elements.item(i)).getAttribute(attribute));
+        }
+        return values;
+    }
+}
@@ -18,6 +18,7 @@ import org.springframework.web.servlet.view.RedirectView;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -25,6 +26,8 @@ import java.util.List;
 public class PhotoController {
     // Change to your Bucket Name
     private final String bucketName = "<Enter your S3 bucket name>";
+    // Reports written to the bucket are stored under this prefix and are not analyzed.
+    private static final String REPORT_PREFIX = "reports/";
 
     private final S3Service s3Service;
     private final AnalyzePhotos photos;
@@ -75,6 +78,9 @@ public class PhotoController {
         ArrayList<String> myKeys = s3Service.ListBucketObjects(bucketName);
         ArrayList<List<WorkItem>> myList = new ArrayList<>();
         for (String myKey : myKeys) {
+            if (myKey.startsWith(REPORT_PREFIX)) {
+                continue;
+            }
             byte[] keyData = s3Service.getObjectBytes(bucketName, myKey);
             ArrayList<WorkItem> item = photos.DetectLabels(keyData, myKey);
             myList.add(item);
@@ -92,6 +98,36 @@ public class PhotoController {
         return "The photos have been analyzed and the report is sent";
     }
 
+    // Generates the same report and streams it into the bucket under
+    // reports/. Each photo is analyzed as its sheet is written and the report
+    // is uploaded in parts, so neither the labels nor the report have to fit
+    // in memory.
+    @RequestMapping(value = "/reporttos3", method = RequestMethod.POST)
+    @ResponseBody
+    String reportToS3(HttpServletRequest request, HttpServletResponse response) {
+        List<String> myKeys = s3Service.ListBucketObjects(bucketName);
+        Iterable<List<WorkItem>> labels = () -> myKeys.stream()
+                .filter(myKey -> !myKey.startsWith(REPORT_PREFIX))
+                .map(myKey -> (List<WorkItem>) photos.DetectLabels(s3Service.getObjectBytes(bucketName, myKey), myKey))
+                .iterator();
+
+        String reportKey = REPORT_PREFIX + "PhotoReport-" + Instant.now().toEpochMilli() + ".xlsx";
+        S3MultipartOutputStream out = s3Service.openUpload(bucketName, reportKey, WriteExcel.CONTENT_TYPE);
+        try {
+            excel.write(labels, out);
+        } catch (IOException | RuntimeException e) {
+            // A failed abort must not hide why the report could not be written.
+            try {
+                out.abort();
+            } catch (RuntimeException abortError) {
+                e.addSuppressed(abortError);
+            }
+            e.printStackTrace();
+            return "The report could not be written";
+        }
+        return "The photos have been analyzed and the report is in " + reportKey;
+    }
+
     // Upload a video to analyze.
     @RequestMapping(value = "/upload", method = RequestMethod.POST)
     @ResponseBody
@@ -0,0 +1,166 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.photo;
+
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An output stream that uploads what is written to it to an Amazon S3 object.
+ *
+ * Bytes are collected into a part buffer, and each full part is sent with
+ * UploadPart, so only one part is held in memory however large the object
+ * grows. Closing the stream uploads the last part and completes the upload.
+ * If an upload fails, the multipart upload is aborted so that S3 does not
+ * keep the parts. An object smaller than one part is sent with a single
+ * PutObject call instead.
+ */
+public class S3MultipartOutputStream extends OutputStream {
+    // Every part but the last must be at least 5 MiB.
+    public static final int DEFAULT_PART_SIZE = 8 * 1024 * 1024;
+
+    private final S3Client s3;
+    private final String bucketName;
+    private final String key;
+    private final String contentType;
+    private final byte[] buffer;
+    private final List<CompletedPart> parts = new ArrayList<>();
+    private int position;
+    private String uploadId;
+    private boolean closed;
+
+    public S3MultipartOutputStream(S3Client s3, String bucketName, String key, String contentType) {
+        this(s3, bucketName, key, contentType, DEFAULT_PART_SIZE);
+    }
+
+    public S3MultipartOutputStream(S3Client s3, String bucketName, String key, String contentType, int partSize) {
+        if (partSize < 5 * 1024 * 1024) {
+            throw new IllegalArgumentException("The part size must be at least 5 MiB");
+        }
+        this.s3 = s3;
+        this.bucketName = bucketName;
+        this.key = key;
+        this.contentType = contentType;
+        this.buffer = new byte[partSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("The stream is closed");
+        }
+        while (len > 0) {
+            int n = Math.min(len, buffer.length - position);
+            System.arraycopy(b, off, buffer, position, n);
+            position += n;
+            off += n;
+            len -= n;
+            if (position == buffer.length) {
+                uploadPart();
+            }
+        }
+    }
+
+    private void uploadPart() throws IOException {
+        try {
+            if (uploadId == null) {
+                uploadId = s3.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                        .bucket(bucketName)
+                        .key(key)
+                        .contentType(contentType)
+                        .build())
+                        .uploadId();
+            }
+            int partNumber = parts.size() + 1;
+            String eTag = s3.uploadPart(UploadPartRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .partNumber(partNumber)
+                    .build(),
+                    body())
+                    .eTag();
+            parts.add(CompletedPart.builder().partNumber(partNumber).eTag(eTag).build());
+            position = 0;
+        } catch (RuntimeException e) {
+            throw abortAfter(new IOException("Failed to upload part " + (parts.size() + 1) + " of " + key, e));
+        }
+    }
+
+    // Reads the part buffer in place rather than copying it.
+    private RequestBody body() {
+        return RequestBody.fromInputStream(new ByteArrayInputStream(buffer, 0, position), position);
+    }
+
+    // Stops the upload and deletes the parts that were sent. The object is not created.
+    public void abort() {
+        closed = true;
+        if (uploadId != null) {
+            s3.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .build());
+            uploadId = null;
+        }
+    }
+
+    // Aborts the upload and returns the error, with any failure of the abort added as suppressed.
+    private IOException abortAfter(IOException error) {
+        try {
+            abort();
+        } catch (RuntimeException e) {
+            error.addSuppressed(e);
+        }
+        return error;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        if (uploadId == null) {
+            closed = true;
+            s3.putObject(PutObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .contentType(contentType)
+                    .build(),
+                    body());
+            return;
+        }
+        if (position > 0) {
+            uploadPart();
+        }
+        closed = true;
+        try {
+            s3.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(parts).build())
+                    .build());
+        } catch (RuntimeException e) {
+            throw abortAfter(new IOException("Failed to complete the upload of " + key, e));
+        }
+    }
+}
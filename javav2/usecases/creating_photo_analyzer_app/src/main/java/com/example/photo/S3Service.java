@@ -140,6 +140,13 @@ public class S3Service {
         }
     }
 
+    // Returns a stream that uploads what is written to it to the given object
+    // in parts, so large objects can be written without holding them in memory.
+    public S3MultipartOutputStream openUpload(String bucketName, String objectKey, String contentType) {
+        s3 = getClient();
+        return new S3MultipartOutputStream(s3, bucketName, objectKey, contentType);
+    }
+
     // Convert items into XML to pass back to the view.
     private Document toXml(List<BucketItem> itemList) {
         try {
@@ -0,0 +1,209 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.photo;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes an Excel (.xlsx) workbook row by row to an output stream.
+ *
+ * An .xlsx file is a ZIP archive of XML parts. Each sheet is written as one
+ * ZIP entry while its rows arrive, and the small parts that list the sheets
+ * are added when the writer is closed. Cells are inline strings, so nothing
+ * but the current row and the compressor window is held in memory, however
+ * many rows the workbook has.
+ */
+public class XlsxStreamWriter implements AutoCloseable {
+    private static final String MAIN_NS = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+    private static final String REL_NS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+    private static final String PACKAGE_REL_NS = "http://schemas.openxmlformats.org/package/2006/relationships";
+    private static final String HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n";
+    private static final int MAX_SHEET_NAME_LENGTH = 31;
+    private static final String INVALID_SHEET_NAME_CHARS = "[]:*?/\\";
+
+    private final ZipOutputStream zip;
+    private final Writer writer;
+    private final List<String> sheetNames = new ArrayList<>();
+    private boolean inSheet;
+    private long rows;
+
+    public XlsxStreamWriter(OutputStream out) {
+        this.zip = new ZipOutputStream(out);
+        this.writer = new BufferedWriter(new OutputStreamWriter(zip, StandardCharsets.UTF_8), 64 * 1024);
+    }
+
+    /**
+     * Starts a new sheet and ends the current one.
+     *
+     * @param name         the sheet name: 1 to 31 characters, none of []:*?/\ and
+     *                     unlike the names of the other sheets
+     * @param columnWidths the width of each column, in characters
+     */
+    public void startSheet(String name, int... columnWidths) throws IOException {
+        validateSheetName(name);
+        endSheet();
+        sheetNames.add(name);
+        zip.putNextEntry(new ZipEntry("xl/worksheets/sheet" + sheetNames.size() + ".xml"));
+        writer.write(HEADER);
+        writer.write("<worksheet xmlns=\"" + MAIN_NS + "\">");
+        if (columnWidths.length > 0) {
+            writer.write("<cols>");
+            for (int i = 0; i < columnWidths.length; i++) {
+                writer.write("<col min=\"" + (i + 1) + "\" max=\"" + (i + 1) + "\" width=\"" + columnWidths[i]
+                        + "\" customWidth=\"1\"/>");
+            }
+            writer.write("</cols>");
+        }
+        writer.write("<sheetData>");
+        inSheet = true;
+    }
+
+    // Excel refuses to open a workbook with a sheet name it does not allow.
+    private void validateSheetName(String name) {
+        if (name == null || name.isEmpty() || name.length() > MAX_SHEET_NAME_LENGTH) {
+            throw new IllegalArgumentException("A sheet name must be 1 to " + MAX_SHEET_NAME_LENGTH
+                    + " characters long: " + name);
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (INVALID_SHEET_NAME_CHARS.indexOf(name.charAt(i)) >= 0) {
+                throw new IllegalArgumentException("A sheet name cannot contain " + name.charAt(i) + ": " + name);
+            }
+        }
+        for (String other : sheetNames) {
+            if (other.equalsIgnoreCase(name)) {
+                throw new IllegalArgumentException("There is already a sheet named " + other);
+            }
+        }
+    }
+
+    // Writes a row in bold, underlined text.
+    public void writeHeader(String... cells) throws IOException {
+        writeRow(1, cells);
+    }
+
+    public void writeRow(String... cells) throws IOException {
+        writeRow(0, cells);
+    }
+
+    private void writeRow(int style, String... cells) throws IOException {
+        if (!inSheet) {
+            throw new IllegalStateException("Call startSheet before writing rows");
+        }
+        writer.write("<row>");
+        for (String cell : cells) {
+            writer.write(style == 0 ? "<c t=\"inlineStr\"><is><t xml:space=\"preserve\">"
+                    : "<c t=\"inlineStr\" s=\"1\"><is><t xml:space=\"preserve\">");
+            escape(cell == null ? "" : cell);
+            writer.write("</t></is></c>");
+        }
+        writer.write("</row>");
+        rows++;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    private void endSheet() throws IOException {
+        if (inSheet) {
+            writer.write("</sheetData></worksheet>");
+            writer.flush();
+            zip.closeEntry();
+            inSheet = false;
+        }
+    }
+
+    // Writes the text as XML character data, dropping characters that XML does not allow.
+    private void escape(String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '&':
+                    writer.write("&amp;");
+                    break;
+                case '<':
+                    writer.write("&lt;");
+                    break;
+                case '>':
+                    writer.write("&gt;");
+                    break;
+                default:
+                    if (c >= 0x20 || c == '\t' || c == '\n' || c == '\r') {
+                        writer.write(c);
+                    }
+            }
+        }
+    }
+
+    private void writeEntry(String name, String content) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        writer.write(HEADER);
+        writer.write(content);
+        writer.flush();
+        zip.closeEntry();
+    }
+
+    // Ends the last sheet, writes the parts that describe the workbook and closes the stream.
+    @Override
+    public void close() throws IOException {
+        if (sheetNames.isEmpty()) {
+            startSheet("Sheet1");
+        }
+        endSheet();
+
+        StringBuilder types = new StringBuilder("<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">")
+                .append("<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>")
+                .append("<Default Extension=\"xml\" ContentType=\"application/xml\"/>")
+                .append("<Override PartName=\"/xl/workbook.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>")
+                .append("<Override PartName=\"/xl/styles.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.styles+xml\"/>");
+        StringBuilder sheets = new StringBuilder();
+        StringBuilder rels = new StringBuilder("<Relationships xmlns=\"" + PACKAGE_REL_NS + "\">");
+        for (int i = 1; i <= sheetNames.size(); i++) {
+            types.append("<Override PartName=\"/xl/worksheets/sheet").append(i)
+                    .append(".xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>");
+            sheets.append("<sheet name=\"").append(attribute(sheetNames.get(i - 1))).append("\" sheetId=\"").append(i)
+                    .append("\" r:id=\"rId").append(i).append("\"/>");
+            rels.append("<Relationship Id=\"rId").append(i).append("\" Type=\"").append(REL_NS)
+                    .append("/worksheet\" Target=\"worksheets/sheet").append(i).append(".xml\"/>");
+        }
+        rels.append("<Relationship Id=\"rId").append(sheetNames.size() + 1).append("\" Type=\"").append(REL_NS)
+                .append("/styles\" Target=\"styles.xml\"/></Relationships>");
+
+        writeEntry("[Content_Types].xml", types.append("</Types>").toString());
+        writeEntry("_rels/.rels", "<Relationships xmlns=\"" + PACKAGE_REL_NS + "\">"
+                + "<Relationship Id=\"rId1\" Type=\"" + REL_NS + "/officeDocument\" Target=\"xl/workbook.xml\"/>"
+                + "</Relationships>");
+        writeEntry("xl/workbook.xml", "<workbook xmlns=\"" + MAIN_NS + "\" xmlns:r=\"" + REL_NS + "\"><sheets>"
+                + sheets + "</sheets></workbook>");
+        writeEntry("xl/_rels/workbook.xml.rels", rels.toString());
+        // Style 0 is plain text that wraps; style 1 is bold, underlined text that wraps.
+        writeEntry("xl/styles.xml", "<styleSheet xmlns=\"" + MAIN_NS + "\">"
+                + "<fonts count=\"2\"><font><sz val=\"10\"/><name val=\"Times New Roman\"/></font>"
+                + "<font><b/><u/><sz val=\"10\"/><name val=\"Times New Roman\"/></font></fonts>"
+                + "<fills count=\"2\"><fill><patternFill patternType=\"none\"/></fill>"
+                + "<fill><patternFill patternType=\"gray125\"/></fill></fills>"
+                + "<borders count=\"1\"><border><left/><right/><top/><bottom/><diagonal/></border></borders>"
+                + "<cellStyleXfs count=\"1\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\"/></cellStyleXfs>"
+                + "<cellXfs count=\"2\">"
+                + "<xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\" applyAlignment=\"1\">"
+                + "<alignment wrapText=\"1\"/></xf>"
+                + "<xf numFmtId=\"0\" fontId=\"1\" fillId=\"0\" borderId=\"0\" xfId=\"0\" applyFont=\"1\" applyAlignment=\"1\">"
+                + "<alignment wrapText=\"1\"/></xf></cellXfs>"
+                + "</styleSheet>");
+        zip.close();
+    }
+
+    private static String attribute(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+}
@@ -3,16 +3,14 @@
 
 package org.example;
 
+import org.example.metrics.ClientMetricsAggregator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import software.amazon.awssdk.core.exception.SdkException;
 import software.amazon.awssdk.core.exception.SdkServiceException;
-import software.amazon.awssdk.core.metrics.CoreMetric;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
 import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
-import software.amazon.awssdk.metrics.MetricPublisher;
-import software.amazon.awssdk.metrics.publishers.cloudwatch.CloudWatchMetricPublisher;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.cloudwatch.CloudWatchAsyncClient;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
@@ -28,24 +26,26 @@ public class GreetingsSender implements AutoCloseable {
     private final DynamoDbTable<Greeting> greetingsTable;
     private final DynamoDbClient dynamoDbClient;
     private final CloudWatchAsyncClient cloudWatchAsyncClient;
-    private final MetricPublisher metricPublisher;
+    private final ClientMetricsAggregator metricPublisher;
 
     public GreetingsSender(final Region region, Duration uploadFrequency, String namespace) {
         cloudWatchAsyncClient = CloudWatchAsyncClient.builder()
                 .region(region)
                 .build();
 
-        metricPublisher = CloudWatchMetricPublisher.builder()
+        // Aggregates latency percentiles, retries, throttles, connection acquire time and bytes for each
+        // DynamoDB operation, and uploads them once per uploadFrequency.
+        metricPublisher = ClientMetricsAggregator.builder()
                 .cloudWatchClient(cloudWatchAsyncClient)
                 .uploadFrequency(uploadFrequency)
                 .namespace(namespace)
-                .detailedMetrics(
-                        CoreMetric.API_CALL_DURATION)
                 .build();
 
         dynamoDbClient = DynamoDbClient.builder()
                 .region(region)
-                .overrideConfiguration(c -> c.addMetricPublisher(metricPublisher))
+                .overrideConfiguration(c -> c
+                        .addMetricPublisher(metricPublisher)
+                        .addExecutionInterceptor(metricPublisher.byteCounter()))
                 .build();
 
         DynamoDbEnhancedClient enhancedClient = DynamoDbEnhancedClient.builder()
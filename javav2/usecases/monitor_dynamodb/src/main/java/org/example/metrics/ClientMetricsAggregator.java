@@ -0,0 +1,483 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package org.example.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+import software.amazon.awssdk.core.interceptor.SdkExecutionAttribute;
+import software.amazon.awssdk.core.metrics.CoreMetric;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.http.HttpMetric;
+import software.amazon.awssdk.metrics.MetricCollection;
+import software.amazon.awssdk.metrics.MetricPublisher;
+import software.amazon.awssdk.metrics.SdkMetric;
+import software.amazon.awssdk.services.cloudwatch.CloudWatchAsyncClient;
+import software.amazon.awssdk.services.cloudwatch.model.Dimension;
+import software.amazon.awssdk.services.cloudwatch.model.MetricDatum;
+import software.amazon.awssdk.services.cloudwatch.model.StandardUnit;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * A {@link MetricPublisher} that aggregates the metrics of every API call in
+ * memory and uploads them in batches, so no request waits for, or triggers,
+ * a call to CloudWatch.
+ *
+ * For each service operation it keeps the following metrics:
+ * <ul>
+ *     <li>ApiCallDuration and ConcurrencyAcquireDuration as {@link StripedHistogram}s, in milliseconds</li>
+ *     <li>CallCount, ErrorCount, RetryCount and ThrottleCount</li>
+ *     <li>BytesIn and BytesOut, counted by the interceptor returned by {@link #byteCounter()}</li>
+ * </ul>
+ * The counters are {@link LongAdder}s and the histograms are striped, so
+ * recording takes no lock. At every upload interval the aggregator sends the
+ * histograms to CloudWatch as values and counts, up to 1000 datums for each
+ * PutMetricData call, so CloudWatch can report any percentile, such as p50,
+ * p99 and p99.9, for each operation. It can also write every interval as
+ * CloudWatch embedded metric format (EMF) lines with the p50, p99 and p99.9
+ * values already computed, for applications that ship their logs to
+ * CloudWatch Logs.
+ *
+ * Attach it to a client with
+ * {@code c.addMetricPublisher(aggregator).addExecutionInterceptor(aggregator.byteCounter())}.
+ */
+public class ClientMetricsAggregator implements MetricPublisher {
+    public static final String CALL_COUNT = "CallCount";
+    public static final String ERROR_COUNT = "ErrorCount";
+    public static final String THROTTLE_COUNT = "ThrottleCount";
+    public static final String BYTES_IN = "BytesIn";
+    public static final String BYTES_OUT = "BytesOut";
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClientMetricsAggregator.class);
+    private static final int MAX_DATUMS_PER_REQUEST = 1000;
+    private static final int MAX_VALUES_PER_DATUM = 150;
+    // PutMetricData requests must stay under 1 MB; this leaves room for the namespace and the HTTP request.
+    private static final int MAX_REQUEST_BYTES = 1_000_000 - 16_384;
+    private static final String MEMBER_PREFIX = "&MetricData.member.1000.";
+
+    private final CloudWatchAsyncClient cloudWatchClient;
+    private final Consumer<String> emfSink;
+    private final String namespace;
+    private final Map<String, OperationMetrics> operations = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private final List<CompletableFuture<?>> uploads = new ArrayList<>();
+
+    private ClientMetricsAggregator(Builder builder) {
+        this.cloudWatchClient = builder.cloudWatchClient;
+        this.emfSink = builder.emfSink;
+        this.namespace = builder.namespace;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "client-metrics-aggregator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long millis = builder.uploadFrequency.toMillis();
+        scheduler.scheduleAtFixedRate(this::flush, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    // Called by the SDK once for every API call, on the thread that completes it.
+    @Override
+    public void publish(MetricCollection apiCall) {
+        String service = first(apiCall, CoreMetric.SERVICE_ID).orElse("Unknown");
+        String operation = first(apiCall, CoreMetric.OPERATION_NAME).orElse("Unknown");
+        OperationMetrics metrics = metricsFor(service, operation);
+
+        metrics.calls.increment();
+        apiCall.metricValues(CoreMetric.API_CALL_DURATION)
+                .forEach(duration -> metrics.latency.record(duration.toNanos() / 1_000));
+        if (first(apiCall, CoreMetric.API_CALL_SUCCESSFUL).filter(success -> !success).isPresent()) {
+            metrics.errors.increment();
+        }
+        apiCall.metricValues(CoreMetric.RETRY_COUNT).forEach(metrics.retries::add);
+
+        for (MetricCollection attempt : apiCall.children()) {
+            if (attempt.metricValues(CoreMetric.ERROR_TYPE).contains("Throttling")) {
+                metrics.throttles.increment();
+            }
+            for (MetricCollection http : attempt.children()) {
+                http.metricValues(HttpMetric.CONCURRENCY_ACQUIRE_DURATION)
+                        .forEach(duration -> metrics.acquire.record(duration.toNanos() / 1_000));
+            }
+        }
+    }
+
+    /**
+     * Returns an interceptor that counts the bytes of every request and
+     * response by their Content-Length, which the SDK does not report as
+     * metrics. Responses without a Content-Length are not counted.
+     */
+    public ExecutionInterceptor byteCounter() {
+        return new ExecutionInterceptor() {
+            @Override
+            public void beforeTransmission(Context.BeforeTransmission context, ExecutionAttributes attributes) {
+                Optional<Long> length = contentLength(context.httpRequest().firstMatchingHeader("Content-Length"));
+                if (length.isEmpty()) {
+                    length = context.requestBody().map(RequestBody::contentLength);
+                }
+                if (length.isEmpty()) {
+                    length = context.asyncRequestBody().flatMap(AsyncRequestBody::contentLength);
+                }
+                length.ifPresent(bytes -> metricsFor(attributes).bytesOut.add(bytes));
+            }
+
+            @Override
+            public void afterTransmission(Context.AfterTransmission context, ExecutionAttributes attributes) {
+                contentLength(context.httpResponse().firstMatchingHeader("Content-Length"))
+                        .ifPresent(bytes -> metricsFor(attributes).bytesIn.add(bytes));
+            }
+        };
+    }
+
+    /**
+     * Uploads the metrics recorded since the last upload. The aggregator calls
+     * this at every upload interval and when it is closed.
+     */
+    public synchronized void flush() {
+        long timestamp = Instant.now().toEpochMilli();
+        List<MetricDatum> datums = new ArrayList<>();
+        operations.forEach((key, metrics) -> {
+            Interval interval = metrics.snapshotAndReset();
+            if (interval.calls == 0) {
+                return;
+            }
+            LOGGER.info("{} {}: calls={} errors={} retries={} throttles={} p50={}ms p99={}ms p99.9={}ms"
+                            + " acquire p99={}ms in={}B out={}B",
+                    metrics.service, metrics.operation, interval.calls, interval.errors, interval.retries,
+                    interval.throttles, millis(interval.latency.percentile(50)),
+                    millis(interval.latency.percentile(99)), millis(interval.latency.percentile(99.9)),
+                    millis(interval.acquire.percentile(99)), interval.bytesIn, interval.bytesOut);
+            if (cloudWatchClient != null) {
+                addDatums(datums, metrics, interval, Instant.ofEpochMilli(timestamp));
+            }
+            if (emfSink != null) {
+                emfSink.accept(toEmf(metrics, interval, timestamp));
+            }
+        });
+        if (!datums.isEmpty()) {
+            upload(datums);
+        }
+    }
+
+    // Called with the service ID, such as "DynamoDB", which is also the name the metrics are published under.
+    private OperationMetrics metricsFor(String service, String operation) {
+        OperationMetrics metrics = operations.computeIfAbsent(key(service, operation),
+                key -> new OperationMetrics(service, operation));
+        if (!service.equals(metrics.service)) {
+            metrics.service = service;
+        }
+        return metrics;
+    }
+
+    // Called with the service name, such as "DynamoDb", which is all an interceptor sees.
+    private OperationMetrics metricsFor(ExecutionAttributes attributes) {
+        String service = attributes.getAttribute(SdkExecutionAttribute.SERVICE_NAME);
+        String operation = attributes.getAttribute(SdkExecutionAttribute.OPERATION_NAME);
+        return operations.computeIfAbsent(key(service, operation), key -> new OperationMetrics(service, operation));
+    }
+
+    // The service ID and the service name differ only in case and spaces ("Bedrock Runtime" and "BedrockRuntime"),
+    // so both map to the same key.
+    private static String key(String service, String operation) {
+        return service.replace(" ", "").toLowerCase(Locale.ROOT) + '/' + operation;
+    }
+
+    private void addDatums(List<MetricDatum> datums, OperationMetrics metrics, Interval interval, Instant timestamp) {
+        List<Dimension> dimensions = List.of(
+                Dimension.builder().name(CoreMetric.SERVICE_ID.name()).value(metrics.service).build(),
+                Dimension.builder().name(CoreMetric.OPERATION_NAME.name()).value(metrics.operation).build());
+        Consumer<MetricDatum.Builder> common = datum -> datum.dimensions(dimensions).timestamp(timestamp);
+
+        addDistribution(datums, CoreMetric.API_CALL_DURATION.name(), interval.latency, common);
+        addDistribution(datums, HttpMetric.CONCURRENCY_ACQUIRE_DURATION.name(), interval.acquire, common);
+        addCount(datums, CALL_COUNT, interval.calls, StandardUnit.COUNT, common);
+        addCount(datums, ERROR_COUNT, interval.errors, StandardUnit.COUNT, common);
+        addCount(datums, CoreMetric.RETRY_COUNT.name(), interval.retries, StandardUnit.COUNT, common);
+        addCount(datums, THROTTLE_COUNT, interval.throttles, StandardUnit.COUNT, common);
+        addCount(datums, BYTES_IN, interval.bytesIn, StandardUnit.BYTES, common);
+        addCount(datums, BYTES_OUT, interval.bytesOut, StandardUnit.BYTES, common);
+    }
+
+    // A datum holds at most 150 distinct values, so a wide histogram is split across several datums.
+    private static void addDistribution(List<MetricDatum> datums, String name, StripedHistogram.Snapshot snapshot,
+                                        Consumer<MetricDatum.Builder> common) {
+        List<Double> values = new ArrayList<>();
+        List<Double> counts = new ArrayList<>();
+        snapshot.forEachBucket((value, count) -> {
+            values.add(millis(value));
+            counts.add((double) count);
+            if (values.size() == MAX_VALUES_PER_DATUM) {
+                datums.add(distributionDatum(name, values, counts, common));
+                values.clear();
+                counts.clear();
+            }
+        });
+        if (!values.isEmpty()) {
+            datums.add(distributionDatum(name, values, counts, common));
+        }
+    }
+
+    private static MetricDatum distributionDatum(String name, List<Double> values, List<Double> counts,
+                                                 Consumer<MetricDatum.Builder> common) {
+        return MetricDatum.builder()
+                .metricName(name)
+                .unit(StandardUnit.MILLISECONDS)
+                .values(List.copyOf(values))
+                .counts(List.copyOf(counts))
+                .applyMutation(common)
+                .build();
+    }
+
+    private static void addCount(List<MetricDatum> datums, String name, long value, StandardUnit unit,
+                                 Consumer<MetricDatum.Builder> common) {
+        datums.add(MetricDatum.builder()
+                .metricName(name)
+                .unit(unit)
+                .value((double) value)
+                .applyMutation(common)
+                .build());
+    }
+
+    // Sends the datums in as few PutMetricData calls as the request limits allow.
+    private void upload(List<MetricDatum> datums) {
+        List<MetricDatum> batch = new ArrayList<>();
+        int batchBytes = 0;
+        for (MetricDatum datum : datums) {
+            int datumBytes = encodedBytes(datum);
+            if (batch.size() == MAX_DATUMS_PER_REQUEST || batchBytes + datumBytes > MAX_REQUEST_BYTES) {
+                send(batch);
+                batch = new ArrayList<>();
+                batchBytes = 0;
+            }
+            batch.add(datum);
+            batchBytes += datumBytes;
+        }
+        send(batch);
+    }
+
+    /**
+     * Returns the size of the datum in a PutMetricData request with the query
+     * protocol, the larger of the encodings CloudWatch accepts, where every
+     * field is a form-encoded MetricData.member.N.Field=value pair. N is
+     * counted as four digits, the most a request can have.
+     */
+    private static int encodedBytes(MetricDatum datum) {
+        int bytes = field("MetricName", datum.metricName()) + field("Unit", datum.unitAsString())
+                + field("Timestamp", "2024-01-01T00:00:00.000Z");
+        for (int i = 0; i < datum.dimensions().size(); i++) {
+            Dimension dimension = datum.dimensions().get(i);
+            bytes += field("Dimensions.member." + (i + 1) + ".Name", dimension.name())
+                    + field("Dimensions.member." + (i + 1) + ".Value", dimension.value());
+        }
+        if (datum.value() != null) {
+            bytes += field("Value", Double.toString(datum.value()));
+        }
+        for (int i = 0; i < datum.values().size(); i++) {
+            bytes += field("Values.member." + (i + 1), Double.toString(datum.values().get(i)))
+                    + field("Counts.member." + (i + 1), Double.toString(datum.counts().get(i)));
+        }
+        return bytes;
+    }
+
+    private static int field(String name, String value) {
+        int bytes = MEMBER_PREFIX.length() + name.length() + 1;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            boolean unreserved = (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9')
+                    || b == '-' || b == '_' || b == '.' || b == '~';
+            bytes += unreserved ? 1 : 3;
+        }
+        return bytes;
+    }
+
+    private void send(List<MetricDatum> batch) {
+        CompletableFuture<?> upload = cloudWatchClient.putMetricData(r -> r.namespace(namespace).metricData(batch))
+                .whenComplete((response, error) -> {
+                    if (error != null) {
+                        LOGGER.warn("Failed to upload {} metric datums to CloudWatch.", batch.size(), error);
+                    } else {
+                        LOGGER.debug("Uploaded {} metric datums to CloudWatch.", batch.size());
+                    }
+                });
+        uploads.removeIf(CompletableFuture::isDone);
+        uploads.add(upload);
+    }
+
+    private String toEmf(OperationMetrics metrics, Interval interval, long timestamp) {
+        String[][] values = {
+            {"ApiCallDurationP50", "Milliseconds", Double.toString(millis(interval.latency.percentile(50)))},
+            {"ApiCallDurationP99", "Milliseconds", Double.toString(millis(interval.latency.percentile(99)))},
+            {"ApiCallDurationP999", "Milliseconds", Double.toString(millis(interval.latency.percentile(99.9)))},
+            {"ApiCallDurationMax", "Milliseconds", Double.toString(millis(interval.latency.max()))},
+            {"ConcurrencyAcquireDurationP99", "Milliseconds", Double.toString(millis(interval.acquire.percentile(99)))},
+            {CALL_COUNT, "Count", Long.toString(interval.calls)},
+            {ERROR_COUNT, "Count", Long.toString(interval.errors)},
+            {CoreMetric.RETRY_COUNT.name(), "Count", Long.toString(interval.retries)},
+            {THROTTLE_COUNT, "Count", Long.toString(interval.throttles)},
+            {BYTES_IN, "Bytes", Long.toString(interval.bytesIn)},
+            {BYTES_OUT, "Bytes", Long.toString(interval.bytesOut)},
+        };
+        StringBuilder definitions = new StringBuilder();
+        StringBuilder fields = new StringBuilder();
+        for (String[] value : values) {
+            definitions.append(definitions.length() == 0 ? "" : ",")
+                    .append("{\"Name\":\"").append(value[0]).append("\",\"Unit\":\"").append(value[1]).append("\"}");
+            fields.append(",\"").append(value[0]).append("\":").append(value[2]);
+        }
+        return "{\"_aws\":{\"Timestamp\":" + timestamp + ",\"CloudWatchMetrics\":[{\"Namespace\":" + json(namespace)
+                + ",\"Dimensions\":[[\"" + CoreMetric.SERVICE_ID.name() + "\",\"" + CoreMetric.OPERATION_NAME.name()
+                + "\"]],\"Metrics\":[" + definitions + "]}]},\"" + CoreMetric.SERVICE_ID.name() + "\":"
+                + json(metrics.service) + ",\"" + CoreMetric.OPERATION_NAME.name() + "\":" + json(metrics.operation)
+                + fields + "}";
+    }
+
+    // Uploads what is left and waits up to ten seconds for the uploads to finish.
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        flush();
+        CompletableFuture<?>[] pending;
+        synchronized (this) {
+            pending = uploads.toArray(new CompletableFuture<?>[0]);
+        }
+        CompletableFuture.allOf(pending)
+                .orTimeout(10, TimeUnit.SECONDS)
+                .exceptionally(error -> null)
+                .join();
+    }
+
+    private static <T> Optional<T> first(MetricCollection collection, SdkMetric<T> metric) {
+        return collection.metricValues(metric).stream().findFirst();
+    }
+
+    private static Optional<Long> contentLength(Optional<String> header) {
+        return header.flatMap(value -> {
+            try {
+                return Optional.of(Long.parseLong(value.trim()));
+            } catch (NumberFormatException e) {
+                return Optional.empty();
+            }
+        });
+    }
+
+    private static double millis(long micros) {
+        return micros / 1_000.0;
+    }
+
+    private static String json(String value) {
+        StringBuilder out = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20) {
+                out.append(String.format("\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+        return out.append('"').toString();
+    }
+
+    private static final class OperationMetrics {
+        private volatile String service;
+        private final String operation;
+        private final StripedHistogram latency = new StripedHistogram();
+        private final StripedHistogram acquire = new StripedHistogram();
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder retries = new LongAdder();
+        private final LongAdder throttles = new LongAdder();
+        private final LongAdder bytesIn = new LongAdder();
+        private final LongAdder bytesOut = new LongAdder();
+
+        private OperationMetrics(String service, String operation) {
+            this.service = service;
+            this.operation = operation;
+        }
+
+        private Interval snapshotAndReset() {
+            return new Interval(latency.snapshotAndReset(), acquire.snapshotAndReset(), calls.sumThenReset(),
+                    errors.sumThenReset(), retries.sumThenReset(), throttles.sumThenReset(),
+                    bytesIn.sumThenReset(), bytesOut.sumThenReset());
+        }
+    }
+
+    private static final class Interval {
+        private final StripedHistogram.Snapshot latency;
+        private final StripedHistogram.Snapshot acquire;
+        private final long calls;
+        private final long errors;
+        private final long retries;
+        private final long throttles;
+        private final long bytesIn;
+        private final long bytesOut;
+
+        private Interval(StripedHistogram.Snapshot latency, StripedHistogram.Snapshot acquire, long calls,
+                         long errors, long retries, long throttles, long bytesIn, long bytesOut) {
+            this.latency = latency;
+            this.acquire = acquire;
+            this.calls = calls;
+            this.errors = errors;
+            this.retries = retries;
+            this.throttles = throttles;
+            this.bytesIn = bytesIn;
+            this.bytesOut = bytesOut;
+        }
+    }
+
+    public static final class Builder {
+        private CloudWatchAsyncClient cloudWatchClient;
+        private Consumer<String> emfSink;
+        private String namespace = "AwsSdk/JavaSdk2";
+        private Duration uploadFrequency = Duration.ofMinutes(1);
+
+        private Builder() {
+        }
+
+        // The client that uploads the metrics with PutMetricData. Leave it out to only write EMF lines.
+        public Builder cloudWatchClient(CloudWatchAsyncClient cloudWatchClient) {
+            this.cloudWatchClient = cloudWatchClient;
+            return this;
+        }
+
+        // Receives one embedded metric format JSON line for each operation at every upload interval.
+        public Builder emfSink(Consumer<String> emfSink) {
+            this.emfSink = emfSink;
+            return this;
+        }
+
+        public Builder namespace(String namespace) {
+            this.namespace = namespace;
+            return this;
+        }
+
+        public Builder uploadFrequency(Duration uploadFrequency) {
+            this.uploadFrequency = uploadFrequency;
+            return this;
+        }
+
+        public ClientMetricsAggregator build() {
+            return new ClientMetricsAggregator(this);
+        }
+    }
+}
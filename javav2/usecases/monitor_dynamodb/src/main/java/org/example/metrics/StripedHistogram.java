@@ -0,0 +1,132 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package org.example.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of non-negative values, such as latencies in
+ * microseconds, with the bucket layout of an HDR histogram. Each power of two
+ * is split into 32 linear sub-buckets, so a value is reported within about 3%
+ * of what was recorded, from 0 up to 2^40.
+ *
+ * Threads record into one of several stripes of counters picked by thread ID,
+ * so busy threads rarely update the same cache line. {@link #snapshotAndReset()}
+ * swaps every counter to zero, so a value recorded during a snapshot is counted
+ * in either this interval or the next one, never in both.
+ */
+public class StripedHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final long MAX_VALUE = (1L << 40) - 1;
+    private static final int BUCKETS = bucketOf(MAX_VALUE) + 1;
+
+    private final AtomicLongArray[] stripes;
+    private final int mask;
+
+    public StripedHistogram() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        int count = Math.min(16, Integer.highestOneBit(Math.max(1, processors - 1)) << 1);
+        stripes = new AtomicLongArray[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new AtomicLongArray(BUCKETS);
+        }
+        mask = count - 1;
+    }
+
+    // Values below zero are recorded as zero and values above 2^40 as 2^40.
+    public void record(long value) {
+        int stripe = (int) Thread.currentThread().getId() & mask;
+        stripes[stripe].incrementAndGet(bucketOf(Math.min(MAX_VALUE, Math.max(0, value))));
+    }
+
+    // Returns the values recorded since the last snapshot and starts a new interval.
+    public Snapshot snapshotAndReset() {
+        long[] counts = new long[BUCKETS];
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < BUCKETS; i++) {
+                // Reading first avoids writing to counters that are already zero.
+                if (stripe.get(i) != 0) {
+                    counts[i] += stripe.getAndSet(i, 0);
+                }
+            }
+        }
+        return new Snapshot(counts);
+    }
+
+    // Values below 64 get a bucket each. Above that, the top six bits of the value pick the bucket.
+    static int bucketOf(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return SUB_BUCKETS * shift + (int) (value >>> shift);
+    }
+
+    // Returns the highest value that is recorded in the bucket.
+    static long highestValueOf(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * The counts of one interval. Values are reported as the highest value of
+     * their bucket, so percentiles are never lower than the recorded values.
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long total;
+
+        Snapshot(long[] counts) {
+            this.counts = counts;
+            long sum = 0;
+            for (long count : counts) {
+                sum += count;
+            }
+            this.total = sum;
+        }
+
+        public long count() {
+            return total;
+        }
+
+        // Returns the value at the given percentile (0-100), or 0 if nothing was recorded.
+        public long percentile(double percentile) {
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return highestValueOf(i);
+                }
+            }
+            return MAX_VALUE;
+        }
+
+        public long max() {
+            return percentile(100);
+        }
+
+        // Calls the consumer with the value and count of every bucket that is not empty, in ascending order.
+        public void forEachBucket(BucketConsumer consumer) {
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] != 0) {
+                    consumer.accept(highestValueOf(i), counts[i]);
+                }
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface BucketConsumer {
+        void accept(long value, long count);
+    }
+}
@@ -0,0 +1,254 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package org.example.metrics;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+import software.amazon.awssdk.core.interceptor.SdkExecutionAttribute;
+import software.amazon.awssdk.core.metrics.CoreMetric;
+import software.amazon.awssdk.http.HttpMetric;
+import software.amazon.awssdk.http.SdkHttpMethod;
+import software.amazon.awssdk.http.SdkHttpRequest;
+import software.amazon.awssdk.http.SdkHttpResponse;
+import software.amazon.awssdk.metrics.MetricCollection;
+import software.amazon.awssdk.metrics.MetricCollector;
+import software.amazon.awssdk.services.cloudwatch.CloudWatchAsyncClient;
+import software.amazon.awssdk.services.cloudwatch.model.Dimension;
+import software.amazon.awssdk.services.cloudwatch.model.MetricDatum;
+import software.amazon.awssdk.services.cloudwatch.model.PutMetricDataRequest;
+import software.amazon.awssdk.services.cloudwatch.model.PutMetricDataResponse;
+
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+class ClientMetricsAggregatorTest {
+
+    @Test
+    void histogramPercentilesAreWithinThreePercent() {
+        StripedHistogram histogram = new StripedHistogram();
+        for (long value = 1; value <= 1_000_000; value++) {
+            histogram.record(value);
+        }
+        StripedHistogram.Snapshot snapshot = histogram.snapshotAndReset();
+
+        Assertions.assertEquals(1_000_000, snapshot.count());
+        for (double percentile : new double[] {50, 99, 99.9, 100}) {
+            double expected = 1_000_000 * percentile / 100;
+            double actual = snapshot.percentile(percentile);
+            Assertions.assertTrue(actual >= expected && actual <= expected * 1.032,
+                    "p" + percentile + " was " + actual + ", expected about " + expected);
+        }
+        Assertions.assertEquals(0, histogram.snapshotAndReset().count());
+    }
+
+    @Test
+    void aggregatesConcurrentCallsPerOperation() throws InterruptedException {
+        List<String> lines = new ArrayList<>();
+        ClientMetricsAggregator aggregator = ClientMetricsAggregator.builder()
+                .namespace("Test")
+                .uploadFrequency(Duration.ofHours(1))
+                .emfSink(lines::add)
+                .build();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int thread = 0; thread < 8; thread++) {
+            executor.execute(() -> {
+                for (int i = 1; i <= 1000; i++) {
+                    aggregator.publish(apiCall("GetItem", i, i % 100 == 0));
+                }
+            });
+        }
+        executor.shutdown();
+        Assertions.assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        aggregator.publish(apiCall("PutItem", 5, false));
+        aggregator.flush();
+        aggregator.close();
+
+        Assertions.assertEquals(2, lines.size(), "One EMF line for each operation");
+        String getItem = lines.stream().filter(line -> line.contains("\"GetItem\"")).findFirst().orElseThrow();
+        Assertions.assertEquals(8000, value(getItem, "CallCount"));
+        Assertions.assertEquals(80, value(getItem, "ThrottleCount"));
+        Assertions.assertEquals(80, value(getItem, "RetryCount"));
+        Assertions.assertEquals(500, value(getItem, "ApiCallDurationP50"), 500 * 0.032);
+        Assertions.assertEquals(990, value(getItem, "ApiCallDurationP99"), 990 * 0.032);
+        Assertions.assertEquals(999, value(getItem, "ApiCallDurationP999"), 999 * 0.032);
+        Assertions.assertEquals(2, value(getItem, "ConcurrencyAcquireDurationP99"), 2 * 0.032);
+    }
+
+    @Test
+    void publishesBytesUnderTheServiceIdOfTheCall() {
+        List<String> lines = new ArrayList<>();
+        ClientMetricsAggregator aggregator = ClientMetricsAggregator.builder()
+                .namespace("Test")
+                .uploadFrequency(Duration.ofHours(1))
+                .emfSink(lines::add)
+                .build();
+        ExecutionInterceptor byteCounter = aggregator.byteCounter();
+        // Interceptors see the service name, DynamoDb, while metrics carry the service ID, DynamoDB.
+        ExecutionAttributes attributes = new ExecutionAttributes()
+                .putAttribute(SdkExecutionAttribute.SERVICE_NAME, "DynamoDb")
+                .putAttribute(SdkExecutionAttribute.OPERATION_NAME, "GetItem");
+        SdkHttpRequest request = SdkHttpRequest.builder()
+                .method(SdkHttpMethod.POST)
+                .uri(URI.create("https://dynamodb.us-east-1.amazonaws.com"))
+                .putHeader("Content-Length", "120")
+                .build();
+        SdkHttpResponse response = SdkHttpResponse.builder()
+                .statusCode(200)
+                .putHeader("Content-Length", "300")
+                .build();
+
+        for (int i = 0; i < 2; i++) {
+            byteCounter.beforeTransmission(context(Context.BeforeTransmission.class, request, response), attributes);
+            byteCounter.afterTransmission(context(Context.AfterTransmission.class, request, response), attributes);
+            aggregator.publish(apiCall("GetItem", 5, false));
+        }
+        aggregator.close();
+
+        Assertions.assertEquals(1, lines.size(), "One EMF line for the operation");
+        Assertions.assertTrue(lines.get(0).contains("\"ServiceId\":\"DynamoDB\""), lines.get(0));
+        Assertions.assertEquals(2, value(lines.get(0), "CallCount"));
+        Assertions.assertEquals(600, value(lines.get(0), "BytesIn"));
+        Assertions.assertEquals(240, value(lines.get(0), "BytesOut"));
+    }
+
+    @Test
+    void splitsUploadsToStayUnderTheRequestSizeLimit() {
+        List<PutMetricDataRequest> requests = new CopyOnWriteArrayList<>();
+        ClientMetricsAggregator aggregator = ClientMetricsAggregator.builder()
+                .cloudWatchClient(new CloudWatchAsyncClient() {
+                    @Override
+                    public CompletableFuture<PutMetricDataResponse> putMetricData(PutMetricDataRequest request) {
+                        requests.add(request);
+                        return CompletableFuture.completedFuture(PutMetricDataResponse.builder().build());
+                    }
+
+                    @Override
+                    public String serviceName() {
+                        return SERVICE_NAME;
+                    }
+
+                    @Override
+                    public void close() {
+                    }
+                })
+                .namespace("Test")
+                .uploadFrequency(Duration.ofHours(1))
+                .build();
+        // Durations from 1 microsecond to about 20 minutes fill hundreds of histogram buckets for each operation.
+        for (int operation = 0; operation < 50; operation++) {
+            for (double micros = 1; micros < 1.2e9; micros *= 1.02) {
+                aggregator.publish(apiCall("Operation" + operation, Duration.ofNanos((long) (micros * 1000)), false));
+            }
+        }
+        aggregator.close();
+
+        Assertions.assertTrue(requests.size() > 1);
+        long latencyCounts = 0;
+        for (PutMetricDataRequest request : requests) {
+            Assertions.assertTrue(request.metricData().size() <= 1000);
+            int bytes = formEncodedBytes(request);
+            Assertions.assertTrue(bytes < 1_000_000, "A request of " + bytes + " bytes");
+            latencyCounts += request.metricData().stream()
+                    .filter(datum -> datum.metricName().equals(CoreMetric.API_CALL_DURATION.name()))
+                    .flatMap(datum -> datum.counts().stream())
+                    .mapToLong(Double::longValue)
+                    .sum();
+        }
+        long calls = requests.stream()
+                .flatMap(request -> request.metricData().stream())
+                .filter(datum -> datum.metricName().equals(ClientMetricsAggregator.CALL_COUNT))
+                .mapToLong(datum -> datum.value().longValue())
+                .sum();
+        Assertions.assertEquals(calls, latencyCounts, "Every latency is uploaded");
+    }
+
+    // Form-encodes the request with the query protocol, as the SDK does.
+    private static int formEncodedBytes(PutMetricDataRequest request) {
+        StringBuilder body = new StringBuilder("Action=PutMetricData&Version=2010-08-01&Namespace=")
+                .append(encode(request.namespace()));
+        for (int i = 0; i < request.metricData().size(); i++) {
+            MetricDatum datum = request.metricData().get(i);
+            String prefix = "&MetricData.member." + (i + 1) + ".";
+            body.append(prefix).append("MetricName=").append(encode(datum.metricName()))
+                    .append(prefix).append("Unit=").append(encode(datum.unitAsString()))
+                    .append(prefix).append("Timestamp=").append(encode(datum.timestamp().toString()));
+            for (int d = 0; d < datum.dimensions().size(); d++) {
+                Dimension dimension = datum.dimensions().get(d);
+                body.append(prefix).append("Dimensions.member.").append(d + 1).append(".Name=")
+                        .append(encode(dimension.name()))
+                        .append(prefix).append("Dimensions.member.").append(d + 1).append(".Value=")
+                        .append(encode(dimension.value()));
+            }
+            if (datum.value() != null) {
+                body.append(prefix).append("Value=").append(datum.value());
+            }
+            for (int v = 0; v < datum.values().size(); v++) {
+                body.append(prefix).append("Values.member.").append(v + 1).append('=').append(datum.values().get(v))
+                        .append(prefix).append("Counts.member.").append(v + 1).append('=').append(datum.counts().get(v));
+            }
+        }
+        return body.length();
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    // Builds an interceptor context that only has the HTTP request and response.
+    private static <T> T context(Class<T> type, SdkHttpRequest request, SdkHttpResponse response) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "httpRequest":
+                    return request;
+                case "httpResponse":
+                    return response;
+                default:
+                    return method.getReturnType() == Optional.class ? Optional.empty() : null;
+            }
+        }));
+    }
+
+    private static double value(String emf, String name) {
+        Matcher matcher = Pattern.compile("\"" + name + "\":([0-9.]+)").matcher(emf);
+        Assertions.assertTrue(matcher.find(), name + " is missing from " + emf);
+        return Double.parseDouble(matcher.group(1));
+    }
+
+    // Builds the metrics the SDK reports for one call that took the given number of milliseconds.
+    private static MetricCollection apiCall(String operation, int millis, boolean throttled) {
+        return apiCall(operation, Duration.ofMillis(millis), throttled);
+    }
+
+    private static MetricCollection apiCall(String operation, Duration duration, boolean throttled) {
+        MetricCollector call = MetricCollector.create("ApiCall");
+        call.reportMetric(CoreMetric.SERVICE_ID, "DynamoDB");
+        call.reportMetric(CoreMetric.OPERATION_NAME, operation);
+        call.reportMetric(CoreMetric.API_CALL_DURATION, duration);
+        call.reportMetric(CoreMetric.API_CALL_SUCCESSFUL, true);
+        call.reportMetric(CoreMetric.RETRY_COUNT, throttled ? 1 : 0);
+        if (throttled) {
+            call.createChild("ApiCallAttempt").reportMetric(CoreMetric.ERROR_TYPE, "Throttling");
+        }
+        MetricCollector attempt = call.createChild("ApiCallAttempt");
+        attempt.createChild("HttpClient").reportMetric(HttpMetric.CONCURRENCY_ACQUIRE_DURATION, Duration.ofMillis(2));
+        return call.collect();
+    }
+}
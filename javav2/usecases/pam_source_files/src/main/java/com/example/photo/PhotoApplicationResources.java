@@ -21,6 +21,10 @@ public class PhotoApplicationResources {
 
     public static final String TOPIC_ARN = System.getenv("NOTIFICATION_TOPIC");
 
+    // The maximum number of Amazon Rekognition calls that one S3 event runs at the same time.
+    public static final int LABEL_DETECTION_CONCURRENCY = Integer.parseInt(
+            System.getenv().getOrDefault("LABEL_DETECTION_CONCURRENCY", "8"));
+
     public static final Map<String, String> CORS_HEADER_MAP = Map.of(
             "Access-Control-Allow-Origin", "*");
     public static final Gson gson = new Gson();
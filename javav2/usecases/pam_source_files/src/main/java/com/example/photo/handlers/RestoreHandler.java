@@ -6,6 +6,7 @@ package com.example.photo.handlers;
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.example.photo.endpoints.DownloadEndpoint;
+import com.example.photo.services.ClientRegistry;
 import com.example.photo.services.DynamoDBService;
 import com.example.photo.services.S3Service;
 import com.example.photo.services.SnsService;
@@ -35,6 +36,7 @@ public class RestoreHandler implements RequestHandler<Map<String, Object>, Strin
                     new SnsService());
             String url = downloadEndpoint.download(labels);
             context.getLogger().log("Labels archived to URL " + url);
+            context.getLogger().log("Connection reuse " + ClientRegistry.metrics().values());
 
         } catch (JSONException e) {
             context.getLogger().log(e.getMessage());
@@ -6,30 +6,84 @@ package com.example.photo.handlers;
 import com.amazonaws.services.lambda.runtime.events.S3Event;
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.models.s3.S3EventNotification.S3EventNotificationRecord;
 import com.example.photo.LabelCount;
 import com.example.photo.PhotoApplicationResources;
 import com.example.photo.services.AnalyzePhotos;
+import com.example.photo.services.ClientRegistry;
 import com.example.photo.services.DynamoDBService;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
-// Tags the object after it's uploaded into the storage bucket.
+// Tags the objects after they're uploaded into the storage bucket.
+//
+// Every record of the event is analyzed, with up to LABEL_DETECTION_CONCURRENCY
+// Amazon Rekognition calls running at once, and the labels of the photos that were
+// analyzed are written to DynamoDB. S3 invokes the function asynchronously, so there
+// is no partial batch response: if any key fails, the handler throws, and Lambda
+// retries the whole event or sends it to the dead-letter queue. Writing the labels
+// is idempotent, so the keys that succeeded are safe to process again.
 public class S3Handler implements RequestHandler<S3Event, String> {
     @Override
     public String handleRequest(S3Event event, Context context) {
-        // Get the Amazon Simple Storage Service (Amazon S3) bucket and object key from
-        // the Amazon S3 event.
-        String bucketName = event.getRecords().get(0).getS3().getBucket().getName();
-        String objectKey = event.getRecords().get(0).getS3().getObject().getKey();
+        List<S3EventNotificationRecord> records = event.getRecords();
+        if (records == null || records.isEmpty()) {
+            return "OK";
+        }
 
-        // Log the S3 bucket and object key in the log file.
-        context.getLogger().log("S3 object name: s3://" + bucketName + "/" + objectKey);
         AnalyzePhotos photos = new AnalyzePhotos();
         DynamoDBService dbService = new DynamoDBService();
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(PhotoApplicationResources.LABEL_DETECTION_CONCURRENCY, records.size())));
+        Map<String, Future<List<LabelCount>>> detections = new LinkedHashMap<>();
+        List<String> failedKeys = new ArrayList<>();
 
-        // Tag the file.
-        List<LabelCount> labels = photos.detectLabels(PhotoApplicationResources.STORAGE_BUCKET, objectKey);
-        dbService.putRecord(labels);
-        context.getLogger().log("Tagged image");
+        try {
+            for (S3EventNotificationRecord record : records) {
+                // Get the Amazon Simple Storage Service (Amazon S3) bucket and object key from
+                // the Amazon S3 event.
+                String bucketName = record.getS3().getBucket().getName();
+                String objectKey = record.getS3().getObject().getKey();
+
+                // Log the S3 bucket and object key in the log file.
+                context.getLogger().log("S3 object name: s3://" + bucketName + "/" + objectKey);
+                detections.put(objectKey, executor.submit(
+                        () -> photos.detectLabels(PhotoApplicationResources.STORAGE_BUCKET, objectKey)));
+            }
+
+            List<LabelCount> labels = new ArrayList<>();
+            for (Map.Entry<String, Future<List<LabelCount>>> detection : detections.entrySet()) {
+                try {
+                    labels.addAll(detection.getValue().get());
+                } catch (ExecutionException e) {
+                    context.getLogger().log("Failed to detect labels for " + detection.getKey() + ": "
+                            + e.getCause().getMessage());
+                    failedKeys.add(detection.getKey());
+                }
+            }
+
+            // Tag the files.
+            dbService.putRecord(labels);
+            context.getLogger().log("Tagged " + (detections.size() - failedKeys.size()) + " images");
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while tagging " + detections.keySet(), e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        context.getLogger().log("Connection reuse " + ClientRegistry.metrics().values());
+        if (!failedKeys.isEmpty()) {
+            throw new IllegalStateException("Failed to tag " + failedKeys.size() + " of " + detections.size()
+                    + " images: " + failedKeys);
+        }
         return "OK";
     }
 }
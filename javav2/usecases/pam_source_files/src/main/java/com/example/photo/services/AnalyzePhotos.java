@@ -3,7 +3,6 @@
 
 package com.example.photo.services;
 
-import com.example.photo.PhotoApplicationResources;
 import com.example.photo.LabelCount;
 import software.amazon.awssdk.services.rekognition.RekognitionClient;
 import software.amazon.awssdk.services.rekognition.model.Image;
@@ -17,9 +16,7 @@ import software.amazon.awssdk.services.rekognition.model.S3Object;
 
 public class AnalyzePhotos {
     public ArrayList<LabelCount> detectLabels(String bucketName, String key) {
-        RekognitionClient rekClient = RekognitionClient.builder()
-                .region(PhotoApplicationResources.REGION)
-                .build();
+        RekognitionClient rekClient = ClientRegistry.rekognition();
         try {
             S3Object s3Object = S3Object.builder()
                     .bucket(bucketName)
@@ -49,9 +46,8 @@ public class AnalyzePhotos {
             return list;
 
         } catch (RekognitionException e) {
-            System.out.println(e.getMessage());
-            System.exit(1);
+            System.err.println(e.getMessage());
+            throw e;
         }
-        return null;
     }
 }
\ No newline at end of file
@@ -0,0 +1,197 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.photo.services;
+
+import com.example.photo.PhotoApplicationResources;
+import software.amazon.awssdk.auth.credentials.EnvironmentVariableCredentialsProvider;
+import software.amazon.awssdk.http.HttpMetric;
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.metrics.MetricCollection;
+import software.amazon.awssdk.metrics.MetricPublisher;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.rekognition.RekognitionClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.services.sns.SnsClient;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Holds one lazily created, thread-safe SDK client per service for the whole
+ * Lambda execution environment.
+ *
+ * Building a client creates a new HTTP connection pool, so a client per call
+ * pays for a TCP connection and a TLS handshake on every request. The clients
+ * here are created on first use and reused by every service class, which lets
+ * warm invocations reuse pooled connections.
+ *
+ * The pool is tuned with these environment variables:
+ * HTTP_MAX_CONNECTIONS, HTTP_CONNECTION_TIMEOUT_MS, HTTP_SOCKET_TIMEOUT_MS,
+ * HTTP_CONNECTION_MAX_IDLE_MS and HTTP_TCP_KEEP_ALIVE.
+ */
+public final class ClientRegistry {
+    private static final Map<String, ConnectionReuseMetrics> METRICS = new ConcurrentHashMap<>();
+
+    private ClientRegistry() {
+    }
+
+    // Each holder class is initialized by the JVM the first time its client is
+    // requested, which makes creation lazy and thread-safe without locking.
+    private static class S3Holder {
+        static final S3Client CLIENT = S3Client.builder()
+                .region(PhotoApplicationResources.REGION)
+                .httpClient(httpClient())
+                .overrideConfiguration(c -> c.addMetricPublisher(metricsFor("S3")))
+                .build();
+    }
+
+    private static class PresignerHolder {
+        static final S3Presigner PRESIGNER = S3Presigner.builder()
+                .region(PhotoApplicationResources.REGION)
+                .build();
+    }
+
+    private static class DynamoDbHolder {
+        static final DynamoDbClient CLIENT = DynamoDbClient.builder()
+                .region(PhotoApplicationResources.REGION)
+                .httpClient(httpClient())
+                .overrideConfiguration(c -> c.addMetricPublisher(metricsFor("DynamoDB")))
+                .build();
+    }
+
+    private static class SnsHolder {
+        static final SnsClient CLIENT = SnsClient.builder()
+                .credentialsProvider(EnvironmentVariableCredentialsProvider.create())
+                .region(PhotoApplicationResources.REGION)
+                .httpClient(httpClient())
+                .overrideConfiguration(c -> c.addMetricPublisher(metricsFor("SNS")))
+                .build();
+    }
+
+    private static class RekognitionHolder {
+        static final RekognitionClient CLIENT = RekognitionClient.builder()
+                .region(PhotoApplicationResources.REGION)
+                .httpClient(httpClient())
+                .overrideConfiguration(c -> c.addMetricPublisher(metricsFor("Rekognition")))
+                .build();
+    }
+
+    public static S3Client s3() {
+        return S3Holder.CLIENT;
+    }
+
+    public static S3Presigner s3Presigner() {
+        return PresignerHolder.PRESIGNER;
+    }
+
+    public static DynamoDbClient dynamoDb() {
+        return DynamoDbHolder.CLIENT;
+    }
+
+    public static SnsClient sns() {
+        return SnsHolder.CLIENT;
+    }
+
+    public static RekognitionClient rekognition() {
+        return RekognitionHolder.CLIENT;
+    }
+
+    // Returns the connection reuse metrics of every client created so far, keyed by service name.
+    public static Map<String, ConnectionReuseMetrics> metrics() {
+        return Map.copyOf(METRICS);
+    }
+
+    private static ConnectionReuseMetrics metricsFor(String service) {
+        return METRICS.computeIfAbsent(service, ConnectionReuseMetrics::new);
+    }
+
+    // Each client gets its own pool so that one busy service cannot starve the others.
+    private static SdkHttpClient httpClient() {
+        return ApacheHttpClient.builder()
+                .maxConnections(intEnv("HTTP_MAX_CONNECTIONS", 50))
+                .connectionTimeout(Duration.ofMillis(intEnv("HTTP_CONNECTION_TIMEOUT_MS", 2_000)))
+                .socketTimeout(Duration.ofMillis(intEnv("HTTP_SOCKET_TIMEOUT_MS", 30_000)))
+                .connectionMaxIdleTime(Duration.ofMillis(intEnv("HTTP_CONNECTION_MAX_IDLE_MS", 60_000)))
+                .tcpKeepAlive(Boolean.parseBoolean(System.getenv().getOrDefault("HTTP_TCP_KEEP_ALIVE", "true")))
+                .build();
+    }
+
+    private static int intEnv(String name, int defaultValue) {
+        String value = System.getenv(name);
+        return (value == null || value.isBlank()) ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    /**
+     * Estimates how often a client reuses a pooled connection.
+     *
+     * The Apache HTTP client reports the leased and available connections of
+     * its pool after a request attempt has leased its connection, so the
+     * available count alone does not show whether the attempt found an idle
+     * one. Their sum is the size of the pool, which only grows when an attempt
+     * has to open a new connection. An attempt that leaves the pool no larger
+     * than the attempt before it is counted as a reuse.
+     */
+    public static class ConnectionReuseMetrics implements MetricPublisher {
+        private final String service;
+        private final LongAdder attempts = new LongAdder();
+        private final LongAdder reused = new LongAdder();
+        private final AtomicInteger poolSize = new AtomicInteger();
+
+        ConnectionReuseMetrics(String service) {
+            this.service = service;
+        }
+
+        @Override
+        public void publish(MetricCollection metricCollection) {
+            record(metricCollection);
+        }
+
+        private void record(MetricCollection collection) {
+            List<Integer> leased = collection.metricValues(HttpMetric.LEASED_CONCURRENCY);
+            List<Integer> available = collection.metricValues(HttpMetric.AVAILABLE_CONCURRENCY);
+            if (!leased.isEmpty() && !available.isEmpty()) {
+                attempts.increment();
+                int size = leased.get(0) + available.get(0);
+                if (size <= poolSize.getAndSet(size)) {
+                    reused.increment();
+                }
+            }
+            for (MetricCollection child : collection.children()) {
+                record(child);
+            }
+        }
+
+        public String getService() {
+            return service;
+        }
+
+        public long getAttempts() {
+            return attempts.sum();
+        }
+
+        public long getReused() {
+            return reused.sum();
+        }
+
+        public double getReuseRate() {
+            long total = getAttempts();
+            return total == 0 ? 0 : (double) getReused() / total;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: attempts=%d, reused=%d, reuseRate=%.2f", service, getAttempts(), getReused(),
+                    getReuseRate());
+        }
+    }
+}
@@ -10,71 +10,66 @@ import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
 import software.amazon.awssdk.enhanced.dynamodb.Key;
 import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
-import software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
-import java.util.ArrayList;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class DynamoDBService {
+    // Building a bean schema is expensive, so it is created once and shared.
+    private static final TableSchema<Label> LABEL_SCHEMA = TableSchema.fromBean(Label.class);
+
     private DynamoDbClient getClient() {
-        return DynamoDbClient.builder()
-            .region(PhotoApplicationResources.REGION)
-            .build();
+        return ClientRegistry.dynamoDb();
     }
 
     // Insert label data into an Amazon DynamoDB table.
+    //
+    // Each label and image pair is written with a single UpdateItem that appends the
+    // image key to the label's list of images and increments its count, creating the
+    // label if it doesn't exist yet. The update only applies when the image is not in
+    // the list, so reprocessing a photo is a no-op and concurrent uploads of the same
+    // label no longer overwrite each other. This replaces a query, a get and a put for
+    // every label. Throttled updates are retried by the SDK's standard retry policy.
     public void putRecord(List<LabelCount> list) {
-        DynamoDbEnhancedClient enhancedClient = DynamoDbEnhancedClient.builder()
-            .dynamoDbClient(getClient())
-            .build();
-
-        DynamoDbTable<com.example.photo.Label> table = enhancedClient.table(PhotoApplicationResources.LABELS_TABLE,
-            TableSchema.fromBean(Label.class));
-
+        DynamoDbClient client = getClient();
+        Map<String, Set<String>> labelToKeys = new LinkedHashMap<>();
         for (LabelCount count : list) {
-            addSingleRecord(table, count.getName(), count.getKey());
+            labelToKeys.computeIfAbsent(count.getName(), label -> new LinkedHashSet<>()).add(count.getKey());
         }
-    }
 
-    private void addSingleRecord(DynamoDbTable<Label> table, String label, String key) {
-        // Check to see if the label exists in the Amazon DynamoDB table.
-        // The count item uses an @DynamoDbAtomicCounter which means it is
-        // updated automatically. No need to manually set this value when the record is
-        // created or updated.
-        if (!checkLabelExists(table, label)) {
-            Label photoRec = new Label();
-            photoRec.setId(label);
-            List<String> keyList = new ArrayList<>();
-            keyList.add(key);
-            photoRec.setImages(keyList);
-            table.putItem(photoRec);
-        } else {
-            // The label exists in the table.
-            Key myKey = Key.builder()
-                .partitionValue(label)
-                .build();
-
-            // Add the file name to the list.
-            Label myPhoto = table.getItem(myKey);
-            Label updatedPhoto = new Label();
-            List<String> imageList = myPhoto.getImages();
-            imageList.add(key);
-            updatedPhoto.setId(label);
-            updatedPhoto.setImages(imageList);
-            table.updateItem(updatedPhoto);
-        }
+        labelToKeys.forEach((label, keys) -> {
+            for (String key : keys) {
+                addImage(client, label, key);
+            }
+        });
     }
 
-    private Boolean checkLabelExists(DynamoDbTable<Label> table, String label) {
-        QueryConditional queryConditional = QueryConditional.keyEqualTo(Key.builder()
-            .partitionValue(label)
-            .build());
-
-        Iterator<Label> results = table.query(queryConditional).items().iterator();
-        return results.hasNext();
+    private void addImage(DynamoDbClient client, String label, String key) {
+        try {
+            client.updateItem(UpdateItemRequest.builder()
+                .tableName(PhotoApplicationResources.LABELS_TABLE)
+                .key(Map.of("Label", AttributeValue.fromS(label)))
+                .updateExpression("SET #images = list_append(if_not_exists(#images, :empty), :image) ADD #count :one")
+                .conditionExpression("attribute_not_exists(#images) OR NOT contains(#images, :key)")
+                .expressionAttributeNames(Map.of(
+                    "#images", "images",
+                    "#count", "count"))
+                .expressionAttributeValues(Map.of(
+                    ":empty", AttributeValue.fromL(List.of()),
+                    ":image", AttributeValue.fromL(List.of(AttributeValue.fromS(key))),
+                    ":key", AttributeValue.fromS(key),
+                    ":one", AttributeValue.fromN("1")))
+                .build());
+        } catch (ConditionalCheckFailedException e) {
+            // The image is already indexed under this label.
+        }
     }
 
     public List<String> getImagesByLabel(String label) {
@@ -83,14 +78,14 @@ public class DynamoDBService {
             .build();
 
         DynamoDbTable<com.example.photo.Label> table = enhancedClient.table(PhotoApplicationResources.LABELS_TABLE,
-            TableSchema.fromBean(Label.class));
+            LABEL_SCHEMA);
         Key key = Key.builder()
             .partitionValue(label)
             .build();
 
         // Get the item by using the key.
         Label result = table.getItem(r -> r.key(key));
-        return (result == null) ? List.of() : result.getImages();
+        return (result == null || result.getImages() == null) ? List.of() : result.getImages();
     }
 
     // Scan the table and send data back to the client.
@@ -101,7 +96,7 @@ public class DynamoDBService {
             .build();
 
         DynamoDbTable<Label> table = enhancedClient.table(PhotoApplicationResources.LABELS_TABLE,
-            TableSchema.fromBean(Label.class));
+            LABEL_SCHEMA);
 
         for (Label photo : table.scan().items()) {
             WorkCount wc = new WorkCount();
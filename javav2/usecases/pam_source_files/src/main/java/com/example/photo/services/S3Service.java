@@ -4,7 +4,6 @@
 package com.example.photo.services;
 
 import com.example.photo.PhotoApplicationResources;
-import software.amazon.awssdk.auth.credentials.EnvironmentVariableCredentialsProvider;
 import software.amazon.awssdk.core.ResponseBytes;
 import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.services.s3.S3Client;
@@ -32,11 +31,9 @@ import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 public class S3Service {
-    // Create the S3Client object.
+    // Returns the shared S3Client object.
     private S3Client getClient() {
-        return S3Client.builder()
-                .region(PhotoApplicationResources.REGION)
-                .build();
+        return ClientRegistry.s3();
     }
 
     public byte[] getObjectBytes(String bucketName, String keyName) {
@@ -115,6 +112,13 @@ public class S3Service {
         return baos.toByteArray();
     }
 
+    // Streams the given objects into a ZIP file in the target bucket without
+    // holding the images or the finished archive in memory.
+    public S3ZipStreamer.Metrics streamObjectsToZip(String sourceBucket, List<String> keys, String targetBucket,
+            String zipName) throws IOException {
+        return new S3ZipStreamer(getClient()).archive(sourceBucket, keys, targetBucket, zipName);
+    }
+
     // Returns true if object exists.
     public boolean checkS3ObjectDoesNotExist(String keyName) {
         S3Client s3 = getClient();
@@ -138,10 +142,7 @@ public class S3Service {
 
     // New method to sign an object prior to uploading it.
     public String signObjectToDownload(String bucketName, String keyName) {
-        S3Presigner presignerOb = S3Presigner.builder()
-                .region(PhotoApplicationResources.REGION)
-                .credentialsProvider(EnvironmentVariableCredentialsProvider.create())
-                .build();
+        S3Presigner presignerOb = ClientRegistry.s3Presigner();
 
         try {
             GetObjectRequest getObjectRequest = GetObjectRequest.builder()
@@ -165,9 +166,7 @@ public class S3Service {
     }
 
     public String signObjectToUpload(String keyName) {
-        S3Presigner presigner = S3Presigner.builder()
-                .region(PhotoApplicationResources.REGION)
-                .build();
+        S3Presigner presigner = ClientRegistry.s3Presigner();
 
         try {
             PutObjectRequest objectRequest = PutObjectRequest.builder()
@@ -0,0 +1,405 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.photo.services;
+
+import software.amazon.awssdk.core.ResponseBytes;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Builds a ZIP archive of Amazon S3 objects and streams it straight into an
+ * S3 multipart upload.
+ *
+ * Objects are read with concurrent ranged GET requests and written to the ZIP
+ * in key order. The compressed output is cut into parts that are uploaded
+ * while the next part is being filled. Memory stays bounded at roughly
+ * (rangeSize * fetchConcurrency) + (partSize * (maxInFlightParts + 1)),
+ * no matter how many objects the archive holds.
+ */
+public class S3ZipStreamer {
+    // S3 requires every part except the last one to be at least 5 MiB.
+    public static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+    public static final int DEFAULT_PART_SIZE = 8 * 1024 * 1024;
+    public static final int DEFAULT_RANGE_SIZE = 4 * 1024 * 1024;
+    public static final int DEFAULT_FETCH_CONCURRENCY = 8;
+    public static final int DEFAULT_MAX_IN_FLIGHT_PARTS = 2;
+
+    private final S3Client s3;
+    private final int partSize;
+    private final int rangeSize;
+    private final int fetchConcurrency;
+    private final int maxInFlightParts;
+
+    public S3ZipStreamer(S3Client s3) {
+        this(s3, DEFAULT_PART_SIZE, DEFAULT_RANGE_SIZE, DEFAULT_FETCH_CONCURRENCY, DEFAULT_MAX_IN_FLIGHT_PARTS);
+    }
+
+    public S3ZipStreamer(S3Client s3, int partSize, int rangeSize, int fetchConcurrency, int maxInFlightParts) {
+        if (partSize < MIN_PART_SIZE) {
+            throw new IllegalArgumentException("partSize must be at least " + MIN_PART_SIZE + " bytes");
+        }
+        if (rangeSize <= 0 || fetchConcurrency <= 0 || maxInFlightParts <= 0) {
+            throw new IllegalArgumentException("rangeSize, fetchConcurrency and maxInFlightParts must be positive");
+        }
+        this.s3 = s3;
+        this.partSize = partSize;
+        this.rangeSize = rangeSize;
+        this.fetchConcurrency = fetchConcurrency;
+        this.maxInFlightParts = maxInFlightParts;
+    }
+
+    /**
+     * Zips the given objects from the source bucket into a single object in the
+     * target bucket. Returns the metrics collected while the archive was built.
+     */
+    public Metrics archive(String sourceBucket, List<String> keys, String targetBucket, String targetKey)
+            throws IOException {
+        Metrics metrics = new Metrics();
+        ExecutorService fetchPool = Executors.newFixedThreadPool(fetchConcurrency);
+        ExecutorService uploadPool = Executors.newFixedThreadPool(maxInFlightParts);
+        String uploadId = s3.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                .bucket(targetBucket)
+                .key(targetKey)
+                .contentType("application/zip")
+                .build())
+                .uploadId();
+
+        try {
+            List<Long> sizes = headObjects(fetchPool, sourceBucket, keys);
+            MultipartOutputStream out = new MultipartOutputStream(uploadPool, targetBucket, targetKey, uploadId,
+                    metrics);
+            try (ZipOutputStream zos = new ZipOutputStream(out)) {
+                writeEntries(zos, fetchPool, sourceBucket, keys, sizes, metrics);
+            }
+            List<CompletedPart> parts = out.awaitParts();
+            s3.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(targetBucket)
+                    .key(targetKey)
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder()
+                            .parts(parts)
+                            .build())
+                    .build());
+            metrics.finish();
+            return metrics;
+
+        } catch (IOException | RuntimeException e) {
+            abort(targetBucket, targetKey, uploadId);
+            throw e;
+        } finally {
+            fetchPool.shutdownNow();
+            uploadPool.shutdownNow();
+        }
+    }
+
+    // Reads the object sizes up front so the ranged GET requests can be planned.
+    private List<Long> headObjects(ExecutorService pool, String bucket, List<String> keys) throws IOException {
+        List<Future<Long>> futures = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            futures.add(pool.submit(() -> s3.headObject(HeadObjectRequest.builder()
+                    .bucket(bucket)
+                    .key(key)
+                    .build())
+                    .contentLength()));
+        }
+
+        List<Long> sizes = new ArrayList<>(keys.size());
+        for (Future<Long> future : futures) {
+            sizes.add(await(future));
+        }
+        return sizes;
+    }
+
+    // Keeps up to fetchConcurrency ranged GETs in flight and writes the chunks
+    // to the archive in the order they were requested.
+    private void writeEntries(ZipOutputStream zos, ExecutorService pool, String bucket, List<String> keys,
+            List<Long> sizes, Metrics metrics) throws IOException {
+        Deque<Chunk> window = new ArrayDeque<>();
+        int nextKey = 0;
+        long nextOffset = 0;
+
+        while (nextKey < keys.size() || !window.isEmpty()) {
+            // Top up the window of in-flight requests.
+            while (window.size() < fetchConcurrency && nextKey < keys.size()) {
+                String key = keys.get(nextKey);
+                long size = sizes.get(nextKey);
+                long end = Math.min(nextOffset + rangeSize, size) - 1;
+                Chunk chunk = new Chunk(key, nextOffset == 0, end + 1 >= size);
+                if (size == 0) {
+                    chunk.data = CompletableFuture.completedFuture(new byte[0]);
+                } else {
+                    String range = "bytes=" + nextOffset + "-" + end;
+                    chunk.data = pool.submit(() -> fetchRange(bucket, key, range, metrics));
+                }
+                window.addLast(chunk);
+
+                if (chunk.last) {
+                    nextKey++;
+                    nextOffset = 0;
+                } else {
+                    nextOffset = end + 1;
+                }
+            }
+
+            Chunk chunk = window.removeFirst();
+            byte[] bytes = await(chunk.data);
+            if (chunk.first) {
+                zos.putNextEntry(new ZipEntry(chunk.key));
+            }
+            zos.write(bytes);
+            metrics.release(bytes.length);
+            if (chunk.last) {
+                zos.closeEntry();
+                metrics.entries.incrementAndGet();
+            }
+        }
+    }
+
+    private byte[] fetchRange(String bucket, String key, String range, Metrics metrics) {
+        ResponseBytes<GetObjectResponse> objectBytes = s3.getObjectAsBytes(GetObjectRequest.builder()
+                .bucket(bucket)
+                .key(key)
+                .range(range)
+                .build());
+        byte[] bytes = objectBytes.asByteArrayUnsafe();
+        metrics.bytesRead.addAndGet(bytes.length);
+        metrics.reserve(bytes.length);
+        return bytes;
+    }
+
+    private void abort(String bucket, String key, String uploadId) {
+        try {
+            s3.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(bucket)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .build());
+        } catch (S3Exception e) {
+            System.err.println(e.getMessage());
+        }
+    }
+
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while streaming the archive", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private static class Chunk {
+        final String key;
+        final boolean first;
+        final boolean last;
+        Future<byte[]> data;
+
+        Chunk(String key, boolean first, boolean last) {
+            this.key = key;
+            this.first = first;
+            this.last = last;
+        }
+    }
+
+    // An OutputStream that fills a part buffer and hands full parts to the
+    // upload pool. Writers block once maxInFlightParts uploads are pending.
+    private class MultipartOutputStream extends OutputStream {
+        private final ExecutorService pool;
+        private final String bucket;
+        private final String key;
+        private final String uploadId;
+        private final Metrics metrics;
+        private final Semaphore inFlight = new Semaphore(maxInFlightParts);
+        private final List<Future<CompletedPart>> parts = new ArrayList<>();
+        private byte[] buffer = new byte[partSize];
+        private int position;
+        private boolean closed;
+
+        MultipartOutputStream(ExecutorService pool, String bucket, String key, String uploadId, Metrics metrics) {
+            this.pool = pool;
+            this.bucket = bucket;
+            this.key = key;
+            this.uploadId = uploadId;
+            this.metrics = metrics;
+            metrics.reserve(partSize);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (position == buffer.length) {
+                flushPart();
+            }
+            buffer[position++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (position == buffer.length) {
+                    flushPart();
+                }
+                int count = Math.min(len, buffer.length - position);
+                System.arraycopy(b, off, buffer, position, count);
+                position += count;
+                off += count;
+                len -= count;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                // The last part may be smaller than the minimum part size.
+                flushPart();
+                metrics.release(partSize);
+            }
+        }
+
+        private void flushPart() throws IOException {
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for a part upload", e);
+            }
+
+            byte[] data = buffer;
+            int length = position;
+            int partNumber = parts.size() + 1;
+            metrics.reserve(partSize);
+            buffer = new byte[partSize];
+            position = 0;
+
+            parts.add(pool.submit(() -> {
+                try {
+                    UploadPartResponse response = s3.uploadPart(UploadPartRequest.builder()
+                            .bucket(bucket)
+                            .key(key)
+                            .uploadId(uploadId)
+                            .partNumber(partNumber)
+                            .contentLength((long) length)
+                            .build(),
+                            RequestBody.fromByteBuffer(ByteBuffer.wrap(data, 0, length)));
+                    metrics.bytesWritten.addAndGet(length);
+                    metrics.parts.incrementAndGet();
+                    return CompletedPart.builder()
+                            .partNumber(partNumber)
+                            .eTag(response.eTag())
+                            .build();
+                } finally {
+                    metrics.release(partSize);
+                    inFlight.release();
+                }
+            }));
+        }
+
+        List<CompletedPart> awaitParts() throws IOException {
+            List<CompletedPart> completed = new ArrayList<>(parts.size());
+            for (Future<CompletedPart> part : parts) {
+                completed.add(await(part));
+            }
+            completed.sort(Comparator.comparing(CompletedPart::partNumber));
+            return completed;
+        }
+    }
+
+    /**
+     * Throughput and buffer figures collected while an archive is built.
+     */
+    public static class Metrics {
+        private final long startNanos = System.nanoTime();
+        private final AtomicLong bufferedBytes = new AtomicLong();
+        private final AtomicLong peakBufferedBytes = new AtomicLong();
+        private final AtomicLong bytesRead = new AtomicLong();
+        private final AtomicLong bytesWritten = new AtomicLong();
+        private final AtomicLong entries = new AtomicLong();
+        private final AtomicLong parts = new AtomicLong();
+        private volatile long elapsedNanos;
+
+        void reserve(long bytes) {
+            long current = bufferedBytes.addAndGet(bytes);
+            peakBufferedBytes.accumulateAndGet(current, Math::max);
+        }
+
+        void release(long bytes) {
+            bufferedBytes.addAndGet(-bytes);
+        }
+
+        void finish() {
+            elapsedNanos = System.nanoTime() - startNanos;
+        }
+
+        public long getBytesRead() {
+            return bytesRead.get();
+        }
+
+        public long getBytesWritten() {
+            return bytesWritten.get();
+        }
+
+        public long getEntries() {
+            return entries.get();
+        }
+
+        public long getParts() {
+            return parts.get();
+        }
+
+        public long getPeakBufferedBytes() {
+            return peakBufferedBytes.get();
+        }
+
+        public double getElapsedSeconds() {
+            return elapsedNanos / 1_000_000_000.0;
+        }
+
+        // Source bytes read per second.
+        public double getThroughputBytesPerSecond() {
+            double seconds = getElapsedSeconds();
+            return seconds > 0 ? getBytesRead() / seconds : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "entries=%d, parts=%d, bytesRead=%d, bytesWritten=%d, elapsed=%.2fs, throughput=%.2f MiB/s, peakBuffered=%.2f MiB",
+                    getEntries(), getParts(), getBytesRead(), getBytesWritten(), getElapsedSeconds(),
+                    getThroughputBytesPerSecond() / (1024 * 1024), getPeakBufferedBytes() / (1024.0 * 1024));
+        }
+    }
+}
@@ -4,7 +4,6 @@
 package com.example.photo.services;
 
 import com.example.photo.PhotoApplicationResources;
-import software.amazon.awssdk.auth.credentials.EnvironmentVariableCredentialsProvider;
 import software.amazon.awssdk.services.sns.SnsClient;
 import software.amazon.awssdk.services.sns.model.CreateTopicRequest;
 import software.amazon.awssdk.services.sns.model.CreateTopicResponse;
@@ -15,10 +14,7 @@ import software.amazon.awssdk.services.sns.model.SubscribeRequest;
 
 public class SnsService {
     private SnsClient getClient() {
-        return SnsClient.builder()
-                .credentialsProvider(EnvironmentVariableCredentialsProvider.create())
-                .region(PhotoApplicationResources.REGION)
-                .build();
+        return ClientRegistry.sns();
     }
 
     public String createNotificationTopic(String notify, String jobId) {
@@ -0,0 +1,51 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.photo.services;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.http.HttpMetric;
+import software.amazon.awssdk.metrics.MetricCollection;
+import software.amazon.awssdk.metrics.MetricCollector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ConnectionReuseMetricsTest {
+
+    @Test
+    public void countsASequentialCallerOnOneConnectionAsReusing() {
+        ClientRegistry.ConnectionReuseMetrics metrics = new ClientRegistry.ConnectionReuseMetrics("S3");
+
+        // The first request opens the only connection; the later ones lease it again, so none is ever idle.
+        for (int i = 0; i < 5; i++) {
+            metrics.publish(attempt(1, 0));
+        }
+
+        assertEquals(5, metrics.getAttempts());
+        assertEquals(4, metrics.getReused());
+        assertEquals(0.8, metrics.getReuseRate(), 1e-9);
+    }
+
+    @Test
+    public void countsAttemptsThatGrowThePoolAsNewConnections() {
+        ClientRegistry.ConnectionReuseMetrics metrics = new ClientRegistry.ConnectionReuseMetrics("DynamoDB");
+
+        metrics.publish(attempt(1, 0));
+        // A concurrent request found no idle connection and opened a second one.
+        metrics.publish(attempt(2, 0));
+        // Both connections are back in the pool and one of them is leased again.
+        metrics.publish(attempt(1, 1));
+
+        assertEquals(3, metrics.getAttempts());
+        assertEquals(1, metrics.getReused());
+    }
+
+    // Returns the metrics of an API call whose attempt left the pool with these leased and available connections.
+    private static MetricCollection attempt(int leased, int available) {
+        MetricCollector call = MetricCollector.create("ApiCall");
+        MetricCollector http = call.createChild("ApiCallAttempt").createChild("HttpClient");
+        http.reportMetric(HttpMetric.LEASED_CONCURRENCY, leased);
+        http.reportMetric(HttpMetric.AVAILABLE_CONCURRENCY, available);
+        return call.collect();
+    }
+}
@@ -3,15 +3,16 @@
 
 package com.example.resilient;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import software.amazon.awssdk.core.waiters.WaiterResponse;
-import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
-import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
-import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeDefinition;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
 import software.amazon.awssdk.services.dynamodb.model.CreateTableRequest;
 import software.amazon.awssdk.services.dynamodb.model.DescribeTableRequest;
 import software.amazon.awssdk.services.dynamodb.model.DescribeTableResponse;
@@ -19,14 +20,25 @@ import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
 import software.amazon.awssdk.services.dynamodb.model.KeySchemaElement;
 import software.amazon.awssdk.services.dynamodb.model.KeyType;
 import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughput;
+import software.amazon.awssdk.services.dynamodb.model.PutRequest;
 import software.amazon.awssdk.services.dynamodb.model.ResourceNotFoundException;
 import software.amazon.awssdk.services.dynamodb.model.ScalarAttributeType;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
 import software.amazon.awssdk.services.dynamodb.waiters.DynamoDbWaiter;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
 
 // snippet-start:[javav2.example_code.workflow.ResilientService_RecommendationService]
 public class Database {
+    private static final int MAX_ITEMS_PER_BATCH = 25;
+    private static final int MAX_ATTEMPTS = 8;
+    private static final long BASE_BACKOFF_MILLIS = 50;
+    private static final long MAX_BACKOFF_MILLIS = 5_000;
 
     private static DynamoDbClient dynamoDbClient;
 
@@ -121,35 +133,75 @@ public class Database {
         System.out.println("Table " + tableName + " deleted.");
     }
 
-    // Populates the table with data located in a JSON file using the DynamoDB
-    // enhanced client.
+    // Populates the table with data located in a JSON file. The file is read
+    // token by token and the items are written in BatchWriteItem calls of 25.
     public void populateTable(String fileName, String tableName) throws IOException {
-        DynamoDbEnhancedClient enhancedClient = DynamoDbEnhancedClient.builder()
-                .dynamoDbClient(getDynamoDbClient())
-                .build();
-        ObjectMapper objectMapper = new ObjectMapper();
-        File jsonFile = new File(fileName);
-        JsonNode rootNode = objectMapper.readTree(jsonFile);
-
-        DynamoDbTable<Recommendation> mappedTable = enhancedClient.table(tableName,
-                TableSchema.fromBean(Recommendation.class));
-        for (JsonNode currentNode : rootNode) {
-            String mediaType = currentNode.path("MediaType").path("S").asText();
-            int itemId = currentNode.path("ItemId").path("N").asInt();
-            String title = currentNode.path("Title").path("S").asText();
-            String creator = currentNode.path("Creator").path("S").asText();
-
-            // Create a Recommendation object and set its properties.
-            Recommendation rec = new Recommendation();
-            rec.setMediaType(mediaType);
-            rec.setItemId(itemId);
-            rec.setTitle(title);
-            rec.setCreator(creator);
-
-            // Put the item into the DynamoDB table.
-            mappedTable.putItem(rec); // Add the Recommendation to the list.
+        List<WriteRequest> batch = new ArrayList<>();
+        int count = 0;
+        try (JsonParser parser = new JsonFactory().createParser(new File(fileName))) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Expected a JSON array of items in " + fileName);
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                batch.add(WriteRequest.builder()
+                        .putRequest(PutRequest.builder().item(readItem(parser)).build())
+                        .build());
+                if (batch.size() == MAX_ITEMS_PER_BATCH) {
+                    writeBatch(tableName, batch);
+                    count += batch.size();
+                    batch = new ArrayList<>();
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            writeBatch(tableName, batch);
+            count += batch.size();
+        }
+        System.out.println("Added " + count + " records to the " + tableName);
+    }
+
+    // Reads one item in DynamoDB JSON, for example {"ItemId": {"N": "1"}}.
+    private static Map<String, AttributeValue> readItem(JsonParser parser) throws IOException {
+        Map<String, AttributeValue> item = new HashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String attribute = parser.getCurrentName();
+            parser.nextToken();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String type = parser.getCurrentName();
+                parser.nextToken();
+                if (type.equals("S")) {
+                    item.put(attribute, AttributeValue.builder().s(parser.getText()).build());
+                } else if (type.equals("N")) {
+                    item.put(attribute, AttributeValue.builder().n(parser.getText()).build());
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return item;
+    }
+
+    // Writes the batch and retries unprocessed items with exponential backoff and jitter.
+    private void writeBatch(String tableName, List<WriteRequest> batch) {
+        List<WriteRequest> pending = batch;
+        for (int attempt = 1; !pending.isEmpty(); attempt++) {
+            if (attempt > MAX_ATTEMPTS) {
+                throw new IllegalStateException("Could not write " + pending.size() + " items to " + tableName);
+            }
+            if (attempt > 1) {
+                long ceiling = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << attempt);
+                try {
+                    Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while writing to " + tableName, e);
+                }
+            }
+            BatchWriteItemResponse response = getDynamoDbClient().batchWriteItem(BatchWriteItemRequest.builder()
+                    .requestItems(Map.of(tableName, pending))
+                    .build());
+            pending = response.unprocessedItems().getOrDefault(tableName, List.of());
         }
-        System.out.println("Added all records to the " + tableName);
     }
 }
 // snippet-end:[javav2.example_code.workflow.ResilientService_RecommendationService]
\ No newline at end of file